@@ -9,7 +9,6 @@ package org.codehaus.aspectwerkz.extension.hotswap;
 
 import java.util.Iterator;
 
-import org.codehaus.aspectwerkz.transform.inlining.compiler.JoinPointFactory;
 import org.codehaus.aspectwerkz.transform.inlining.deployer.Redefiner;
 import org.codehaus.aspectwerkz.transform.inlining.deployer.ChangeSet;
 
@@ -28,8 +27,10 @@ public class HotSwapRedefiner implements Redefiner {
     public void redefine(final ChangeSet changeSet) {
         for (Iterator it = changeSet.getElements().iterator(); it.hasNext();) {
             ChangeSet.Element changeSetElement = (ChangeSet.Element) it.next();
-            final byte[] bytecode = JoinPointFactory.redefineJoinPoint(changeSetElement.getCompilationInfo());
-            HotSwapClient.hotswap(changeSetElement.getJoinPointInfo().getJoinPointClass(), bytecode);
+            HotSwapClient.hotswap(
+                    changeSetElement.getJoinPointInfo().getJoinPointClass(),
+                    changeSetElement.getRedefinedBytecode()
+            );
         }
     }
 }
@@ -9,7 +9,6 @@ package org.codehaus.aspectwerkz.hook;
 
 import org.codehaus.aspectwerkz.transform.inlining.deployer.Redefiner;
 import org.codehaus.aspectwerkz.transform.inlining.deployer.ChangeSet;
-import org.codehaus.aspectwerkz.transform.inlining.compiler.JoinPointFactory;
 import org.codehaus.aspectwerkz.exception.WrappedRuntimeException;
 
 import java.util.Iterator;
@@ -42,8 +41,10 @@ public class JVMTIRedefiner implements Redefiner {
         int index = 0;
         for (Iterator it = changeSet.getElements().iterator(); it.hasNext(); index++) {
             ChangeSet.Element changeSetElement = (ChangeSet.Element) it.next();
-            final byte[] bytecode = JoinPointFactory.redefineJoinPoint(changeSetElement.getCompilationInfo());
-            changes[index] = new ClassDefinition(changeSetElement.getJoinPointInfo().getJoinPointClass(), bytecode);
+            changes[index] = new ClassDefinition(
+                    changeSetElement.getJoinPointInfo().getJoinPointClass(),
+                    changeSetElement.getRedefinedBytecode()
+            );
         }
         try {
             Agent.getInstrumentation().redefineClasses(changes);
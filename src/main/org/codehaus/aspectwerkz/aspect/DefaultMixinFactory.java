@@ -7,16 +7,26 @@
  **************************************************************************************/
 package org.codehaus.aspectwerkz.aspect;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.WeakHashMap;
 import java.util.Map;
 
 import org.codehaus.aspectwerkz.exception.DefinitionException;
 import org.codehaus.aspectwerkz.exception.WrappedRuntimeException;
+import org.codehaus.aspectwerkz.transform.TransformationConstants;
+import org.codehaus.aspectwerkz.util.ClassLoaderMap;
+import org.codehaus.aspectwerkz.util.ConcurrentReferenceMap;
 import org.codehaus.aspectwerkz.DeploymentModel;
 
 /**
  * Abstract base class for the mixin factory implementations.
+ * <p/>
+ * The perClass and perInstance mixins are held by the mixin fields woven into the target classes, and are read back
+ * from these fields. Only the mixins of targets that were not woven with the mixin are kept in the factory.
  *
  * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
  * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
@@ -25,12 +35,27 @@ public class DefaultMixinFactory extends AbstractMixinFactory {
 
     private static final Object[] EMPTY_OBJECT_ARRAY = new Object[0];
 
-    private Object m_perJVM = null;
+    private static final Field[] EMPTY_FIELD_ARRAY = new Field[0];
 
+    private volatile Object m_perJVM = null;
+
+    /**
+     * The perClass mixins of the target classes that have no mixin field, or whose mixin field is not initialized
+     * yet.
+     */
     private Map m_perClassMixins = new WeakHashMap();
 
+    /**
+     * The perInstance mixins of the target instances that have no mixin field, or whose transient mixin field is not
+     * initialized, for instance when deserialized.
+     */
     private Map m_perInstanceMixins = new WeakHashMap();
 
+    /**
+     * The mixin fields of the target classes, by target class name, per target class loader.
+     */
+    private final ClassLoaderMap m_mixinFields = new ClassLoaderMap();
+
     /**
      * Creates a new default mixin factory.
      *
@@ -47,109 +72,226 @@ public class DefaultMixinFactory extends AbstractMixinFactory {
      * @return the mixin instance
      */
     public Object mixinOf() {
-        if (m_perJVM != null) {
-            return m_perJVM;
+        final Object perJVM = m_perJVM;
+        if (perJVM != null) {
+            return perJVM;
         }
         synchronized (this) {
-            final Object mixin;
-            if (m_deploymentModel == DeploymentModel.PER_JVM) {
-                try {
-                    mixin = m_defaultConstructor.newInstance(EMPTY_OBJECT_ARRAY);
-                } catch (InvocationTargetException e) {
-                    throw new WrappedRuntimeException(e.getTargetException());
-                } catch (Exception e) {
-                    throw new WrappedRuntimeException(e);
+            if (m_perJVM == null) {
+                if (m_deploymentModel == DeploymentModel.PER_JVM) {
+                    try {
+                        m_perJVM = m_defaultConstructor.newInstance(EMPTY_OBJECT_ARRAY);
+                    } catch (InvocationTargetException e) {
+                        throw new WrappedRuntimeException(e.getTargetException());
+                    } catch (Exception e) {
+                        throw new WrappedRuntimeException(e);
+                    }
+                } else {
+                    throw new DefinitionException(
+                            "Mixins.mixinOf() is can not be invoked for mixin deployed using as " +
+                            m_deploymentModel
+                    );
                 }
-            } else {
-                throw new DefinitionException(
-                        "Mixins.mixinOf() is can not be invoked for mixin deployed using as " +
-                        m_deploymentModel
-                );
             }
-            m_perJVM = mixin;
+            return m_perJVM;
         }
-        return m_perJVM;
     }
 
     /**
      * Creates a new perClass mixin instance.
+     * <p/>
+     * Returns the mixin held by the static mixin field of the class. When the field is not yet initialized, that is
+     * when called from the class initializer, the mixin is kept in the factory so that it does not change from one
+     * call to the other, and the class initializer stores this same mixin in the field.
      *
      * @param klass
      * @return the mixin instance
      */
     public Object mixinOf(final Class klass) {
-        if (m_perClassMixins.containsKey(klass)) {
-            return m_perClassMixins.get(klass);
+        if (m_deploymentModel != DeploymentModel.PER_CLASS) {
+            throw new DefinitionException(
+                    "Mixins.mixinOf(Class) is can not be invoked for mixin deployed using as " +
+                    m_deploymentModel
+            );
+        }
+        final Field[] fields = getMixinFields(klass);
+        if (fields.length > 0) {
+            final Object mixin = getMixin(fields, null);
+            if (mixin != null) {
+                return mixin;
+            }
         }
         synchronized (m_perClassMixins) {
-            if (!m_perClassMixins.containsKey(klass)) {
-                final Object mixin;
-                if (m_deploymentModel == DeploymentModel.PER_CLASS) {
-                    try {
-                        if (m_perClassConstructor != null) {
-                            mixin = m_perClassConstructor.newInstance(new Object[]{klass});
-                        } else if (m_defaultConstructor != null) {
-                            mixin = m_defaultConstructor.newInstance(new Object[]{});
-                        } else {
-                            throw new DefinitionException(
-                                    "no valid constructor found for mixin [" + m_mixinClass.getName() + "]"
-                            );
-                        }
-                    } catch (InvocationTargetException e) {
-                        throw new WrappedRuntimeException(e.getTargetException());
-                    } catch (Exception e) {
-                        throw new WrappedRuntimeException(e);
-                    }
-                } else {
-                    throw new DefinitionException(
-                            "Mixins.mixinOf(Class) is can not be invoked for mixin deployed using as " +
-                            m_deploymentModel
-                    );
-                }
+            Object mixin = m_perClassMixins.get(klass);
+            if (mixin == null) {
+                mixin = newPerClassMixin(klass);
                 m_perClassMixins.put(klass, mixin);
             }
-            return m_perClassMixins.get(klass);
+            return mixin;
         }
     }
 
     /**
      * Creates a new perInstance mixin instance.
+     * <p/>
+     * Returns the mixin held by the mixin field of the instance, or a new mixin when the field is not yet
+     * initialized, that is when called from the constructor. A transient mixin field is also null in a deserialized
+     * instance, whose mixin is then kept in the factory so that it does not change from one call to the other.
      *
      * @param instance
      * @return the mixin instance
      */
     public Object mixinOf(final Object instance) {
-        if (m_perInstanceMixins.containsKey(instance)) {
-            return m_perInstanceMixins.get(instance);
+        if (m_deploymentModel != DeploymentModel.PER_INSTANCE) {
+            throw new DefinitionException(
+                    "Mixins.mixinOf(Object) is can not be invoked for mixin deployed using as " +
+                    m_deploymentModel
+            );
+        }
+        final Field[] fields = getMixinFields(instance.getClass());
+        if (fields.length > 0) {
+            final Object mixin = getMixin(fields, instance);
+            if (mixin != null) {
+                return mixin;
+            }
+            if (!Modifier.isTransient(fields[0].getModifiers())) {
+                return newPerInstanceMixin(instance);
+            }
         }
         synchronized (m_perInstanceMixins) {
-            if (!m_perInstanceMixins.containsKey(instance)) {
-                final Object mixin;
-                if (m_deploymentModel == DeploymentModel.PER_INSTANCE) {
-                    try {
-                        if (m_perInstanceConstructor != null) {
-                            mixin = m_perInstanceConstructor.newInstance(new Object[]{instance});
-                        } else if (m_defaultConstructor != null) {
-                            mixin = m_defaultConstructor.newInstance(new Object[]{});
-                        } else {
-                            throw new DefinitionException(
-                                    "no valid constructor found for mixin [" + m_mixinClass.getName() + "]"
-                            );
-                        }
-                    } catch (InvocationTargetException e) {
-                        throw new WrappedRuntimeException(e.getTargetException());
-                    } catch (Exception e) {
-                        throw new WrappedRuntimeException(e);
+            Object mixin = m_perInstanceMixins.get(instance);
+            if (mixin == null) {
+                mixin = newPerInstanceMixin(instance);
+                m_perInstanceMixins.put(instance, mixin);
+            }
+            return mixin;
+        }
+    }
+
+    /**
+     * Creates a new perClass mixin.
+     *
+     * @param klass
+     * @return the mixin instance
+     */
+    private Object newPerClassMixin(final Class klass) {
+        try {
+            if (m_perClassConstructor != null) {
+                return m_perClassConstructor.newInstance(new Object[]{klass});
+            } else if (m_defaultConstructor != null) {
+                return m_defaultConstructor.newInstance(EMPTY_OBJECT_ARRAY);
+            } else {
+                throw new DefinitionException(
+                        "no valid constructor found for mixin [" + m_mixinClass.getName() + "]"
+                );
+            }
+        } catch (InvocationTargetException e) {
+            throw new WrappedRuntimeException(e.getTargetException());
+        } catch (Exception e) {
+            throw new WrappedRuntimeException(e);
+        }
+    }
+
+    /**
+     * Creates a new perInstance mixin.
+     *
+     * @param instance
+     * @return the mixin instance
+     */
+    private Object newPerInstanceMixin(final Object instance) {
+        try {
+            if (m_perInstanceConstructor != null) {
+                return m_perInstanceConstructor.newInstance(new Object[]{instance});
+            } else if (m_defaultConstructor != null) {
+                return m_defaultConstructor.newInstance(EMPTY_OBJECT_ARRAY);
+            } else {
+                throw new DefinitionException(
+                        "no valid constructor found for mixin [" + m_mixinClass.getName() + "]"
+                );
+            }
+        } catch (InvocationTargetException e) {
+            throw new WrappedRuntimeException(e.getTargetException());
+        } catch (Exception e) {
+            throw new WrappedRuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the first initialized mixin of the given fields.
+     *
+     * @param fields
+     * @param instance the target instance, null for static fields
+     * @return the mixin instance or null if none is initialized yet
+     */
+    private static Object getMixin(final Field[] fields, final Object instance) {
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                final Object mixin = fields[i].get(instance);
+                if (mixin != null) {
+                    return mixin;
+                }
+            }
+            return null;
+        } catch (IllegalAccessException e) {
+            throw new WrappedRuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the mixin fields woven into a target class for this mixin.
+     * <p/>
+     * The perClass mixin fields are the static ones declared by the class itself, while the perInstance mixin fields
+     * are the member ones declared in the class hierarchy, from the class to its topmost super class, so that an
+     * instance gets a single mixin even if several of its classes were woven with it.
+     *
+     * @param klass the target class
+     * @return the mixin fields, an empty array if the target class was not woven with the mixin
+     */
+    private Field[] getMixinFields(final Class klass) {
+        final ClassLoader loader = klass.getClassLoader();
+        ConcurrentReferenceMap mixinFields = (ConcurrentReferenceMap) m_mixinFields.get(loader);
+        if (mixinFields == null) {
+            mixinFields = (ConcurrentReferenceMap) m_mixinFields.putIfAbsent(
+                    loader, new ConcurrentReferenceMap(ConcurrentReferenceMap.SOFT)
+            );
+        }
+        Field[] fields = (Field[]) mixinFields.get(klass.getName());
+        if (fields == null) {
+            fields = lookupMixinFields(klass);
+            mixinFields.put(klass.getName(), fields);
+        }
+        return fields;
+    }
+
+    /**
+     * Looks up the mixin fields woven into a target class for this mixin.
+     *
+     * @param klass the target class
+     * @return the mixin fields
+     */
+    private Field[] lookupMixinFields(final Class klass) {
+        final boolean isStatic = m_deploymentModel != DeploymentModel.PER_INSTANCE;
+        final List fields = new ArrayList();
+        try {
+            for (Class c = klass; c != null; c = c.getSuperclass()) {
+                final Field[] declaredFields = c.getDeclaredFields();
+                for (int i = 0; i < declaredFields.length; i++) {
+                    final Field field = declaredFields[i];
+                    if (field.getName().startsWith(TransformationConstants.MIXIN_FIELD_NAME)
+                        && field.getType() == m_mixinClass
+                        && Modifier.isStatic(field.getModifiers()) == isStatic) {
+                        field.setAccessible(true);
+                        fields.add(field);
                     }
-                } else {
-                    throw new DefinitionException(
-                            "Mixins.mixinOf(Object) is can not be invoked for mixin deployed using as " +
-                            m_deploymentModel
-                    );
                 }
-                m_perInstanceMixins.put(instance, mixin);
+                if (isStatic) {
+                    break;
+                }
             }
-            return m_perInstanceMixins.get(instance);
+        } catch (SecurityException e) {
+            // the mixins can not be read from the fields, keep them in the factory
+            return EMPTY_FIELD_ARRAY;
         }
+        return (Field[]) fields.toArray(new Field[fields.size()]);
     }
-}
\ No newline at end of file
+}
@@ -38,6 +38,9 @@ import java.util.Map;
  * <p/>
  * PerCflowX has a bind(thread) / unbind(thread) suitable for perCflow / perCflowBelow.
  * <p/>
+ * Each factory implements AspectFactoryInvoker, and holds its single instance in the INVOKER field, so that the
+ * Aspects API can call the aspectOf(..) and hasAspect(..) methods without reflection.
+ * <p/>
  * TODO: none is synchronized. AspectJ does not synchronize neither...
  *
  * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
@@ -123,7 +126,7 @@ public abstract class AbstractAspectFactoryCompiler implements Opcodes, Transfor
                 m_aspectFactoryClassName,
                 null,
                 OBJECT_CLASS_NAME,
-                null
+                new String[]{ASPECT_FACTORY_INVOKER_CLASS_NAME}
         );
 
         // create a CLASS field to host this factory class
@@ -169,6 +172,7 @@ public abstract class AbstractAspectFactoryCompiler implements Opcodes, Transfor
         createAspectOf();
         createHasAspect();
         createOtherArtifacts();
+        createInvoker();
 
         m_clinit.visitInsn(RETURN);
         m_clinit.visitMaxs(0, 0);
@@ -187,12 +191,123 @@ public abstract class AbstractAspectFactoryCompiler implements Opcodes, Transfor
         return artifact;
     }
 
+    /**
+     * Returns the signature of the aspectOf(..) method parameter, or an empty string if it has none.
+     *
+     * @return the parameter signature
+     */
+    protected abstract String getXSignature();
+
     protected abstract void createAspectOf();
 
     protected abstract void createHasAspect();
 
     protected abstract void createOtherArtifacts();
 
+    /**
+     * Returns true if createAspectOf() also creates a no-arg aspectOf() method next to the aspectOf(..) one with the
+     * X signature, f.e. for the current thread.
+     *
+     * @return
+     */
+    protected boolean hasImplicitAspectOf() {
+        return false;
+    }
+
+    /**
+     * Creates the AspectFactoryInvoker implementation, delegating to the static aspectOf(..) and hasAspect(..)
+     * methods, and the INVOKER field holding the single factory instance.
+     */
+    private void createInvoker() {
+        m_cw.visitField(
+                ACC_PUBLIC + ACC_STATIC + ACC_FINAL,
+                FACTORY_INVOKER_FIELD_NAME,
+                ASPECT_FACTORY_INVOKER_CLASS_SIGNATURE,
+                null,
+                null
+        );
+        m_clinit.visitTypeInsn(NEW, m_aspectFactoryClassName);
+        m_clinit.visitInsn(DUP);
+        m_clinit.visitMethodInsn(INVOKESPECIAL, m_aspectFactoryClassName, INIT_METHOD_NAME, NO_PARAM_RETURN_VOID_SIGNATURE);
+        m_clinit.visitFieldInsn(
+                PUTSTATIC, m_aspectFactoryClassName, FACTORY_INVOKER_FIELD_NAME, ASPECT_FACTORY_INVOKER_CLASS_SIGNATURE
+        );
+
+        MethodVisitor cv = m_cw.visitMethod(ACC_PUBLIC, INIT_METHOD_NAME, NO_PARAM_RETURN_VOID_SIGNATURE, null, null);
+        cv.visitVarInsn(ALOAD, 0);
+        cv.visitMethodInsn(INVOKESPECIAL, OBJECT_CLASS_NAME, INIT_METHOD_NAME, NO_PARAM_RETURN_VOID_SIGNATURE);
+        cv.visitInsn(RETURN);
+        cv.visitMaxs(0, 0);
+
+        final String xSignature = getXSignature();
+        createInvokeAspectOf("", xSignature);
+        createInvokeAspectOf(CLASS_CLASS_SIGNATURE, xSignature);
+        createInvokeAspectOf(OBJECT_CLASS_SIGNATURE, xSignature);
+
+        cv = m_cw.visitMethod(
+                ACC_PUBLIC,
+                INVOKE_HASASPECT_METHOD_NAME,
+                FACTORY_HASASPECT_PEROBJECT_METHOD_SIGNATURE,
+                null,
+                null
+        );
+        if (OBJECT_CLASS_SIGNATURE.equals(xSignature)) {
+            cv.visitVarInsn(ALOAD, 1);
+            cv.visitMethodInsn(
+                    INVOKESTATIC,
+                    m_aspectFactoryClassName,
+                    FACTORY_HASASPECT_METHOD_NAME,
+                    FACTORY_HASASPECT_PEROBJECT_METHOD_SIGNATURE
+            );
+        } else {
+            cv.visitInsn(ICONST_0);
+        }
+        cv.visitInsn(IRETURN);
+        cv.visitMaxs(0, 0);
+    }
+
+    /**
+     * Creates an invokeAspectOf(..) method, that delegates to aspectOf(..) if it has the same parameter or to the
+     * implicit no-arg aspectOf() if any, else throws a NoAspectBoundException.
+     *
+     * @param signature  the parameter signature of the invokeAspectOf(..) method
+     * @param xSignature the parameter signature of the aspectOf(..) method
+     */
+    private void createInvokeAspectOf(final String signature, final String xSignature) {
+        MethodVisitor cv = m_cw.visitMethod(
+                ACC_PUBLIC,
+                INVOKE_ASPECTOF_METHOD_NAME,
+                "(" + signature + ")" + OBJECT_CLASS_SIGNATURE,
+                null,
+                null
+        );
+        if (signature.equals(xSignature) || (signature.length() == 0 && hasImplicitAspectOf())) {
+            if (signature.length() > 0) {
+                cv.visitVarInsn(ALOAD, 1);
+            }
+            cv.visitMethodInsn(
+                    INVOKESTATIC,
+                    m_aspectFactoryClassName,
+                    FACTORY_ASPECTOF_METHOD_NAME,
+                    "(" + signature + ")" + m_aspectClassSignature
+            );
+            cv.visitInsn(ARETURN);
+        } else {
+            cv.visitTypeInsn(NEW, NO_ASPECT_BOUND_EXCEPTION_CLASS_NAME);
+            cv.visitInsn(DUP);
+            cv.visitLdcInsn("No aspectOf(" + signature + ") for the deployment model");
+            cv.visitLdcInsn(m_aspectQualifiedName);
+            cv.visitMethodInsn(
+                    INVOKESPECIAL,
+                    NO_ASPECT_BOUND_EXCEPTION_CLASS_NAME,
+                    INIT_METHOD_NAME,
+                    "(Ljava/lang/String;Ljava/lang/String;)V"
+            );
+            cv.visitInsn(ATHROW);
+        }
+        cv.visitMaxs(0, 0);
+    }
+
     private void createParametersFieldAndClinit() {
         m_cw.visitField(
                 ACC_PRIVATE + ACC_STATIC + ACC_FINAL,
@@ -0,0 +1,52 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.aspect.container;
+
+/**
+ * Interface implemented by the generated aspect factories, so that the aspects can be looked up from the Aspects
+ * API thru a direct call instead of reflection.
+ * <p/>
+ * Each factory has a single instance held in its INVOKER static field. The methods delegate to the static
+ * aspectOf(..) and hasAspect(..) methods of the factory that match the aspect deployment model, and throw a
+ * NoAspectBoundException otherwise.
+ *
+ * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
+ */
+public interface AspectFactoryInvoker {
+
+    /**
+     * Returns the perJVM aspect instance.
+     *
+     * @return the aspect instance
+     */
+    Object invokeAspectOf();
+
+    /**
+     * Returns the perClass aspect instance attached to the given class.
+     *
+     * @param perClass
+     * @return the aspect instance
+     */
+    Object invokeAspectOf(Class perClass);
+
+    /**
+     * Returns the instance level aspect instance attached to the given instance.
+     *
+     * @param perInstance
+     * @return the aspect instance
+     */
+    Object invokeAspectOf(Object perInstance);
+
+    /**
+     * Checks if an instance level aspect instance is attached to the given instance.
+     *
+     * @param perInstance
+     * @return true if an aspect instance is attached
+     */
+    boolean invokeHasAspect(Object perInstance);
+}
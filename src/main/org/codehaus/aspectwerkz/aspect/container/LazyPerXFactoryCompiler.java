@@ -24,8 +24,6 @@ public abstract class LazyPerXFactoryCompiler extends AbstractAspectFactoryCompi
         super(uuid, aspectClassName, aspectQualifiedName, containerClassName, rawParameters, loader);
     }
 
-    protected abstract String getXSignature();
-
     protected void createAspectOf() {
         m_cw.visitField(
                 ACC_PRIVATE + ACC_STATIC,
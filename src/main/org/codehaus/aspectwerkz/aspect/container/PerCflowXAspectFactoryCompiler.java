@@ -7,15 +7,16 @@
  **************************************************************************************/
 package org.codehaus.aspectwerkz.aspect.container;
 
-import org.codehaus.aspectwerkz.definition.AspectDefinition;
-import org.codehaus.aspectwerkz.aspect.management.NoAspectBoundException;
-import org.codehaus.aspectwerkz.aspect.AspectContainer;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Label;
-import org.objectweb.asm.Type;
 
 /**
- * FIXME AVF review
+ * Compiles the factory of perCflow and perCflowbelow aspects.
+ * <p/>
+ * The aspect instance bound to a cflow is kept in a ThreadLocal slot of the factory, since a cflow never spans
+ * several threads. aspectOf(..), hasAspect(..), bind(..) and unbind(..) thus do not lock nor allocate once the slot
+ * of the thread is there. They only act on the current thread: an aspect is never visible from another thread.
+ *
  * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
  */
 public class PerCflowXAspectFactoryCompiler extends LazyPerXFactoryCompiler {
@@ -33,34 +34,39 @@ public class PerCflowXAspectFactoryCompiler extends LazyPerXFactoryCompiler {
      */
     protected void createAspectOf() {
         m_cw.visitField(
-                ACC_PRIVATE + ACC_STATIC,
-                "ASPECTS",
-                MAP_CLASS_SIGNATURE,
+                ACC_PRIVATE + ACC_STATIC + ACC_FINAL,
+                FACTORY_ASPECTS_FIELD_NAME,
+                THREAD_LOCAL_CLASS_SIGNATURE,
                 null,
                 null
         );
 
-        m_clinit.visitTypeInsn(NEW, MAP_CLASS_NAME);
+        m_clinit.visitTypeInsn(NEW, THREAD_LOCAL_CLASS_NAME);
         m_clinit.visitInsn(DUP);
-        m_clinit.visitMethodInsn(INVOKESPECIAL, "java/util/WeakHashMap", INIT_METHOD_NAME, "()V");
-        m_clinit.visitFieldInsn(PUTSTATIC, m_aspectFactoryClassName, "ASPECTS", MAP_CLASS_SIGNATURE);
+        m_clinit.visitMethodInsn(INVOKESPECIAL, THREAD_LOCAL_CLASS_NAME, INIT_METHOD_NAME, NO_PARAM_RETURN_VOID_SIGNATURE);
+        m_clinit.visitFieldInsn(PUTSTATIC, m_aspectFactoryClassName, FACTORY_ASPECTS_FIELD_NAME, THREAD_LOCAL_CLASS_SIGNATURE);
 
         MethodVisitor cv = m_cw.visitMethod(
                 ACC_PUBLIC + ACC_STATIC + ACC_FINAL,
-                "aspectOf",
+                FACTORY_ASPECTOF_METHOD_NAME,
                 "(" + getXSignature() + ")" + m_aspectClassSignature,
                 null,
                 null
         );
 
-        cv.visitFieldInsn(GETSTATIC, m_aspectFactoryClassName, "ASPECTS", MAP_CLASS_SIGNATURE);
-        cv.visitVarInsn(ALOAD, 0);//Thread
-        cv.visitMethodInsn(INVOKEINTERFACE, MAP_CLASS_NAME, "get", "(Ljava/lang/Object;)Ljava/lang/Object;");
+        Label notBound = new Label();
+        loadCurrentThreadCheck(cv, notBound);
+        cv.visitFieldInsn(GETSTATIC, m_aspectFactoryClassName, FACTORY_ASPECTS_FIELD_NAME, THREAD_LOCAL_CLASS_SIGNATURE);
+        cv.visitMethodInsn(INVOKEVIRTUAL, THREAD_LOCAL_CLASS_NAME, "get", NO_PARAM_RETURN_OBJECT_SIGNATURE);
         cv.visitVarInsn(ASTORE, 1);
         cv.visitVarInsn(ALOAD, 1);
-        Label ifBound = new Label();
-        cv.visitJumpInsn(IFNONNULL, ifBound);
-        cv.visitTypeInsn(NEW, Type.getInternalName(NoAspectBoundException.class));
+        cv.visitJumpInsn(IFNULL, notBound);
+        cv.visitVarInsn(ALOAD, 1);
+        cv.visitTypeInsn(CHECKCAST, m_aspectClassName);
+        cv.visitInsn(ARETURN);
+
+        cv.visitLabel(notBound);
+        cv.visitTypeInsn(NEW, NO_ASPECT_BOUND_EXCEPTION_CLASS_NAME);
         cv.visitInsn(DUP);
         cv.visitLdcInsn("Not bound");
         cv.visitLdcInsn(m_aspectQualifiedName);
@@ -71,37 +77,63 @@ public class PerCflowXAspectFactoryCompiler extends LazyPerXFactoryCompiler {
                 "(Ljava/lang/String;Ljava/lang/String;)V"
         );
         cv.visitInsn(ATHROW);
-
-        cv.visitLabel(ifBound);
-        cv.visitVarInsn(ALOAD, 1);
-        cv.visitTypeInsn(CHECKCAST, m_aspectClassName);
-        cv.visitInsn(ARETURN);
+        cv.visitMaxs(0, 0);
 
         // create an implicit Thread.currentThread no arg aspectOf() method
         cv = m_cw.visitMethod(
                 ACC_STATIC + ACC_PUBLIC + ACC_FINAL,
-                "aspectOf",
+                FACTORY_ASPECTOF_METHOD_NAME,
                 "()" + m_aspectClassSignature,
                 null,
                 null
         );
+        cv.visitMethodInsn(INVOKESTATIC, THREAD_CLASS_NAME, CURRENT_THREAD_METHOD_NAME, CURRENT_THREAD_METHOD_SIGNATURE);
         cv.visitMethodInsn(
-                INVOKESTATIC, Type.getInternalName(Thread.class), "currentThread", "()Ljava/lang/Thread;"
-        );
-        cv.visitMethodInsn(
-                INVOKESTATIC, m_aspectFactoryClassName, "aspectOf", "(Ljava/lang/Thread;)" + getXSignature()
+                INVOKESTATIC,
+                m_aspectFactoryClassName,
+                FACTORY_ASPECTOF_METHOD_NAME,
+                "(" + getXSignature() + ")" + m_aspectClassSignature
         );
         cv.visitInsn(ARETURN);
         cv.visitMaxs(0, 0);
     }
 
+    protected boolean hasImplicitAspectOf() {
+        return true;
+    }
+
+    protected void createHasAspect() {
+        MethodVisitor cv = m_cw.visitMethod(
+                ACC_STATIC + ACC_PUBLIC + ACC_FINAL,
+                FACTORY_HASASPECT_METHOD_NAME,
+                "(" + getXSignature() + ")Z",
+                null,
+                null
+        );
+
+        Label notBound = new Label();
+        loadCurrentThreadCheck(cv, notBound);
+        cv.visitFieldInsn(GETSTATIC, m_aspectFactoryClassName, FACTORY_ASPECTS_FIELD_NAME, THREAD_LOCAL_CLASS_SIGNATURE);
+        cv.visitMethodInsn(INVOKEVIRTUAL, THREAD_LOCAL_CLASS_NAME, "get", NO_PARAM_RETURN_OBJECT_SIGNATURE);
+        cv.visitJumpInsn(IFNULL, notBound);
+        cv.visitInsn(ICONST_1);
+        cv.visitInsn(IRETURN);
+        cv.visitLabel(notBound);
+        cv.visitInsn(ICONST_0);
+        cv.visitInsn(IRETURN);
+        cv.visitMaxs(0, 0);
+    }
+
     protected void createOtherArtifacts() {
         createBindMethod();
         createUnbindMethod();
     }
 
+    /**
+     * Creates the bind(Thread) method, that binds a new aspect instance to the current thread unless one is already
+     * bound, f.e. in a nested cflow.
+     */
     private void createBindMethod() {
-        //FIXME AVF do not bind if already present
         MethodVisitor cv = m_cw.visitMethod(
                 ACC_PUBLIC + ACC_STATIC + ACC_FINAL,
                 "bind",
@@ -110,31 +142,31 @@ public class PerCflowXAspectFactoryCompiler extends LazyPerXFactoryCompiler {
                 null
         );
 
-        cv.visitFieldInsn(GETSTATIC, m_aspectFactoryClassName, "ASPECTS", MAP_CLASS_SIGNATURE);
+        Label end = new Label();
+        loadCurrentThreadCheck(cv, end);
+        cv.visitFieldInsn(GETSTATIC, m_aspectFactoryClassName, FACTORY_ASPECTS_FIELD_NAME, THREAD_LOCAL_CLASS_SIGNATURE);
+        cv.visitMethodInsn(INVOKEVIRTUAL, THREAD_LOCAL_CLASS_NAME, "get", NO_PARAM_RETURN_OBJECT_SIGNATURE);
+        cv.visitJumpInsn(IFNONNULL, end);
+        cv.visitFieldInsn(GETSTATIC, m_aspectFactoryClassName, FACTORY_ASPECTS_FIELD_NAME, THREAD_LOCAL_CLASS_SIGNATURE);
         if (m_hasAspectContainer) {
             cv.visitFieldInsn(
-                    GETSTATIC, m_aspectFactoryClassName, "CONTAINER", Type.getDescriptor(AspectContainer.class)
+                    GETSTATIC, m_aspectFactoryClassName, FACTORY_CONTAINER_FIELD_NAME, ASPECT_CONTAINER_CLASS_SIGNATURE
             );
+            cv.visitVarInsn(ALOAD, 0);//Thread
             cv.visitMethodInsn(
                     INVOKEINTERFACE,
-                    Type.getInternalName(AspectContainer.class),
-                    "aspectOf",
+                    ASPECT_CONTAINER_CLASS_NAME,
+                    ASPECT_CONTAINER_ASPECTOF_METHOD_NAME,
                     "(" + getXSignature() + ")Ljava/lang/Object;"
             );
             cv.visitTypeInsn(CHECKCAST, m_aspectClassName);
         } else {
             cv.visitTypeInsn(NEW, m_aspectClassName);
             cv.visitInsn(DUP);
-            cv.visitMethodInsn(INVOKESPECIAL, m_aspectClassName, INIT_METHOD_NAME, "()V");
+            cv.visitMethodInsn(INVOKESPECIAL, m_aspectClassName, INIT_METHOD_NAME, NO_PARAM_RETURN_VOID_SIGNATURE);
         }
-        cv.visitVarInsn(ALOAD, 0);//Thread
-        cv.visitMethodInsn(
-                INVOKEINTERFACE,
-                MAP_CLASS_NAME,
-                "put",
-                "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;"
-        );
-        cv.visitInsn(POP);
+        cv.visitMethodInsn(INVOKEVIRTUAL, THREAD_LOCAL_CLASS_NAME, "set", "(Ljava/lang/Object;)V");
+        cv.visitLabel(end);
         cv.visitInsn(RETURN);
         cv.visitMaxs(0, 0);
     }
@@ -148,11 +180,25 @@ public class PerCflowXAspectFactoryCompiler extends LazyPerXFactoryCompiler {
                 null
         );
 
-        cv.visitFieldInsn(GETSTATIC, m_aspectFactoryClassName, "ASPECTS", MAP_CLASS_SIGNATURE);
-        cv.visitVarInsn(ALOAD, 0);//Thread
-        cv.visitMethodInsn(INVOKEINTERFACE, MAP_CLASS_NAME, "remove", "(Ljava/lang/Object;)Ljava/lang/Object;");
-        cv.visitInsn(POP);
+        Label end = new Label();
+        loadCurrentThreadCheck(cv, end);
+        cv.visitFieldInsn(GETSTATIC, m_aspectFactoryClassName, FACTORY_ASPECTS_FIELD_NAME, THREAD_LOCAL_CLASS_SIGNATURE);
+        cv.visitInsn(ACONST_NULL);
+        cv.visitMethodInsn(INVOKEVIRTUAL, THREAD_LOCAL_CLASS_NAME, "set", "(Ljava/lang/Object;)V");
+        cv.visitLabel(end);
         cv.visitInsn(RETURN);
         cv.visitMaxs(0, 0);
     }
+
+    /**
+     * Jumps to the given label if the Thread argument is not the current thread.
+     *
+     * @param cv
+     * @param otherThread
+     */
+    private static void loadCurrentThreadCheck(final MethodVisitor cv, final Label otherThread) {
+        cv.visitVarInsn(ALOAD, 0);//Thread
+        cv.visitMethodInsn(INVOKESTATIC, THREAD_CLASS_NAME, CURRENT_THREAD_METHOD_NAME, CURRENT_THREAD_METHOD_SIGNATURE);
+        cv.visitJumpInsn(IF_ACMPNE, otherThread);
+    }
 }
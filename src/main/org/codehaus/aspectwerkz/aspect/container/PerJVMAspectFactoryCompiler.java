@@ -24,6 +24,10 @@ public class PerJVMAspectFactoryCompiler extends AbstractAspectFactoryCompiler {
         super(uuid, aspectClassName, aspectQualifiedName, containerClassName, rawParameters, loader);
     }
 
+    protected String getXSignature() {
+        return "";
+    }
+
     protected void createAspectOf() {
         m_cw.visitField(
                 ACC_PRIVATE + ACC_STATIC,
@@ -27,6 +27,10 @@ public class PerObjectFactoryCompiler extends AbstractAspectFactoryCompiler {
         super(uuid, aspectClassName, aspectQualifiedName, containerClassName, rawParameters, loader);
     }
 
+    protected String getXSignature() {
+        return OBJECT_CLASS_SIGNATURE;
+    }
+
     protected void createAspectOf() {
         MethodVisitor cv = m_cw.visitMethod(
                 ACC_PUBLIC + ACC_STATIC + ACC_FINAL,
@@ -124,8 +128,8 @@ public class PerObjectFactoryCompiler extends AbstractAspectFactoryCompiler {
     private void createBindMethod() {
         MethodVisitor cv = m_cw.visitMethod(
                 ACC_PUBLIC + ACC_STATIC + ACC_FINAL,
-                "bind",
-                "(Ljava/lang/Object;)Ljava/lang/Object;",
+                FACTORY_BIND_METHOD_NAME,
+                FACTORY_BIND_PEROBJECT_METHOD_SIGNATURE,
                 null,
                 null
         );
@@ -7,30 +7,29 @@
  **************************************************************************************/
 package org.codehaus.aspectwerkz.aspect.management;
 
-import org.codehaus.aspectwerkz.aspect.AspectContainer;
-import org.codehaus.aspectwerkz.aspect.DefaultAspectContainerStrategy;
+import org.codehaus.aspectwerkz.aspect.container.AspectFactoryInvoker;
 import org.codehaus.aspectwerkz.aspect.container.AspectFactoryManager;
-import org.codehaus.aspectwerkz.AspectContext;
 import org.codehaus.aspectwerkz.DeploymentModel;
-import org.codehaus.aspectwerkz.cflow.CflowCompiler;
+import org.codehaus.aspectwerkz.transform.TransformationConstants;
+import org.codehaus.aspectwerkz.util.ClassLoaderMap;
+import org.codehaus.aspectwerkz.util.ConcurrentReferenceMap;
 import org.codehaus.aspectwerkz.util.ContextClassLoader;
 import org.codehaus.aspectwerkz.definition.AspectDefinition;
 import org.codehaus.aspectwerkz.definition.SystemDefinition;
 import org.codehaus.aspectwerkz.definition.SystemDefinitionContainer;
-import org.codehaus.aspectwerkz.exception.DefinitionException;
 
 import java.util.*;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-
-import gnu.trove.TIntObjectHashMap;
+import java.lang.ref.WeakReference;
 
 /**
  * Manages the aspects.
  * <p/>
- * Each Aspect qName has a generated factory (one factory per aspect qName) on which we invoke reflectively
- * the aspectOf and alike. Those are user exposed method. The weaved code does not use those.
+ * Each Aspect qName has a generated factory (one factory per aspect qName) on which we invoke
+ * the aspectOf and alike thru the AspectFactoryInvoker it implements. Those are user exposed method. The weaved code
+ * does not use those.
+ * <p/>
+ * The factories and the aspect definitions are cached per class loader they are looked up from, the definitions
+ * until the system definitions change.
  *
  * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
  * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
@@ -38,17 +37,9 @@ import gnu.trove.TIntObjectHashMap;
 public class Aspects {
 
     /**
-     * Returns the aspect container class for the given aspect class qName.
-     * The qName is returned since we may have only the aspect class name upon lookup
-     *
-     * @param visibleFrom class loader to look from
-     * @param qName
-     * @return array of qName and aspect class name (dot formatted as in the aspect definition)
+     * The aspect factories and the aspect definitions already looked up, per class loader they are looked up from.
      */
-    private static String[] getAspectQNameAndAspectClassName(final ClassLoader visibleFrom, final String qName) {
-        AspectDefinition aspectDefinition = lookupAspectDefinition(visibleFrom, qName);
-        return new String[]{aspectDefinition.getQualifiedName(), aspectDefinition.getClassName()};
-    }
+    private static final ClassLoaderMap s_lookupCaches = new ClassLoaderMap();
 
     /**
      * Returns the singleton aspect instance for the aspect with the given qualified name.
@@ -82,8 +73,8 @@ public class Aspects {
      * @return the singleton aspect instance
      */
     public static Object aspectOf(final ClassLoader visibleFrom, final String qName) {
-        String[] qNameAndAspectClassName = getAspectQNameAndAspectClassName(visibleFrom, qName);
-        return aspect$Of(qNameAndAspectClassName[0], qNameAndAspectClassName[1], visibleFrom);
+        AspectDefinition aspectDef = lookupAspectDefinition(visibleFrom, qName);
+        return aspect$Of(aspectDef.getQualifiedName(), aspectDef.getClassName(), visibleFrom);
     }
 
     /**
@@ -108,8 +99,8 @@ public class Aspects {
      */
     public static Object aspectOf(final String qName, final Class targetClass) {
         // look up from the targetClass loader is enough in that case
-        String[] qNameAndAspectClassName = getAspectQNameAndAspectClassName(targetClass.getClassLoader(), qName);
-        return aspect$Of(qNameAndAspectClassName[0], qNameAndAspectClassName[1], targetClass);
+        AspectDefinition aspectDef = lookupAspectDefinition(targetClass.getClassLoader(), qName);
+        return aspect$Of(aspectDef.getQualifiedName(), aspectDef.getClassName(), targetClass);
     }
 
     /**
@@ -136,13 +127,11 @@ public class Aspects {
         // look up from the targetInstance loader is enough in that case
         AspectDefinition aspectDef = lookupAspectDefinition(targetInstance.getClass().getClassLoader(), qName);
         DeploymentModel deployModel = aspectDef.getDeploymentModel();
-        String[] qNameAndAspectClassName = getAspectQNameAndAspectClassName(
-                targetInstance.getClass().getClassLoader(), qName);
-        
+
         if (DeploymentModel.PER_INSTANCE.equals(deployModel)
                     || DeploymentModel.PER_THIS.equals(deployModel)
                     || DeploymentModel.PER_TARGET.equals(deployModel)) {
-            return aspect$Of(qNameAndAspectClassName[0], qNameAndAspectClassName[1], targetInstance);
+            return aspect$Of(aspectDef.getQualifiedName(), aspectDef.getClassName(), targetInstance);
         } else {
             throw new NoAspectBoundException("Cannot retrieve instance level aspect with "
                     + "deployment-scope "
@@ -160,31 +149,22 @@ public class Aspects {
      * @return
      */
     public static boolean hasAspect(final String qName, final Object targetInstance) {
-        String[] qNameAndAspectClassName = getAspectQNameAndAspectClassName(targetInstance.getClass().getClassLoader(), qName);
         try {
-            Class factory = ContextClassLoader.forName(
-                    targetInstance.getClass().getClassLoader(),
-                    AspectFactoryManager.getAspectFactoryClassName(qNameAndAspectClassName[1], qName).replace('/', '.')
+            ClassLoader loader = targetInstance.getClass().getClassLoader();
+            AspectDefinition aspectDef = lookupAspectDefinition(loader, qName);
+            return getInvoker(aspectDef.getQualifiedName(), aspectDef.getClassName(), loader).invokeHasAspect(
+                    targetInstance
             );
-            Method m = factory.getMethod("hasAspect", new Class[]{Object.class});
-            Boolean b = (Boolean) m.invoke(null, new Object[]{targetInstance});
-            return b.booleanValue();
         } catch (Throwable t) {
             return false;
         }
     }
 
     //---------- weaver exposed
-    // TODO can we cache all those ? what would be the key ?
 
     public static Object aspect$Of(String qName, String aspectClassName, ClassLoader loader) {
         try {
-            Class factory = ContextClassLoader.forName(
-                    loader,
-                    AspectFactoryManager.getAspectFactoryClassName(aspectClassName, qName).replace('/', '.')
-            );
-            Method m = factory.getMethod("aspectOf", new Class[0]);
-            return m.invoke(null, new Object[0]);
+            return getInvoker(qName, aspectClassName, loader).invokeAspectOf();
         } catch (NoAspectBoundException nabe) {
             throw nabe;
         } catch (Throwable t) {
@@ -194,12 +174,7 @@ public class Aspects {
 
     public static Object aspect$Of(String qName, String aspectClassName, final Class perClass) {
         try {
-            Class factory = ContextClassLoader.forName(
-                    perClass.getClassLoader(),
-                    AspectFactoryManager.getAspectFactoryClassName(aspectClassName, qName).replace('/', '.')
-            );
-            Method m = factory.getMethod("aspectOf", new Class[]{Class.class});
-            return m.invoke(null, new Object[]{perClass});
+            return getInvoker(qName, aspectClassName, perClass.getClassLoader()).invokeAspectOf(perClass);
         } catch (NoAspectBoundException nabe) {
             throw nabe;
         } catch (Throwable t) {
@@ -210,12 +185,7 @@ public class Aspects {
     public static Object aspect$Of(String qName, String aspectClassName, final Object perInstance) {
         try {
             ClassLoader loader = perInstance.getClass().getClassLoader();
-            Class containerClass = ContextClassLoader.forName(
-                    loader,
-                    AspectFactoryManager.getAspectFactoryClassName(aspectClassName, qName).replace('/', '.')
-            );
-            Method m = containerClass.getMethod("aspectOf", new Class[]{Object.class});
-            return m.invoke(null, new Object[]{perInstance});
+            return getInvoker(qName, aspectClassName, loader).invokeAspectOf(perInstance);
         } catch (NoAspectBoundException nabe) {
             throw nabe;
         } catch (Throwable t) {
@@ -224,15 +194,67 @@ public class Aspects {
     }
 
     //---------- helpers
+    /**
+     * Returns the invoker of the aspect factory for the given aspect, visible from the given loader.
+     *
+     * @param qName
+     * @param aspectClassName
+     * @param loader
+     * @return the factory invoker
+     * @throws Exception if the factory can not be loaded
+     */
+    private static AspectFactoryInvoker getInvoker(final String qName,
+                                                   final String aspectClassName,
+                                                   final ClassLoader loader) throws Exception {
+        LookupCache cache = getLookupCache(loader);
+        FactoryReference reference = (FactoryReference) cache.m_factories.get(qName);
+        if (reference != null && reference.m_aspectClassName.equals(aspectClassName)) {
+            AspectFactoryInvoker invoker = (AspectFactoryInvoker) reference.get();
+            if (invoker != null) {
+                return invoker;
+            }
+        }
+        Class factory = ContextClassLoader.forName(
+                loader,
+                AspectFactoryManager.getAspectFactoryClassName(aspectClassName, qName).replace('/', '.')
+        );
+        AspectFactoryInvoker invoker = (AspectFactoryInvoker) factory.getField(
+                TransformationConstants.FACTORY_INVOKER_FIELD_NAME
+        ).get(null);
+        cache.m_factories.put(qName, new FactoryReference(invoker, aspectClassName));
+        return invoker;
+    }
+
     /**
      * Lookup the aspect definition with the given qName, visible from the given loader.
      * If qName is a class name only, the fallback will ensure only one aspect use is found.
+     * <p/>
+     * The definition found is cached until the system definitions change.
      *
      * @param visibleFrom
      * @param qName
      * @return
      */
     private static AspectDefinition lookupAspectDefinition(final ClassLoader visibleFrom, final String qName) {
+        LookupCache cache = getLookupCache(visibleFrom);
+        final int version = SystemDefinitionContainer.getDefinitionVersion();
+        DefinitionEntry entry = (DefinitionEntry) cache.m_definitions.get(qName);
+        if (entry != null && entry.m_version == version) {
+            return entry.m_aspectDefinition;
+        }
+        AspectDefinition aspectDefinition = doLookupAspectDefinition(visibleFrom, qName);
+        cache.m_definitions.put(qName, new DefinitionEntry(aspectDefinition, version));
+        return aspectDefinition;
+    }
+
+    /**
+     * Lookup the aspect definition with the given qName in the system definitions visible from the given loader.
+     *
+     * @param visibleFrom
+     * @param qName
+     * @return
+     */
+    private static AspectDefinition doLookupAspectDefinition(final ClassLoader visibleFrom, final String qName) {
         AspectDefinition aspectDefinition = null;
 
         Set definitions = SystemDefinitionContainer.getDefinitionsFor(visibleFrom);
@@ -278,10 +300,58 @@ public class Aspects {
         return aspectDefinition;
     }
 
+    /**
+     * Returns the lookup cache for the given class loader.
+     *
+     * @param loader
+     * @return the cache
+     */
+    private static LookupCache getLookupCache(final ClassLoader loader) {
+        LookupCache cache = (LookupCache) s_lookupCaches.get(loader);
+        if (cache == null) {
+            cache = (LookupCache) s_lookupCaches.putIfAbsent(loader, new LookupCache());
+        }
+        return cache;
+    }
+
     /**
      * Class is non-instantiable.
      */
     private Aspects() {
     }
 
+    /**
+     * The aspect factories and definitions looked up from a class loader, mapped to the aspect qName.
+     */
+    private static class LookupCache {
+        final ConcurrentReferenceMap m_factories = new ConcurrentReferenceMap(ConcurrentReferenceMap.STRONG);
+        final ConcurrentReferenceMap m_definitions = new ConcurrentReferenceMap(ConcurrentReferenceMap.STRONG);
+    }
+
+    /**
+     * Weak reference to a factory invoker, so that the class loader of the factory can be garbage collected. The
+     * invoker is held by the factory class itself.
+     */
+    private static class FactoryReference extends WeakReference {
+        final String m_aspectClassName;
+
+        FactoryReference(final AspectFactoryInvoker invoker, final String aspectClassName) {
+            super(invoker);
+            m_aspectClassName = aspectClassName;
+        }
+    }
+
+    /**
+     * An aspect definition with the definition version it has been looked up at.
+     */
+    private static class DefinitionEntry {
+        final AspectDefinition m_aspectDefinition;
+        final int m_version;
+
+        DefinitionEntry(final AspectDefinition aspectDefinition, final int version) {
+            m_aspectDefinition = aspectDefinition;
+            m_version = version;
+        }
+    }
+
 }
@@ -16,6 +16,8 @@ import org.codehaus.aspectwerkz.definition.SystemDefinition;
 import org.codehaus.aspectwerkz.definition.SystemDefinitionContainer;
 import org.codehaus.aspectwerkz.definition.MixinDefinition;
 import org.codehaus.aspectwerkz.exception.DefinitionException;
+import org.codehaus.aspectwerkz.util.ClassLoaderMap;
+import org.codehaus.aspectwerkz.util.ConcurrentReferenceMap;
 import org.codehaus.aspectwerkz.DeploymentModel;
 
 import java.util.*;
@@ -36,9 +38,14 @@ public class Mixins {
     public static final String DEFAULT_MIXIN_FACTORY = DefaultMixinFactory.class.getName();
 
     /**
-     * Map with all the mixin factories mapped to the mixin class
+     * Map with all the mixin factories mapped to the mixin class name, per mixin class loader
      */
-    private static final Map MIXIN_FACTORIES = new WeakHashMap();
+    private static final ClassLoaderMap MIXIN_FACTORIES = new ClassLoaderMap();
+
+    /**
+     * Map with the mixin classes mapped to their name, per class loader they are loaded from
+     */
+    private static final ClassLoaderMap MIXIN_CLASSES = new ClassLoaderMap();
 
     /**
      * Returns the mixin factory for the mixin with the given name.
@@ -48,17 +55,19 @@ public class Mixins {
      * @return the factory, put in cache based on mixin class as a key
      */
     public static MixinFactory getFactory(final Class mixinClass, final ClassLoader mixinCalledFromLoader) {
-        synchronized (MIXIN_FACTORIES) {
-            MixinFactory factory = (MixinFactory) MIXIN_FACTORIES.get(mixinClass);
-            if (factory == null) {
-                factory = createMixinFactory(mixinClass, mixinCalledFromLoader);
-                //FIXME by using a lookup by uuid/aspectNickName
-                // right now broken since we have 1 container per mixin CLASS while the definition
-                // does allow for some mix (several mixin, several container, same mixin class)
-                MIXIN_FACTORIES.put(mixinClass, factory);
-            }
-            return factory;
+        final ConcurrentReferenceMap factories = getMap(
+                MIXIN_FACTORIES, mixinClass.getClassLoader(), ConcurrentReferenceMap.STRONG
+        );
+        MixinFactory factory = (MixinFactory) factories.get(mixinClass.getName());
+        if (factory == null) {
+            //FIXME by using a lookup by uuid/aspectNickName
+            // right now broken since we have 1 container per mixin CLASS while the definition
+            // does allow for some mix (several mixin, several container, same mixin class)
+            factory = (MixinFactory) factories.putIfAbsent(
+                    mixinClass.getName(), createMixinFactory(mixinClass, mixinCalledFromLoader)
+            );
         }
+        return factory;
     }
 
     /**
@@ -69,12 +78,7 @@ public class Mixins {
      * @return the per jvm mixin instance
      */
     public static Object mixinOf(final String name, ClassLoader loader) {
-        try {
-            Class mixinClass = Class.forName(name, false, loader);
-            return mixinOf(mixinClass);
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException("could not load mixin " + name + " from " + loader);
-        }
+        return mixinOf(forName(name, loader));
     }
 
     /**
@@ -96,12 +100,7 @@ public class Mixins {
      * @return the per class mixin instance
      */
     public static Object mixinOf(final String name, final Class targetClass) {
-        try {
-            Class mixinClass = Class.forName(name, false, targetClass.getClassLoader());
-            return mixinOf(mixinClass, targetClass);
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException("could not load mixin " + name + " from " + targetClass.getClassLoader());
-        }
+        return mixinOf(forName(name, targetClass.getClassLoader()), targetClass);
     }
 
     /**
@@ -124,14 +123,7 @@ public class Mixins {
      * @return the per instance mixin instance, fallback on perClass if targetInstance is null
      */
     public static Object mixinOf(final String name, final Object targetInstance) {
-        try {
-            Class mixinClass = Class.forName(name, false, targetInstance.getClass().getClassLoader());
-            return mixinOf(mixinClass, targetInstance);
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(
-                    "could not load mixin " + name + " from " + targetInstance.getClass().getClassLoader()
-            );
-        }
+        return mixinOf(forName(name, targetInstance.getClass().getClassLoader()), targetInstance);
     }
 
     /**
@@ -147,6 +139,46 @@ public class Mixins {
         return getFactory(mixinClass, targetInstance.getClass().getClassLoader()).mixinOf(targetInstance);
     }
 
+    /**
+     * Loads a mixin class, or retrieves it from cache.
+     *
+     * @param name   the name of the mixin
+     * @param loader the class loader to load the mixin from
+     * @return the mixin class
+     */
+    private static Class forName(final String name, final ClassLoader loader) {
+        // the classes are weakly referenced since they can be defined by the class loader they are mapped to
+        final ConcurrentReferenceMap mixinClasses = getMap(MIXIN_CLASSES, loader, ConcurrentReferenceMap.WEAK);
+        Class mixinClass = (Class) mixinClasses.get(name);
+        if (mixinClass == null) {
+            try {
+                mixinClass = Class.forName(name, false, loader);
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException("could not load mixin " + name + " from " + loader);
+            }
+            mixinClasses.put(name, mixinClass);
+        }
+        return mixinClass;
+    }
+
+    /**
+     * Returns the map of a class loader, creating it if needed.
+     *
+     * @param maps          the maps per class loader
+     * @param loader        the class loader
+     * @param referenceType the reference type of the values of the map
+     * @return the map
+     */
+    private static ConcurrentReferenceMap getMap(final ClassLoaderMap maps,
+                                                 final ClassLoader loader,
+                                                 final int referenceType) {
+        ConcurrentReferenceMap map = (ConcurrentReferenceMap) maps.get(loader);
+        if (map == null) {
+            map = (ConcurrentReferenceMap) maps.putIfAbsent(loader, new ConcurrentReferenceMap(referenceType));
+        }
+        return map;
+    }
+
     /**
      * Creates a new mixin factory.
      *
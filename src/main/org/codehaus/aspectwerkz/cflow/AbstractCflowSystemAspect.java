@@ -7,8 +7,6 @@
  **************************************************************************************/
 package org.codehaus.aspectwerkz.cflow;
 
-import java.util.Stack;
-
 /**
  * An abstraction for the JIT gen cflow aspects.
  * <p/>
@@ -19,16 +17,20 @@ import java.util.Stack;
  * See the sample nested class.
  * <p/>
  * Note: the Cflow implements a real aspectOf singleton scheme and is not visible to Aspects.aspectOf
+ * <p/>
+ * The cflow state is a per thread counter of the times the cflow has been entered and not yet exited, so that
+ * entering, exiting and checking the cflow does not lock nor allocate once the thread counter exists.
  *
  * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
  */
 public abstract class AbstractCflowSystemAspect {
 
-    //TODO do we really need a stack ? I think that an int increment wrapped in a ThreadLocal
-    // will be ok. The stack might only be needed for perCflow deployments
-    public ThreadLocal m_cflowStackLocal = new ThreadLocal() {
+    /**
+     * The per thread cflow depth, read directly by the generated isInCflow() method.
+     */
+    public final ThreadLocal m_cflowDepthLocal = new ThreadLocal() {
         protected Object initialValue() {
-            return new Stack();
+            return new Depth();
         }
     };
 
@@ -36,21 +38,35 @@ public abstract class AbstractCflowSystemAspect {
      * before advice when entering this cflow
      */
     public void enter() {
-        ((Stack)m_cflowStackLocal.get()).push(Boolean.TRUE);
+        ((Depth) m_cflowDepthLocal.get()).m_value++;
     }
 
     /**
      * after finally advice when exiting this cflow
+     *
+     * @throws IllegalStateException if the cflow is exited more times than it was entered in this thread, which
+     *                               denotes a weaving bug
      */
     public void exit() {
-        ((Stack)m_cflowStackLocal.get()).pop();
+        Depth depth = (Depth) m_cflowDepthLocal.get();
+        if (depth.m_value <= 0) {
+            throw new IllegalStateException("cflow exited without being entered in thread " + Thread.currentThread());
+        }
+        depth.m_value--;
     }
 
     /**
      * @return true if in the cflow
      */
     public boolean inCflow() {
-        return ((Stack)m_cflowStackLocal.get()).size() > 0;
+        return ((Depth) m_cflowDepthLocal.get()).m_value > 0;
+    }
+
+    /**
+     * The cflow depth of a thread. Only accessed by its thread.
+     */
+    public static final class Depth {
+        public int m_value = 0;
     }
 
     /**
@@ -75,7 +91,7 @@ public abstract class AbstractCflowSystemAspect {
             if (INSTANCE == null) {
                 return false;
             }
-            return INSTANCE.inCflow();
+            return ((Depth) INSTANCE.m_cflowDepthLocal.get()).m_value > 0;
         }
 
         /**
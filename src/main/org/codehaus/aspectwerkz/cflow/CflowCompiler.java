@@ -25,6 +25,9 @@ public class CflowCompiler implements Opcodes, TransformationConstants {
     public final static String JIT_CFLOW_CLASS = "org/codehaus/aspectwerkz/cflow/Cflow_";
     private final static String ABSTRACT_CFLOW_CLASS = "org/codehaus/aspectwerkz/cflow/AbstractCflowSystemAspect";
     private final static String INSTANCE_CFLOW_FIELD_NAME = "INSTANCE";
+    private final static String CFLOW_DEPTH_CLASS = "org/codehaus/aspectwerkz/cflow/AbstractCflowSystemAspect$Depth";
+    private final static String CFLOW_DEPTH_LOCAL_FIELD_NAME = "m_cflowDepthLocal";
+    private final static String CFLOW_DEPTH_FIELD_NAME = "m_value";
     public static final String IN_CFLOW_METOD_NAME = "inCflow";
     public static final String IN_CFLOW_METOD_SIGNATURE = "()Z";
     public static final String CFLOW_ASPECTOF_METHOD_NAME = "aspectOf";
@@ -100,7 +103,7 @@ public class CflowCompiler implements Opcodes, TransformationConstants {
         ctor.visitInsn(RETURN);
         ctor.visitMaxs(0, 0);
 
-        // static isInCflow() delegators
+        // static isInCflow(), reading the thread cflow depth directly
         MethodVisitor isInCflow = m_cw.visitMethod(
                 ACC_PUBLIC + ACC_STATIC,
                 IS_IN_CFLOW_METOD_NAME,
@@ -112,7 +115,12 @@ public class CflowCompiler implements Opcodes, TransformationConstants {
         Label isNull = new Label();
         isInCflow.visitJumpInsn(IFNULL, isNull);
         isInCflow.visitFieldInsn(GETSTATIC, m_className, INSTANCE_CFLOW_FIELD_NAME, m_classSignature);
-        isInCflow.visitMethodInsn(INVOKEVIRTUAL, ABSTRACT_CFLOW_CLASS, IN_CFLOW_METOD_NAME, IN_CFLOW_METOD_SIGNATURE);
+        isInCflow.visitFieldInsn(GETFIELD, ABSTRACT_CFLOW_CLASS, CFLOW_DEPTH_LOCAL_FIELD_NAME, THREAD_LOCAL_CLASS_SIGNATURE);
+        isInCflow.visitMethodInsn(INVOKEVIRTUAL, THREAD_LOCAL_CLASS_NAME, GET_METHOD_NAME, NO_PARAM_RETURN_OBJECT_SIGNATURE);
+        isInCflow.visitTypeInsn(CHECKCAST, CFLOW_DEPTH_CLASS);
+        isInCflow.visitFieldInsn(GETFIELD, CFLOW_DEPTH_CLASS, CFLOW_DEPTH_FIELD_NAME, "I");
+        isInCflow.visitJumpInsn(IFLE, isNull);
+        isInCflow.visitInsn(ICONST_1);
         isInCflow.visitInsn(IRETURN);
         isInCflow.visitLabel(isNull);
         isInCflow.visitInsn(ICONST_0);
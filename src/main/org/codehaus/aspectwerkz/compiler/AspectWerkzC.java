@@ -19,6 +19,12 @@ import org.codehaus.aspectwerkz.aspect.AdviceInfo;
 import org.codehaus.aspectwerkz.cflow.CflowBinding;
 import org.codehaus.aspectwerkz.cflow.CflowCompiler;
 
+import EDU.oswego.cs.dl.util.concurrent.Callable;
+import EDU.oswego.cs.dl.util.concurrent.FutureResult;
+import EDU.oswego.cs.dl.util.concurrent.LinkedQueue;
+import EDU.oswego.cs.dl.util.concurrent.PooledExecutor;
+import EDU.oswego.cs.dl.util.concurrent.ThreadFactory;
+
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -26,6 +32,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.text.SimpleDateFormat;
@@ -35,6 +42,7 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.jar.Attributes;
@@ -50,13 +58,14 @@ import java.util.zip.ZipOutputStream;
  * <p/>
  * <pre>
  *     java [-Daspectwerkz.classloader.preprocessor={ClassPreProcessorImpl}] -cp [...]
- *     org.codehaus.aspectwerkz.compiler.AspectWerkzC [-verbose] [-haltOnError] [-verify] [-genjp] [-details] [-cp {additional cp i}]*  {target
+ *     org.codehaus.aspectwerkz.compiler.AspectWerkzC [-verbose] [-haltOnError] [-verify] [-genjp] [-details] [-parallel {n}] [-cp {additional cp i}]*  {target
  *     1} .. {target n}
  *       {ClassPreProcessorImpl} : full qualified name of the ClassPreProcessor implementation (must be in classpath)
  *          defaults to org.codehaus.aspectwerkz.transform.AspectWerkzPreProcessor
  *       {additional cp i} : additionnal classpath needed at compile time (eg: myaspect.jar)
  *          use as many -cp options as needed
  *          supports java classpath syntax for classpath separator: ; on windows, : on others
+ *       {n} : number of worker threads weaving the classes and compiling their join points, defaults to 1
  *       {target i} : exploded dir, jar, zip files to compile
  *       Ant 1.5 must be in the classpath
  * </pre>
@@ -73,6 +82,14 @@ import java.util.zip.ZipOutputStream;
  * <i>-verify </i> was set, all compiled class are verified during the compilation and an error is generated if the
  * compiled class bytecode is corrupted. The error is then handled according to the <i>-haltOnError </i> option. <br/>
  * <p/>
+ * <h2>Parallel compilation</h2>
+ * With <i>-parallel {n}</i>, the classes are woven and their join points compiled by n worker threads. Each
+ * target is still written by the calling thread only, in the order of the sequential compilation: jar entries are
+ * written in their original order and the class files of a directory are written once all of them are woven. <br/>
+ * The class files of a directory are written once all of them are woven even without <i>-parallel</i>, so that
+ * each class is woven against the original bytecode of the other classes of the directory, as at load time, and
+ * never against the woven bytecode of a class compiled before it. The compiled targets are thus the same whatever
+ * the number of workers. <p/>
  * <h2>Manifest.mf update</h2>
  * The Manifest.mf if present is updated wit the following:
  * <ul>
@@ -92,6 +109,7 @@ public class AspectWerkzC {
     private static final String COMMAND_LINE_OPTION_HALT = "-haltOnError";
     private static final String COMMAND_LINE_OPTION_VERIFY = "-verify";
     private static final String COMMAND_LINE_OPTION_CLASSPATH = "-cp";
+    private static final String COMMAND_LINE_OPTION_PARALLEL = "-parallel";
     private static final String COMMAND_LINE_OPTION_TARGETS = "compile.targets";
 
     /**
@@ -118,6 +136,11 @@ public class AspectWerkzC {
 
     private final static String BACKUP_DIR = "_aspectwerkzc";
 
+    /**
+     * number of woven jar entries per worker thread that can wait to be written in the jar
+     */
+    private final static int PENDING_ENTRIES_PER_WORKER = 4;
+
     private boolean verify = false;
 
     private boolean genJp = false;
@@ -126,6 +149,16 @@ public class AspectWerkzC {
 
     private String backupDir = BACKUP_DIR;
 
+    /**
+     * number of worker threads, 1 means the compilation occurs in the calling thread
+     */
+    private int parallel = 1;
+
+    /**
+     * worker threads weaving the classes when compiling in parallel
+     */
+    private PooledExecutor workers = null;
+
     /**
      * class loader in which the effective compilation occurs, child of system classloader
      */
@@ -199,6 +232,10 @@ public class AspectWerkzC {
         this.backupDir = backup;
     }
 
+    public void setParallel(int parallel) {
+        this.parallel = Math.max(parallel, 1);
+    }
+
     public Utility getUtility() {
         return utility;
     }
@@ -250,6 +287,7 @@ public class AspectWerkzC {
      * Delete backup dir at the end of all compilation
      */
     public void postCompile(String message) {
+        stopWorkers();
         restoreBackup();
         utility.log(" [backup] removing backup");
         utility.deleteDir(new File(this.backupDir));
@@ -275,33 +313,90 @@ public class AspectWerkzC {
      * </ul>
      */
     public void doCompile(File sourceFile, String prefixPackage) throws CompileException {
+        List pendingClasses = new ArrayList();
+        CompileException failure = null;
+        try {
+            doCompile(sourceFile, prefixPackage, pendingClasses);
+        } catch (CompileException e) {
+            failure = e;
+        }
+
+        // classes are written once they are all woven, in the traversal order, so that no class is woven against
+        // the woven bytecode of another one, and no worker reads a class file while it is being overridden
+        for (Iterator i = pendingClasses.iterator(); i.hasNext();) {
+            try {
+                CompiledUnit unit = (CompiledUnit) getResult((FutureResult) i.next());
+                if (failure == null) {
+                    writeClass(unit);
+                }
+            } catch (CompileException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void doCompile(File sourceFile, String prefixPackage, List pendingClasses) throws CompileException {
         if (sourceFile.isDirectory()) {
             File[] classes = sourceFile.listFiles();
             for (int i = 0; i < classes.length; i++) {
                 if (classes[i].isDirectory() && !(this.backupDir.equals(classes[i].getName()))) {
                     String packaging = (prefixPackage != null) ? (prefixPackage + "." + classes[i]
                             .getName()) : classes[i].getName();
-                    doCompile(classes[i], packaging);
+                    doCompile(classes[i], packaging, pendingClasses);
                 } else if (classes[i].getName().toLowerCase().endsWith(".class")) {
-                    compileClass(classes[i], prefixPackage);
+                    compileClass(classes[i], prefixPackage, pendingClasses);
                 } else if (isJarFile(classes[i])) {
                     //@todo: jar encountered in a dir - use case ??
                     compileJar(classes[i]);
                 }
             }
         } else if (sourceFile.getName().toLowerCase().endsWith(".class")) {
-            compileClass(sourceFile, null);
+            compileClass(sourceFile, null, pendingClasses);
         } else if (isJarFile(sourceFile)) {
             compileJar(sourceFile);
         }
     }
 
+    /**
+     * Weaves the .class file in the calling thread, or hands it to the worker threads when compiling in parallel. The
+     * woven class is written by the caller once the whole directory is woven, in both cases.
+     */
+    private void compileClass(final File file, final String packaging, List pendingClasses) throws CompileException {
+        if (workers == null) {
+            FutureResult result = new FutureResult();
+            result.set(weaveClass(file, packaging));
+            pendingClasses.add(result);
+        } else {
+            pendingClasses.add(
+                    submit(
+                            new Callable() {
+                                public Object call() throws Exception {
+                                    return weaveClass(file, packaging);
+                                }
+                            }
+                    )
+            );
+        }
+    }
+
     /**
      * Compiles .class file using fileName as className and given packaging as package name
      */
     public void compileClass(File file, String packaging) throws CompileException {
+        writeClass(weaveClass(file, packaging));
+    }
+
+    /**
+     * Weaves the .class file and compiles its join points if needed, without writing anything to disk. <p/>Can be
+     * executed concurrently by the compiler worker threads.
+     */
+    private CompiledUnit weaveClass(File file, String packaging) throws CompileException {
         InputStream in = null;
-        FileOutputStream fos = null;
         try {
             utility.log(" [compile] " + file.getCanonicalPath());
 
@@ -330,11 +425,8 @@ public class AspectWerkzC {
             } catch (Throwable t) {
                 throw new CompileException("weaver failed for class: " + className, t);
             }
-
-            // override file
-            fos = new FileOutputStream(file);
-            fos.write(out.bytecode);
-            fos.close();
+            CompiledUnit unit = new CompiledUnit(className);
+            unit.add(file, out.bytecode);
 
             // if AW and genjp
             if (out.emittedJoinPoints != null && genJp) {
@@ -347,10 +439,8 @@ public class AspectWerkzC {
                     }
                     File jpFile = new File(file.getParent(), jpClassNoPackage+".class");
                     utility.log(" [genjp] " + jpFile.getCanonicalPath());
-                    FileOutputStream jpFos = new FileOutputStream(jpFile);
                     JoinPointManager.CompiledJoinPoint compiledJp = compileJoinPoint(emittedJoinPoint, compilationLoader);
-                    jpFos.write(compiledJp.bytecode);
-                    jpFos.close();
+                    unit.add(jpFile, compiledJp.bytecode);
 
                     // handle cflow if any
                     CflowCompiler.CompiledCflowAspect[] compiledCflowAspects = compileCflows(compiledJp);
@@ -359,15 +449,41 @@ public class AspectWerkzC {
                         for (int j = 0; j < compiledCflowAspects.length; j++) {
                             CflowCompiler.CompiledCflowAspect compiledCflowAspect = compiledCflowAspects[j];
                             File cflowFile = new File(baseDirAbsolutePath + File.separatorChar + compiledCflowAspect.className.replace('/', File.separatorChar) + ".class");
-                            (new File(cflowFile.getParent())).mkdirs();
                             utility.log(" [genjp] (cflow) " + cflowFile.getCanonicalPath());
-                            FileOutputStream cflowFos = new FileOutputStream(cflowFile);
-                            cflowFos.write(compiledCflowAspect.bytecode);
-                            cflowFos.close();
+                            unit.add(cflowFile, compiledCflowAspect.bytecode);
                         }
                     }
                 }
             }
+            return unit;
+        } catch (IOException e) {
+            throw new CompileException("compile " + file.getAbsolutePath() + " failed", e);
+        } finally {
+            try {
+                in.close();
+            } catch (Throwable e) {
+                ;
+            }
+        }
+    }
+
+    /**
+     * Overrides the .class file with the woven bytecode, writes the generated classes next to it and verifies the
+     * modified class if needed.
+     */
+    private void writeClass(CompiledUnit unit) throws CompileException {
+        File file = (File) unit.targets.get(0);
+        FileOutputStream fos = null;
+        try {
+            for (int i = 0; i < unit.targets.size(); i++) {
+                File target = (File) unit.targets.get(i);
+                if (i > 0) {
+                    (new File(target.getParent())).mkdirs();
+                }
+                fos = new FileOutputStream(target);
+                fos.write((byte[]) unit.bytecodes.get(i));
+                fos.close();
+            }
 
             // verify modified class
             if (verify) {
@@ -376,21 +492,16 @@ public class AspectWerkzC {
                         ClassLoader.getSystemClassLoader()
                 );
                 try {
-                    utility.log(" [verify] " + className);
-                    Class.forName(className, false, verifier);
+                    utility.log(" [verify] " + unit.className);
+                    Class.forName(unit.className, false, verifier);
                 } catch (Throwable t) {
-                    utility.log(" [verify] corrupted class: " + className);
-                    throw new CompileException("corrupted class: " + className, t);
+                    utility.log(" [verify] corrupted class: " + unit.className);
+                    throw new CompileException("corrupted class: " + unit.className, t);
                 }
             }
         } catch (IOException e) {
             throw new CompileException("compile " + file.getAbsolutePath() + " failed", e);
         } finally {
-            try {
-                in.close();
-            } catch (Throwable e) {
-                ;
-            }
             try {
                 fos.close();
             } catch (Throwable e) {
@@ -401,9 +512,11 @@ public class AspectWerkzC {
 
     /**
      * Compile all .class encountered in the .jar/.zip file. <p/>The target.jar is compiled in the
-     * target.jar.aspectwerkzc and the target.jar.aspectwerkzc then overrides target.jar on success.
+     * target.jar.aspectwerkzc and the target.jar.aspectwerkzc then overrides target.jar on success. <p/>When
+     * compiling in parallel, the entries are woven by the worker threads while the calling thread writes them in
+     * the original jar order, so that the resulting jar does not depend on the number of workers.
      */
-    public void compileJar(File file) throws CompileException {
+    public void compileJar(final File file) throws CompileException {
         utility.log(" [compilejar] " + file.getAbsolutePath());
 
         // create an empty jar target.jar.aspectwerkzc
@@ -416,8 +529,9 @@ public class AspectWerkzC {
         try {
             zip = new ZipFile(file);
             zos = new ZipOutputStream(new FileOutputStream(workingFile));
+            LinkedList pendingEntries = new LinkedList();
             for (Enumeration e = zip.entries(); e.hasMoreElements();) {
-                ZipEntry ze = (ZipEntry) e.nextElement();
+                final ZipEntry ze = (ZipEntry) e.nextElement();
 
                 // dump bytes read in byte[]
                 InputStream in = zip.getInputStream(ze);
@@ -431,85 +545,28 @@ public class AspectWerkzC {
                     bos.write(buffer, 0, length);
                 }
                 in.close();
+                final byte[] bytes = bos.toByteArray();
 
-                // transform only .class file
-                AspectWerkzPreProcessor.Output out = null;
-                byte[] transformed = null;
-                if (ze.getName().toLowerCase().endsWith(".class")) {
-                    utility.log(" [compilejar] compile " + file.getName() + ":" + ze.getName());
-                    String className = ze.getName().substring(0, ze.getName().length() - 6);
-                    try {
-                        out = preProcess(preprocessor, className, bos.toByteArray(), compilationLoader);
-                        transformed = out.bytecode;
-                    } catch (Throwable t) {
-                        throw new CompileException("weaver failed for class: " + className, t);
-                    }
+                if (workers == null) {
+                    writeJarEntry(zos, ze, compileJarEntry(file, ze, bytes));
                 } else {
-                    out = null;
-                    transformed = bos.toByteArray();
-                }
-
-                // customize Manifest.mf
-                if (ze.getName().toLowerCase().equals("meta-inf/manifest.mf")) {
-                    try {
-                        Manifest mf = new Manifest(new ByteArrayInputStream(transformed));
-                        Attributes at = mf.getMainAttributes();
-                        at.putValue(MF_CUSTOM_DATE, DF.format(new Date()));
-                        at.putValue(MF_CUSTOM_PP, preprocessor.getClass().getName());
-                        at.putValue(MF_CUSTOM_COMMENT, MF_CUSTOM_COMMENT_VALUE);
-
-                        // re read the updated manifest
-                        bos.reset();
-                        mf.write(bos);
-                        transformed = bos.toByteArray();
-                    } catch (Exception emf) {
-                        emf.printStackTrace();
+                    // bounds the number of woven entries held in memory
+                    while (pendingEntries.size() >= parallel * PENDING_ENTRIES_PER_WORKER) {
+                        writePendingJarEntry(zos, (Object[]) pendingEntries.removeFirst());
                     }
-                }
-
-                // update target.jar.aspectwerkzc working file
-                ZipEntry transformedZe = new ZipEntry(ze.getName());
-                transformedZe.setSize(transformed.length);
-                CRC32 crc = new CRC32();
-                crc.update(transformed);
-                transformedZe.setCrc(crc.getValue());
-                transformedZe.setMethod(ze.getMethod());
-                zos.putNextEntry(transformedZe);
-                zos.write(transformed, 0, transformed.length);
-
-                // if AW and genjp
-                if (genJp && out != null && out.emittedJoinPoints!=null) {
-                    for (int i = 0; i < out.emittedJoinPoints.length; i++) {
-                        EmittedJoinPoint emittedJoinPoint = out.emittedJoinPoints[i];
-                        JoinPointManager.CompiledJoinPoint compiledJp = compileJoinPoint(emittedJoinPoint, compilationLoader);
-                        utility.log(" [compilejar] (genjp) " + file.getName() + ":" + emittedJoinPoint.getJoinPointClassName());
-                        ZipEntry jpZe = new ZipEntry(emittedJoinPoint.getJoinPointClassName()+".class");
-                        jpZe.setSize(compiledJp.bytecode.length);
-                        CRC32 jpCrc = new CRC32();
-                        jpCrc.update(compiledJp.bytecode);
-                        jpZe.setCrc(jpCrc.getValue());
-                        jpZe.setMethod(ze.getMethod());
-                        zos.putNextEntry(jpZe);
-                        zos.write(compiledJp.bytecode, 0, compiledJp.bytecode.length);
-
-                        CflowCompiler.CompiledCflowAspect[] compiledCflowAspects = compileCflows(compiledJp);
-                        if (compiledCflowAspects.length > 0) {
-                            for (int j = 0; j < compiledCflowAspects.length; j++) {
-                                CflowCompiler.CompiledCflowAspect compiledCflowAspect = compiledCflowAspects[j];
-                                utility.log(" [compilejar] (genjp) (cflow) " + file.getName() + ":" + compiledCflowAspect.className);
-                                ZipEntry cflowZe = new ZipEntry(compiledCflowAspect.className+".class");
-                                cflowZe.setSize(compiledCflowAspect.bytecode.length);
-                                CRC32 cflowCrc = new CRC32();
-                                cflowCrc.update(compiledCflowAspect.bytecode);
-                                cflowZe.setCrc(cflowCrc.getValue());
-                                cflowZe.setMethod(ze.getMethod());
-                                zos.putNextEntry(cflowZe);
-                                zos.write(compiledCflowAspect.bytecode, 0, compiledCflowAspect.bytecode.length);
+                    FutureResult compiledEntry = submit(
+                            new Callable() {
+                                public Object call() throws Exception {
+                                    return compileJarEntry(file, ze, bytes);
+                                }
                             }
-                        }
-                    }
+                    );
+                    pendingEntries.add(new Object[]{ze, compiledEntry});
                 }
             }
+            while (!pendingEntries.isEmpty()) {
+                writePendingJarEntry(zos, (Object[]) pendingEntries.removeFirst());
+            }
             zip.close();
             zos.close();
 
@@ -542,6 +599,101 @@ public class AspectWerkzC {
         }
     }
 
+    /**
+     * Weaves a jar entry if it is a .class and compiles its join points if needed. <p/>Can be executed concurrently
+     * by the compiler worker threads.
+     */
+    private CompiledUnit compileJarEntry(File file, ZipEntry ze, byte[] bytes) throws CompileException {
+        // transform only .class file
+        AspectWerkzPreProcessor.Output out = null;
+        byte[] transformed = null;
+        String className = null;
+        if (ze.getName().toLowerCase().endsWith(".class")) {
+            utility.log(" [compilejar] compile " + file.getName() + ":" + ze.getName());
+            className = ze.getName().substring(0, ze.getName().length() - 6);
+            try {
+                out = preProcess(preprocessor, className, bytes, compilationLoader);
+                transformed = out.bytecode;
+            } catch (Throwable t) {
+                throw new CompileException("weaver failed for class: " + className, t);
+            }
+        } else {
+            out = null;
+            transformed = bytes;
+        }
+
+        // customize Manifest.mf
+        if (ze.getName().toLowerCase().equals("meta-inf/manifest.mf")) {
+            try {
+                Manifest mf = new Manifest(new ByteArrayInputStream(transformed));
+                Attributes at = mf.getMainAttributes();
+                synchronized (DF) {
+                    at.putValue(MF_CUSTOM_DATE, DF.format(new Date()));
+                }
+                at.putValue(MF_CUSTOM_PP, preprocessor.getClass().getName());
+                at.putValue(MF_CUSTOM_COMMENT, MF_CUSTOM_COMMENT_VALUE);
+
+                // re read the updated manifest
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                mf.write(bos);
+                transformed = bos.toByteArray();
+            } catch (Exception emf) {
+                emf.printStackTrace();
+            }
+        }
+        CompiledUnit unit = new CompiledUnit(className);
+        unit.add(ze.getName(), transformed);
+
+        // if AW and genjp
+        if (genJp && out != null && out.emittedJoinPoints!=null) {
+            try {
+                for (int i = 0; i < out.emittedJoinPoints.length; i++) {
+                    EmittedJoinPoint emittedJoinPoint = out.emittedJoinPoints[i];
+                    JoinPointManager.CompiledJoinPoint compiledJp = compileJoinPoint(emittedJoinPoint, compilationLoader);
+                    utility.log(" [compilejar] (genjp) " + file.getName() + ":" + emittedJoinPoint.getJoinPointClassName());
+                    unit.add(emittedJoinPoint.getJoinPointClassName()+".class", compiledJp.bytecode);
+
+                    CflowCompiler.CompiledCflowAspect[] compiledCflowAspects = compileCflows(compiledJp);
+                    if (compiledCflowAspects.length > 0) {
+                        for (int j = 0; j < compiledCflowAspects.length; j++) {
+                            CflowCompiler.CompiledCflowAspect compiledCflowAspect = compiledCflowAspects[j];
+                            utility.log(" [compilejar] (genjp) (cflow) " + file.getName() + ":" + compiledCflowAspect.className);
+                            unit.add(compiledCflowAspect.className+".class", compiledCflowAspect.bytecode);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new CompileException("compile " + file.getAbsolutePath() + " failed", e);
+            }
+        }
+        return unit;
+    }
+
+    /**
+     * Writes the compiled jar entry and its generated classes in the target.jar.aspectwerkzc working file.
+     */
+    private static void writeJarEntry(ZipOutputStream zos, ZipEntry ze, CompiledUnit unit) throws IOException {
+        for (int i = 0; i < unit.targets.size(); i++) {
+            byte[] bytecode = (byte[]) unit.bytecodes.get(i);
+            ZipEntry transformedZe = new ZipEntry((String) unit.targets.get(i));
+            transformedZe.setSize(bytecode.length);
+            CRC32 crc = new CRC32();
+            crc.update(bytecode);
+            transformedZe.setCrc(crc.getValue());
+            transformedZe.setMethod(ze.getMethod());
+            transformedZe.setTime(ze.getTime());
+            zos.putNextEntry(transformedZe);
+            zos.write(bytecode, 0, bytecode.length);
+        }
+    }
+
+    /**
+     * Waits for a jar entry compiled by a worker thread and writes it.
+     */
+    private static void writePendingJarEntry(ZipOutputStream zos, Object[] pendingEntry) throws IOException, CompileException {
+        writeJarEntry(zos, (ZipEntry) pendingEntry[0], (CompiledUnit) getResult((FutureResult) pendingEntry[1]));
+    }
+
     /**
      * Compile given target.
      *
@@ -600,8 +752,9 @@ public class AspectWerkzC {
         System.out.println("Usage:");
         System.out
                 .println(
-                        "java -cp ... org.codehaus.aspectwerkz.compiler.AspectWerkzC [-verbose] [-haltOnError] [-verify]  <target 1> .. <target n>"
+                        "java -cp ... org.codehaus.aspectwerkz.compiler.AspectWerkzC [-verbose] [-haltOnError] [-verify] [-parallel <n>]  <target 1> .. <target n>"
                 );
+        System.out.println("  <n>        : number of worker threads, defaults to 1");
         System.out.println("  <target i> : exploded dir, jar, zip files to compile");
     }
 
@@ -627,6 +780,8 @@ public class AspectWerkzC {
                 compiler.setGenJp(Boolean.TRUE.equals(param.getValue()));
             } else if (COMMAND_LINE_OPTION_DETAILS.equals(param.getKey())) {
                 compiler.setDetails(Boolean.TRUE.equals(param.getValue()));
+            } else if (COMMAND_LINE_OPTION_PARALLEL.equals(param.getKey())) {
+                compiler.setParallel(((Integer) param.getValue()).intValue());
             }
         }
 
@@ -681,6 +836,7 @@ public class AspectWerkzC {
         }
 
         cleanBackupDir(compiler);
+        compiler.startWorkers();
 
         for (Iterator i = targets.iterator(); i.hasNext();) {
             if (!compiler.compile((File) i.next())) {
@@ -754,6 +910,16 @@ public class AspectWerkzC {
                             toFileArray(args[++i], File.pathSeparator)
                     );
                 }
+            } else if (COMMAND_LINE_OPTION_PARALLEL.equals(args[i])) {
+                if (i == (args.length - 1)) {
+                    continue; //FIXME: this is an error
+                } else {
+                    try {
+                        options.put(COMMAND_LINE_OPTION_PARALLEL, new Integer(args[++i]));
+                    } catch (NumberFormatException e) {
+                        System.err.println("Ignoring invalid worker thread count: " + args[i]);
+                    }
+                }
             } else if (args[i].startsWith(COMMAND_LINE_OPTION_DASH)) {
                 ; // nothing to be done about it
             } else {
@@ -798,6 +964,76 @@ public class AspectWerkzC {
         return file.exists() ? file : null;
     }
 
+    /**
+     * Starts the worker threads if the compilation has to occur in parallel. The workers use the compilation class
+     * loader as context class loader since the join point compilation relies on it. <p/>Must be called once the
+     * compilation path is set, the workers being stopped by {@link #postCompile(String)}.
+     */
+    public void startWorkers() {
+        if (parallel > 1) {
+            final ClassLoader loader = compilationLoader;
+            workers = new PooledExecutor(new LinkedQueue(), parallel);
+            workers.setMinimumPoolSize(parallel);
+            workers.setThreadFactory(
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable command) {
+                            Thread worker = new Thread(command, "AspectWerkzC worker");
+                            worker.setDaemon(true);
+                            worker.setContextClassLoader(loader);
+                            return worker;
+                        }
+                    }
+            );
+        }
+    }
+
+    /**
+     * Stops the worker threads if any
+     */
+    private void stopWorkers() {
+        if (workers != null) {
+            workers.shutdownAfterProcessingCurrentlyQueuedTasks();
+            workers = null;
+        }
+    }
+
+    /**
+     * Hands the given task to the worker threads
+     *
+     * @param task
+     * @return the future result of the task
+     * @throws CompileException
+     */
+    private FutureResult submit(Callable task) throws CompileException {
+        FutureResult result = new FutureResult();
+        try {
+            workers.execute(result.setter(task));
+        } catch (InterruptedException e) {
+            throw new CompileException("compilation interrupted", e);
+        }
+        return result;
+    }
+
+    /**
+     * Waits for the result of a task handed to the worker threads
+     *
+     * @param result
+     * @return the result of the task
+     * @throws CompileException if the task failed
+     */
+    private static Object getResult(FutureResult result) throws CompileException {
+        try {
+            return result.get();
+        } catch (InvocationTargetException e) {
+            if (e.getTargetException() instanceof CompileException) {
+                throw (CompileException) e.getTargetException();
+            }
+            throw new CompileException("compilation failed", e.getTargetException());
+        } catch (InterruptedException e) {
+            throw new CompileException("compilation interrupted", e);
+        }
+    }
+
     /**
      * Helper method to have the emitted joinpoint back when dealing with AspectWerkz pp
      * @param preProcessor
@@ -841,6 +1077,7 @@ public class AspectWerkzC {
                     emittedJoinPoint.getCalleeMemberModifiers(),
                     emittedJoinPoint.getJoinPointHash(),
                     emittedJoinPoint.getJoinPointClassName(),
+                    emittedJoinPoint.getJoinPointIndex(),
                     calleeClass,
                     loader
             );
@@ -901,4 +1138,31 @@ public class AspectWerkzC {
         }
         return baseDirAbsolutePath;
     }
-}
\ No newline at end of file
+
+    /**
+     * The bytecode produced for a class file or a jar entry: the woven class followed by its generated join point
+     * and cflow classes, in the order they have to be written.
+     */
+    private static class CompiledUnit {
+        /**
+         * the woven class name, null for a jar entry which is not a class
+         */
+        final String className;
+
+        /**
+         * the target File for a class file, the entry name for a jar entry
+         */
+        final List targets = new ArrayList();
+
+        final List bytecodes = new ArrayList();
+
+        CompiledUnit(String className) {
+            this.className = className;
+        }
+
+        void add(Object target, byte[] bytecode) {
+            targets.add(target);
+            bytecodes.add(bytecode);
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.codehaus.aspectwerkz.transform.inlining.AspectModelManager;
  * <li>taskverbose: [optional] flag marking the task verbose [true / false]</li>
  * <li>definition: [optional] path to aspect definition xml file (optional, can be found on the path as META-INF/aop.xml - even several)</li>
  * <li>aspectmodels: [optional] models FQN list separated by ":" (see AspectModelManager)</li>
+ * <li>parallel: [optional] number of worker threads weaving the classes, defaults to 1</li>
  * </ul>
  * <p/>
  * Use the following parameters to configure the classpath and to point to the classes to be weaved. Those can be specified
@@ -67,6 +68,7 @@ public class AspectWerkzCTask extends Task {
     private boolean m_genjp;
     private boolean m_taskVerbose = false;
     private String m_aspectModels;
+    private int m_parallel = 1;
     private File m_backupdir;
     private String m_preprocessor;
     private File m_definitionFile;
@@ -123,6 +125,14 @@ public class AspectWerkzCTask extends Task {
         m_aspectModels = aspectModels;
     }
 
+    /**
+     * parallel=..
+     * @param parallel
+     */
+    public void setParallel(int parallel) {
+        m_parallel = parallel;
+    }
+
     //-- <target .., <targetpath.. and targetdir=.. targetpathref=..
 
     public Path createTarget() {
@@ -207,6 +217,7 @@ public class AspectWerkzCTask extends Task {
             compiler.setVerbose(m_taskVerbose);
             compiler.setGenJp(m_genjp);
             compiler.setVerify(false);
+            compiler.setParallel(m_parallel);
 
             if (m_definitionFile != null) {
                 System.setProperty(AW_DEFINITION_FILE, m_definitionFile.getAbsolutePath());
@@ -234,6 +245,7 @@ public class AspectWerkzCTask extends Task {
                 System.out.println("Definition   : " + m_definitionFile);
                 System.out.println("Backupdir    : " + m_backupdir);
                 System.out.println("Preprocessor : " + m_preprocessor);
+                System.out.println("Parallel     : " + m_parallel);
             }
 
             AspectWerkzC.compile(compiler,
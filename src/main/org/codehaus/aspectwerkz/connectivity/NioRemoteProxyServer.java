@@ -0,0 +1,470 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.connectivity;
+
+import EDU.oswego.cs.dl.util.concurrent.PooledExecutor;
+import org.codehaus.aspectwerkz.exception.WrappedRuntimeException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Selector based server for the pipelined transport, speaking the {@link RemoteProtocol} frames.
+ * <p/>
+ * A single selector thread accepts the connections and does all the socket reads and writes. Each complete request
+ * frame is handed to the thread pool, and its response frame is queued on its connection once invoked. A client can
+ * thus send many requests on one connection without waiting, and gets the responses as soon as they are ready.
+ * <p/>
+ * The selector thread never waits for the thread pool nor runs a request itself: when the pool is exhausted the
+ * request is rejected with an exception response.
+ * <p/>
+ * Requires JDK 1.4, this class is only loaded when the server is started with the nio transport.
+ *
+ * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
+ */
+public class NioRemoteProxyServer implements Runnable {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final InetSocketAddress m_address;
+
+    private final int m_backlog;
+
+    private final ClassLoader m_loader;
+
+    private final Invoker m_invoker;
+
+    private final PooledExecutor m_threadPool;
+
+    private ServerSocketChannel m_serverChannel;
+
+    private Selector m_selector;
+
+    private Thread m_selectorThread;
+
+    /**
+     * The connections that have new responses to write.
+     */
+    private final LinkedList m_connectionsToWrite = new LinkedList();
+
+    private volatile boolean m_running = false;
+
+    /**
+     * Creates a new server.
+     *
+     * @param address    the address to bind to
+     * @param backlog    the listen backlog
+     * @param loader     the classloader to use
+     * @param invoker    the invoker that makes the method invocation
+     * @param threadPool the thread pool in which the requests are handled, set to abort when blocked
+     */
+    public NioRemoteProxyServer(final InetSocketAddress address,
+                                final int backlog,
+                                final ClassLoader loader,
+                                final Invoker invoker,
+                                final PooledExecutor threadPool) {
+        m_address = address;
+        m_backlog = backlog;
+        m_loader = loader;
+        m_invoker = invoker;
+        m_threadPool = threadPool;
+        m_threadPool.abortWhenBlocked();
+    }
+
+    /**
+     * Binds the server socket and starts the selector thread.
+     *
+     * @param daemon
+     * @param priority
+     */
+    public void start(final boolean daemon, final int priority) {
+        try {
+            m_selector = Selector.open();
+            m_serverChannel = ServerSocketChannel.open();
+            m_serverChannel.configureBlocking(false);
+            m_serverChannel.socket().setReuseAddress(true);
+            m_serverChannel.socket().bind(m_address, m_backlog);
+            m_serverChannel.register(m_selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new WrappedRuntimeException(e);
+        }
+        m_running = true;
+        m_selectorThread = new Thread(this);
+        m_selectorThread.setName("AspectWerkz::Selector");
+        m_selectorThread.setDaemon(daemon);
+        m_selectorThread.setPriority(priority);
+        m_selectorThread.start();
+    }
+
+    /**
+     * Stops the selector thread and closes all the connections.
+     */
+    public void stop() {
+        m_running = false;
+        m_selector.wakeup();
+        try {
+            m_selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the port the server is bound to.
+     *
+     * @return
+     */
+    public int getLocalPort() {
+        return m_serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * The selector loop.
+     */
+    public void run() {
+        try {
+            while (m_running) {
+                m_selector.select();
+                registerWrites();
+                for (Iterator it = m_selector.selectedKeys().iterator(); it.hasNext();) {
+                    final SelectionKey key = (SelectionKey) it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            final Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.write();
+                            }
+                        }
+                    } catch (IOException e) {
+                        if (key.attachment() != null) {
+                            ((Connection) key.attachment()).close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new WrappedRuntimeException(e);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Accepts a new connection.
+     *
+     * @throws IOException
+     */
+    private void accept() throws IOException {
+        final SocketChannel channel = m_serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        final Connection connection = new Connection(channel);
+        connection.m_key = channel.register(m_selector, SelectionKey.OP_READ, connection);
+    }
+
+    /**
+     * Adds the write interest to the connections that have new responses, the interest set can only be changed safely
+     * in the selector thread.
+     */
+    private void registerWrites() {
+        synchronized (m_connectionsToWrite) {
+            while (!m_connectionsToWrite.isEmpty()) {
+                final Connection connection = (Connection) m_connectionsToWrite.removeFirst();
+                if (connection.m_key.isValid()) {
+                    connection.m_key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the server socket and all the connections.
+     */
+    private void close() {
+        try {
+            for (Iterator it = m_selector.keys().iterator(); it.hasNext();) {
+                final SelectionKey key = (SelectionKey) it.next();
+                key.channel().close();
+            }
+            m_selector.close();
+        } catch (IOException e) {
+            throw new WrappedRuntimeException(e);
+        }
+    }
+
+    /**
+     * Handles a request frame. Always returns a response, so that the client never waits for a request that failed.
+     *
+     * @param frame      the frame, without its length
+     * @param connection the connection the frame was read from
+     * @return the response frame
+     */
+    private byte[] handleRequest(final byte[] frame, final Connection connection) {
+        final int requestId = RemoteProtocol.getRequestId(frame);
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(payload);
+        Object result;
+        byte status = RemoteProtocol.STATUS_OK;
+        try {
+            final DataInputStream in = RemoteProtocol.getPayload(frame);
+            switch (RemoteProtocol.getType(frame)) {
+                case Command.CREATE:
+                    result = handleCreateCommand(in, connection);
+                    break;
+                case Command.INVOKE:
+                    result = handleInvocationCommand(in);
+                    break;
+                default:
+                    throw new IOException("unknown command in remote frame: " + RemoteProtocol.getType(frame));
+            }
+        } catch (Throwable t) {
+            result = t;
+            status = RemoteProtocol.STATUS_EXCEPTION;
+        }
+        try {
+            RemoteProtocol.writeObject(out, result);
+        } catch (Throwable t) {
+            // the result or the exception is not serializable, send its description instead
+            payload.reset();
+            status = RemoteProtocol.STATUS_EXCEPTION;
+            try {
+                RemoteProtocol.writeObject(out, new RuntimeException(t.toString()));
+            } catch (IOException e) {
+                payload.reset();
+            }
+        }
+        return RemoteProtocol.createFrame(requestId, status, payload);
+    }
+
+    /**
+     * Handles the command CREATE.
+     *
+     * @param in
+     * @param connection the connection that keeps the handle
+     * @return the handle to the new instance
+     * @throws Exception
+     */
+    private Object handleCreateCommand(final DataInputStream in, final Connection connection) throws Exception {
+        final String className = in.readUTF();
+        final Class klass = Class.forName(className, false, m_loader);
+        final Object instance = klass.newInstance();
+        final String handle = RemoteProxy.wrapInstance(instance);
+        // the instances are weakly mapped by their handle, keep it as long as the connection
+        connection.m_handles.add(handle);
+        return handle;
+    }
+
+    /**
+     * Handles the command INVOKE.
+     *
+     * @param in
+     * @return the result of the invocation
+     * @throws Exception
+     */
+    private Object handleInvocationCommand(final DataInputStream in) throws Exception {
+        final Object context = RemoteProtocol.readObject(in, m_loader);
+        final String handle = in.readUTF();
+        final String methodName = in.readUTF();
+        final Class[] paramTypes = RemoteProtocol.readClasses(in, m_loader);
+        final Object[] args = RemoteProtocol.readObjects(in, m_loader);
+        return m_invoker.invoke(handle, methodName, paramTypes, args, context);
+    }
+
+    /**
+     * A client connection, reads the request frames and writes the response frames.
+     */
+    private class Connection {
+
+        private final SocketChannel m_channel;
+
+        private SelectionKey m_key;
+
+        private ByteBuffer m_readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        /**
+         * The response frames to write, as ByteBuffers.
+         */
+        private final LinkedList m_writeQueue = new LinkedList();
+
+        /**
+         * The handles to the instances created on this connection.
+         */
+        private final List m_handles = Collections.synchronizedList(new ArrayList());
+
+        Connection(final SocketChannel channel) {
+            m_channel = channel;
+        }
+
+        /**
+         * Reads the available bytes and dispatches the complete request frames to the thread pool.
+         *
+         * @throws IOException
+         */
+        void read() throws IOException {
+            if (m_channel.read(m_readBuffer) < 0) {
+                close();
+                return;
+            }
+            m_readBuffer.flip();
+            while (m_readBuffer.remaining() >= 4) {
+                final int length = m_readBuffer.getInt(m_readBuffer.position());
+                if (length < RemoteProtocol.FRAME_HEADER_LENGTH || length > RemoteProtocol.MAX_FRAME_LENGTH) {
+                    throw new IOException("invalid remote frame length: " + length);
+                }
+                if (m_readBuffer.remaining() < 4 + length) {
+                    if (m_readBuffer.capacity() < 4 + length) {
+                        // grow the buffer to the frame size, leaving it ready for the next read
+                        final ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+                        buffer.put(m_readBuffer);
+                        m_readBuffer = buffer;
+                        return;
+                    }
+                    break;
+                }
+                m_readBuffer.getInt();
+                final byte[] frame = new byte[length];
+                m_readBuffer.get(frame);
+                dispatch(frame);
+            }
+            m_readBuffer.compact();
+            shrinkReadBuffer();
+        }
+
+        /**
+         * Shrinks the read buffer back to its default size once the large frame it was grown for has been read.
+         */
+        private void shrinkReadBuffer() {
+            if (m_readBuffer.capacity() <= READ_BUFFER_SIZE || m_readBuffer.position() > READ_BUFFER_SIZE) {
+                return;
+            }
+            if (m_readBuffer.position() >= 4 && 4 + m_readBuffer.getInt(0) > READ_BUFFER_SIZE) {
+                // the pending frame still needs the room
+                return;
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            m_readBuffer.flip();
+            buffer.put(m_readBuffer);
+            m_readBuffer = buffer;
+        }
+
+        /**
+         * Writes the queued response frames, as long as the socket accepts them.
+         *
+         * @throws IOException
+         */
+        void write() throws IOException {
+            synchronized (m_writeQueue) {
+                while (!m_writeQueue.isEmpty()) {
+                    final ByteBuffer buffer = (ByteBuffer) m_writeQueue.getFirst();
+                    m_channel.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        return;
+                    }
+                    m_writeQueue.removeFirst();
+                }
+                m_key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        /**
+         * Hands a request frame to the thread pool, or rejects it if the pool is exhausted.
+         *
+         * @param frame
+         */
+        private void dispatch(final byte[] frame) {
+            try {
+                m_threadPool.execute(
+                        new Runnable() {
+                            public void run() {
+                                Thread.currentThread().setContextClassLoader(m_loader);
+                                byte[] response;
+                                try {
+                                    response = handleRequest(frame, Connection.this);
+                                } catch (Throwable t) {
+                                    // should not happen, still answer the client with an empty exception response
+                                    response = RemoteProtocol.createFrame(
+                                            RemoteProtocol.getRequestId(frame),
+                                            RemoteProtocol.STATUS_EXCEPTION,
+                                            new ByteArrayOutputStream()
+                                    );
+                                }
+                                respond(response);
+                            }
+                        }
+                );
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // the pool is blocked, answer right away rather than waiting for a thread
+                final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+                try {
+                    RemoteProtocol.writeObject(
+                            new DataOutputStream(payload),
+                            new RuntimeException("remote proxy server is busy, request rejected: " + e.getMessage())
+                    );
+                } catch (IOException ioe) {
+                    payload.reset();
+                }
+                respond(
+                        RemoteProtocol.createFrame(
+                                RemoteProtocol.getRequestId(frame), RemoteProtocol.STATUS_EXCEPTION, payload
+                        )
+                );
+            }
+        }
+
+        /**
+         * Queues a response frame, called from the thread pool or from the selector thread for a rejected request.
+         *
+         * @param response
+         */
+        private void respond(final byte[] response) {
+            synchronized (m_writeQueue) {
+                m_writeQueue.addLast(ByteBuffer.wrap(response));
+            }
+            synchronized (m_connectionsToWrite) {
+                m_connectionsToWrite.addLast(this);
+            }
+            m_selector.wakeup();
+        }
+
+        void close() {
+            m_key.cancel();
+            try {
+                m_channel.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+}
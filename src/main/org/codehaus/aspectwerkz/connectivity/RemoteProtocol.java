@@ -0,0 +1,456 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.connectivity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The framed binary protocol of the pipelined transport.
+ * <p/>
+ * Each request is sent as a frame: <code>[int length][int request id][byte command][payload]</code>, and each
+ * response as a frame: <code>[int length][int request id][byte status][payload]</code>, the length counting the
+ * bytes following it. The request id is chosen by the client and echoed by the server, so that many requests can be
+ * in flight on the same connection and that their responses can come back in any order.
+ * <p/>
+ * Strings and primitive wrappers are written with a type tag followed by their value, classes are written as class
+ * names, and only the other objects are written with Java serialization. The serialized objects of a same array are
+ * written with one object stream after the tags, so that the references they share are kept.
+ *
+ * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
+ */
+public class RemoteProtocol {
+
+    /**
+     * The response status when the request succeeded, the payload is the result.
+     */
+    public static final byte STATUS_OK = 0;
+
+    /**
+     * The response status when the request failed, the payload is the exception.
+     */
+    public static final byte STATUS_EXCEPTION = 1;
+
+    /**
+     * The length of the frame header, that is the request id and the command or status.
+     */
+    public static final int FRAME_HEADER_LENGTH = 5;
+
+    /**
+     * The maximal length of a frame, larger frames are considered as a protocol error.
+     */
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte SHORT = 5;
+    private static final byte BYTE = 6;
+    private static final byte CHAR = 7;
+    private static final byte FLOAT = 8;
+    private static final byte DOUBLE = 9;
+    private static final byte SERIALIZED = 10;
+    private static final byte LONG_STRING = 11;
+
+    /**
+     * The longest string that is sure to fit in a modified UTF-8 encoding, longer strings are written as UTF-8 bytes
+     * preceded by their length.
+     */
+    private static final int MAX_UTF_STRING_LENGTH = 65535 / 3;
+
+    /**
+     * Read in place of the serialized objects, until they are read after the tags.
+     */
+    private static final Object SERIALIZED_OBJECT = new Object();
+
+    private static final Class[] PRIMITIVE_TYPES = new Class[]{
+        boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class
+    };
+
+    /**
+     * Creates a frame.
+     *
+     * @param requestId
+     * @param type      the command of a request or the status of a response
+     * @param payload
+     * @return the frame bytes, length included
+     */
+    public static byte[] createFrame(final int requestId, final int type, final ByteArrayOutputStream payload) {
+        final int length = FRAME_HEADER_LENGTH + payload.size();
+        final ByteArrayOutputStream frame = new ByteArrayOutputStream(4 + length);
+        final DataOutputStream out = new DataOutputStream(frame);
+        try {
+            out.writeInt(length);
+            out.writeInt(requestId);
+            out.writeByte(type);
+            payload.writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            // can not happen with an in memory stream
+            throw new IllegalStateException(e.toString());
+        }
+        return frame.toByteArray();
+    }
+
+    /**
+     * Returns the request id of a frame, the frame being given without its length.
+     *
+     * @param frame
+     * @return
+     */
+    public static int getRequestId(final byte[] frame) {
+        return ((frame[0] & 0xFF) << 24) | ((frame[1] & 0xFF) << 16) | ((frame[2] & 0xFF) << 8) | (frame[3] & 0xFF);
+    }
+
+    /**
+     * Returns the command or the status of a frame, the frame being given without its length.
+     *
+     * @param frame
+     * @return
+     */
+    public static int getType(final byte[] frame) {
+        return frame[4];
+    }
+
+    /**
+     * Returns a stream on the payload of a frame, the frame being given without its length.
+     *
+     * @param frame
+     * @return
+     */
+    public static DataInputStream getPayload(final byte[] frame) {
+        return new DataInputStream(
+                new ByteArrayInputStream(frame, FRAME_HEADER_LENGTH, frame.length - FRAME_HEADER_LENGTH)
+        );
+    }
+
+    /**
+     * Writes an object.
+     *
+     * @param out
+     * @param object
+     * @throws IOException
+     */
+    public static void writeObject(final DataOutputStream out, final Object object) throws IOException {
+        final List serialized = new ArrayList(1);
+        writeValue(out, object, serialized);
+        writeSerialized(out, serialized);
+    }
+
+    /**
+     * Reads an object.
+     *
+     * @param in
+     * @param loader the class loader to resolve the classes of the serialized objects with
+     * @return
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public static Object readObject(final DataInputStream in, final ClassLoader loader) throws IOException,
+                                                                                           ClassNotFoundException {
+        final Object object = readValue(in);
+        if (object == SERIALIZED_OBJECT) {
+            return readSerialized(in, loader, 1)[0];
+        }
+        return object;
+    }
+
+    /**
+     * Writes objects, preceded by their count.
+     *
+     * @param out
+     * @param objects the objects, can be null
+     * @throws IOException
+     */
+    public static void writeObjects(final DataOutputStream out, final Object[] objects) throws IOException {
+        if (objects == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(objects.length);
+        final List serialized = new ArrayList();
+        for (int i = 0; i < objects.length; i++) {
+            writeValue(out, objects[i], serialized);
+        }
+        writeSerialized(out, serialized);
+    }
+
+    /**
+     * Reads objects, preceded by their count.
+     *
+     * @param in
+     * @param loader
+     * @return the objects, can be null
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public static Object[] readObjects(final DataInputStream in, final ClassLoader loader) throws IOException,
+                                                                                              ClassNotFoundException {
+        final int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        final Object[] objects = new Object[checkLength(length)];
+        int nrOfSerialized = 0;
+        for (int i = 0; i < length; i++) {
+            objects[i] = readValue(in);
+            if (objects[i] == SERIALIZED_OBJECT) {
+                nrOfSerialized++;
+            }
+        }
+        if (nrOfSerialized > 0) {
+            final Object[] serialized = readSerialized(in, loader, nrOfSerialized);
+            for (int i = 0, j = 0; i < length; i++) {
+                if (objects[i] == SERIALIZED_OBJECT) {
+                    objects[i] = serialized[j++];
+                }
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * Writes an object, or only its tag if it has to be serialized, in which case it is added to the serialized
+     * objects.
+     *
+     * @param out
+     * @param object
+     * @param serialized the objects to serialize
+     * @throws IOException
+     */
+    private static void writeValue(final DataOutputStream out, final Object object, final List serialized)
+            throws IOException {
+        if (object == null) {
+            out.writeByte(NULL);
+        } else if (object instanceof String) {
+            final String string = (String) object;
+            if (string.length() <= MAX_UTF_STRING_LENGTH) {
+                out.writeByte(STRING);
+                out.writeUTF(string);
+            } else {
+                final byte[] bytes = string.getBytes("UTF-8");
+                out.writeByte(LONG_STRING);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } else if (object instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt(((Integer) object).intValue());
+        } else if (object instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong(((Long) object).longValue());
+        } else if (object instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(((Boolean) object).booleanValue());
+        } else if (object instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort(((Short) object).shortValue());
+        } else if (object instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte(((Byte) object).byteValue());
+        } else if (object instanceof Character) {
+            out.writeByte(CHAR);
+            out.writeChar(((Character) object).charValue());
+        } else if (object instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat(((Float) object).floatValue());
+        } else if (object instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Double) object).doubleValue());
+        } else {
+            out.writeByte(SERIALIZED);
+            serialized.add(object);
+        }
+    }
+
+    /**
+     * Writes the serialized objects with one object stream, preceded by the stream length.
+     *
+     * @param out
+     * @param serialized
+     * @throws IOException
+     */
+    private static void writeSerialized(final DataOutputStream out, final List serialized) throws IOException {
+        if (serialized.isEmpty()) {
+            return;
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+        for (int i = 0; i < serialized.size(); i++) {
+            objectOut.writeObject(serialized.get(i));
+        }
+        objectOut.close();
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    /**
+     * Reads an object, or returns SERIALIZED_OBJECT if it is serialized after the tags.
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    private static Object readValue(final DataInputStream in) throws IOException {
+        final byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return in.readUTF();
+            case LONG_STRING:
+                final byte[] stringBytes = new byte[checkLength(in.readInt())];
+                in.readFully(stringBytes);
+                return new String(stringBytes, "UTF-8");
+            case INTEGER:
+                return new Integer(in.readInt());
+            case LONG:
+                return new Long(in.readLong());
+            case BOOLEAN:
+                return in.readBoolean() ? Boolean.TRUE : Boolean.FALSE;
+            case SHORT:
+                return new Short(in.readShort());
+            case BYTE:
+                return new Byte(in.readByte());
+            case CHAR:
+                return new Character(in.readChar());
+            case FLOAT:
+                return new Float(in.readFloat());
+            case DOUBLE:
+                return new Double(in.readDouble());
+            case SERIALIZED:
+                return SERIALIZED_OBJECT;
+            default:
+                throw new IOException("unknown object tag in remote frame: " + tag);
+        }
+    }
+
+    /**
+     * Reads the serialized objects written after the tags.
+     *
+     * @param in
+     * @param loader
+     * @param nrOfObjects
+     * @return the objects
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private static Object[] readSerialized(final DataInputStream in, final ClassLoader loader, final int nrOfObjects)
+            throws IOException, ClassNotFoundException {
+        final byte[] bytes = new byte[checkLength(in.readInt())];
+        in.readFully(bytes);
+        final ObjectInputStream objectIn = new LoaderObjectInputStream(new ByteArrayInputStream(bytes), loader);
+        try {
+            final Object[] objects = new Object[nrOfObjects];
+            for (int i = 0; i < nrOfObjects; i++) {
+                objects[i] = objectIn.readObject();
+            }
+            return objects;
+        } finally {
+            objectIn.close();
+        }
+    }
+
+    /**
+     * Checks a length read from a frame, which can not be negative or exceed the frame length.
+     *
+     * @param length
+     * @return the length
+     * @throws IOException if the length is invalid
+     */
+    private static int checkLength(final int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("invalid length in remote frame: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Writes classes as class names, preceded by their count.
+     *
+     * @param out
+     * @param classes
+     * @throws IOException
+     */
+    public static void writeClasses(final DataOutputStream out, final Class[] classes) throws IOException {
+        out.writeInt(classes.length);
+        for (int i = 0; i < classes.length; i++) {
+            out.writeUTF(classes[i].getName());
+        }
+    }
+
+    /**
+     * Reads classes written as class names, preceded by their count.
+     *
+     * @param in
+     * @param loader the class loader to load the classes with
+     * @return
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public static Class[] readClasses(final DataInputStream in, final ClassLoader loader) throws IOException,
+                                                                                             ClassNotFoundException {
+        final Class[] classes = new Class[checkLength(in.readInt())];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = forName(in.readUTF(), loader);
+        }
+        return classes;
+    }
+
+    /**
+     * Loads a class by its name, primitive types included.
+     *
+     * @param className
+     * @param loader
+     * @return
+     * @throws ClassNotFoundException
+     */
+    private static Class forName(final String className, final ClassLoader loader) throws ClassNotFoundException {
+        for (int i = 0; i < PRIMITIVE_TYPES.length; i++) {
+            if (PRIMITIVE_TYPES[i].getName().equals(className)) {
+                return PRIMITIVE_TYPES[i];
+            }
+        }
+        return Class.forName(className, false, loader);
+    }
+
+    /**
+     * Resolves the classes of the serialized objects with a given class loader.
+     */
+    private static class LoaderObjectInputStream extends ObjectInputStream {
+
+        private final ClassLoader m_loader;
+
+        LoaderObjectInputStream(final InputStream in, final ClassLoader loader) throws IOException {
+            super(in);
+            m_loader = loader;
+        }
+
+        protected Class resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (m_loader == null) {
+                return super.resolveClass(desc);
+            }
+            try {
+                return Class.forName(desc.getName(), false, m_loader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
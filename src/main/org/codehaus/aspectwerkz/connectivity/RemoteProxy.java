@@ -10,6 +10,8 @@ package org.codehaus.aspectwerkz.connectivity;
 import org.codehaus.aspectwerkz.exception.WrappedRuntimeException;
 import org.codehaus.aspectwerkz.util.UuidGenerator;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -19,6 +21,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.Collections;
 import java.util.Map;
 import java.util.WeakHashMap;
 
@@ -26,6 +29,8 @@ import java.util.WeakHashMap;
  * This class provides a general remote proxy. It uses the Dynamic Proxy mechanism that was introduced with JDK 1.3.
  * <p/>The client proxy sends all requests to a server via a socket connection. The server returns results in the same
  * way. Every object that is transferred (i.e. result of method invocation) has to support the Serializable interface.
+ * <p/>A pipelined proxy instead sends its requests as {@link RemoteProtocol} frames over connections pooled per server
+ * and shared by all the pipelined proxies, which needs a server started with the nio transport.
  *
  * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
  */
@@ -40,7 +45,7 @@ public class RemoteProxy implements InvocationHandler, Serializable {
     /**
      * All the instances that have been wrapped by a proxy. Maps each instance to its handle.
      */
-    private transient static Map s_instances = new WeakHashMap();
+    private transient static Map s_instances = Collections.synchronizedMap(new WeakHashMap());
 
     /**
      * The server host address.
@@ -72,6 +77,11 @@ public class RemoteProxy implements InvocationHandler, Serializable {
      */
     private String m_targetImplName = null;
 
+    /**
+     * True if the proxy uses the pipelined transport.
+     */
+    private boolean m_pipelined = false;
+
     /**
      * The socket.
      */
@@ -241,6 +251,29 @@ public class RemoteProxy implements InvocationHandler, Serializable {
         return new RemoteProxy(interfaces, impl, address, port, context, loader);
     }
 
+    /**
+     * Creates a new pipelined proxy to a class. To be used on the client side to create a new proxy to an object served
+     * by a server started with the nio transport.
+     *
+     * @param interfaces the class name of the interface for the object to create the proxy for
+     * @param impl       the class name of the the object to create the proxy for
+     * @param address    the address to connect to.
+     * @param port       the port to connect to.
+     * @param context    the context carrying the users principal and credentials
+     * @param loader     the class loader to use
+     * @return the new remote proxy instance
+     */
+    public static RemoteProxy createPipelinedClientProxy(final String[] interfaces,
+                                                         final String impl,
+                                                         final String address,
+                                                         final int port,
+                                                         final Object context,
+                                                         final ClassLoader loader) {
+        final RemoteProxy proxy = new RemoteProxy(interfaces, impl, address, port, context, loader);
+        proxy.m_pipelined = true;
+        return proxy;
+    }
+
     /**
      * Creates a proxy to a specific <b>instance </b> in the on the server side. This proxy could then be passed to the
      * client which can invoke method on this specific <b>instance </b>.
@@ -254,6 +287,23 @@ public class RemoteProxy implements InvocationHandler, Serializable {
         return new RemoteProxy(targetlInstance, address, port);
     }
 
+    /**
+     * Creates a pipelined proxy to a specific <b>instance </b> in the on the server side, for a server started with the
+     * nio transport.
+     *
+     * @param the     target instance to create the proxy for
+     * @param address the address to connect to.
+     * @param port    the port to connect to.
+     * @return the new remote proxy instance
+     */
+    public static RemoteProxy createPipelinedServerProxy(final Object targetlInstance,
+                                                         final String address,
+                                                         final int port) {
+        final RemoteProxy proxy = new RemoteProxy(targetlInstance, address, port);
+        proxy.m_pipelined = true;
+        return proxy;
+    }
+
     /**
      * Look up and retrives a proxy to an object from the server.
      *
@@ -277,6 +327,9 @@ public class RemoteProxy implements InvocationHandler, Serializable {
         if (m_loader == null) {
             m_loader = Thread.currentThread().getContextClassLoader();
         }
+        if (m_pipelined) {
+            return getPipelinedInstance();
+        }
         try {
             m_socket = new Socket(InetAddress.getByName(m_address), m_port);
             m_socket.setTcpNoDelay(true);
@@ -315,6 +368,39 @@ public class RemoteProxy implements InvocationHandler, Serializable {
         return m_proxy;
     }
 
+    /**
+     * Retrieves a proxy to an object from the server, over a pooled connection.
+     *
+     * @return the proxy instance
+     */
+    private Object getPipelinedInstance() {
+        if (m_handle == null) {
+            // is a client side proxy
+            if (m_targetInterfaceNames == null) {
+                throw new IllegalStateException("interface class name can not be null");
+            }
+            if (m_targetImplName == null) {
+                throw new IllegalStateException("implementation class name can not be null");
+            }
+            try {
+                // create a new instance on the server and get the handle to it in return
+                final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+                final DataOutputStream out = new DataOutputStream(payload);
+                out.writeUTF(m_targetImplName);
+                out.flush();
+                m_handle = (String) getConnection().call(Command.CREATE, payload, m_loader);
+                m_targetInterfaces = new Class[m_targetInterfaceNames.length];
+                for (int i = 0; i < m_targetInterfaceNames.length; i++) {
+                    m_targetInterfaces[i] = Class.forName(m_targetInterfaceNames[i], false, m_loader);
+                }
+            } catch (Exception e) {
+                throw new WrappedRuntimeException(e);
+            }
+        }
+        m_proxy = Proxy.newProxyInstance(m_loader, m_targetInterfaces, this);
+        return m_proxy;
+    }
+
     /**
      * This method is invoked automatically by the proxy. Should not be called directly.
      *
@@ -325,6 +411,9 @@ public class RemoteProxy implements InvocationHandler, Serializable {
      * @return the value to return from the method invocation on the proxy instance.
      */
     public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        if (m_pipelined) {
+            return invokePipelined(method, args);
+        }
         try {
             m_out.write(Command.INVOKE);
             m_out.writeObject(m_context);
@@ -344,9 +433,48 @@ public class RemoteProxy implements InvocationHandler, Serializable {
     }
 
     /**
-     * Closes the proxy and the connection to the server.
+     * Invokes a method over a pooled connection. Other threads can send their own invocations on the same connection
+     * while this one waits for its response.
+     *
+     * @param method the method invoked on the proxy instance
+     * @param args   the arguments passed in the method invocation
+     * @return the value to return from the method invocation on the proxy instance.
+     */
+    private Object invokePipelined(final Method method, final Object[] args) {
+        try {
+            final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(payload);
+            RemoteProtocol.writeObject(out, m_context);
+            out.writeUTF(m_handle);
+            out.writeUTF(method.getName());
+            RemoteProtocol.writeClasses(out, method.getParameterTypes());
+            RemoteProtocol.writeObjects(out, args);
+            out.flush();
+            return getConnection().call(Command.INVOKE, payload, m_loader);
+        } catch (Exception e) {
+            throw new WrappedRuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns a pooled connection to the server.
+     *
+     * @return the connection
+     * @throws IOException
+     */
+    private RemoteProxyConnection getConnection() throws IOException {
+        return RemoteProxyConnectionPool.getPool(m_address, m_port).getConnection();
+    }
+
+    /**
+     * Closes the proxy and the connection to the server. The pooled connections of a pipelined proxy are left open
+     * for the other proxies.
      */
     public void close() {
+        if (m_pipelined) {
+            m_proxy = null;
+            return;
+        }
         try {
             m_out.write(Command.CLOSE);
             m_out.flush();
@@ -0,0 +1,240 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.connectivity;
+
+import org.codehaus.aspectwerkz.exception.WrappedRuntimeException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A client connection of the pipelined transport, shared by the threads that send requests to the same server.
+ * <p/>
+ * A thread sends its request frame and waits for the response frame with the same request id, while the other
+ * threads can send theirs on the same connection. A reader thread dispatches the response frames to the waiting
+ * threads, in the order the server sends them. A thread waits for its response at most the number of milliseconds
+ * of the <code>aspectwerkz.remote.client.timeout</code> property, 60 seconds by default and forever when 0.
+ *
+ * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
+ */
+public class RemoteProxyConnection implements Runnable {
+
+    private static final long TIMEOUT = Long.parseLong(
+            java.lang.System.getProperty("aspectwerkz.remote.client.timeout", "60000")
+    );
+
+    private final Socket m_socket;
+
+    private final DataOutputStream m_out;
+
+    private final DataInputStream m_in;
+
+    private final Thread m_readerThread;
+
+    /**
+     * The pending requests, the response slot by request id.
+     */
+    private final Map m_pendingRequests = new HashMap();
+
+    private int m_nextRequestId = 0;
+
+    /**
+     * The failure that closed the connection, or null if it is open.
+     */
+    private volatile IOException m_failure = null;
+
+    /**
+     * Opens a new connection.
+     *
+     * @param address the server address
+     * @param port    the server port
+     * @throws IOException
+     */
+    public RemoteProxyConnection(final String address, final int port) throws IOException {
+        m_socket = new Socket(InetAddress.getByName(address), port);
+        m_socket.setTcpNoDelay(true);
+        m_out = new DataOutputStream(new BufferedOutputStream(m_socket.getOutputStream()));
+        m_in = new DataInputStream(new BufferedInputStream(m_socket.getInputStream()));
+        m_readerThread = new Thread(this);
+        m_readerThread.setName("AspectWerkz::Connection " + address + ':' + port);
+        m_readerThread.setDaemon(true);
+        m_readerThread.start();
+    }
+
+    /**
+     * Sends a request and waits for its response.
+     *
+     * @param command the command
+     * @param payload the request payload
+     * @param loader  the class loader to resolve the classes of the response with
+     * @return the result
+     * @throws Exception the exception thrown on the server side, or an IOException if the connection failed or the
+     *                   response timed out
+     */
+    public Object call(final int command, final ByteArrayOutputStream payload, final ClassLoader loader)
+            throws Exception {
+        final Response response = new Response();
+        final int requestId;
+        synchronized (m_pendingRequests) {
+            if (m_failure != null) {
+                throw m_failure;
+            }
+            requestId = m_nextRequestId++;
+            m_pendingRequests.put(new Integer(requestId), response);
+        }
+        final byte[] frame = RemoteProtocol.createFrame(requestId, command, payload);
+        try {
+            synchronized (m_out) {
+                m_out.write(frame);
+                m_out.flush();
+            }
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        }
+        final byte[] responseFrame;
+        try {
+            responseFrame = response.await(TIMEOUT);
+        } finally {
+            synchronized (m_pendingRequests) {
+                m_pendingRequests.remove(new Integer(requestId));
+            }
+        }
+        final Object result = RemoteProtocol.readObject(RemoteProtocol.getPayload(responseFrame), loader);
+        if (RemoteProtocol.getType(responseFrame) == RemoteProtocol.STATUS_EXCEPTION) {
+            if (result instanceof Exception) {
+                throw (Exception) result;
+            } else if (result instanceof Error) {
+                throw (Error) result;
+            }
+            throw new IOException("invalid exception in remote response: " + result);
+        }
+        return result;
+    }
+
+    /**
+     * Checks if the connection is still usable.
+     *
+     * @return
+     */
+    public boolean isOpen() {
+        return m_failure == null;
+    }
+
+    /**
+     * Closes the connection, the pending requests fail.
+     */
+    public void close() {
+        fail(new IOException("connection closed"));
+    }
+
+    /**
+     * The reader loop, dispatches the response frames.
+     */
+    public void run() {
+        try {
+            while (true) {
+                final int length = m_in.readInt();
+                if (length < RemoteProtocol.FRAME_HEADER_LENGTH || length > RemoteProtocol.MAX_FRAME_LENGTH) {
+                    throw new IOException("invalid remote frame length: " + length);
+                }
+                final byte[] frame = new byte[length];
+                m_in.readFully(frame);
+                final Response response;
+                synchronized (m_pendingRequests) {
+                    response = (Response) m_pendingRequests.remove(new Integer(RemoteProtocol.getRequestId(frame)));
+                }
+                if (response != null) {
+                    response.complete(frame, null);
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Marks the connection as failed, closes the socket and fails all the pending requests.
+     *
+     * @param failure
+     */
+    private void fail(final IOException failure) {
+        final Response[] responses;
+        synchronized (m_pendingRequests) {
+            if (m_failure != null) {
+                return;
+            }
+            m_failure = failure;
+            responses = (Response[]) m_pendingRequests.values().toArray(new Response[m_pendingRequests.size()]);
+            m_pendingRequests.clear();
+        }
+        for (int i = 0; i < responses.length; i++) {
+            responses[i].complete(null, failure);
+        }
+        try {
+            m_socket.close();
+        } catch (IOException e) {
+            throw new WrappedRuntimeException(e);
+        }
+    }
+
+    /**
+     * The slot in which a waiting thread gets its response frame.
+     */
+    private static class Response {
+
+        private byte[] m_frame;
+
+        private IOException m_failure;
+
+        private boolean m_completed = false;
+
+        synchronized void complete(final byte[] frame, final IOException failure) {
+            m_frame = frame;
+            m_failure = failure;
+            m_completed = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits for the response.
+         *
+         * @param timeout the maximum time to wait in milliseconds, or 0 to wait forever
+         * @return the response frame
+         * @throws IOException if the connection failed or the timeout expired
+         * @throws InterruptedException
+         */
+        synchronized byte[] await(final long timeout) throws IOException, InterruptedException {
+            final long deadline = java.lang.System.currentTimeMillis() + timeout;
+            while (!m_completed) {
+                if (timeout <= 0) {
+                    wait();
+                } else {
+                    final long remaining = deadline - java.lang.System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new InterruptedIOException("no remote response after " + timeout + " ms");
+                    }
+                    wait(remaining);
+                }
+            }
+            if (m_failure != null) {
+                throw m_failure;
+            }
+            return m_frame;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.connectivity;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Pools the connections of the pipelined transport, per server.
+ * <p/>
+ * All the remote proxies to the same server share a few connections, handed out in turn, each one carrying the
+ * requests of many threads. A connection that failed is replaced when it is handed out next.
+ * <p/>
+ * The number of connections per server is set with the <code>-Daspectwerkz.remote.client.connections=4</code>
+ * option.
+ *
+ * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
+ */
+public class RemoteProxyConnectionPool {
+
+    /**
+     * The number of connections per server.
+     */
+    private static final int CONNECTIONS_PER_SERVER = Integer.parseInt(
+            java.lang.System.getProperty("aspectwerkz.remote.client.connections", "4")
+    );
+
+    /**
+     * The pools, by server address and port.
+     */
+    private static final Map s_pools = new HashMap();
+
+    private final String m_address;
+
+    private final int m_port;
+
+    private final RemoteProxyConnection[] m_connections = new RemoteProxyConnection[CONNECTIONS_PER_SERVER];
+
+    private int m_next = 0;
+
+    /**
+     * Returns the pool of a server.
+     *
+     * @param address the server address
+     * @param port    the server port
+     * @return the pool
+     */
+    public static RemoteProxyConnectionPool getPool(final String address, final int port) {
+        final String key = address + ':' + port;
+        synchronized (s_pools) {
+            RemoteProxyConnectionPool pool = (RemoteProxyConnectionPool) s_pools.get(key);
+            if (pool == null) {
+                pool = new RemoteProxyConnectionPool(address, port);
+                s_pools.put(key, pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Closes the connections of all the pools.
+     */
+    public static void closeAll() {
+        synchronized (s_pools) {
+            for (Iterator it = s_pools.values().iterator(); it.hasNext();) {
+                ((RemoteProxyConnectionPool) it.next()).close();
+            }
+            s_pools.clear();
+        }
+    }
+
+    private RemoteProxyConnectionPool(final String address, final int port) {
+        m_address = address;
+        m_port = port;
+    }
+
+    /**
+     * Returns the next connection, opening it if needed.
+     *
+     * @return the connection
+     * @throws IOException
+     */
+    public synchronized RemoteProxyConnection getConnection() throws IOException {
+        final int index = m_next;
+        m_next = (m_next + 1) % m_connections.length;
+        RemoteProxyConnection connection = m_connections[index];
+        if (connection == null || !connection.isOpen()) {
+            connection = new RemoteProxyConnection(m_address, m_port);
+            m_connections[index] = connection;
+        }
+        return connection;
+    }
+
+    /**
+     * Closes the connections of the pool.
+     */
+    public synchronized void close() {
+        for (int i = 0; i < m_connections.length; i++) {
+            if (m_connections[i] != null) {
+                m_connections[i].close();
+                m_connections[i] = null;
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@ import org.codehaus.aspectwerkz.exception.WrappedRuntimeException;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.Properties;
@@ -22,15 +23,28 @@ import java.util.Properties;
 /**
  * Server that listens to a specified port for client requests. <p/>The implementation is based on sockets. <p/>The
  * invoker spawns a specified number of listener threads in which each one of these spawns a new RemoteProxyServerThread
- * for each client request that comes in. <p/>Uses a thread pool from util.concurrent.
+ * for each client request that comes in. <p/>Uses a thread pool from util.concurrent. <p/>With the nio transport the
+ * server is instead a {@link NioRemoteProxyServer}, serving the pipelined remote proxies on a single selector thread.
  *
  * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
  */
 public class RemoteProxyServer implements Runnable {
+    /**
+     * The transport serving the classic remote proxies, one blocking socket per proxy.
+     */
+    public static final String TRANSPORT_SOCKET = "socket";
+
+    /**
+     * The transport serving the pipelined remote proxies, framed requests multiplexed over a few connections.
+     */
+    public static final String TRANSPORT_NIO = "nio";
+
     private static String HOST_NAME;
 
     private static int PORT;
 
+    private static String TRANSPORT;
+
     private static boolean BOUNDED_THREAD_POOL;
 
     private static boolean LISTENER_THREAD_RUN_AS_DAEMON;
@@ -77,6 +91,12 @@ public class RemoteProxyServer implements Runnable {
         } else {
             PORT = Integer.parseInt(property);
         }
+        property = properties.getProperty("remote.server.transport");
+        if ((property != null) && property.startsWith(TRANSPORT_NIO)) {
+            TRANSPORT = TRANSPORT_NIO;
+        } else {
+            TRANSPORT = TRANSPORT_SOCKET;
+        }
         property = properties.getProperty("remote.server.listener.threads.backlog");
         if (property == null) {
             BACKLOG = 200;
@@ -164,6 +184,26 @@ public class RemoteProxyServer implements Runnable {
      */
     private Invoker m_invoker = null;
 
+    /**
+     * The host name to bind to.
+     */
+    private final String m_hostName;
+
+    /**
+     * The port to listen to.
+     */
+    private final int m_port;
+
+    /**
+     * The transport, socket or nio.
+     */
+    private final String m_transport;
+
+    /**
+     * The selector based server, for the nio transport.
+     */
+    private NioRemoteProxyServer m_nioServer = null;
+
     /**
      * Marks the server as running.
      */
@@ -176,8 +216,29 @@ public class RemoteProxyServer implements Runnable {
      * @param invoker the invoker that makes the method invocation in the client thread
      */
     public RemoteProxyServer(final ClassLoader loader, final Invoker invoker) {
+        this(loader, invoker, HOST_NAME, PORT, TRANSPORT);
+    }
+
+    /**
+     * Starts a server object and starts listening for client access, on the given address and with the given
+     * transport instead of the configured ones.
+     *
+     * @param loader    the classloader to use
+     * @param invoker   the invoker that makes the method invocation in the client thread
+     * @param hostName  the host name to bind to, null for the loopback address
+     * @param port      the port to listen to, 0 for any free port
+     * @param transport the transport, TRANSPORT_SOCKET or TRANSPORT_NIO
+     */
+    public RemoteProxyServer(final ClassLoader loader,
+                             final Invoker invoker,
+                             final String hostName,
+                             final int port,
+                             final String transport) {
         m_invoker = invoker;
         m_loader = loader;
+        m_hostName = hostName;
+        m_port = port;
+        m_transport = transport;
     }
 
     /**
@@ -186,8 +247,7 @@ public class RemoteProxyServer implements Runnable {
     public void start() {
         m_running = true;
         try {
-            InetAddress bindAddress = InetAddress.getByName(HOST_NAME);
-            m_serverSocket = new ServerSocket(PORT, BACKLOG, bindAddress);
+            InetAddress bindAddress = InetAddress.getByName(m_hostName);
             if (BOUNDED_THREAD_POOL) {
                 createBoundedThreadPool(
                         THREAD_POOL_MAX_SIZE,
@@ -199,6 +259,18 @@ public class RemoteProxyServer implements Runnable {
             } else {
                 createDynamicThreadPool(THREAD_POOL_MIN_SIZE, THREAD_POOL_INIT_SIZE, THREAD_POOL_KEEP_ALIVE_TIME);
             }
+            if (TRANSPORT_NIO.equals(m_transport)) {
+                m_nioServer = new NioRemoteProxyServer(
+                        new InetSocketAddress(bindAddress, m_port),
+                        BACKLOG,
+                        m_loader,
+                        m_invoker,
+                        m_threadPool
+                );
+                m_nioServer.start(LISTENER_THREAD_RUN_AS_DAEMON, LISTENER_THREAD_PRIORITY);
+                return;
+            }
+            m_serverSocket = new ServerSocket(m_port, BACKLOG, bindAddress);
             m_listenerThreads = new Thread[NUM_LISTENER_THREADS];
             for (int i = 0; i < NUM_LISTENER_THREADS; i++) {
                 m_listenerThreads[i] = new Thread(this);
@@ -217,12 +289,29 @@ public class RemoteProxyServer implements Runnable {
      */
     public void stop() {
         m_running = false;
+        if (m_nioServer != null) {
+            m_nioServer.stop();
+            m_threadPool.shutdownNow();
+            return;
+        }
         for (int i = 0; i < NUM_LISTENER_THREADS; i++) {
             m_listenerThreads[i].interrupt();
         }
         m_threadPool.shutdownNow();
     }
 
+    /**
+     * Returns the port the server listens to, useful when started on any free port.
+     *
+     * @return the port
+     */
+    public int getLocalPort() {
+        if (m_nioServer != null) {
+            return m_nioServer.getLocalPort();
+        }
+        return m_serverSocket.getLocalPort();
+    }
+
     /**
      * Does the actual work of listening for a client request and spawns a new RemoteProxyServerThread to serve the
      * client.
@@ -248,6 +248,7 @@ public class AdviceDefinition {
         // update the hasCflow caracteristic
         List cflowBindings = CflowBinding.getCflowBindingsForCflowOf(m_expressionInfo);
         m_hasCflowOrCflowBelow = (cflowBindings.size() > 0);
+        ClassFilterIndex.definitionChanged();
     }
 
     /**
@@ -237,6 +237,7 @@ public class AspectDefinition {
     public void addAroundAdviceDefinition(final AdviceDefinition adviceDef) {
         if (!m_aroundAdviceDefinitions.contains(adviceDef)) {
             m_aroundAdviceDefinitions.add(adviceDef);
+            ClassFilterIndex.definitionChanged();
         }
     }
 
@@ -257,6 +258,7 @@ public class AspectDefinition {
     public void addBeforeAdviceDefinition(final AdviceDefinition adviceDef) {
         if (!m_beforeAdviceDefinitions.contains(adviceDef)) {
             m_beforeAdviceDefinitions.add(adviceDef);
+            ClassFilterIndex.definitionChanged();
         }
     }
 
@@ -277,6 +279,7 @@ public class AspectDefinition {
     public void addAfterAdviceDefinition(final AdviceDefinition adviceDef) {
         if (!m_afterAdviceDefinitions.contains(adviceDef)) {
             m_afterAdviceDefinitions.add(adviceDef);
+            ClassFilterIndex.definitionChanged();
         }
     }
 
@@ -296,6 +299,7 @@ public class AspectDefinition {
      */
     public void addInterfaceIntroductionDefinition(final InterfaceIntroductionDefinition interfaceIntroDef) {
         m_interfaceIntroductionDefinitions.add(interfaceIntroDef);
+        ClassFilterIndex.definitionChanged();
     }
 
     /**
@@ -0,0 +1,561 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.definition;
+
+import org.codehaus.aspectwerkz.expression.ExpressionContext;
+import org.codehaus.aspectwerkz.expression.ExpressionInfo;
+import org.codehaus.aspectwerkz.expression.ExpressionNamespace;
+import org.codehaus.aspectwerkz.expression.PointcutType;
+import org.codehaus.aspectwerkz.expression.SubtypePatternType;
+import org.codehaus.aspectwerkz.expression.ast.ASTAnd;
+import org.codehaus.aspectwerkz.expression.ast.ASTAttribute;
+import org.codehaus.aspectwerkz.expression.ast.ASTCall;
+import org.codehaus.aspectwerkz.expression.ast.ASTClassPattern;
+import org.codehaus.aspectwerkz.expression.ast.ASTConstructorPattern;
+import org.codehaus.aspectwerkz.expression.ast.ASTExecution;
+import org.codehaus.aspectwerkz.expression.ast.ASTExpression;
+import org.codehaus.aspectwerkz.expression.ast.ASTFieldPattern;
+import org.codehaus.aspectwerkz.expression.ast.ASTGet;
+import org.codehaus.aspectwerkz.expression.ast.ASTHandler;
+import org.codehaus.aspectwerkz.expression.ast.ASTMethodPattern;
+import org.codehaus.aspectwerkz.expression.ast.ASTOr;
+import org.codehaus.aspectwerkz.expression.ast.ASTPointcutReference;
+import org.codehaus.aspectwerkz.expression.ast.ASTRoot;
+import org.codehaus.aspectwerkz.expression.ast.ASTSet;
+import org.codehaus.aspectwerkz.expression.ast.ASTStaticInitialization;
+import org.codehaus.aspectwerkz.expression.ast.ASTWithin;
+import org.codehaus.aspectwerkz.expression.ast.ASTWithinCode;
+import org.codehaus.aspectwerkz.expression.ast.Node;
+import org.codehaus.aspectwerkz.expression.regexp.TypePattern;
+import org.codehaus.aspectwerkz.reflect.ClassInfo;
+import org.codehaus.aspectwerkz.reflect.MemberInfo;
+import org.codehaus.aspectwerkz.reflect.ReflectionInfo;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Early match index over the expressions of a system definition.
+ * <p/>
+ * For each kind of context (pointcut type and availability of the reflection info) the expressions are compiled
+ * once into buckets keyed by the literal package prefix of the type patterns they use, so that
+ * for a given class only the expressions that may match it have to be visited. Expressions that can not be
+ * restricted that way (subtype patterns, leading wildcards, not(..), annotations only etc) are always candidates.
+ * <p/>
+ * The index is only a pre-filter: the candidates are still evaluated by the expression visitors, in the
+ * definition order, so that the result is the same as the one of a full scan.
+ * <p/>
+ * The index is built against the global definition version and must be rebuilt when
+ * {@link #definitionChanged()} has been called since.
+ * <p/>
+ * It is also used outside of the definitions, to match a set of expressions against the compiled join points
+ * when aspects are deployed.
+ *
+ * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur </a>
+ */
+public final class ClassFilterIndex {
+
+    /**
+     * Pattern applies to the class of the reflection info (callee side).
+     */
+    private static final int TARGET = 0;
+
+    /**
+     * Pattern applies to the class of the within info (caller side).
+     */
+    private static final int WITHIN = 1;
+
+    /**
+     * Bound on the pointcut reference depth we follow.
+     */
+    private static final int MAX_REFERENCE_DEPTH = 16;
+
+    /**
+     * The context pointcut types, in the order used to compute the shape index.
+     */
+    private static final PointcutType[] POINTCUT_TYPES = new PointcutType[]{
+        PointcutType.EXECUTION,
+        PointcutType.CALL,
+        PointcutType.SET,
+        PointcutType.GET,
+        PointcutType.HANDLER,
+        PointcutType.STATIC_INITIALIZATION,
+        PointcutType.WITHIN
+    };
+
+    /**
+     * Constraint for the expressions that can not match a given kind of context.
+     */
+    private static final List NEVER = new ArrayList(0);
+
+    /**
+     * Global definition version, changed whenever an aspect, advice, mixin or introduction definition changes.
+     */
+    private static volatile int s_version = 0;
+
+    private final int m_version;
+
+    private final ExpressionInfo[] m_expressionInfos;
+
+    private final Object[] m_definitions;
+
+    /**
+     * Compiled shapes, lazily populated, indexed by pointcut type, early match flag and reflection info flag.
+     */
+    private final Shape[] m_shapes = new Shape[POINTCUT_TYPES.length * 4];
+
+    /**
+     * Creates a new index.
+     *
+     * @param expressionInfos the expressions, in definition order
+     * @param definitions     the definition each expression belongs to
+     * @param version         the definition version the expressions were gathered at
+     */
+    ClassFilterIndex(final List expressionInfos, final List definitions, final int version) {
+        m_expressionInfos = (ExpressionInfo[]) expressionInfos.toArray(new ExpressionInfo[expressionInfos.size()]);
+        m_definitions = definitions.toArray();
+        m_version = version;
+    }
+
+    /**
+     * Creates a new index over a list of expressions, the definition of each expression being the expression itself.
+     *
+     * @param expressionInfos the expressions
+     */
+    public ClassFilterIndex(final List expressionInfos) {
+        this(expressionInfos, expressionInfos, s_version);
+    }
+
+    /**
+     * Notifies that some definition has changed, which invalidates all the indexes.
+     */
+    static synchronized void definitionChanged() {
+        s_version++;
+    }
+
+    /**
+     * Returns the current definition version.
+     *
+     * @return the version
+     */
+    static int getVersion() {
+        return s_version;
+    }
+
+    /**
+     * Checks if the index is still in sync with the definitions.
+     *
+     * @return true if the index can be used
+     */
+    boolean isCurrent() {
+        return m_version == s_version;
+    }
+
+    /**
+     * Returns the number of indexed expressions.
+     *
+     * @return the size
+     */
+    public int size() {
+        return m_expressionInfos.length;
+    }
+
+    /**
+     * Returns the expression at the given position.
+     *
+     * @param index the position
+     * @return the expression
+     */
+    public ExpressionInfo getExpressionInfo(final int index) {
+        return m_expressionInfos[index];
+    }
+
+    /**
+     * Returns the definition the expression at the given position belongs to.
+     *
+     * @param index the position
+     * @return the definition
+     */
+    Object getDefinition(final int index) {
+        return m_definitions[index];
+    }
+
+    /**
+     * Returns the positions of the expressions that may match the context.
+     *
+     * @param ctx        the context
+     * @param earlyMatch true if the expressions will be evaluated with the advised class filter visitor
+     * @return the candidates, as a set of positions
+     */
+    public BitSet getCandidates(final ExpressionContext ctx, final boolean earlyMatch) {
+        Shape shape = getShape(ctx.getPointcutType(), ctx.hasReflectionInfo(), earlyMatch);
+        if (shape == null) {
+            // unknown kind of context, do not filter
+            BitSet all = new BitSet(m_expressionInfos.length);
+            for (int i = 0; i < m_expressionInfos.length; i++) {
+                all.set(i);
+            }
+            return all;
+        }
+        BitSet candidates = (BitSet) shape.m_always.clone();
+        shape.collect(TARGET, getClassName(ctx.getReflectionInfo()), candidates);
+        shape.collect(WITHIN, getClassName(ctx.getWithinReflectionInfo()), candidates);
+        return candidates;
+    }
+
+    /**
+     * Returns the positions of the expressions that may match some join point of a given type declared in a given
+     * class, whatever its within class. The expressions are evaluated with the regular visitor.
+     *
+     * @param pointcutType the pointcut type of the join points
+     * @param className    the name of the class that declares the join points
+     * @return the candidates, as a set of positions, null if they can not be restricted
+     */
+    public BitSet getTargetCandidates(final PointcutType pointcutType, final String className) {
+        Shape shape = getShape(pointcutType, true, false);
+        if (shape == null) {
+            return null;
+        }
+        BitSet candidates = (BitSet) shape.m_always.clone();
+        candidates.or(shape.m_unknown[WITHIN]);
+        shape.collect(TARGET, className, candidates);
+        return candidates;
+    }
+
+    /**
+     * Returns the compiled shape for a kind of context, compiling it if needed.
+     *
+     * @param pointcutType      the pointcut type of the context
+     * @param hasReflectionInfo the reflection info flag
+     * @param earlyMatch        the early match flag
+     * @return the shape or null if the pointcut type is not indexed
+     */
+    private Shape getShape(final PointcutType pointcutType, final boolean hasReflectionInfo, final boolean earlyMatch) {
+        int type = -1;
+        for (int i = 0; i < POINTCUT_TYPES.length; i++) {
+            if (POINTCUT_TYPES[i].equals(pointcutType)) {
+                type = i;
+                break;
+            }
+        }
+        if (type < 0) {
+            return null;
+        }
+        final int index = type * 4 + (earlyMatch ? 2 : 0) + (hasReflectionInfo ? 1 : 0);
+        Shape shape = m_shapes[index];
+        if (shape == null) {
+            synchronized (m_shapes) {
+                shape = m_shapes[index];
+                if (shape == null) {
+                    shape = new Shape(POINTCUT_TYPES[type], hasReflectionInfo, earlyMatch);
+                    m_shapes[index] = shape;
+                }
+            }
+        }
+        return shape;
+    }
+
+    /**
+     * Returns the name of the class a reflection info belongs to.
+     *
+     * @param info the reflection info
+     * @return the class name or null if unknown
+     */
+    private static String getClassName(final ReflectionInfo info) {
+        if (info instanceof ClassInfo) {
+            return info.getName();
+        } else if (info instanceof MemberInfo) {
+            ClassInfo declaringType = ((MemberInfo) info).getDeclaringType();
+            return (declaringType == null) ? null : declaringType.getName();
+        }
+        return null;
+    }
+
+    /**
+     * The expressions compiled for one kind of context.
+     */
+    private final class Shape {
+
+        /**
+         * The expressions that are always candidates.
+         */
+        private final BitSet m_always = new BitSet(m_expressionInfos.length);
+
+        /**
+         * The expressions that are candidates when the target / within class is unknown.
+         */
+        private final BitSet[] m_unknown = new BitSet[2];
+
+        /**
+         * Map of package prefix to the list of prefixed alternatives, for target and within.
+         */
+        private final Map[] m_buckets = new Map[2];
+
+        Shape(final PointcutType type, final boolean hasReflectionInfo, final boolean earlyMatch) {
+            m_unknown[TARGET] = new BitSet(m_expressionInfos.length);
+            m_unknown[WITHIN] = new BitSet(m_expressionInfos.length);
+            m_buckets[TARGET] = new HashMap();
+            m_buckets[WITHIN] = new HashMap();
+            for (int i = 0; i < m_expressionInfos.length; i++) {
+                ExpressionInfo expressionInfo = m_expressionInfos[i];
+                List constraint = new Analyzer(type, hasReflectionInfo, earlyMatch).analyze(
+                        expressionInfo.getExpression().getASTRoot().jjtGetChild(0),
+                        expressionInfo.getNamespace(),
+                        0
+                );
+                if (constraint == null) {
+                    m_always.set(i);
+                    continue;
+                }
+                for (Iterator it = constraint.iterator(); it.hasNext();) {
+                    Prefix prefix = (Prefix) it.next();
+                    m_unknown[prefix.m_subject].set(i);
+                    String packageName = prefix.m_prefix.substring(0, prefix.m_prefix.lastIndexOf('.') + 1);
+                    List bucket = (List) m_buckets[prefix.m_subject].get(packageName);
+                    if (bucket == null) {
+                        bucket = new ArrayList();
+                        m_buckets[prefix.m_subject].put(packageName, bucket);
+                    }
+                    bucket.add(new Candidate(i, prefix.m_prefix));
+                }
+            }
+        }
+
+        /**
+         * Adds the candidates for the given class name to the set.
+         *
+         * @param subject    target or within
+         * @param className  the class name or null if unknown
+         * @param candidates the set to populate
+         */
+        void collect(final int subject, final String className, final BitSet candidates) {
+            if (className == null) {
+                candidates.or(m_unknown[subject]);
+                return;
+            }
+            final Map buckets = m_buckets[subject];
+            if (buckets.isEmpty()) {
+                return;
+            }
+            int index = -1;
+            do {
+                List bucket = (List) buckets.get(className.substring(0, index + 1));
+                if (bucket != null) {
+                    for (int i = 0; i < bucket.size(); i++) {
+                        Candidate candidate = (Candidate) bucket.get(i);
+                        if (className.startsWith(candidate.m_prefix)) {
+                            candidates.set(candidate.m_index);
+                        }
+                    }
+                }
+                index = className.indexOf('.', index + 1);
+            } while (index >= 0);
+        }
+    }
+
+    /**
+     * An expression position and the literal prefix its class must start with.
+     */
+    private static final class Candidate {
+        final int m_index;
+        final String m_prefix;
+
+        Candidate(final int index, final String prefix) {
+            m_index = index;
+            m_prefix = prefix;
+        }
+    }
+
+    /**
+     * A literal class name prefix for the target or within class.
+     */
+    private static final class Prefix {
+        final int m_subject;
+        final String m_prefix;
+
+        Prefix(final int subject, final String prefix) {
+            m_subject = subject;
+            m_prefix = prefix;
+        }
+    }
+
+    /**
+     * Computes a necessary condition on the target and within class names for an expression to match a kind
+     * of context.
+     * <p/>
+     * The condition is a list of alternative prefixes (one of them must hold), null if there is no condition
+     * or empty if the expression can not match that kind of context. This mirrors the visitors evaluation rules:
+     * a node evaluating to FALSE for all contexts of the kind is NEVER, a node that may evaluate to TRUE or
+     * undetermined for any class is unconstrained.
+     */
+    private static final class Analyzer {
+        private final PointcutType m_type;
+        private final boolean m_hasReflectionInfo;
+        private final boolean m_earlyMatch;
+
+        Analyzer(final PointcutType type, final boolean hasReflectionInfo, final boolean earlyMatch) {
+            m_type = type;
+            m_hasReflectionInfo = hasReflectionInfo;
+            m_earlyMatch = earlyMatch;
+        }
+
+        List analyze(final Node node, final String namespace, final int depth) {
+            if (node instanceof ASTRoot || node instanceof ASTExpression) {
+                return analyze(node.jjtGetChild(0), namespace, depth);
+            } else if (node instanceof ASTAnd) {
+                List constraint = null;
+                for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+                    List child = analyze(node.jjtGetChild(i), namespace, depth);
+                    if (child == NEVER) {
+                        return NEVER;
+                    } else if (constraint == null) {
+                        constraint = child;
+                    }
+                }
+                return constraint;
+            } else if (node instanceof ASTOr) {
+                List constraint = new ArrayList();
+                for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+                    List child = analyze(node.jjtGetChild(i), namespace, depth);
+                    if (child == null) {
+                        return null;
+                    }
+                    constraint.addAll(child);
+                }
+                return constraint.isEmpty() ? NEVER : constraint;
+            } else if (node instanceof ASTPointcutReference) {
+                if (depth >= MAX_REFERENCE_DEPTH) {
+                    return null;
+                }
+                ExpressionInfo reference = ExpressionNamespace.getNamespace(namespace).getExpressionInfoOrNull(
+                        ((ASTPointcutReference) node).getName()
+                );
+                if (reference == null) {
+                    return null;
+                }
+                return analyze(
+                        reference.getExpression().getASTRoot().jjtGetChild(0),
+                        reference.getNamespace(),
+                        depth + 1
+                );
+            } else if (node instanceof ASTExecution) {
+                if (m_earlyMatch) {
+                    if (isAnnotationOnly(node)) {
+                        return null;
+                    } else if (PointcutType.EXECUTION.equals(m_type)) {
+                        return getPatternConstraint(TARGET, getPatternNode(node));
+                    } else if (PointcutType.WITHIN.equals(m_type)) {
+                        return getPatternConstraint(WITHIN, getPatternNode(node));
+                    } else {
+                        return NEVER;
+                    }
+                }
+                return getJoinPointConstraint(node, PointcutType.EXECUTION);
+            } else if (node instanceof ASTCall) {
+                return getMemberConstraint(node, PointcutType.CALL);
+            } else if (node instanceof ASTSet) {
+                return getMemberConstraint(node, PointcutType.SET);
+            } else if (node instanceof ASTGet) {
+                return getMemberConstraint(node, PointcutType.GET);
+            } else if (node instanceof ASTHandler) {
+                if (m_earlyMatch) {
+                    return null;
+                } else if (PointcutType.HANDLER.equals(m_type)) {
+                    return getPatternConstraint(TARGET, node.jjtGetChild(0));
+                } else {
+                    return NEVER;
+                }
+            } else if (node instanceof ASTStaticInitialization) {
+                if (!PointcutType.STATIC_INITIALIZATION.equals(m_type)) {
+                    return NEVER;
+                } else if (isAnnotationOnly(node)) {
+                    return null;
+                }
+                return getPatternConstraint(m_earlyMatch ? WITHIN : TARGET, getPatternNode(node));
+            } else if (node instanceof ASTWithin) {
+                if (isAnnotationOnly(node)) {
+                    return null;
+                }
+                return getPatternConstraint(WITHIN, getPatternNode(node));
+            } else if (node instanceof ASTWithinCode) {
+                Node patternHolder = ((ASTWithinCode) node).isStaticInitializer() ? node.jjtGetChild(0) : node;
+                if (isAnnotationOnly(patternHolder)) {
+                    return null;
+                }
+                return getPatternConstraint(WITHIN, getPatternNode(patternHolder));
+            }
+            // not(..), cflow, this, target, args, hasmethod, hasfield, if
+            return null;
+        }
+
+        /**
+         * Constraint for call, set and get pointcuts, which the early match only checks if the callee is known.
+         */
+        private List getMemberConstraint(final Node node, final PointcutType type) {
+            if (m_earlyMatch) {
+                if (isAnnotationOnly(node)) {
+                    return null;
+                } else if (type.equals(m_type) || PointcutType.WITHIN.equals(m_type)) {
+                    return m_hasReflectionInfo ? getPatternConstraint(TARGET, getPatternNode(node)) : null;
+                } else {
+                    return NEVER;
+                }
+            }
+            return getJoinPointConstraint(node, type);
+        }
+
+        /**
+         * Constraint for a join point pointcut evaluated by the regular visitor.
+         */
+        private List getJoinPointConstraint(final Node node, final PointcutType type) {
+            if (!type.equals(m_type)) {
+                return NEVER;
+            } else if (isAnnotationOnly(node)) {
+                return null;
+            }
+            return getPatternConstraint(TARGET, getPatternNode(node));
+        }
+
+        private static Node getPatternNode(final Node node) {
+            return node.jjtGetChild(node.jjtGetNumChildren() - 1);
+        }
+
+        private static boolean isAnnotationOnly(final Node node) {
+            return getPatternNode(node) instanceof ASTAttribute;
+        }
+
+        private static List getPatternConstraint(final int subject, final Node patternNode) {
+            TypePattern typePattern;
+            if (patternNode instanceof ASTMethodPattern) {
+                typePattern = ((ASTMethodPattern) patternNode).getDeclaringTypePattern();
+            } else if (patternNode instanceof ASTConstructorPattern) {
+                typePattern = ((ASTConstructorPattern) patternNode).getDeclaringTypePattern();
+            } else if (patternNode instanceof ASTFieldPattern) {
+                typePattern = ((ASTFieldPattern) patternNode).getDeclaringTypePattern();
+            } else if (patternNode instanceof ASTClassPattern) {
+                typePattern = ((ASTClassPattern) patternNode).getTypePattern();
+            } else {
+                return null;
+            }
+            if (typePattern == null || !SubtypePatternType.NOT_HIERARCHICAL.equals(typePattern.getSubtypePatternType())) {
+                return null;
+            }
+            String prefix = typePattern.getTypeNamePrefix();
+            if (prefix.length() == 0) {
+                return null;
+            }
+            List constraint = new ArrayList(1);
+            constraint.add(new Prefix(subject, prefix));
+            return constraint;
+        }
+    }
+}
@@ -121,6 +121,7 @@ public class InterfaceIntroductionDefinition {
         tmpExpressions[m_expressionInfos.length] = expression;
         m_expressionInfos = new ExpressionInfo[m_expressionInfos.length + 1];
         java.lang.System.arraycopy(tmpExpressions, 0, m_expressionInfos, 0, tmpExpressions.length);
+        ClassFilterIndex.definitionChanged();
     }
 
     /**
@@ -134,5 +135,6 @@ public class InterfaceIntroductionDefinition {
         java.lang.System.arraycopy(expressions, 0, tmpExpressions, m_expressionInfos.length, expressions.length);
         m_expressionInfos = new ExpressionInfo[m_expressionInfos.length + expressions.length];
         java.lang.System.arraycopy(tmpExpressions, 0, m_expressionInfos, 0, tmpExpressions.length);
+        ClassFilterIndex.definitionChanged();
     }
 }
\ No newline at end of file
@@ -259,6 +259,7 @@ public class MixinDefinition {
         tmpExpressions[m_expressionInfos.length] = expression;
         m_expressionInfos = new ExpressionInfo[m_expressionInfos.length + 1];
         java.lang.System.arraycopy(tmpExpressions, 0, m_expressionInfos, 0, tmpExpressions.length);
+        ClassFilterIndex.definitionChanged();
     }
 
     /**
@@ -272,6 +273,7 @@ public class MixinDefinition {
         java.lang.System.arraycopy(expressions, 0, tmpExpressions, m_expressionInfos.length, expressions.length);
         m_expressionInfos = new ExpressionInfo[m_expressionInfos.length + expressions.length];
         java.lang.System.arraycopy(tmpExpressions, 0, m_expressionInfos, 0, tmpExpressions.length);
+        ClassFilterIndex.definitionChanged();
     }
 
     /**
@@ -17,6 +17,7 @@ import org.codehaus.aspectwerkz.perx.PerObjectAspect;
 import org.codehaus.aspectwerkz.DeploymentModel;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -75,6 +76,21 @@ public class SystemDefinition {
      */
     private final Map m_deploymentScopes = new HashMap();
 
+    /**
+     * Early match index of the advice expressions, lazily built.
+     */
+    private volatile ClassFilterIndex m_adviceIndex = null;
+
+    /**
+     * Early match index of the mixin expressions, lazily built.
+     */
+    private volatile ClassFilterIndex m_mixinIndex = null;
+
+    /**
+     * Early match index of the interface introduction expressions, lazily built.
+     */
+    private volatile ClassFilterIndex m_introductionIndex = null;
+
     /**
      * Creates a new instance, creates and sets the system cflow aspect.
      */
@@ -241,6 +257,7 @@ public class SystemDefinition {
             if (m_aspectMap.containsKey(aspectDef.getName())) {
                 return;
             }
+            ClassFilterIndex.definitionChanged();
 
             // register a PerObjectAspect if deployment-model is perThis or perTarget
             if(DeploymentModel.PER_TARGET.equals(aspectDef.getDeploymentModel())) {
@@ -295,6 +312,7 @@ public class SystemDefinition {
         }
         synchronized (m_aspectMap) {
             m_aspectMap.put(aspectDef.getName(), aspectDef);
+            ClassFilterIndex.definitionChanged();
         }
     }
 
@@ -308,6 +326,7 @@ public class SystemDefinition {
             throw new IllegalArgumentException("mixin definition can not be null");
         }
         synchronized (m_mixinMap) {
+            ClassFilterIndex.definitionChanged();
             if (m_mixinMap.containsKey(mixinDef.getMixinImpl().getName())) {
                 MixinDefinition def = (MixinDefinition) m_mixinMap.get(mixinDef.getMixinImpl().getName());
                 def.addExpressionInfos(mixinDef.getExpressionInfos());
@@ -429,34 +448,57 @@ public class SystemDefinition {
         if (ctx == null) {
             throw new IllegalArgumentException("context can not be null");
         }
-        for (Iterator it = m_aspectMap.values().iterator(); it.hasNext();) {
-            AspectDefinition aspectDef = (AspectDefinition) it.next();
-            for (Iterator it2 = aspectDef.getAdviceDefinitions().iterator(); it2.hasNext();) {
-                AdviceDefinition adviceDef = (AdviceDefinition) it2.next();
-                final ExpressionInfo expressionInfo = adviceDef.getExpressionInfo();
-                if (expressionInfo == null) {
-                    continue;
-                }
-                ExpressionVisitor expression = expressionInfo.getExpression();
-
-                if (expression.match(ctx)) {
-                    if (AspectWerkzPreProcessor.DETAILS) {
-                        System.out.println(
-                                "[TRACE - match: " + expression + " @ "
-                                + aspectDef.getQualifiedName() + "/" +
-                                adviceDef.getName()
-                        );
-                        System.out.println("[       for     " + ctx.getReflectionInfo());
-                        System.out.println("[       within  " + ctx.getWithinReflectionInfo());
-                        System.out.println("[       type    " + ctx.getPointcutType().toString());
-                    }
-                    return true;
+        final ClassFilterIndex index = getAdviceIndex();
+        final BitSet candidates = index.getCandidates(ctx, false);
+        for (int i = 0; i < index.size(); i++) {
+            if (!candidates.get(i)) {
+                continue;
+            }
+            final ExpressionInfo expressionInfo = index.getExpressionInfo(i);
+            ExpressionVisitor expression = expressionInfo.getExpression();
+
+            if (expression.match(ctx)) {
+                if (AspectWerkzPreProcessor.DETAILS) {
+                    AdviceDefinition adviceDef = (AdviceDefinition) index.getDefinition(i);
+                    System.out.println(
+                            "[TRACE - match: " + expression + " @ "
+                            + adviceDef.getAspectDefinition().getQualifiedName() + "/" +
+                            adviceDef.getName()
+                    );
+                    System.out.println("[       for     " + ctx.getReflectionInfo());
+                    System.out.println("[       within  " + ctx.getWithinReflectionInfo());
+                    System.out.println("[       type    " + ctx.getPointcutType().toString());
                 }
+                return true;
             }
         }
         return false;
     }
 
+    /**
+     * Returns the advice definitions whose expression matches a context, in definition order.
+     * <p/>
+     * Only the advices the index gives as candidates, given the pointcut type of the context and the target and
+     * within class names, are matched against their full expression.
+     *
+     * @param ctx the expression context
+     * @return the matching advice definitions
+     */
+    public List getAdviceDefinitionsMatching(final ExpressionContext ctx) {
+        if (ctx == null) {
+            throw new IllegalArgumentException("context can not be null");
+        }
+        final ClassFilterIndex index = getAdviceIndex();
+        final BitSet candidates = index.getCandidates(ctx, false);
+        final List adviceDefs = new ArrayList();
+        for (int i = 0; i < index.size(); i++) {
+            if (candidates.get(i) && index.getExpressionInfo(i).getExpression().match(ctx)) {
+                adviceDefs.add(index.getDefinition(i));
+            }
+        }
+        return adviceDefs;
+    }
+
     /**
      * Checks if a class is advised.
      *
@@ -467,30 +509,28 @@ public class SystemDefinition {
         if (ctxs == null) {
             throw new IllegalArgumentException("context array can not be null");
         }
-        for (Iterator it = m_aspectMap.values().iterator(); it.hasNext();) {
-            AspectDefinition aspectDef = (AspectDefinition) it.next();
-            List advices = aspectDef.getAdviceDefinitions();
-            for (Iterator it2 = advices.iterator(); it2.hasNext();) {
-                AdviceDefinition adviceDef = (AdviceDefinition) it2.next();
-                for (int i = 0; i < ctxs.length; i++) {
-                    ExpressionContext ctx = ctxs[i];
-                    final ExpressionInfo expressionInfo = adviceDef.getExpressionInfo();
-                    if (expressionInfo == null) {
-                        continue;
-                    }
-                    if (expressionInfo.getAdvisedClassFilterExpression().match(ctx)) {
-                        if (AspectWerkzPreProcessor.DETAILS) {
-                            System.out.println(
-                                    "[TRACE - earlymatch: " + expressionInfo + " @ "
-                                    + aspectDef.getQualifiedName() + "/" +
-                                    adviceDef.getName()
-                            );
-                            System.out.println("[       for          " + ctx.getReflectionInfo());
-                            System.out.println("[       within       " + ctx.getWithinReflectionInfo());
-                            System.out.println("[       type         " + ctx.getPointcutType().toString());
-                        }
-                        return true;
+        final ClassFilterIndex index = getAdviceIndex();
+        final BitSet[] candidates = getCandidates(index, ctxs, true);
+        for (int i = 0; i < index.size(); i++) {
+            for (int j = 0; j < ctxs.length; j++) {
+                if (!candidates[j].get(i)) {
+                    continue;
+                }
+                ExpressionContext ctx = ctxs[j];
+                final ExpressionInfo expressionInfo = index.getExpressionInfo(i);
+                if (expressionInfo.getAdvisedClassFilterExpression().match(ctx)) {
+                    if (AspectWerkzPreProcessor.DETAILS) {
+                        AdviceDefinition adviceDef = (AdviceDefinition) index.getDefinition(i);
+                        System.out.println(
+                                "[TRACE - earlymatch: " + expressionInfo + " @ "
+                                + adviceDef.getAspectDefinition().getQualifiedName() + "/" +
+                                adviceDef.getName()
+                        );
+                        System.out.println("[       for          " + ctx.getReflectionInfo());
+                        System.out.println("[       within       " + ctx.getWithinReflectionInfo());
+                        System.out.println("[       type         " + ctx.getPointcutType().toString());
                     }
+                    return true;
                 }
             }
         }
@@ -507,22 +547,7 @@ public class SystemDefinition {
         if (ctx == null) {
             throw new IllegalArgumentException("context can not be null");
         }
-        for (Iterator it = m_aspectMap.values().iterator(); it.hasNext();) {
-            AspectDefinition aspectDef = (AspectDefinition) it.next();
-            List advices = aspectDef.getAdviceDefinitions();
-            for (Iterator it2 = advices.iterator(); it2.hasNext();) {
-                AdviceDefinition adviceDef = (AdviceDefinition) it2.next();
-                final ExpressionInfo expressionInfo = adviceDef.getExpressionInfo();
-                if (expressionInfo == null) {
-                    continue;
-                }
-                if (expressionInfo.getAdvisedClassFilterExpression().match(ctx) /*||
-                    expressionInfo.getAdvisedCflowClassFilterExpression().match(ctx) ALEX XXX CFLOW*/ ) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return matchAny(getAdviceIndex(), new ExpressionContext[]{ctx}, true);
     }
 
     /**
@@ -535,19 +560,7 @@ public class SystemDefinition {
         if (ctxs == null) {
             throw new IllegalArgumentException("context array can not be null");
         }
-        for (Iterator it = m_mixinMap.values().iterator(); it.hasNext();) {
-            MixinDefinition introDef = (MixinDefinition) it.next();
-            ExpressionInfo[] expressionInfos = introDef.getExpressionInfos();
-            for (int i = 0; i < expressionInfos.length; i++) {
-                ExpressionInfo expressionInfo = expressionInfos[i];
-                for (int j = 0; j < ctxs.length; j++) {
-                    if (expressionInfo.getExpression().match(ctxs[j])) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+        return matchAny(getMixinIndex(), ctxs, false);
     }
 
     /**
@@ -560,17 +573,7 @@ public class SystemDefinition {
         if (ctx == null) {
             throw new IllegalArgumentException("context can not be null");
         }
-        for (Iterator it = m_mixinMap.values().iterator(); it.hasNext();) {
-            MixinDefinition introDef = (MixinDefinition) it.next();
-            ExpressionInfo[] expressionInfos = introDef.getExpressionInfos();
-            for (int i = 0; i < expressionInfos.length; i++) {
-                ExpressionInfo expressionInfo = expressionInfos[i];
-                if (expressionInfo.getExpression().match(ctx)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return matchAny(getMixinIndex(), new ExpressionContext[]{ctx}, false);
     }
 
     /**
@@ -583,22 +586,7 @@ public class SystemDefinition {
         if (ctxs == null) {
             throw new IllegalArgumentException("context array can not be null");
         }
-        for (Iterator iterator = m_aspectMap.values().iterator(); iterator.hasNext();) {
-            AspectDefinition aspectDef = (AspectDefinition) iterator.next();
-            for (Iterator it = aspectDef.getInterfaceIntroductionDefinitions().iterator(); it.hasNext();) {
-                InterfaceIntroductionDefinition introDef = (InterfaceIntroductionDefinition) it.next();
-                ExpressionInfo[] expressionInfos = introDef.getExpressionInfos();
-                for (int i = 0; i < expressionInfos.length; i++) {
-                    ExpressionInfo expressionInfo = expressionInfos[i];
-                    for (int j = 0; j < ctxs.length; j++) {
-                        if (expressionInfo.getExpression().match(ctxs[i])) {
-                            return true;
-                        }
-                    }
-                }
-            }
-        }
-        return false;
+        return matchAny(getIntroductionIndex(), ctxs, false);
     }
 
     /**
@@ -611,22 +599,145 @@ public class SystemDefinition {
         if (ctx == null) {
             throw new IllegalArgumentException("context can not be null");
         }
-        for (Iterator iterator = m_aspectMap.values().iterator(); iterator.hasNext();) {
-            AspectDefinition aspectDefinition = (AspectDefinition) iterator.next();
-            for (Iterator it = aspectDefinition.getInterfaceIntroductionDefinitions().iterator(); it.hasNext();) {
-                InterfaceIntroductionDefinition introDef = (InterfaceIntroductionDefinition) it.next();
-                ExpressionInfo[] expressionInfos = introDef.getExpressionInfos();
-                for (int i = 0; i < expressionInfos.length; i++) {
-                    ExpressionInfo expressionInfo = expressionInfos[i];
-                    if (expressionInfo.getExpression().match(ctx)) {
-                        return true;
-                    }
+        return matchAny(getIntroductionIndex(), new ExpressionContext[]{ctx}, false);
+    }
+
+    /**
+     * Checks if any of the indexed expressions matches any of the contexts.
+     *
+     * @param index      the index
+     * @param ctxs       the expression contexts
+     * @param earlyMatch true to use the advised class filter expression
+     * @return boolean
+     */
+    private static boolean matchAny(final ClassFilterIndex index,
+                                    final ExpressionContext[] ctxs,
+                                    final boolean earlyMatch) {
+        final BitSet[] candidates = getCandidates(index, ctxs, earlyMatch);
+        for (int i = 0; i < index.size(); i++) {
+            final ExpressionInfo expressionInfo = index.getExpressionInfo(i);
+            for (int j = 0; j < ctxs.length; j++) {
+                if (!candidates[j].get(i)) {
+                    continue;
+                }
+                ExpressionVisitor expression = earlyMatch ?
+                                               expressionInfo.getAdvisedClassFilterExpression() :
+                                               expressionInfo.getExpression();
+                if (expression.match(ctxs[j])) {
+                    return true;
                 }
             }
         }
         return false;
     }
 
+    /**
+     * Returns the candidate expressions of the index for each of the contexts.
+     *
+     * @param index      the index
+     * @param ctxs       the expression contexts
+     * @param earlyMatch true to use the advised class filter expression
+     * @return the candidates
+     */
+    private static BitSet[] getCandidates(final ClassFilterIndex index,
+                                          final ExpressionContext[] ctxs,
+                                          final boolean earlyMatch) {
+        final BitSet[] candidates = new BitSet[ctxs.length];
+        for (int i = 0; i < ctxs.length; i++) {
+            candidates[i] = index.getCandidates(ctxs[i], earlyMatch);
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns the early match index of the advice expressions, (re)building it if the definitions have changed.
+     *
+     * @return the index
+     */
+    private ClassFilterIndex getAdviceIndex() {
+        ClassFilterIndex index = m_adviceIndex;
+        if (index == null || !index.isCurrent()) {
+            final int version = ClassFilterIndex.getVersion();
+            final List expressionInfos = new ArrayList();
+            final List adviceDefs = new ArrayList();
+            synchronized (m_aspectMap) {
+                for (Iterator it = m_aspectMap.values().iterator(); it.hasNext();) {
+                    AspectDefinition aspectDef = (AspectDefinition) it.next();
+                    for (Iterator it2 = aspectDef.getAdviceDefinitions().iterator(); it2.hasNext();) {
+                        AdviceDefinition adviceDef = (AdviceDefinition) it2.next();
+                        final ExpressionInfo expressionInfo = adviceDef.getExpressionInfo();
+                        if (expressionInfo == null) {
+                            continue;
+                        }
+                        expressionInfos.add(expressionInfo);
+                        adviceDefs.add(adviceDef);
+                    }
+                }
+            }
+            index = new ClassFilterIndex(expressionInfos, adviceDefs, version);
+            m_adviceIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the early match index of the mixin expressions, (re)building it if the definitions have changed.
+     *
+     * @return the index
+     */
+    private ClassFilterIndex getMixinIndex() {
+        ClassFilterIndex index = m_mixinIndex;
+        if (index == null || !index.isCurrent()) {
+            final int version = ClassFilterIndex.getVersion();
+            final List expressionInfos = new ArrayList();
+            final List mixinDefs = new ArrayList();
+            synchronized (m_mixinMap) {
+                for (Iterator it = m_mixinMap.values().iterator(); it.hasNext();) {
+                    MixinDefinition mixinDef = (MixinDefinition) it.next();
+                    ExpressionInfo[] mixinExpressionInfos = mixinDef.getExpressionInfos();
+                    for (int i = 0; i < mixinExpressionInfos.length; i++) {
+                        expressionInfos.add(mixinExpressionInfos[i]);
+                        mixinDefs.add(mixinDef);
+                    }
+                }
+            }
+            index = new ClassFilterIndex(expressionInfos, mixinDefs, version);
+            m_mixinIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the early match index of the interface introduction expressions, (re)building it if the definitions
+     * have changed.
+     *
+     * @return the index
+     */
+    private ClassFilterIndex getIntroductionIndex() {
+        ClassFilterIndex index = m_introductionIndex;
+        if (index == null || !index.isCurrent()) {
+            final int version = ClassFilterIndex.getVersion();
+            final List expressionInfos = new ArrayList();
+            final List introDefs = new ArrayList();
+            synchronized (m_aspectMap) {
+                for (Iterator it = m_aspectMap.values().iterator(); it.hasNext();) {
+                    AspectDefinition aspectDef = (AspectDefinition) it.next();
+                    for (Iterator it2 = aspectDef.getInterfaceIntroductionDefinitions().iterator(); it2.hasNext();) {
+                        InterfaceIntroductionDefinition introDef = (InterfaceIntroductionDefinition) it2.next();
+                        ExpressionInfo[] introExpressionInfos = introDef.getExpressionInfos();
+                        for (int i = 0; i < introExpressionInfos.length; i++) {
+                            expressionInfos.add(introExpressionInfos[i]);
+                            introDefs.add(introDef);
+                        }
+                    }
+                }
+            }
+            index = new ClassFilterIndex(expressionInfos, introDefs, version);
+            m_introductionIndex = index;
+        }
+        return index;
+    }
+
     /**
      * Returns a collection with all deployment scopes in the system.
      *
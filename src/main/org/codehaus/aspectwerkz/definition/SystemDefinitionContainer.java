@@ -8,10 +8,13 @@
 package org.codehaus.aspectwerkz.definition;
 
 import org.codehaus.aspectwerkz.transform.AspectWerkzPreProcessor;
+import org.codehaus.aspectwerkz.util.ClassLoaderMap;
 
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -25,6 +28,10 @@ import java.io.File;
  * ThreadLocal structure is used during weaving to store current classloader defintion hierarchy. <p/>Due to
  * getResources() API, we maintain a perClassLoader loaded resource list so that it contains only resource defined
  * within the classloader and not its parent.
+ * <p/>
+ * The definitions visible from a classloader are resolved once into an immutable snapshot, that also indexes them by
+ * uuid. Lookups read the snapshot without locking. Registering or deploying definitions bumps the snapshot version,
+ * and the stale snapshots are rebuilt and published again on their next lookup.
  *
  * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur </a>
  */
@@ -36,10 +43,10 @@ public class SystemDefinitionContainer {
      */
     public static final Map s_classLoaderSystemDefinitions = new WeakHashMap();
     /**
-     * Map of SystemDefinition[List] per ClassLoader, with the hierarchy structure
+     * Holder of the DefinitionSnapshot per ClassLoader, with the hierarchy structure
      * NOTE: null key is supported
      */
-    public static Map s_classLoaderHierarchicalSystemDefinitions = new WeakHashMap();
+    private static final ClassLoaderMap s_classLoaderHierarchicalSystemDefinitions = new ClassLoaderMap();
 
     /**
      * Map of SystemDefinition location (as URL[List]) per ClassLoader
@@ -146,6 +153,8 @@ public class SystemDefinitionContainer {
                 //TODO AVOPT
                 definitions.add(SystemDefinition.createVirtualDefinitionAt(loader));
 
+                // snapshots taken during the registration, f.e. while aspect classes are loaded, are incomplete
+                definitionsChangedAt(loader);
                 dump(loader);
             } catch (Throwable t) {
                 t.printStackTrace();
@@ -169,31 +178,15 @@ public class SystemDefinitionContainer {
 
             //unchanged: s_classLoaderDefinitionLocations
 
-            // propagate change by flushing hierachical cache in all childs
-            flushHierarchicalSystemDefinitionsBelow(loader);
-
             // update
             Set defs = (Set) s_classLoaderSystemDefinitions.get(loader);
             defs.addAll(definitions);
-            dump(loader);
-        }
-    }
 
-    private static void flushHierarchicalSystemDefinitionsBelow(ClassLoader loader) {
-        // lock already owned
-        //synchronized (s_classLoaderSystemDefinitions) {
-        Map classLoaderHierarchicalSystemDefinitions = new WeakHashMap();
-        for (Iterator iterator = s_classLoaderHierarchicalSystemDefinitions.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            ClassLoader currentLoader = (ClassLoader) entry.getKey();
-            if (isChildOf(currentLoader, loader)) {
-                ;// flushed
-            } else {
-                classLoaderHierarchicalSystemDefinitions.put(currentLoader, entry.getValue());
-            }
+            // propagate change by making the hierarchical snapshots stale, they are rebuilt on next lookup
+            definitionsChangedAt(loader);
+            ClassFilterIndex.definitionChanged();
+            dump(loader);
         }
-        s_classLoaderHierarchicalSystemDefinitions = classLoaderHierarchicalSystemDefinitions;
-        //}
     }
 
     /**
@@ -206,13 +199,17 @@ public class SystemDefinitionContainer {
      * @return SystemDefinition or null if no such defined definition
      */
     public static SystemDefinition getDefinitionFor(final ClassLoader loader, final String uuid) {
-        for (Iterator defs = getDefinitionsFor(loader).iterator(); defs.hasNext();) {
-            SystemDefinition def = (SystemDefinition) defs.next();
-            if (def.getUuid().equals(uuid)) {
-                return def;
-            }
-        }
-        return null;
+        return (SystemDefinition) getHierarchicalDefinitionsFor(loader).m_definitionsByUuid.get(uuid);
+    }
+
+    /**
+     * Returns the definition version, that changes whenever system definitions are deployed or modified, so that
+     * what is looked up from the definitions can be cached.
+     *
+     * @return the definition version
+     */
+    public static int getDefinitionVersion() {
+        return ClassFilterIndex.getVersion();
     }
 
     /**
@@ -221,10 +218,10 @@ public class SystemDefinitionContainer {
      * It does handle the ClassLoader hierarchy.
      *
      * @param loader
-     * @return SystemDefinitions list
+     * @return SystemDefinitions list, that is read only
      */
     public static Set getDefinitionsFor(final ClassLoader loader) {
-        return getHierarchicalDefinitionsFor(loader);
+        return getHierarchicalDefinitionsFor(loader).m_definitions;
     }
 
     /**
@@ -302,38 +299,81 @@ public class SystemDefinitionContainer {
     /**
      * Returns the gathered SystemDefinition visible from a classloader.
      * <p/>
-     * This method is using a cache. Caution when
+     * This method is using a cache of snapshots, read without locking. Caution when
      * modifying this method since when an aop.xml is loaded, the aspect classes gets loaded as well, which triggers
-     * this cache, while the system is in fact not yet initialized properly. </p>
+     * this cache, while the system is in fact not yet initialized properly. Such snapshots are stale once the
+     * classloader is registered, as the registration bumps the version of the classloader. </p>
      *
      * @param loader
-     * @return set with the system definitions
+     * @return the snapshot of the system definitions
      */
-    private static Set getHierarchicalDefinitionsFor(final ClassLoader loader) {
+    private static DefinitionSnapshot getHierarchicalDefinitionsFor(final ClassLoader loader) {
+        SnapshotHolder holder = (SnapshotHolder) s_classLoaderHierarchicalSystemDefinitions.get(loader);
+        if (holder != null) {
+            DefinitionSnapshot snapshot = holder.m_snapshot;
+            if (snapshot != null && snapshot.isCurrent()) {
+                return snapshot;
+            }
+        }
         synchronized (s_classLoaderSystemDefinitions) {
-            // check cache
-            if (s_classLoaderHierarchicalSystemDefinitions.containsKey(loader)) {
-                return (Set) s_classLoaderHierarchicalSystemDefinitions.get(loader);
-            } else {
-                // make sure the classloader is known
-                registerClassLoader(loader);
-
-                Set defs = new HashSet();
-                // put it in the cache now since this method is recursive
-                s_classLoaderHierarchicalSystemDefinitions.put(loader, defs);
-                if (loader == null) {
-                    ; // go on to put in the cache at the end
-                } else {
-                    ClassLoader parent = loader.getParent();
-                    defs.addAll(getHierarchicalDefinitionsFor(parent));
-                }
-                defs.addAll((Set) s_classLoaderSystemDefinitions.get(loader));
+            // make sure the classloader is known
+            registerClassLoader(loader);
 
-                return defs;
+            if (holder == null) {
+                holder = getSnapshotHolder(loader);
             }
+            final int version = holder.m_version;
+            DefinitionSnapshot snapshot = holder.m_snapshot;
+            if (snapshot != null && snapshot.isCurrent()) {
+                return snapshot;
+            }
+
+            // parent definitions first, so that the child ones take precedence in the uuid index
+            Set defs = new HashSet();
+            Map defsByUuid = new HashMap();
+            DefinitionSnapshot parentSnapshot = null;
+            if (loader != null) {
+                parentSnapshot = getHierarchicalDefinitionsFor(loader.getParent());
+                defs.addAll(parentSnapshot.m_definitions);
+                defsByUuid.putAll(parentSnapshot.m_definitionsByUuid);
+            }
+            for (Iterator it = ((Set) s_classLoaderSystemDefinitions.get(loader)).iterator(); it.hasNext();) {
+                SystemDefinition def = (SystemDefinition) it.next();
+                defs.add(def);
+                defsByUuid.put(def.getUuid(), def);
+            }
+            snapshot = new DefinitionSnapshot(defs, defsByUuid, holder, version, parentSnapshot);
+            holder.m_snapshot = snapshot;
+            return snapshot;
         }
     }
 
+    /**
+     * Makes the snapshots of the given classloader and of its children stale, the snapshots of the other classloaders
+     * are kept. Called with the s_classLoaderSystemDefinitions lock owned.
+     *
+     * @param loader
+     */
+    private static void definitionsChangedAt(final ClassLoader loader) {
+        getSnapshotHolder(loader).m_version++;
+    }
+
+    /**
+     * Returns the SnapshotHolder of a classloader, created if needed.
+     *
+     * @param loader
+     * @return
+     */
+    private static SnapshotHolder getSnapshotHolder(final ClassLoader loader) {
+        SnapshotHolder holder = (SnapshotHolder) s_classLoaderHierarchicalSystemDefinitions.get(loader);
+        if (holder == null) {
+            holder = (SnapshotHolder) s_classLoaderHierarchicalSystemDefinitions.putIfAbsent(
+                    loader, new SnapshotHolder()
+            );
+        }
+        return holder;
+    }
+
     /**
      * Check if a given resource has already been registered to a classloader and its parent hierachy
      *
@@ -397,6 +437,52 @@ public class SystemDefinitionContainer {
         System.out.println(dump.toString());
     }
 
+    /**
+     * Immutable view of the SystemDefinitions visible from a classloader, built from the snapshot of its parent.
+     */
+    private static final class DefinitionSnapshot {
+        final Set m_definitions;
+        final Map m_definitionsByUuid;
+        final SnapshotHolder m_holder;
+        final int m_version;
+        final DefinitionSnapshot m_parent;
+
+        DefinitionSnapshot(final Set definitions,
+                           final Map definitionsByUuid,
+                           final SnapshotHolder holder,
+                           final int version,
+                           final DefinitionSnapshot parent) {
+            m_definitions = Collections.unmodifiableSet(definitions);
+            m_definitionsByUuid = definitionsByUuid;
+            m_holder = holder;
+            m_version = version;
+            m_parent = parent;
+        }
+
+        /**
+         * Checks that the definitions of the classloader and of its parents did not change since the snapshot.
+         *
+         * @return
+         */
+        boolean isCurrent() {
+            for (DefinitionSnapshot snapshot = this; snapshot != null; snapshot = snapshot.m_parent) {
+                if (snapshot.m_version != snapshot.m_holder.m_version) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Holds the last DefinitionSnapshot published for a classloader, and the version of the definitions defined at
+     * this classloader level, bumped whenever they change.
+     */
+    private static final class SnapshotHolder {
+        volatile DefinitionSnapshot m_snapshot;
+        volatile int m_version = 0;
+    }
+
     /**
      * Returns true if the given classloader is a child of the given parent classloader
      *
@@ -87,7 +87,10 @@ public class ExpressionInfo {
      */
     public ExpressionInfo(final String expression, final String namespace) {
         try {
-            Node root = s_parser.parse(expression);
+            Node root;
+            synchronized (s_parser) {
+                root = s_parser.parse(expression);
+            }
             m_expression = new ExpressionVisitor(this, expression, namespace, root);
             m_advisedClassFilterExpression =
                 new AdvisedClassFilterExpressionVisitor(this, expression, namespace, root);
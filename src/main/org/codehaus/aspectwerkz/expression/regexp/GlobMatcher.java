@@ -0,0 +1,321 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.expression.regexp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Matcher for the type and name patterns, working on the characters of the name directly.
+ * <p/>
+ * Supports the wildcards of the pattern language:
+ * <ul>
+ * <li>"*" matches zero or more identifier characters (including array brackets for type patterns)</li>
+ * <li>".." matches one or more identifier characters and dots (type patterns only)</li>
+ * <li>a single "*" or ".." pattern matches one or more identifier characters, dots (and brackets for types)</li>
+ * <li>"." matches any single character in name patterns</li>
+ * </ul>
+ * where identifier characters are [a-zA-Z0-9_$]. All other characters are matched literally.
+ * <p/>
+ * The leading and trailing literal parts of the pattern are checked first, the wildcards are then
+ * matched by backtracking on the remaining characters, without allocating.
+ *
+ * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur </a>
+ */
+public final class GlobMatcher {
+
+    private static final int LITERAL = 0;
+
+    private static final int WILDCARD = 1;
+
+    private static final int ANY_CHAR = 2;
+
+    /**
+     * Wildcard also matches '.'.
+     */
+    private static final int DOTS = 1;
+
+    /**
+     * Wildcard also matches '[' and ']'.
+     */
+    private static final int BRACKETS = 2;
+
+    private final String m_pattern;
+
+    private final int[] m_kinds;
+
+    private final String[] m_literals;
+
+    private final int[] m_charClasses;
+
+    private final int[] m_minLengths;
+
+    /**
+     * Minimal number of characters matched by the tokens from a given index to the last one.
+     */
+    private final int[] m_minRemaining;
+
+    /**
+     * Range of tokens that are not covered by the literal prefix and suffix.
+     */
+    private final int m_first;
+
+    private final int m_last;
+
+    private final String m_prefix;
+
+    private final String m_suffix;
+
+    /**
+     * Compiles a type pattern, with abbreviations already resolved.
+     *
+     * @param pattern the type pattern
+     * @return the matcher
+     */
+    public static GlobMatcher compileTypePattern(final String pattern) {
+        Tokens tokens = new Tokens();
+        if (pattern.equals(Pattern.REGULAR_WILDCARD) || pattern.equals(Pattern.EAGER_WILDCARD)) {
+            tokens.addWildcard(DOTS | BRACKETS, 1);
+        } else {
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '.' && i + 1 < pattern.length() && pattern.charAt(i + 1) == '.') {
+                    tokens.addWildcard(DOTS, 1);
+                    i++;
+                } else if (c == '*') {
+                    tokens.addWildcard(BRACKETS, 0);
+                } else {
+                    tokens.addChar(c);
+                }
+            }
+        }
+        return new GlobMatcher(pattern, tokens);
+    }
+
+    /**
+     * Compiles a name pattern.
+     *
+     * @param pattern the name pattern
+     * @return the matcher
+     */
+    public static GlobMatcher compileNamePattern(final String pattern) {
+        Tokens tokens = new Tokens();
+        if (pattern.equals(Pattern.REGULAR_WILDCARD)) {
+            tokens.addWildcard(DOTS, 1);
+        } else {
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '*') {
+                    tokens.addWildcard(0, 0);
+                } else if (c == '.') {
+                    tokens.addAnyChar();
+                } else {
+                    tokens.addChar(c);
+                }
+            }
+        }
+        return new GlobMatcher(pattern, tokens);
+    }
+
+    private GlobMatcher(final String pattern, final Tokens tokens) {
+        tokens.flushLiteral();
+        m_pattern = pattern;
+        int size = tokens.m_kinds.size();
+        m_kinds = new int[size];
+        m_literals = new String[size];
+        m_charClasses = new int[size];
+        m_minLengths = new int[size];
+        m_minRemaining = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            m_kinds[i] = ((Integer) tokens.m_kinds.get(i)).intValue();
+            m_literals[i] = (String) tokens.m_literals.get(i);
+            m_charClasses[i] = ((Integer) tokens.m_charClasses.get(i)).intValue();
+            m_minLengths[i] = ((Integer) tokens.m_minLengths.get(i)).intValue();
+        }
+        for (int i = size - 1; i >= 0; i--) {
+            m_minRemaining[i] = m_minRemaining[i + 1] + m_minLengths[i];
+        }
+        int first = 0;
+        int last = size;
+        if (size > 0 && m_kinds[0] == LITERAL) {
+            m_prefix = m_literals[0];
+            first = 1;
+        } else {
+            m_prefix = "";
+        }
+        if (last > first && m_kinds[last - 1] == LITERAL) {
+            m_suffix = m_literals[last - 1];
+            last--;
+        } else {
+            m_suffix = "";
+        }
+        m_first = first;
+        m_last = last;
+    }
+
+    /**
+     * Matches a name.
+     *
+     * @param name the name
+     * @return true if the whole name matches
+     */
+    public boolean matches(final String name) {
+        return matches(name, name.length());
+    }
+
+    /**
+     * Matches the first characters of a name.
+     *
+     * @param name   the name
+     * @param length the number of characters of the name to match
+     * @return true if the name truncated to length matches
+     */
+    public boolean matches(final String name, final int length) {
+        if (length < m_minRemaining[0]) {
+            return false;
+        }
+        if (!name.startsWith(m_prefix)) {
+            return false;
+        }
+        final int end = length - m_suffix.length();
+        if (!name.regionMatches(end, m_suffix, 0, m_suffix.length())) {
+            return false;
+        }
+        return match(m_first, m_prefix.length(), name, end);
+    }
+
+    /**
+     * Returns the literal prefix all the matched names start with.
+     *
+     * @return the prefix, possibly empty
+     */
+    public String getPrefix() {
+        return m_prefix;
+    }
+
+    /**
+     * Matches the tokens from the given one to the middle part end against the name, from the given position.
+     *
+     * @param token the first token to match
+     * @param pos   the position in the name
+     * @param name  the name
+     * @param end   the end position of the middle part in the name
+     * @return true if matched
+     */
+    private boolean match(int token, int pos, final String name, final int end) {
+        while (token < m_last) {
+            switch (m_kinds[token]) {
+                case LITERAL:
+                    String literal = m_literals[token];
+                    if (end - pos < literal.length() || !name.regionMatches(pos, literal, 0, literal.length())) {
+                        return false;
+                    }
+                    pos += literal.length();
+                    break;
+                case ANY_CHAR:
+                    if (pos >= end) {
+                        return false;
+                    }
+                    pos++;
+                    break;
+                default:
+                    final int charClass = m_charClasses[token];
+                    int max = pos;
+                    while (max < end && accept(charClass, name.charAt(max))) {
+                        max++;
+                    }
+                    final int min = pos + m_minLengths[token];
+                    if (token + 1 == m_last) {
+                        return max == end && min <= end;
+                    }
+                    final int remaining = m_minRemaining[token + 1] - m_minRemaining[m_last];
+                    for (int next = Math.min(max, end - remaining); next >= min; next--) {
+                        if (match(token + 1, next, name, end)) {
+                            return true;
+                        }
+                    }
+                    return false;
+            }
+            token++;
+        }
+        return pos == end;
+    }
+
+    private static boolean accept(final int charClass, final char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '$') {
+            return true;
+        } else if (c == '.') {
+            return (charClass & DOTS) != 0;
+        } else if (c == '[' || c == ']') {
+            return (charClass & BRACKETS) != 0;
+        }
+        return false;
+    }
+
+    public int hashCode() {
+        return m_pattern.hashCode();
+    }
+
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GlobMatcher)) {
+            return false;
+        }
+        final GlobMatcher obj = (GlobMatcher) o;
+        return m_pattern.equals(obj.m_pattern)
+               && Arrays.equals(m_kinds, obj.m_kinds)
+               && Arrays.equals(m_charClasses, obj.m_charClasses)
+               && Arrays.equals(m_minLengths, obj.m_minLengths);
+    }
+
+    public String toString() {
+        return m_pattern;
+    }
+
+    /**
+     * Token list being compiled.
+     */
+    private static final class Tokens {
+        final List m_kinds = new ArrayList();
+        final List m_literals = new ArrayList();
+        final List m_charClasses = new ArrayList();
+        final List m_minLengths = new ArrayList();
+        final StringBuffer m_literal = new StringBuffer();
+
+        void addChar(final char c) {
+            m_literal.append(c);
+        }
+
+        void addWildcard(final int charClass, final int minLength) {
+            flushLiteral();
+            add(WILDCARD, null, charClass, minLength);
+        }
+
+        void addAnyChar() {
+            flushLiteral();
+            add(ANY_CHAR, null, 0, 1);
+        }
+
+        void flushLiteral() {
+            if (m_literal.length() > 0) {
+                add(LITERAL, m_literal.toString(), 0, m_literal.length());
+                m_literal.setLength(0);
+            }
+        }
+
+        private void add(final int kind, final String literal, final int charClass, final int minLength) {
+            m_kinds.add(new Integer(kind));
+            m_literals.add(literal);
+            m_charClasses.add(new Integer(charClass));
+            m_minLengths.add(new Integer(minLength));
+        }
+    }
+}
@@ -8,7 +8,6 @@
 package org.codehaus.aspectwerkz.expression.regexp;
 
 import org.codehaus.aspectwerkz.expression.ExpressionException;
-import org.codehaus.aspectwerkz.util.Strings;
 
 import java.io.ObjectInputStream;
 
@@ -21,7 +20,7 @@ public class NamePattern extends Pattern {
     /**
      * The name pattern.
      */
-    protected transient com.karneim.util.collection.regex.Pattern m_namePattern;
+    protected transient GlobMatcher m_namePattern;
 
     /**
      * The name pattern as a string.
@@ -51,7 +50,7 @@ public class NamePattern extends Pattern {
         if (name.equals("")) {
             return false;
         }
-        return m_namePattern.contains(name);
+        return m_namePattern.matches(name);
     }
 
     /**
@@ -70,12 +69,7 @@ public class NamePattern extends Pattern {
      */
     protected void escape(String namePattern) {
         try {
-            if (namePattern.equals(REGULAR_WILDCARD)) {
-                namePattern = "[a-zA-Z0-9_$.]+";
-            } else {
-                namePattern = Strings.replaceSubString(namePattern, "*", "[a-zA-Z0-9_$]*");
-            }
-            m_namePattern = new com.karneim.util.collection.regex.Pattern(namePattern);
+            m_namePattern = GlobMatcher.compileNamePattern(namePattern);
         } catch (Throwable e) {
             throw new ExpressionException("type pattern is not well formed: " + namePattern, e);
         }
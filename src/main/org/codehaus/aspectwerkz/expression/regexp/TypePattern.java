@@ -11,9 +11,13 @@ import org.codehaus.aspectwerkz.expression.ExpressionException;
 import org.codehaus.aspectwerkz.expression.SubtypePatternType;
 import org.codehaus.aspectwerkz.proxy.ProxySubclassingStrategy;
 import org.codehaus.aspectwerkz.reflect.ClassInfo;
-import org.codehaus.aspectwerkz.util.Strings;
+import org.codehaus.aspectwerkz.reflect.impl.asm.AsmClassInfo;
+import org.codehaus.aspectwerkz.util.ClassLoaderMap;
 
 import java.io.ObjectInputStream;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * Implements the regular expression pattern matcher for types.
@@ -25,7 +29,7 @@ public class TypePattern extends Pattern {
     /**
      * The fully qualified type name.
      */
-    protected transient com.karneim.util.collection.regex.Pattern m_typeNamePattern;
+    protected transient GlobMatcher m_typeNamePattern;
 
     /**
      * The pattern as a string.
@@ -37,6 +41,11 @@ public class TypePattern extends Pattern {
      */
     private SubtypePatternType m_subtypePatternType;
 
+    /**
+     * The subtype verdicts (see {@link SubtypeVerdicts}) mapped to the class loaders of the class infos.
+     */
+    private transient ClassLoaderMap m_subtypeVerdicts;
+
     /**
      * Private constructor.
      *
@@ -47,6 +56,7 @@ public class TypePattern extends Pattern {
         m_pattern = pattern;
         m_subtypePatternType = subtypePatternType;
         escape(m_pattern);
+        initSubtypeVerdicts();
     }
 
     /**
@@ -57,14 +67,15 @@ public class TypePattern extends Pattern {
      */
     public boolean matches(String typeName) {
         // regular match
-        if (m_typeNamePattern.contains(typeName)) {
+        if (m_typeNamePattern.matches(typeName)) {
             return true;
         }
 
-        // fallback on subclassing proxy match and Cglib extension
+        // fallback on subclassing proxy match and Cglib extension, matching on the name without the suffix
+        int length;
         int awProxySuffixStart = typeName.indexOf(ProxySubclassingStrategy.PROXY_SUFFIX_START);
         if (awProxySuffixStart > 0) {
-            typeName = typeName.substring(0, awProxySuffixStart);
+            length = awProxySuffixStart;
         } else {
             int cglibFastClassSuffixStarg = typeName.indexOf("$$FastClassByCGLIB$$");
             if (cglibFastClassSuffixStarg > 0) {
@@ -73,16 +84,12 @@ public class TypePattern extends Pattern {
             }
             int cglibEnhancerSuffixStart = typeName.indexOf("$$EnhancerByCGLIB$$");
             if (cglibEnhancerSuffixStart > 0) {
-                typeName = typeName.substring(0, cglibEnhancerSuffixStart);
+                length = cglibEnhancerSuffixStart;
+            } else {
+                return false;
             }
         }
-        if (typeName == null) {
-            return false;
-        }
-        if (typeName.equals("")) {
-            return false;
-        }
-        return m_typeNamePattern.contains(typeName);
+        return m_typeNamePattern.matches(typeName, length);
     }
 
     /**
@@ -106,7 +113,10 @@ public class TypePattern extends Pattern {
 
     /**
      * Tries to finds a parse at some superclass in the hierarchy. <p/>Only checks for a class parse to allow early
-     * filtering. <p/>Recursive.
+     * filtering.
+     * <p/>
+     * The verdict is remembered per class info, until a class of its class loader or of the parents of its class
+     * loader is marked dirty or rebuilt with another hierarchy.
      *
      * @param classInfo the class info
      * @return boolean
@@ -115,6 +125,78 @@ public class TypePattern extends Pattern {
         if ((classInfo == null)) {
             return false;
         }
+        final ClassLoader loader = classInfo.getClassLoader();
+        final int version = AsmClassInfo.getHierarchyVersion(loader);
+        SubtypeVerdicts verdicts = (SubtypeVerdicts) m_subtypeVerdicts.get(loader);
+        if (verdicts == null) {
+            verdicts = (SubtypeVerdicts) m_subtypeVerdicts.putIfAbsent(loader, new SubtypeVerdicts());
+        }
+        Boolean verdict = verdicts.getVerdict(classInfo, version);
+        if (verdict == null) {
+            if (classInfo instanceof AsmClassInfo) {
+                verdict = matchSupertypeClosure(((AsmClassInfo) classInfo).getSupertypeClosure(), loader, verdicts) ?
+                          Boolean.TRUE : Boolean.FALSE;
+            } else {
+                verdict = matchHierarchy(classInfo) ? Boolean.TRUE : Boolean.FALSE;
+            }
+            verdicts.putVerdict(classInfo, verdict, version);
+        }
+        return verdict.booleanValue();
+    }
+
+    /**
+     * Tries to find a parse among the types of a supertype closure.
+     *
+     * @param closure  the type ids of the class and all its supertypes
+     * @param loader   the class loader of the type ids
+     * @param verdicts the subtype verdicts of the class loader
+     * @return boolean
+     */
+    private boolean matchSupertypeClosure(final BitSet closure,
+                                          final ClassLoader loader,
+                                          final SubtypeVerdicts verdicts) {
+        for (int id = 0; id < closure.length(); id++) {
+            if (closure.get(id) && matchesTypeId(id, loader, verdicts)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Matches the type name of a type id, remembering the result.
+     *
+     * @param typeId   the type id
+     * @param loader   the class loader of the type id
+     * @param verdicts the subtype verdicts of the class loader
+     * @return true if the type name matches
+     */
+    private boolean matchesTypeId(final int typeId, final ClassLoader loader, final SubtypeVerdicts verdicts) {
+        synchronized (verdicts) {
+            if (verdicts.m_checkedTypeIds.get(typeId)) {
+                return verdicts.m_matchingTypeIds.get(typeId);
+            }
+        }
+        final boolean matches = matches(AsmClassInfo.getTypeName(typeId, loader));
+        synchronized (verdicts) {
+            if (matches) {
+                verdicts.m_matchingTypeIds.set(typeId);
+            }
+            verdicts.m_checkedTypeIds.set(typeId);
+        }
+        return matches;
+    }
+
+    /**
+     * Tries to finds a parse at some superclass in the hierarchy, walking it. <p/>Recursive.
+     *
+     * @param classInfo the class info
+     * @return boolean
+     */
+    private boolean matchHierarchy(final ClassInfo classInfo) {
+        if ((classInfo == null)) {
+            return false;
+        }
 
         // parse the class/super class
         if (matches(classInfo.getName())) {
@@ -126,7 +208,7 @@ public class TypePattern extends Pattern {
             }
 
             // no parse; getClass the next superclass
-            return matchSuperClasses(classInfo.getSuperclass());
+            return matchHierarchy(classInfo.getSuperclass());
         }
     }
 
@@ -175,6 +257,18 @@ public class TypePattern extends Pattern {
         return m_pattern.equals(EAGER_WILDCARD);
     }
 
+    /**
+     * Returns the literal prefix that all the type names matched by this pattern start with.
+     * <p/>
+     * Returns an empty string if the pattern starts with a wildcard. Subtype patterns are not considered, the prefix
+     * only applies to the type name itself.
+     *
+     * @return the literal prefix of the pattern
+     */
+    public String getTypeNamePrefix() {
+        return m_typeNamePattern.getPrefix();
+    }
+
     /**
      * Returns the pattern as a string.
      *
@@ -195,17 +289,7 @@ public class TypePattern extends Pattern {
             typeName = (String) ABBREVIATIONS.get(pattern);
         }
         try {
-            if (typeName.equals(REGULAR_WILDCARD) || typeName.equals(EAGER_WILDCARD)) {
-                typeName = "[a-zA-Z0-9_$.\\[\\]]+";
-            } else {
-                // CAUTION: order matters
-                typeName = Strings.replaceSubString(typeName, "[", "\\[");
-                typeName = Strings.replaceSubString(typeName, "]", "\\]");
-                typeName = Strings.replaceSubString(typeName, "..", "[a-zA-Z0-9_$.]+");
-                typeName = Strings.replaceSubString(typeName, ".", "\\.");
-                typeName = Strings.replaceSubString(typeName, "*", "[a-zA-Z0-9_$\\[\\]]*");
-            }
-            m_typeNamePattern = new com.karneim.util.collection.regex.Pattern(typeName);
+            m_typeNamePattern = GlobMatcher.compileTypePattern(typeName);
         } catch (Throwable e) {
             throw new ExpressionException("type pattern is not well formed: " + pattern, e);
         }
@@ -221,6 +305,14 @@ public class TypePattern extends Pattern {
         ObjectInputStream.GetField fields = stream.readFields();
         m_pattern = (String) fields.get("m_pattern", null);
         escape(m_pattern);
+        initSubtypeVerdicts();
+    }
+
+    /**
+     * Creates the empty subtype verdict caches.
+     */
+    private void initSubtypeVerdicts() {
+        m_subtypeVerdicts = new ClassLoaderMap();
     }
 
     public int hashCode() {
@@ -255,4 +347,50 @@ public class TypePattern extends Pattern {
         }
         return o1.equals(o2);
     }
+
+    /**
+     * The subtype verdicts of the class infos of a class loader, and the type ids of the class loader the type name
+     * has been matched against.
+     * <p/>
+     * Guarded by itself. The verdicts are cleared when the hierarchy version of the class loader changes, the type
+     * ids stay valid as long as the class loader lives.
+     */
+    private static final class SubtypeVerdicts {
+
+        /**
+         * The class infos weakly referenced, mapped to Boolean.TRUE or Boolean.FALSE.
+         */
+        private final Map m_verdicts = new WeakHashMap();
+
+        private int m_version;
+
+        final BitSet m_checkedTypeIds = new BitSet();
+
+        final BitSet m_matchingTypeIds = new BitSet();
+
+        /**
+         * @param classInfo
+         * @param version   the current hierarchy version of the class loader
+         * @return the verdict, or null if none
+         */
+        synchronized Boolean getVerdict(final ClassInfo classInfo, final int version) {
+            if (m_version != version) {
+                m_verdicts.clear();
+                m_version = version;
+                return null;
+            }
+            return (Boolean) m_verdicts.get(classInfo);
+        }
+
+        /**
+         * @param classInfo
+         * @param verdict
+         * @param version   the hierarchy version of the class loader the verdict has been computed for
+         */
+        synchronized void putVerdict(final ClassInfo classInfo, final Boolean verdict, final int version) {
+            if (m_version == version) {
+                m_verdicts.put(classInfo, verdict);
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -9,9 +9,8 @@ package org.codehaus.aspectwerkz.intercept;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.lang.reflect.Field;
+import java.lang.reflect.Array;
 
-import gnu.trove.TIntObjectHashMap;
 import org.codehaus.aspectwerkz.reflect.ClassInfo;
 import org.codehaus.aspectwerkz.reflect.ReflectionInfo;
 import org.codehaus.aspectwerkz.reflect.impl.asm.AsmClassInfo;
@@ -23,11 +22,22 @@ import org.codehaus.aspectwerkz.transform.inlining.AsmHelper;
 import org.codehaus.aspectwerkz.transform.inlining.EmittedJoinPoint;
 import org.codehaus.aspectwerkz.transform.TransformationConstants;
 import org.codehaus.aspectwerkz.joinpoint.management.JoinPointType;
+import org.codehaus.aspectwerkz.util.ClassLoaderMap;
+import org.codehaus.aspectwerkz.util.ConcurrentReferenceMap;
 
 /**
  * Implementation of the <code>Advisable</code> mixin.
+ * <p/>
+ * The advice are kept in chains indexed by the advice slot of the join point, that is the index of the join point
+ * class in the woven class, given at weave time, plus the offset given to the woven class when its join points are
+ * registered, past the slots of its advisable superclasses. A chain is never modified once published: adding or removing an advice builds a new one and
+ * publishes it thru a volatile field, so that the advised calls read it without locking.
+ * <p/>
+ * The advice added with {@link #addClassAdvice(Class, String, Advice)} are kept in a chain shared by all the
+ * instances of the advisable class and of its subclasses. An instance only allocates its own chain when an advice is added to this
+ * instance with {@link #aw_addAdvice(String, Advice)}, and then sees the class advice followed by its own advice.
  *
- * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
+ * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
  * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
  */
 public class AdvisableImpl implements Advisable {
@@ -45,6 +55,17 @@ public class AdvisableImpl implements Advisable {
     public static final AfterReturningAdvice[] EMPTY_AFTER_RETURNING_ADVICE_ARRAY = new AfterReturningAdvice[0];
     public static final AfterThrowingAdvice[] EMPTY_AFTER_THROWING_ADVICE_ARRAY = new AfterThrowingAdvice[0];
 
+    /**
+     * The parsed pointcut expressions, shared by all the advisable classes.
+     */
+    private static final ConcurrentReferenceMap s_expressions = new ConcurrentReferenceMap(ConcurrentReferenceMap.SOFT);
+
+    /**
+     * The advisable classes, per class loader and then per class name. They are weakly referenced: the woven class
+     * holds its advisable class in a static field, so that the class loader is not kept by this map.
+     */
+    private static final ClassLoaderMap s_advisableClasses = new ClassLoaderMap();
+
     static {
         final Class clazz = AdvisableImpl.class;
         try {
@@ -55,13 +76,17 @@ public class AdvisableImpl implements Advisable {
     }
 
     private final Advisable m_targetInstance;
-    private final TIntObjectHashMap m_emittedJoinPoints;
+    private final AdvisableClass m_advisableClass;
+
+    /**
+     * The advice added to this instance only, null until the first one is added.
+     */
+    private volatile AdviceChain m_instanceAdviceChain;
 
-    private final TIntObjectHashMap m_aroundAdvice = new TIntObjectHashMap();
-    private final TIntObjectHashMap m_beforeAdvice = new TIntObjectHashMap();
-    private final TIntObjectHashMap m_afterAdvice = new TIntObjectHashMap();
-    private final TIntObjectHashMap m_afterReturningAdvice = new TIntObjectHashMap();
-    private final TIntObjectHashMap m_afterThrowingAdvice = new TIntObjectHashMap();
+    /**
+     * The class advice followed by the instance advice, rebuilt when any of them has changed.
+     */
+    private volatile MergedAdviceChain m_mergedAdviceChain;
 
     /**
      * Creates a new mixin impl.
@@ -75,32 +100,106 @@ public class AdvisableImpl implements Advisable {
             );
         }
         m_targetInstance = (Advisable) targetInstance;
+        m_advisableClass = getAdvisableClass(targetInstance.getClass());
+    }
 
-        try {
-            Field f = targetInstance.getClass().getDeclaredField("aw$emittedJoinPoints");
-            f.setAccessible(true);
-            m_emittedJoinPoints = (TIntObjectHashMap) f.get(null);
-        } catch (Exception e) {
-            throw new RuntimeException(
-                    "advisable mixin applied to target class cannot access reflective information: " + e.toString()
-            );
-        }
+    /**
+     * Registers a class made advisable.
+     * <p/>
+     * Called by the static initializer of the woven class before it registers its join points. The class keeps the
+     * returned advisable class in a static field for as long as it lives.
+     *
+     * @param klass the class made advisable
+     * @return the advisable class, typed as Object for the woven class
+     */
+    public static Object registerAdvisableClass(final Class klass) {
+        final AdvisableClass advisableClass = lookupAdvisableClass(klass);
+        if (advisableClass != null) {
+            return advisableClass;
+        }
+        // the superclass, if any, is initialized first and has already registered its join points
+        final Class superClass = klass.getSuperclass();
+        return putAdvisableClass(
+                klass, new AdvisableClass((superClass == null) ? null : findAdvisableClass(superClass))
+        );
+    }
+
+    /**
+     * Registers the join points of a class made advisable.
+     * <p/>
+     * Called by the static initializer of the woven class, before any of its instances can be created.
+     *
+     * @param klass      the class made advisable
+     * @param joinPoints the join points emitted in the class
+     * @return the offset of the advice slots of the join points, that the join points add to their index
+     */
+    public static int registerJoinPoints(final Class klass, final EmittedJoinPoint[] joinPoints) {
+        return ((AdvisableClass) registerAdvisableClass(klass)).addJoinPoints(joinPoints);
+    }
+
+    /**
+     * Adds an advice to all the instances of an advisable class, including the instances of its subclasses.
+     *
+     * @param advisableClass
+     * @param pointcut
+     * @param advice
+     */
+    public static void addClassAdvice(final Class advisableClass, final String pointcut, final Advice advice) {
+        getInitializedAdvisableClass(advisableClass).addAdvice(pointcut, advice, advisableClass);
+    }
+
+    /**
+     * Removes the advice of the given class that were added to all the instances of an advisable class.
+     *
+     * @param advisableClass
+     * @param pointcut
+     * @param adviceClass
+     */
+    public static void removeClassAdvice(final Class advisableClass, final String pointcut, final Class adviceClass) {
+        getInitializedAdvisableClass(advisableClass).removeAdvice(pointcut, adviceClass, advisableClass);
     }
 
     /**
+     * Adds an advice to this instance only.
+     *
      * @param pointcut
      * @param advice
      */
     public void aw_addAdvice(final String pointcut, final Advice advice) {
-        addAdvice(pointcut, advice);
+        final int[] joinPointIndexes = m_advisableClass.getMatchingJoinPointIndexes(
+                pointcut, m_targetInstance.getClass()
+        );
+        if (joinPointIndexes.length == 0) {
+            return;
+        }
+        synchronized (this) {
+            AdviceChain adviceChain = m_instanceAdviceChain;
+            if (adviceChain == null) {
+                adviceChain = AdviceChain.EMPTY;
+            }
+            m_instanceAdviceChain = adviceChain.addAdvice(joinPointIndexes, advice);
+        }
     }
 
     /**
+     * Removes the advice of the given class that were added to this instance only.
+     *
      * @param pointcut
      * @param adviceClass
      */
     public void aw_removeAdvice(final String pointcut, final Class adviceClass) {
-        removeAdvice(pointcut, adviceClass);
+        if (m_instanceAdviceChain == null) {
+            return;
+        }
+        final int[] joinPointIndexes = m_advisableClass.getMatchingJoinPointIndexes(
+                pointcut, m_targetInstance.getClass()
+        );
+        if (joinPointIndexes.length == 0) {
+            return;
+        }
+        synchronized (this) {
+            m_instanceAdviceChain = m_instanceAdviceChain.removeAdvice(joinPointIndexes, adviceClass);
+        }
     }
 
     /**
@@ -108,12 +207,7 @@ public class AdvisableImpl implements Advisable {
      * @return
      */
     public AroundAdvice[] aw$getAroundAdvice(final int joinPointIndex) {
-        Object advice = m_aroundAdvice.get(joinPointIndex);
-        if (advice == null) {
-            return EMPTY_AROUND_ADVICE_ARRAY;
-        } else {
-            return (AroundAdvice[]) advice;
-        }
+        return getAdviceChain().getAroundAdvice(joinPointIndex);
     }
 
     /**
@@ -121,12 +215,7 @@ public class AdvisableImpl implements Advisable {
      * @return
      */
     public BeforeAdvice[] aw$getBeforeAdvice(final int joinPointIndex) {
-        Object advice = m_beforeAdvice.get(joinPointIndex);
-        if (advice == null) {
-            return EMPTY_BEFORE_ADVICE_ARRAY;
-        } else {
-            return (BeforeAdvice[]) advice;
-        }
+        return getAdviceChain().getBeforeAdvice(joinPointIndex);
     }
 
     /**
@@ -134,12 +223,7 @@ public class AdvisableImpl implements Advisable {
      * @return
      */
     public AfterAdvice[] aw$getAfterAdvice(final int joinPointIndex) {
-        Object advice = m_afterAdvice.get(joinPointIndex);
-        if (advice == null) {
-            return EMPTY_AFTER_ADVICE_ARRAY;
-        } else {
-            return (AfterAdvice[]) advice;
-        }
+        return getAdviceChain().getAfterAdvice(joinPointIndex);
     }
 
     /**
@@ -147,12 +231,7 @@ public class AdvisableImpl implements Advisable {
      * @return
      */
     public AfterReturningAdvice[] aw$getAfterReturningAdvice(final int joinPointIndex) {
-        Object advice = m_afterReturningAdvice.get(joinPointIndex);
-        if (advice == null) {
-            return EMPTY_AFTER_RETURNING_ADVICE_ARRAY;
-        } else {
-            return (AfterReturningAdvice[]) advice;
-        }
+        return getAdviceChain().getAfterReturningAdvice(joinPointIndex);
     }
 
     /**
@@ -160,299 +239,130 @@ public class AdvisableImpl implements Advisable {
      * @return
      */
     public AfterThrowingAdvice[] aw$getAfterThrowingAdvice(final int joinPointIndex) {
-        Object advice = m_afterThrowingAdvice.get(joinPointIndex);
-        if (advice == null) {
-            return EMPTY_AFTER_THROWING_ADVICE_ARRAY;
-        } else {
-            return (AfterThrowingAdvice[]) advice;
-        }
+        return getAdviceChain().getAfterThrowingAdvice(joinPointIndex);
     }
 
     /**
-     * @param pointcut
-     * @param advice
-     */
-    private void addAdvice(final String pointcut,
-                           final Advice advice) {
-        ExpressionInfo expressionInfo = new ExpressionInfo(pointcut, EXPRESSION_NAMESPACE);
-        Object[] emittedJoinPoints = m_emittedJoinPoints.getValues();
-        for (int i = 0; i < emittedJoinPoints.length; i++) {
-            EmittedJoinPoint emittedJoinPoint = (EmittedJoinPoint) emittedJoinPoints[i];
-            if (match(expressionInfo, PointcutType.EXECUTION, emittedJoinPoint)
-                || match(expressionInfo, PointcutType.CALL, emittedJoinPoint)
-                || match(expressionInfo, PointcutType.HANDLER, emittedJoinPoint)
-                || match(expressionInfo, PointcutType.GET, emittedJoinPoint)
-                || match(expressionInfo, PointcutType.SET, emittedJoinPoint)
-                //note: STATIC INIT is useless since the class is already loaded to manipulate the instance
-            ) {
-                int hash = emittedJoinPoint.getJoinPointClassName().hashCode();
-                addAroundAdvice(advice, hash);
-                addBeforeAdvice(advice, hash);
-                addAfterAdvice(advice, hash);
-                addAfterReturningAdvice(advice, hash);
-                addAfterThrowingAdvice(advice, hash);
-            }
-        }
-    }
-
-    /**
-     * @param pointcut
-     * @param adviceClass
-     */
-    private void removeAdvice(final String pointcut,
-                              final Class adviceClass) {
-        ExpressionInfo expressionInfo = new ExpressionInfo(pointcut, EXPRESSION_NAMESPACE);
-        Object[] emittedJoinPoints = m_emittedJoinPoints.getValues();
-        for (int i = 0; i < emittedJoinPoints.length; i++) {
-            EmittedJoinPoint emittedJoinPoint = (EmittedJoinPoint) emittedJoinPoints[i];
-            if (match(expressionInfo, PointcutType.EXECUTION, emittedJoinPoint)
-                || match(expressionInfo, PointcutType.CALL, emittedJoinPoint)
-                || match(expressionInfo, PointcutType.HANDLER, emittedJoinPoint)
-                || match(expressionInfo, PointcutType.GET, emittedJoinPoint)
-                || match(expressionInfo, PointcutType.SET, emittedJoinPoint)
-                //note: STATIC INIT is useless since the class is already loaded to manipulate the instance
-            ) {
-                int hash = emittedJoinPoint.getJoinPointClassName().hashCode();
-                removeAroundAdvice(adviceClass, hash);
-                removeBeforeAdvice(adviceClass, hash);
-                removeAfterAdvice(adviceClass, hash);
-                removeAfterReturningAdvice(adviceClass, hash);
-                removeAfterThrowingAdvice(adviceClass, hash);
-            }
-        }
-    }
-
-    /**
-     * @param advice
-     * @param joinPointHash
-     */
-    private void addAroundAdvice(final Advice advice, int joinPointHash) {
-        if (advice instanceof AroundAdvice) {
-            AroundAdvice aroundAdvice = (AroundAdvice) advice;
-            AroundAdvice[] advices;
-            AroundAdvice[] olds = aw$getAroundAdvice(joinPointHash);
-            if (olds != null) {
-                advices = new AroundAdvice[olds.length + 1];
-                System.arraycopy(olds, 0, advices, 0, olds.length);
-                advices[advices.length - 1] = aroundAdvice;
-            } else {
-                advices = new AroundAdvice[]{aroundAdvice};
-            }
-            m_aroundAdvice.put(joinPointHash, advices);
-        }
-    }
-
-    /**
-     * @param advice
-     * @param joinPointHash
+     * Returns the advice chain of this instance, that is the shared class chain, including the advice of the
+     * advisable superclasses, unless advice were added to this instance.
+     *
+     * @return
      */
-    private void addBeforeAdvice(final Advice advice, int joinPointHash) {
-        if (advice instanceof BeforeAdvice) {
-            BeforeAdvice beforeAdvice = (BeforeAdvice) advice;
-            BeforeAdvice[] advices;
-            BeforeAdvice[] olds = aw$getBeforeAdvice(joinPointHash);
-            if (olds != null) {
-                advices = new BeforeAdvice[olds.length + 1];
-                System.arraycopy(olds, 0, advices, 0, olds.length);
-                advices[advices.length - 1] = beforeAdvice;
-            } else {
-                advices = new BeforeAdvice[]{beforeAdvice};
-            }
-            m_beforeAdvice.put(joinPointHash, advices);
-        }
+    private AdviceChain getAdviceChain() {
+        final AdviceChain classAdviceChain = m_advisableClass.getResolvedAdviceChain();
+        final AdviceChain instanceAdviceChain = m_instanceAdviceChain;
+        if (instanceAdviceChain == null) {
+            return classAdviceChain;
+        }
+        MergedAdviceChain mergedAdviceChain = m_mergedAdviceChain;
+        if (mergedAdviceChain == null
+            || mergedAdviceChain.classAdviceChain != classAdviceChain
+            || mergedAdviceChain.instanceAdviceChain != instanceAdviceChain) {
+            // racy but safe: the merged chain is checked against the chains it was built from
+            mergedAdviceChain = new MergedAdviceChain(classAdviceChain, instanceAdviceChain);
+            m_mergedAdviceChain = mergedAdviceChain;
+        }
+        return mergedAdviceChain.adviceChain;
     }
 
     /**
-     * @param advice
-     * @param joinPointHash
-     */
-    private void addAfterAdvice(final Advice advice, int joinPointHash) {
-        if (advice instanceof AfterAdvice) {
-            AfterAdvice afterFinallyAdvice = (AfterAdvice) advice;
-            AfterAdvice[] advices;
-            AfterAdvice[] olds = aw$getAfterAdvice(joinPointHash);
-            if (olds != null) {
-                advices = new AfterAdvice[olds.length + 1];
-                System.arraycopy(olds, 0, advices, 0, olds.length);
-                advices[advices.length - 1] = afterFinallyAdvice;
-            } else {
-                advices = new AfterAdvice[]{afterFinallyAdvice};
-            }
-            m_afterAdvice.put(joinPointHash, advices);
-        }
-    }
-
-    /**
-     * @param advice
-     * @param joinPointHash
+     * Returns the advisable class of the given class, that is the class itself or the nearest superclass that was
+     * made advisable.
+     *
+     * @param klass
+     * @return
      */
-    private void addAfterReturningAdvice(final Advice advice, int joinPointHash) {
-        if (advice instanceof AfterReturningAdvice) {
-            AfterReturningAdvice afterReturningAdvice = (AfterReturningAdvice) advice;
-            AfterReturningAdvice[] advices;
-            AfterReturningAdvice[] olds = aw$getAfterReturningAdvice(joinPointHash);
-            if (olds != null) {
-                advices = new AfterReturningAdvice[olds.length + 1];
-                System.arraycopy(olds, 0, advices, 0, olds.length);
-                advices[advices.length - 1] = afterReturningAdvice;
-            } else {
-                advices = new AfterReturningAdvice[]{afterReturningAdvice};
-            }
-            m_afterReturningAdvice.put(joinPointHash, advices);
+    private static AdvisableClass getAdvisableClass(final Class klass) {
+        final AdvisableClass advisableClass = findAdvisableClass(klass);
+        if (advisableClass != null) {
+            return advisableClass;
         }
+        return putAdvisableClass(klass, new AdvisableClass(null));
     }
 
     /**
-     * @param advice
-     * @param joinPointHash
+     * @param klass
+     * @return the advisable class registered for the class or its nearest superclass, or null if none
      */
-    private void addAfterThrowingAdvice(final Advice advice, int joinPointHash) {
-        if (advice instanceof AfterThrowingAdvice) {
-            AfterThrowingAdvice afterThrowingAdvice = (AfterThrowingAdvice) advice;
-            AfterThrowingAdvice[] advices;
-            AfterThrowingAdvice[] olds = aw$getAfterThrowingAdvice(joinPointHash);
-            if (olds != null) {
-                advices = new AfterThrowingAdvice[olds.length + 1];
-                System.arraycopy(olds, 0, advices, 0, olds.length);
-                advices[advices.length - 1] = afterThrowingAdvice;
-            } else {
-                advices = new AfterThrowingAdvice[]{afterThrowingAdvice};
+    private static AdvisableClass findAdvisableClass(final Class klass) {
+        for (Class superClass = klass; superClass != null; superClass = superClass.getSuperclass()) {
+            final AdvisableClass advisableClass = lookupAdvisableClass(superClass);
+            if (advisableClass != null) {
+                return advisableClass;
             }
-            m_afterThrowingAdvice.put(joinPointHash, advices);
         }
+        return null;
     }
 
     /**
-     * @param adviceClass
-     * @param joinPointHash
+     * Returns the advisable class of the given class once the class has been initialized, so that its join points
+     * are registered.
+     *
+     * @param klass
+     * @return
      */
-    private void removeAroundAdvice(final Class adviceClass, int joinPointHash) {
-        if (isAroundAdvice(adviceClass)) {
-            AroundAdvice[] oldArray = aw$getAroundAdvice(joinPointHash);
-            if (oldArray.length == 0) {
-            } else if (oldArray.length == 1) {
-                m_aroundAdvice.put(joinPointHash, EMPTY_AROUND_ADVICE_ARRAY);
-            } else {
-                List newArrayList = new ArrayList();
-                for (int i = 0; i < oldArray.length; i++) {
-                    AroundAdvice aroundAdvice = oldArray[i];
-                    if (!aroundAdvice.getClass().equals(adviceClass)) {
-                        newArrayList.add(aroundAdvice);
-                    }
-                }
-                m_aroundAdvice.put(
-                        joinPointHash,
-                        (AroundAdvice[]) newArrayList.toArray(new AroundAdvice[newArrayList.size()])
-                );
-            }
+    private static AdvisableClass getInitializedAdvisableClass(final Class klass) {
+        if (!Advisable.class.isAssignableFrom(klass)) {
+            throw new RuntimeException(
+                    "class [" + klass.getName() + "] has not been made advisable"
+            );
         }
-    }
-
-    /**
-     * @param adviceClass
-     * @param joinPointHash
-     */
-    private void removeBeforeAdvice(final Class adviceClass, int joinPointHash) {
-        if (isBeforeAdvice(adviceClass)) {
-            BeforeAdvice[] oldArray = aw$getBeforeAdvice(joinPointHash);
-            if (oldArray.length == 0) {
-            } else if (oldArray.length == 1) {
-                m_beforeAdvice.put(joinPointHash, EMPTY_BEFORE_ADVICE_ARRAY);
-            } else {
-                List newArrayList = new ArrayList();
-                for (int i = 0; i < oldArray.length; i++) {
-                    BeforeAdvice beforeAdvice = oldArray[i];
-                    if (!beforeAdvice.getClass().equals(adviceClass)) {
-                        newArrayList.add(beforeAdvice);
-                    }
-                }
-                m_beforeAdvice.put(
-                        joinPointHash,
-                        (BeforeAdvice[]) newArrayList.toArray(new BeforeAdvice[newArrayList.size()])
-                );
-            }
+        try {
+            Class.forName(klass.getName(), true, klass.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("could not initialize advisable class [" + klass.getName() + "]: " + e.toString());
         }
+        return getAdvisableClass(klass);
     }
 
     /**
-     * @param adviceClass
-     * @param joinPointHash
+     * @param klass
+     * @return the advisable class registered for the class, or null if none
      */
-    private void removeAfterAdvice(final Class adviceClass, int joinPointHash) {
-        if (isAfterAdvice(adviceClass)) {
-            AfterAdvice[] oldArray = aw$getAfterAdvice(joinPointHash);
-            if (oldArray.length == 0) {
-            } else if (oldArray.length == 1) {
-                m_afterAdvice.put(joinPointHash, EMPTY_AFTER_ADVICE_ARRAY);
-            } else {
-                List newArrayList = new ArrayList();
-                for (int i = 0; i < oldArray.length; i++) {
-                    AfterAdvice afterAdvice = oldArray[i];
-                    if (!afterAdvice.getClass().equals(adviceClass)) {
-                        newArrayList.add(afterAdvice);
-                    }
-                }
-                m_afterAdvice.put(
-                        joinPointHash,
-                        (AfterAdvice[]) newArrayList.toArray(new AfterAdvice[newArrayList.size()])
-                );
-            }
-        }
+    private static AdvisableClass lookupAdvisableClass(final Class klass) {
+        final ConcurrentReferenceMap advisableClassesByName = (ConcurrentReferenceMap) s_advisableClasses.get(
+                klass.getClassLoader()
+        );
+        if (advisableClassesByName == null) {
+            return null;
+        }
+        return (AdvisableClass) advisableClassesByName.get(klass.getName());
     }
 
     /**
-     * @param adviceClass
-     * @param joinPointHash
+     * @param klass
+     * @param advisableClass
+     * @return the advisable class registered for the class, that is the given one unless another one was
+     *         registered concurrently
      */
-    private void removeAfterReturningAdvice(final Class adviceClass, int joinPointHash) {
-        if (isAfterReturningAdvice(adviceClass)) {
-            AfterReturningAdvice[] oldArray = aw$getAfterReturningAdvice(joinPointHash);
-            if (oldArray.length == 0) {
-            } else if (oldArray.length == 1) {
-                m_afterReturningAdvice.put(joinPointHash, EMPTY_AFTER_RETURNING_ADVICE_ARRAY);
-            } else {
-                List newArrayList = new ArrayList();
-                for (int i = 0; i < oldArray.length; i++) {
-                    AfterReturningAdvice afterReturningAdvice = oldArray[i];
-                    if (!afterReturningAdvice.getClass().equals(adviceClass)) {
-                        newArrayList.add(afterReturningAdvice);
-                    }
-                }
-                m_afterReturningAdvice.put(
-                        joinPointHash,
-                        (AfterReturningAdvice[]) newArrayList.toArray(new AfterReturningAdvice[newArrayList.size()])
-                );
-            }
+    private static AdvisableClass putAdvisableClass(final Class klass, final AdvisableClass advisableClass) {
+        final ClassLoader loader = klass.getClassLoader();
+        ConcurrentReferenceMap advisableClassesByName = (ConcurrentReferenceMap) s_advisableClasses.get(loader);
+        if (advisableClassesByName == null) {
+            advisableClassesByName = (ConcurrentReferenceMap) s_advisableClasses.putIfAbsent(
+                    loader, new ConcurrentReferenceMap(ConcurrentReferenceMap.WEAK)
+            );
         }
+        return (AdvisableClass) advisableClassesByName.putIfAbsent(klass.getName(), advisableClass);
     }
 
     /**
-     * @param adviceClass
-     * @param joinPointHash
+     * Returns the parsed pointcut expression.
+     *
+     * @param pointcut
+     * @return
      */
-    private void removeAfterThrowingAdvice(final Class adviceClass, int joinPointHash) {
-        if (isAfterThrowingAdvice(adviceClass)) {
-            AfterThrowingAdvice[] oldArray = aw$getAfterThrowingAdvice(joinPointHash);
-            if (oldArray.length == 0) {
-            } else if (oldArray.length == 1) {
-                m_afterThrowingAdvice.put(joinPointHash, EMPTY_AFTER_THROWING_ADVICE_ARRAY);
-            } else {
-                List newArrayList = new ArrayList();
-                for (int i = 0; i < oldArray.length; i++) {
-                    AfterThrowingAdvice advice = oldArray[i];
-                    if (!advice.getClass().equals(adviceClass)) {
-                        newArrayList.add(advice);
-                    }
-                }
-                m_afterThrowingAdvice.put(
-                        joinPointHash,
-                        (AfterThrowingAdvice[]) newArrayList.toArray(new AfterThrowingAdvice[newArrayList.size()])
-                );
-            }
+    private static ExpressionInfo getExpressionInfo(final String pointcut) {
+        ExpressionInfo expressionInfo = (ExpressionInfo) s_expressions.get(pointcut);
+        if (expressionInfo == null) {
+            expressionInfo = (ExpressionInfo) s_expressions.putIfAbsent(
+                    pointcut, new ExpressionInfo(pointcut, EXPRESSION_NAMESPACE)
+            );
         }
+        return expressionInfo;
     }
 
-    private boolean isAroundAdvice(final Class adviceClass) {
+    private static boolean isAroundAdvice(final Class adviceClass) {
         if (adviceClass == AroundAdvice.class) {
             return true;
         }
@@ -466,7 +376,7 @@ public class AdvisableImpl implements Advisable {
         return false;
     }
 
-    private boolean isBeforeAdvice(final Class adviceClass) {
+    private static boolean isBeforeAdvice(final Class adviceClass) {
         if (adviceClass == BeforeAdvice.class) {
             return true;
         }
@@ -480,7 +390,7 @@ public class AdvisableImpl implements Advisable {
         return false;
     }
 
-    private boolean isAfterAdvice(final Class adviceClass) {
+    private static boolean isAfterAdvice(final Class adviceClass) {
         if (adviceClass == AfterAdvice.class) {
             return true;
         }
@@ -494,7 +404,7 @@ public class AdvisableImpl implements Advisable {
         return false;
     }
 
-    private boolean isAfterReturningAdvice(final Class adviceClass) {
+    private static boolean isAfterReturningAdvice(final Class adviceClass) {
         if (adviceClass == AfterReturningAdvice.class) {
             return true;
         }
@@ -508,7 +418,7 @@ public class AdvisableImpl implements Advisable {
         return false;
     }
 
-    private boolean isAfterThrowingAdvice(final Class adviceClass) {
+    private static boolean isAfterThrowingAdvice(final Class adviceClass) {
         if (adviceClass == AfterThrowingAdvice.class) {
             return true;
         }
@@ -528,11 +438,12 @@ public class AdvisableImpl implements Advisable {
      * @param expression
      * @param pointcutType
      * @param emittedJoinPoint
+     * @param klass            the advisable class
      * @return
      */
-    private boolean match(ExpressionInfo expression, PointcutType pointcutType, EmittedJoinPoint emittedJoinPoint) {
-        ClassInfo callerClassInfo = JavaClassInfo.getClassInfo(m_targetInstance.getClass());
-        ClassInfo calleeClassInfo = AsmClassInfo.getClassInfo(emittedJoinPoint.getCalleeClassName(), m_targetInstance.getClass().getClassLoader());
+    private static boolean match(ExpressionInfo expression, PointcutType pointcutType, EmittedJoinPoint emittedJoinPoint, Class klass) {
+        ClassInfo callerClassInfo = JavaClassInfo.getClassInfo(getCallerClass(emittedJoinPoint, klass));
+        ClassInfo calleeClassInfo = AsmClassInfo.getClassInfo(emittedJoinPoint.getCalleeClassName(), klass.getClassLoader());
 
         // early match
         if (!expression.getAdvisedClassFilterExpression().match(new ExpressionContext(pointcutType, calleeClassInfo, callerClassInfo))) {
@@ -601,4 +512,506 @@ public class AdvisableImpl implements Advisable {
 
         return expression.getExpression().match(new ExpressionContext(pointcutType, reflectionInfo, withinInfo));
     }
+
+    /**
+     * Returns the class in which the join point was emitted, that is the advisable class or one of its superclasses.
+     *
+     * @param emittedJoinPoint
+     * @param klass            the advisable class
+     * @return
+     */
+    private static Class getCallerClass(final EmittedJoinPoint emittedJoinPoint, final Class klass) {
+        final String callerClassName = emittedJoinPoint.getCallerClassName().replace('/', '.');
+        for (Class superClass = klass; superClass != null; superClass = superClass.getSuperclass()) {
+            if (superClass.getName().equals(callerClassName)) {
+                return superClass;
+            }
+        }
+        return klass;
+    }
+
+    /**
+     * An immutable set of advice arrays, indexed by join point index.
+     */
+    private static final class AdviceChain {
+
+        static final AdviceChain EMPTY = new AdviceChain(null, null, null, null, null);
+
+        private final AroundAdvice[][] m_aroundAdvice;
+        private final BeforeAdvice[][] m_beforeAdvice;
+        private final AfterAdvice[][] m_afterAdvice;
+        private final AfterReturningAdvice[][] m_afterReturningAdvice;
+        private final AfterThrowingAdvice[][] m_afterThrowingAdvice;
+
+        AdviceChain(final AroundAdvice[][] aroundAdvice,
+                    final BeforeAdvice[][] beforeAdvice,
+                    final AfterAdvice[][] afterAdvice,
+                    final AfterReturningAdvice[][] afterReturningAdvice,
+                    final AfterThrowingAdvice[][] afterThrowingAdvice) {
+            m_aroundAdvice = aroundAdvice;
+            m_beforeAdvice = beforeAdvice;
+            m_afterAdvice = afterAdvice;
+            m_afterReturningAdvice = afterReturningAdvice;
+            m_afterThrowingAdvice = afterThrowingAdvice;
+        }
+
+        AroundAdvice[] getAroundAdvice(final int joinPointIndex) {
+            final AroundAdvice[][] advice = m_aroundAdvice;
+            if (advice == null || joinPointIndex >= advice.length || advice[joinPointIndex] == null) {
+                return EMPTY_AROUND_ADVICE_ARRAY;
+            } else {
+                return advice[joinPointIndex];
+            }
+        }
+
+        BeforeAdvice[] getBeforeAdvice(final int joinPointIndex) {
+            final BeforeAdvice[][] advice = m_beforeAdvice;
+            if (advice == null || joinPointIndex >= advice.length || advice[joinPointIndex] == null) {
+                return EMPTY_BEFORE_ADVICE_ARRAY;
+            } else {
+                return advice[joinPointIndex];
+            }
+        }
+
+        AfterAdvice[] getAfterAdvice(final int joinPointIndex) {
+            final AfterAdvice[][] advice = m_afterAdvice;
+            if (advice == null || joinPointIndex >= advice.length || advice[joinPointIndex] == null) {
+                return EMPTY_AFTER_ADVICE_ARRAY;
+            } else {
+                return advice[joinPointIndex];
+            }
+        }
+
+        AfterReturningAdvice[] getAfterReturningAdvice(final int joinPointIndex) {
+            final AfterReturningAdvice[][] advice = m_afterReturningAdvice;
+            if (advice == null || joinPointIndex >= advice.length || advice[joinPointIndex] == null) {
+                return EMPTY_AFTER_RETURNING_ADVICE_ARRAY;
+            } else {
+                return advice[joinPointIndex];
+            }
+        }
+
+        AfterThrowingAdvice[] getAfterThrowingAdvice(final int joinPointIndex) {
+            final AfterThrowingAdvice[][] advice = m_afterThrowingAdvice;
+            if (advice == null || joinPointIndex >= advice.length || advice[joinPointIndex] == null) {
+                return EMPTY_AFTER_THROWING_ADVICE_ARRAY;
+            } else {
+                return advice[joinPointIndex];
+            }
+        }
+
+        /**
+         * Returns a new chain with the advice appended at the given join points.
+         *
+         * @param joinPointIndexes
+         * @param advice
+         * @return
+         */
+        AdviceChain addAdvice(final int[] joinPointIndexes, final Advice advice) {
+            return new AdviceChain(
+                    (advice instanceof AroundAdvice) ?
+                    (AroundAdvice[][]) addAdvice(m_aroundAdvice, joinPointIndexes, advice, EMPTY_AROUND_ADVICE_ARRAY) :
+                    m_aroundAdvice,
+                    (advice instanceof BeforeAdvice) ?
+                    (BeforeAdvice[][]) addAdvice(m_beforeAdvice, joinPointIndexes, advice, EMPTY_BEFORE_ADVICE_ARRAY) :
+                    m_beforeAdvice,
+                    (advice instanceof AfterAdvice) ?
+                    (AfterAdvice[][]) addAdvice(m_afterAdvice, joinPointIndexes, advice, EMPTY_AFTER_ADVICE_ARRAY) :
+                    m_afterAdvice,
+                    (advice instanceof AfterReturningAdvice) ?
+                    (AfterReturningAdvice[][]) addAdvice(
+                            m_afterReturningAdvice, joinPointIndexes, advice, EMPTY_AFTER_RETURNING_ADVICE_ARRAY
+                    ) :
+                    m_afterReturningAdvice,
+                    (advice instanceof AfterThrowingAdvice) ?
+                    (AfterThrowingAdvice[][]) addAdvice(
+                            m_afterThrowingAdvice, joinPointIndexes, advice, EMPTY_AFTER_THROWING_ADVICE_ARRAY
+                    ) :
+                    m_afterThrowingAdvice
+            );
+        }
+
+        /**
+         * Returns a new chain without the advice that are instances of the given class at the given join points, so
+         * that advice can be removed by their advice interface as well as by their implementation class.
+         *
+         * @param joinPointIndexes
+         * @param adviceClass
+         * @return
+         */
+        AdviceChain removeAdvice(final int[] joinPointIndexes, final Class adviceClass) {
+            return new AdviceChain(
+                    isAroundAdvice(adviceClass) ?
+                    (AroundAdvice[][]) removeAdvice(m_aroundAdvice, joinPointIndexes, adviceClass) :
+                    m_aroundAdvice,
+                    isBeforeAdvice(adviceClass) ?
+                    (BeforeAdvice[][]) removeAdvice(m_beforeAdvice, joinPointIndexes, adviceClass) :
+                    m_beforeAdvice,
+                    isAfterAdvice(adviceClass) ?
+                    (AfterAdvice[][]) removeAdvice(m_afterAdvice, joinPointIndexes, adviceClass) :
+                    m_afterAdvice,
+                    isAfterReturningAdvice(adviceClass) ?
+                    (AfterReturningAdvice[][]) removeAdvice(m_afterReturningAdvice, joinPointIndexes, adviceClass) :
+                    m_afterReturningAdvice,
+                    isAfterThrowingAdvice(adviceClass) ?
+                    (AfterThrowingAdvice[][]) removeAdvice(m_afterThrowingAdvice, joinPointIndexes, adviceClass) :
+                    m_afterThrowingAdvice
+            );
+        }
+
+        /**
+         * Returns a new chain with the advice of the first chain followed by the advice of the second one.
+         *
+         * @param first
+         * @param second
+         * @return
+         */
+        static AdviceChain merge(final AdviceChain first, final AdviceChain second) {
+            return new AdviceChain(
+                    (AroundAdvice[][]) mergeAdvice(
+                            first.m_aroundAdvice, second.m_aroundAdvice, EMPTY_AROUND_ADVICE_ARRAY
+                    ),
+                    (BeforeAdvice[][]) mergeAdvice(
+                            first.m_beforeAdvice, second.m_beforeAdvice, EMPTY_BEFORE_ADVICE_ARRAY
+                    ),
+                    (AfterAdvice[][]) mergeAdvice(
+                            first.m_afterAdvice, second.m_afterAdvice, EMPTY_AFTER_ADVICE_ARRAY
+                    ),
+                    (AfterReturningAdvice[][]) mergeAdvice(
+                            first.m_afterReturningAdvice, second.m_afterReturningAdvice, EMPTY_AFTER_RETURNING_ADVICE_ARRAY
+                    ),
+                    (AfterThrowingAdvice[][]) mergeAdvice(
+                            first.m_afterThrowingAdvice, second.m_afterThrowingAdvice, EMPTY_AFTER_THROWING_ADVICE_ARRAY
+                    )
+            );
+        }
+
+        /**
+         * Returns a copy of the advice arrays with the advice appended at the given join points.
+         *
+         * @param advices          the current advice arrays, or null if none
+         * @param joinPointIndexes
+         * @param advice
+         * @param emptyAdviceArray an empty array of the advice type
+         * @return the new advice arrays
+         */
+        private static Object[][] addAdvice(final Object[][] advices,
+                                            final int[] joinPointIndexes,
+                                            final Advice advice,
+                                            final Object[] emptyAdviceArray) {
+            int length = (advices == null) ? 0 : advices.length;
+            for (int i = 0; i < joinPointIndexes.length; i++) {
+                length = Math.max(length, joinPointIndexes[i] + 1);
+            }
+            final Object[][] newAdvices = copyAdvices(advices, length, emptyAdviceArray);
+            final Object[] addedAdvice = (Object[]) Array.newInstance(
+                    emptyAdviceArray.getClass().getComponentType(), 1
+            );
+            addedAdvice[0] = advice;
+            for (int i = 0; i < joinPointIndexes.length; i++) {
+                newAdvices[joinPointIndexes[i]] = concat(newAdvices[joinPointIndexes[i]], addedAdvice, emptyAdviceArray);
+            }
+            return newAdvices;
+        }
+
+        /**
+         * Returns a copy of the advice arrays without the advice that are instances of the given class at the given
+         * join points.
+         *
+         * @param advices          the current advice arrays, or null if none
+         * @param joinPointIndexes
+         * @param adviceClass
+         * @return the new advice arrays
+         */
+        private static Object[][] removeAdvice(final Object[][] advices,
+                                               final int[] joinPointIndexes,
+                                               final Class adviceClass) {
+            if (advices == null) {
+                return null;
+            }
+            final Object[][] newAdvices = copyAdvices(
+                    advices, advices.length, (Object[]) Array.newInstance(
+                            advices.getClass().getComponentType().getComponentType(), 0
+                    )
+            );
+            for (int i = 0; i < joinPointIndexes.length; i++) {
+                if (joinPointIndexes[i] >= newAdvices.length) {
+                    continue;
+                }
+                final Object[] olds = newAdvices[joinPointIndexes[i]];
+                if (olds == null) {
+                    continue;
+                }
+                final List newArrayList = new ArrayList();
+                for (int j = 0; j < olds.length; j++) {
+                    if (!adviceClass.isInstance(olds[j])) {
+                        newArrayList.add(olds[j]);
+                    }
+                }
+                if (newArrayList.isEmpty()) {
+                    newAdvices[joinPointIndexes[i]] = null;
+                } else {
+                    newAdvices[joinPointIndexes[i]] = newArrayList.toArray(
+                            (Object[]) Array.newInstance(olds.getClass().getComponentType(), newArrayList.size())
+                    );
+                }
+            }
+            return newAdvices;
+        }
+
+        /**
+         * Returns the advice arrays with the advice of the first ones followed by the advice of the second ones.
+         *
+         * @param firsts           the first advice arrays, or null if none
+         * @param seconds          the second advice arrays, or null if none
+         * @param emptyAdviceArray an empty array of the advice type
+         * @return the merged advice arrays
+         */
+        private static Object[][] mergeAdvice(final Object[][] firsts,
+                                              final Object[][] seconds,
+                                              final Object[] emptyAdviceArray) {
+            if (firsts == null) {
+                return seconds;
+            }
+            if (seconds == null) {
+                return firsts;
+            }
+            final Object[][] merged = copyAdvices(
+                    firsts, Math.max(firsts.length, seconds.length), emptyAdviceArray
+            );
+            for (int i = 0; i < seconds.length; i++) {
+                merged[i] = concat(merged[i], seconds[i], emptyAdviceArray);
+            }
+            return merged;
+        }
+
+        /**
+         * @param firsts           the first advice, or null if none
+         * @param seconds          the second advice, or null if none
+         * @param emptyAdviceArray an empty array of the advice type
+         * @return the first advice followed by the second ones
+         */
+        private static Object[] concat(final Object[] firsts, final Object[] seconds, final Object[] emptyAdviceArray) {
+            if (firsts == null) {
+                return seconds;
+            }
+            if (seconds == null) {
+                return firsts;
+            }
+            final Object[] concat = (Object[]) Array.newInstance(
+                    emptyAdviceArray.getClass().getComponentType(), firsts.length + seconds.length
+            );
+            System.arraycopy(firsts, 0, concat, 0, firsts.length);
+            System.arraycopy(seconds, 0, concat, firsts.length, seconds.length);
+            return concat;
+        }
+
+        /**
+         * @param advices          the advice arrays, or null if none
+         * @param length           the length of the copy
+         * @param emptyAdviceArray an empty array of the advice type
+         * @return the copy
+         */
+        private static Object[][] copyAdvices(final Object[][] advices,
+                                              final int length,
+                                              final Object[] emptyAdviceArray) {
+            final Object[][] copy = (Object[][]) Array.newInstance(emptyAdviceArray.getClass(), length);
+            if (advices != null) {
+                System.arraycopy(advices, 0, copy, 0, advices.length);
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * The first advice chain followed by the second one, along with the chains it was built from: the class chain
+     * and the instance chain of an advisable instance, or the chain of an advisable superclass and the class chain.
+     */
+    private static final class MergedAdviceChain {
+
+        final AdviceChain classAdviceChain;
+        final AdviceChain instanceAdviceChain;
+        final AdviceChain adviceChain;
+
+        MergedAdviceChain(final AdviceChain classAdviceChain, final AdviceChain instanceAdviceChain) {
+            this.classAdviceChain = classAdviceChain;
+            this.instanceAdviceChain = instanceAdviceChain;
+            this.adviceChain = AdviceChain.merge(classAdviceChain, instanceAdviceChain);
+        }
+    }
+
+    /**
+     * A class made advisable: its join points, indexed by their advice slot, the join points matched by the
+     * pointcuts used to add or remove advice, and the advice chain shared by its instances.
+     */
+    private static final class AdvisableClass {
+
+        /**
+         * The advisable class of the nearest advisable superclass, or null if none.
+         */
+        private final AdvisableClass m_superAdvisableClass;
+
+        private volatile JoinPoints m_joinPoints;
+
+        private volatile AdviceChain m_adviceChain = AdviceChain.EMPTY;
+
+        /**
+         * The advice chain of the superclasses followed by the advice chain of this class, null if there is no
+         * advisable superclass.
+         */
+        private volatile MergedAdviceChain m_resolvedAdviceChain;
+
+        /**
+         * @param superAdvisableClass the advisable class of the nearest advisable superclass, or null if none
+         */
+        AdvisableClass(final AdvisableClass superAdvisableClass) {
+            m_superAdvisableClass = superAdvisableClass;
+            if (superAdvisableClass == null) {
+                m_joinPoints = new JoinPoints(new EmittedJoinPoint[0]);
+            } else {
+                // the inherited join points call the advice of the subclass instances as well, at the same slots
+                m_joinPoints = new JoinPoints(superAdvisableClass.m_joinPoints.joinPoints);
+            }
+        }
+
+        /**
+         * Adds join points, the class registers them once per weaving.
+         * <p/>
+         * The join point indexes given by the weaver start at zero for each weaving. The join points get the slots
+         * following the join points already known, including the inherited ones, so that they do not share advice.
+         * Their indexes are left unchanged, the join points add the returned offset to them instead.
+         *
+         * @param joinPoints
+         * @return the offset of the slots of the join points
+         */
+        synchronized int addJoinPoints(final EmittedJoinPoint[] joinPoints) {
+            final EmittedJoinPoint[] oldJoinPoints = m_joinPoints.joinPoints;
+            final int offset = oldJoinPoints.length;
+            int joinPointCount = offset;
+            for (int i = 0; i < joinPoints.length; i++) {
+                int joinPointIndex = joinPoints[i].getJoinPointIndex();
+                if (joinPointIndex < 0) {
+                    throw new RuntimeException(
+                            "advisable class woven without join point indexes: " + joinPoints[i].getCallerClassName()
+                    );
+                }
+                joinPointCount = Math.max(joinPointCount, offset + joinPointIndex + 1);
+            }
+            final EmittedJoinPoint[] newJoinPoints = new EmittedJoinPoint[joinPointCount];
+            System.arraycopy(oldJoinPoints, 0, newJoinPoints, 0, oldJoinPoints.length);
+            for (int i = 0; i < joinPoints.length; i++) {
+                newJoinPoints[offset + joinPoints[i].getJoinPointIndex()] = joinPoints[i];
+            }
+            // publishes the join points along with an empty cache of the join points they match
+            m_joinPoints = new JoinPoints(newJoinPoints);
+            return offset;
+        }
+
+        /**
+         * Returns the advice chain of the advisable superclasses followed by the advice chain of this class.
+         *
+         * @return
+         */
+        AdviceChain getResolvedAdviceChain() {
+            final AdviceChain adviceChain = m_adviceChain;
+            if (m_superAdvisableClass == null) {
+                return adviceChain;
+            }
+            final AdviceChain superAdviceChain = m_superAdvisableClass.getResolvedAdviceChain();
+            MergedAdviceChain resolvedAdviceChain = m_resolvedAdviceChain;
+            if (resolvedAdviceChain == null
+                || resolvedAdviceChain.classAdviceChain != superAdviceChain
+                || resolvedAdviceChain.instanceAdviceChain != adviceChain) {
+                // racy but safe: the merged chain is checked against the chains it was built from
+                resolvedAdviceChain = new MergedAdviceChain(superAdviceChain, adviceChain);
+                m_resolvedAdviceChain = resolvedAdviceChain;
+            }
+            return resolvedAdviceChain.adviceChain;
+        }
+
+        /**
+         * @param pointcut
+         * @param advice
+         * @param klass    the advisable class
+         */
+        void addAdvice(final String pointcut, final Advice advice, final Class klass) {
+            final int[] joinPointIndexes = getMatchingJoinPointIndexes(pointcut, klass);
+            if (joinPointIndexes.length == 0) {
+                return;
+            }
+            synchronized (this) {
+                m_adviceChain = m_adviceChain.addAdvice(joinPointIndexes, advice);
+            }
+        }
+
+        /**
+         * @param pointcut
+         * @param adviceClass
+         * @param klass       the advisable class
+         */
+        void removeAdvice(final String pointcut, final Class adviceClass, final Class klass) {
+            final int[] joinPointIndexes = getMatchingJoinPointIndexes(pointcut, klass);
+            if (joinPointIndexes.length == 0) {
+                return;
+            }
+            synchronized (this) {
+                m_adviceChain = m_adviceChain.removeAdvice(joinPointIndexes, adviceClass);
+            }
+        }
+
+        /**
+         * Returns the slots of the join points matched by the pointcut.
+         *
+         * @param pointcut
+         * @param klass    the advisable class
+         * @return
+         */
+        int[] getMatchingJoinPointIndexes(final String pointcut, final Class klass) {
+            // the matches are computed and cached against the same join points
+            final JoinPoints joinPoints = m_joinPoints;
+            int[] joinPointIndexes = (int[]) joinPoints.matchingJoinPointIndexes.get(pointcut);
+            if (joinPointIndexes != null) {
+                return joinPointIndexes;
+            }
+            final ExpressionInfo expressionInfo = getExpressionInfo(pointcut);
+            final EmittedJoinPoint[] emittedJoinPoints = joinPoints.joinPoints;
+            final int[] matches = new int[emittedJoinPoints.length];
+            int nrOfMatches = 0;
+            for (int i = 0; i < emittedJoinPoints.length; i++) {
+                EmittedJoinPoint emittedJoinPoint = emittedJoinPoints[i];
+                if (emittedJoinPoint == null) {
+                    continue;
+                }
+                if (match(expressionInfo, PointcutType.EXECUTION, emittedJoinPoint, klass)
+                    || match(expressionInfo, PointcutType.CALL, emittedJoinPoint, klass)
+                    || match(expressionInfo, PointcutType.HANDLER, emittedJoinPoint, klass)
+                    || match(expressionInfo, PointcutType.GET, emittedJoinPoint, klass)
+                    || match(expressionInfo, PointcutType.SET, emittedJoinPoint, klass)
+                    //note: STATIC INIT is useless since the class is already loaded to manipulate the instance
+                ) {
+                    matches[nrOfMatches++] = i;
+                }
+            }
+            joinPointIndexes = new int[nrOfMatches];
+            System.arraycopy(matches, 0, joinPointIndexes, 0, nrOfMatches);
+            return (int[]) joinPoints.matchingJoinPointIndexes.putIfAbsent(pointcut, joinPointIndexes);
+        }
+    }
+
+    /**
+     * The join points of an advisable class, indexed by their advice slot, and the slots matched by the pointcuts
+     * against them. Replaced as a whole when join points are added.
+     */
+    private static final class JoinPoints {
+
+        final EmittedJoinPoint[] joinPoints;
+
+        final ConcurrentReferenceMap matchingJoinPointIndexes = new ConcurrentReferenceMap(
+                ConcurrentReferenceMap.STRONG
+        );
+
+        JoinPoints(final EmittedJoinPoint[] joinPoints) {
+            this.joinPoints = joinPoints;
+        }
+    }
 }
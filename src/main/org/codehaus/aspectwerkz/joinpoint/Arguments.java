@@ -0,0 +1,115 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.joinpoint;
+
+/**
+ * Typed access to the arguments of a join point, read from the join point instance without wrapping them nor
+ * building an array. The compiled join points that are given to an around advice or to an advice that requires the
+ * JoinPoint implement it, and can be cast to it:
+ * <p/>
+ * <pre>
+ * public Object around(JoinPoint jp) throws Throwable {
+ *     int quantity = ((Arguments) jp).getIntArg(0);
+ *     ...
+ * </pre>
+ * <p/>
+ * The join point instance is shared when none of the bounded advices is an around advice or requires the JoinPoint.
+ * It does not hold the arguments and does not implement Arguments, a StaticJoinPoint given to a before or after
+ * advice is such a shared instance.
+ *
+ * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
+ */
+public interface Arguments {
+
+    /**
+     * Returns the number of arguments.
+     *
+     * @return the number of arguments
+     */
+    int getArgCount();
+
+    /**
+     * Returns the value of an argument, primitive values being wrapped.
+     *
+     * @param index the argument index
+     * @return the value
+     */
+    Object getArg(int index);
+
+    /**
+     * Returns the value of a boolean argument.
+     *
+     * @param index the argument index
+     * @return the value
+     * @throws IllegalArgumentException if the argument at this index is not a boolean
+     */
+    boolean getBooleanArg(int index);
+
+    /**
+     * Returns the value of a byte argument.
+     *
+     * @param index the argument index
+     * @return the value
+     * @throws IllegalArgumentException if the argument at this index is not a byte
+     */
+    byte getByteArg(int index);
+
+    /**
+     * Returns the value of a char argument.
+     *
+     * @param index the argument index
+     * @return the value
+     * @throws IllegalArgumentException if the argument at this index is not a char
+     */
+    char getCharArg(int index);
+
+    /**
+     * Returns the value of a short argument.
+     *
+     * @param index the argument index
+     * @return the value
+     * @throws IllegalArgumentException if the argument at this index is not a short
+     */
+    short getShortArg(int index);
+
+    /**
+     * Returns the value of an int argument.
+     *
+     * @param index the argument index
+     * @return the value
+     * @throws IllegalArgumentException if the argument at this index is not an int
+     */
+    int getIntArg(int index);
+
+    /**
+     * Returns the value of a long argument.
+     *
+     * @param index the argument index
+     * @return the value
+     * @throws IllegalArgumentException if the argument at this index is not a long
+     */
+    long getLongArg(int index);
+
+    /**
+     * Returns the value of a float argument.
+     *
+     * @param index the argument index
+     * @return the value
+     * @throws IllegalArgumentException if the argument at this index is not a float
+     */
+    float getFloatArg(int index);
+
+    /**
+     * Returns the value of a double argument.
+     *
+     * @param index the argument index
+     * @return the value
+     * @throws IllegalArgumentException if the argument at this index is not a double
+     */
+    double getDoubleArg(int index);
+}
@@ -8,9 +8,9 @@
 package org.codehaus.aspectwerkz.joinpoint.impl;
 
 import org.codehaus.aspectwerkz.joinpoint.MethodRtti;
+import org.codehaus.aspectwerkz.joinpoint.Arguments;
 import org.codehaus.aspectwerkz.joinpoint.Rtti;
 
-import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 
 /**
@@ -23,12 +23,17 @@ public class MethodRttiImpl implements MethodRtti {
 
     private final MethodSignatureImpl m_signature;
 
-    private WeakReference m_thisRef;
+    private final Object m_this;
 
-    private WeakReference m_targetRef;
+    private final Object m_target;
 
     private Object[] m_parameterValues = EMPTY_OBJECT_ARRAY;
 
+    /**
+     * The join point the values of the parameters are read from when they are first asked for, or null.
+     */
+    private Arguments m_arguments;
+
     private Object m_returnValue;
 
     /**
@@ -40,8 +45,8 @@ public class MethodRttiImpl implements MethodRtti {
      */
     public MethodRttiImpl(final MethodSignatureImpl signature, final Object thisInstance, final Object targetInstance) {
         m_signature = signature;
-        m_thisRef = new WeakReference(thisInstance);
-        m_targetRef = new WeakReference(targetInstance);
+        m_this = thisInstance;
+        m_target = targetInstance;
     }
 
     /**
@@ -61,7 +66,7 @@ public class MethodRttiImpl implements MethodRtti {
      * @return the target instance
      */
     public Object getTarget() {
-        return m_targetRef.get();
+        return m_target;
     }
 
     /**
@@ -70,7 +75,7 @@ public class MethodRttiImpl implements MethodRtti {
      * @return the instance currently executing
      */
     public Object getThis() {
-        return m_thisRef.get();
+        return m_this;
     }
 
     /**
@@ -138,6 +143,16 @@ public class MethodRttiImpl implements MethodRtti {
      */
     public void setParameterValues(final Object[] parameterValues) {
         m_parameterValues = parameterValues;
+        m_arguments = null;
+    }
+
+    /**
+     * Sets the join point the values of the parameters are read from, only when they are asked for.
+     *
+     * @param arguments
+     */
+    public void setArguments(final Arguments arguments) {
+        m_arguments = arguments;
     }
 
     /**
@@ -146,6 +161,14 @@ public class MethodRttiImpl implements MethodRtti {
      * @return the values of the parameters
      */
     public Object[] getParameterValues() {
+        if (m_arguments != null) {
+            final Object[] parameterValues = new Object[m_arguments.getArgCount()];
+            for (int i = 0; i < parameterValues.length; i++) {
+                parameterValues[i] = m_arguments.getArg(i);
+            }
+            m_parameterValues = parameterValues;
+            m_arguments = null;
+        }
         return m_parameterValues;
     }
 
@@ -8,7 +8,7 @@
 package org.codehaus.aspectwerkz.joinpoint.management;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -86,55 +86,98 @@ public class JoinPointManager {
                                      final int calleeMemberModifiers,
                                      final int joinPointHash,
                                      final String joinPointClassName) {
-        Class calleeClass = null;
-        try {
-            if (calleeClassName != null) {
-                calleeClass = Class.forName(calleeClassName.replace('/', '.'), false, callerClass.getClassLoader());
-            }
-        } catch (ClassNotFoundException calleeNotFound) {
-            throw new RuntimeException(
-                    "callee class [" + calleeClassName + "] can not be found in class loader [" +
-                    callerClass.getClassLoader() +
-                    "]"
-            );
-        }
+        loadJoinPoints(
+                callerClass,
+                new EmittedJoinPoint[]{
+                    new EmittedJoinPoint(
+                            joinPointType,
+                            callerClass.getName(),
+                            callerMethodName,
+                            callerMethodDesc,
+                            callerMethodModifiers,
+                            calleeClassName,
+                            calleeMemberName,
+                            calleeMemberDesc,
+                            calleeMemberModifiers,
+                            joinPointHash,
+                            joinPointClassName
+                    )
+                }
+        );
+    }
 
-        // check if the JP is already loaded
-        // this can occurs if user packaged its JIT classes, or if we are using multiweaving
+    /**
+     * Ensures that the specific joinPoint classes for the given target class are generated. This call
+     * is added to the weaved class as a "clinit" block, with all the join points emitted in the class.
+     * <p/>
+     * The join points share the same definitions and caller class info. The join point classes that are
+     * already there (if user packaged its JIT classes, or if we are using multiweaving) are skipped thru the
+     * join point registry of the class loader.
+     *
+     * @param callerClass
+     * @param emittedJoinPoints
+     */
+    public static void loadJoinPoints(final Class callerClass, final EmittedJoinPoint[] emittedJoinPoints) {
         final ClassLoader classLoader = callerClass.getClassLoader();
-        boolean generateJoinPoint = false;
-        try {
+        Set definitions = null;
+        ClassInfo callerClassInfo = null;
+        Map calleeClasses = null;
+        for (int i = 0; i < emittedJoinPoints.length; i++) {
+            final EmittedJoinPoint jp = emittedJoinPoints[i];
+            final String joinPointClassName = jp.getJoinPointClassName();
+            if (JoinPointFactory.isJoinPointDefined(joinPointClassName, classLoader)) {
+                continue;
+            }
+            if (definitions == null) {
+                definitions = SystemDefinitionContainer.getDefinitionsFor(classLoader);
+                callerClassInfo = JavaClassInfo.getClassInfo(callerClass);
+                calleeClasses = new HashMap();
+            }
+
+            final String calleeClassName = jp.getCalleeClassName();
+            Class calleeClass = (Class) calleeClasses.get(calleeClassName);
             if (calleeClass == null) {
-                throw new RuntimeException("callee class [" + calleeClassName + "] is NULL");
+                try {
+                    if (calleeClassName != null) {
+                        calleeClass = Class.forName(calleeClassName.replace('/', '.'), false, classLoader);
+                    }
+                } catch (ClassNotFoundException calleeNotFound) {
+                    throw new RuntimeException(
+                            "callee class [" + calleeClassName + "] can not be found in class loader [" +
+                            classLoader +
+                            "]"
+                    );
+                }
+                if (calleeClass == null) {
+                    throw new RuntimeException("callee class [" + calleeClassName + "] is NULL");
+                }
+                calleeClasses.put(calleeClassName, calleeClass);
             }
-            ContextClassLoader.forName(classLoader, joinPointClassName.replace('/', '.'));
-        } catch (ClassNotFoundException e) {
-            generateJoinPoint = true;
-        }
-        if (!generateJoinPoint) {
-            return;
-        }
 
-        final CompiledJoinPoint compiledJoinPoint = compileJoinPoint(
-                joinPointType,
-                callerClass,
-                callerMethodName,
-                callerMethodDesc,
-                callerMethodModifiers,
-                calleeClassName,
-                calleeMemberName,
-                calleeMemberDesc,
-                calleeMemberModifiers,
-                joinPointHash,
-                joinPointClassName,
-                calleeClass,
-                classLoader
-        );
+            final CompiledJoinPoint compiledJoinPoint = compileJoinPoint(
+                    jp.getJoinPointType(),
+                    callerClass,
+                    jp.getCallerMethodName(),
+                    jp.getCallerMethodDesc(),
+                    jp.getCallerMethodModifiers(),
+                    calleeClassName,
+                    jp.getCalleeMemberName(),
+                    jp.getCalleeMemberDesc(),
+                    jp.getCalleeMemberModifiers(),
+                    jp.getJoinPointHash(),
+                    joinPointClassName,
+                    jp.getJoinPointIndex(),
+                    calleeClass,
+                    classLoader,
+                    callerClassInfo,
+                    definitions
+            );
 
-        Class jpClass = JoinPointFactory.attachToClassLoader(
-                joinPointClassName, classLoader, compiledJoinPoint.bytecode
-        );
-        JoinPointFactory.addCompilationInfo(jpClass, compiledJoinPoint.compilationInfo);
+            Class jpClass = JoinPointFactory.attachToClassLoader(
+                    joinPointClassName, classLoader, compiledJoinPoint.bytecode
+            );
+            JoinPointFactory.addCompilationInfo(jpClass, compiledJoinPoint.compilationInfo);
+        }
     }
 
     /**
@@ -170,6 +213,86 @@ public class JoinPointManager {
                                                       final String joinPointClassName,
                                                       final Class calleeClass,
                                                       final ClassLoader loader) {
+        return compileJoinPoint(
+                joinPointType,
+                callerClass,
+                callerMethodName,
+                callerMethodDesc,
+                callerMethodModifiers,
+                calleeClassName,
+                calleeMemberName,
+                calleeMemberDesc,
+                calleeMemberModifiers,
+                joinPointHash,
+                joinPointClassName,
+                EmittedJoinPoint.NO_JOIN_POINT_INDEX,
+                calleeClass,
+                loader
+        );
+    }
+
+    /**
+     * Compile a new joinpoint, given the position of the join point in the woven class.
+     *
+     * @param joinPointIndex the position of the join point in the woven class, that the Advisable interceptors
+     *                       are indexed by
+     * @see #compileJoinPoint(int, Class, String, String, int, String, String, String, int, int, String, Class, ClassLoader)
+     */
+    public static CompiledJoinPoint compileJoinPoint(final int joinPointType,
+                                                      final Class callerClass,
+                                                      final String callerMethodName,
+                                                      final String callerMethodDesc,
+                                                      final int callerMethodModifiers,
+                                                      final String calleeClassName,
+                                                      final String calleeMemberName,
+                                                      final String calleeMemberDesc,
+                                                      final int calleeMemberModifiers,
+                                                      final int joinPointHash,
+                                                      final String joinPointClassName,
+                                                      final int joinPointIndex,
+                                                      final Class calleeClass,
+                                                      final ClassLoader loader) {
+        return compileJoinPoint(
+                joinPointType,
+                callerClass,
+                callerMethodName,
+                callerMethodDesc,
+                callerMethodModifiers,
+                calleeClassName,
+                calleeMemberName,
+                calleeMemberDesc,
+                calleeMemberModifiers,
+                joinPointHash,
+                joinPointClassName,
+                joinPointIndex,
+                calleeClass,
+                loader,
+                JavaClassInfo.getClassInfo(callerClass),
+                SystemDefinitionContainer.getDefinitionsFor(loader)
+        );
+    }
+
+    /**
+     * Compile a new joinpoint, against the given caller class info and system definitions.
+     *
+     * @see #compileJoinPoint(int, Class, String, String, int, String, String, String, int, int, String, Class, ClassLoader)
+     */
+    private static CompiledJoinPoint compileJoinPoint(final int joinPointType,
+                                                      final Class callerClass,
+                                                      final String callerMethodName,
+                                                      final String callerMethodDesc,
+                                                      final int callerMethodModifiers,
+                                                      final String calleeClassName,
+                                                      final String calleeMemberName,
+                                                      final String calleeMemberDesc,
+                                                      final int calleeMemberModifiers,
+                                                      final int joinPointHash,
+                                                      final String joinPointClassName,
+                                                      final int joinPointIndex,
+                                                      final Class calleeClass,
+                                                      final ClassLoader loader,
+                                                      final ClassInfo callerClassInfo,
+                                                      final Set systemDefinitions) {
 
         ClassInfo calleeClassInfo = JavaClassInfo.getClassInfo(calleeClass);
 
@@ -214,7 +337,6 @@ public class JoinPointManager {
         }
 
         // create the caller info
-        final ClassInfo callerClassInfo = JavaClassInfo.getClassInfo(callerClass);
         final ReflectionInfo withinInfo;
         if (TransformationConstants.CLINIT_METHOD_NAME.equals(callerMethodName)) {
             withinInfo = callerClassInfo.staticInitializer();
@@ -228,7 +350,7 @@ public class JoinPointManager {
         // get the compilation model
         final ExpressionContext ctx = new ExpressionContext(pointcutType, reflectionInfo, withinInfo);
         final AdviceInfoContainer adviceContainer = getAdviceInfoContainerForJoinPoint(
-                ctx, loader
+                ctx, systemDefinitions, loader
         );
         final EmittedJoinPoint emittedJoinPoint = new EmittedJoinPoint(
                 joinPointType,
@@ -242,7 +364,7 @@ public class JoinPointManager {
                 calleeMemberModifiers,
                 joinPointHash,
                 joinPointClassName,
-                EmittedJoinPoint.NO_LINE_NUMBER
+                joinPointIndex
         );
         final CompilationInfo.Model compilationModel = new CompilationInfo.Model(
                 emittedJoinPoint, adviceContainer, callerClassInfo
@@ -273,78 +395,85 @@ public class JoinPointManager {
      */
     public static AdviceInfoContainer getAdviceInfoContainerForJoinPoint(final ExpressionContext expressionContext,
                                                                          final ClassLoader loader) {
+        return getAdviceInfoContainerForJoinPoint(
+                expressionContext, SystemDefinitionContainer.getDefinitionsFor(loader), loader
+        );
+    }
+
+    /**
+     * Retrieves the advice info wrapped up in a struct, from the given system definitions.
+     *
+     * @param expressionContext
+     * @param systemDefinitions the system definitions visible from the loader
+     * @param loader
+     * @return the advice info
+     */
+    private static AdviceInfoContainer getAdviceInfoContainerForJoinPoint(final ExpressionContext expressionContext,
+                                                                          final Set systemDefinitions,
+                                                                          final ClassLoader loader) {
         final List beforeAdvices = new ArrayList();
         final List aroundAdvices = new ArrayList();
         final List afterFinallyAdvices = new ArrayList();
         final List afterReturningAdvices = new ArrayList();
         final List afterThrowingAdvices = new ArrayList();
 
-        final Set systemDefinitions = SystemDefinitionContainer.getDefinitionsFor(loader);
-
         for (Iterator iterator = systemDefinitions.iterator(); iterator.hasNext();) {
             SystemDefinition systemDefinition = (SystemDefinition) iterator.next();
-            Collection aspects = systemDefinition.getAspectDefinitions();
-            for (Iterator iterator1 = aspects.iterator(); iterator1.hasNext();) {
-                AspectDefinition aspectDefinition = (AspectDefinition) iterator1.next();
+
+            // only the advices bounded to a pointcut matching the join point, thru the advice index
+            List adviceDefinitions = systemDefinition.getAdviceDefinitionsMatching(expressionContext);
+            for (int i = 0; i < adviceDefinitions.size(); i++) {
+                AdviceDefinition adviceDefinition = (AdviceDefinition) adviceDefinitions.get(i);
+                AspectDefinition aspectDefinition = adviceDefinition.getAspectDefinition();
                 if (aspectDefinition.getName().equals(Virtual.class.getName())) {
                     continue;
                 }
-
-                //TODO - do we care about non bounded pointcut ?
-                for (Iterator iterator2 = aspectDefinition.getAdviceDefinitions().iterator(); iterator2.hasNext();) {
-                    AdviceDefinition adviceDefinition = (AdviceDefinition) iterator2.next();
-                    final ExpressionInfo expressionInfo = adviceDefinition.getExpressionInfo();
-                    if (expressionInfo == null) {
-                        continue;
-                    }
-                    if (expressionInfo.getExpression().match(expressionContext)) {
-                        // compute the target method to advice method arguments map, and grab information about this
-                        // and target bindings
-                        expressionContext.resetRuntimeState();
-                        ArgsIndexVisitor.updateContextForRuntimeInformation(
-                                expressionInfo,
-                                expressionContext,
-                                loader
-                        );
-                        // Note that the expressionContext dynamic information updated here should only be used
-                        // in the scope of this code block, since at the next iteration, the data will be
-                        // updated for another advice binding
-                        // [hence see setMethodArgumentIndexes below]
-
-                        // create a lightweight representation of the bounded advices to pass to the compiler
-                        final MethodInfo adviceMethodInfo = adviceDefinition.getMethodInfo();
-                        final AdviceInfo adviceInfo = new AdviceInfo(
-                                aspectDefinition.getQualifiedName(),
-                                aspectDefinition.getClassName(),
-                                aspectDefinition.getDeploymentModel(),
-                                adviceMethodInfo.getName(),
-                                AsmHelper.getMethodDescriptor(adviceMethodInfo),
-                                AsmHelper.getArgumentTypes(adviceMethodInfo),
-                                adviceDefinition.getType(),
-                                adviceDefinition.getSpecialArgumentType(),
-                                adviceDefinition.getName(),
-                                expressionContext.m_targetWithRuntimeCheck,
-                                expressionInfo,
-                                expressionContext,
-                                adviceDefinition
-                        );
-
-                        setMethodArgumentIndexes(expressionInfo, expressionContext, adviceInfo, loader);
-
-                        if (AdviceType.BEFORE.equals(adviceDefinition.getType())) {
-                            beforeAdvices.add(adviceInfo);
-                        } else if (AdviceType.AROUND.equals(adviceDefinition.getType())) {
-                            aroundAdvices.add(adviceInfo);
-                        } else if (AdviceType.AFTER_FINALLY.equals(adviceDefinition.getType())) {
-                            afterFinallyAdvices.add(adviceInfo);
-                        } else if (AdviceType.AFTER_RETURNING.equals(adviceDefinition.getType())) {
-                            afterReturningAdvices.add(adviceInfo);
-                        } else if (AdviceType.AFTER_THROWING.equals(adviceDefinition.getType())) {
-                            afterThrowingAdvices.add(adviceInfo);
-                        } else if (AdviceType.AFTER.equals(adviceDefinition.getType())) {
-                            afterFinallyAdvices.add(adviceInfo);//special case for "after only"
-                        }
-                    }
+                final ExpressionInfo expressionInfo = adviceDefinition.getExpressionInfo();
+                // compute the target method to advice method arguments map, and grab information about this
+                // and target bindings
+                expressionContext.resetRuntimeState();
+                ArgsIndexVisitor.updateContextForRuntimeInformation(
+                        expressionInfo,
+                        expressionContext,
+                        loader
+                );
+                // Note that the expressionContext dynamic information updated here should only be used
+                // in the scope of this code block, since at the next iteration, the data will be
+                // updated for another advice binding
+                // [hence see setMethodArgumentIndexes below]
+
+                // create a lightweight representation of the bounded advices to pass to the compiler
+                final MethodInfo adviceMethodInfo = adviceDefinition.getMethodInfo();
+                final AdviceInfo adviceInfo = new AdviceInfo(
+                        aspectDefinition.getQualifiedName(),
+                        aspectDefinition.getClassName(),
+                        aspectDefinition.getDeploymentModel(),
+                        adviceMethodInfo.getName(),
+                        AsmHelper.getMethodDescriptor(adviceMethodInfo),
+                        AsmHelper.getArgumentTypes(adviceMethodInfo),
+                        adviceDefinition.getType(),
+                        adviceDefinition.getSpecialArgumentType(),
+                        adviceDefinition.getName(),
+                        expressionContext.m_targetWithRuntimeCheck,
+                        expressionInfo,
+                        expressionContext,
+                        adviceDefinition
+                );
+
+                setMethodArgumentIndexes(expressionInfo, expressionContext, adviceInfo, loader);
+
+                if (AdviceType.BEFORE.equals(adviceDefinition.getType())) {
+                    beforeAdvices.add(adviceInfo);
+                } else if (AdviceType.AROUND.equals(adviceDefinition.getType())) {
+                    aroundAdvices.add(adviceInfo);
+                } else if (AdviceType.AFTER_FINALLY.equals(adviceDefinition.getType())) {
+                    afterFinallyAdvices.add(adviceInfo);
+                } else if (AdviceType.AFTER_RETURNING.equals(adviceDefinition.getType())) {
+                    afterReturningAdvices.add(adviceInfo);
+                } else if (AdviceType.AFTER_THROWING.equals(adviceDefinition.getType())) {
+                    afterThrowingAdvices.add(adviceInfo);
+                } else if (AdviceType.AFTER.equals(adviceDefinition.getType())) {
+                    afterFinallyAdvices.add(adviceInfo);//special case for "after only"
                 }
             }
         }
@@ -18,8 +18,15 @@ import org.codehaus.aspectwerkz.definition.AspectDefinition;
 import org.codehaus.aspectwerkz.definition.SystemDefinition;
 import org.codehaus.aspectwerkz.definition.AdviceDefinition;
 import org.codehaus.aspectwerkz.aspect.management.HasInstanceLevelAspect;
+import org.codehaus.aspectwerkz.aspect.container.AspectFactoryManager;
 import org.codehaus.aspectwerkz.aspect.AdviceType;
 import org.codehaus.aspectwerkz.transform.TransformationConstants;
+import org.codehaus.aspectwerkz.exception.DefinitionException;
+import org.codehaus.aspectwerkz.exception.WrappedRuntimeException;
+import org.codehaus.aspectwerkz.util.ContextClassLoader;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Iterator;
 
 /**
  * Generic aspect used by perX deployment modes to initialize the aspect instance.
@@ -73,6 +80,7 @@ public class PerObjectAspect {
      */
 	private static final String ASPECT_QNAME_PARAM = "perobject.aspect.qname";
     private static final String CONTAINER_CLASSNAME_PARAM = "perobject.container.classname";
+    private static final String ASPECT_CLASSNAME_PARAM = "perobject.aspect.classname";
 
 	private static final String ADVICE_ARGUMENT_TYPE = TransformationConstants.HAS_INSTANCE_LEVEL_ASPECT_INTERFACE_NAME.replace('/', '.');
 
@@ -87,6 +95,8 @@ public class PerObjectAspect {
 
     private final String m_containerClassName;
 
+    private final String m_aspectClassName;
+
     /**
      * PerObjectAspect constructor.
      * We keep track of the aspectQname and container class name to further call Aspects.aspectOf
@@ -96,19 +106,63 @@ public class PerObjectAspect {
 	public PerObjectAspect(AspectContext ctx) {
 		m_aspectQName = ctx.getParameter(ASPECT_QNAME_PARAM);
         m_containerClassName = ctx.getParameter(CONTAINER_CLASSNAME_PARAM);
+        m_aspectClassName = ctx.getParameter(ASPECT_CLASSNAME_PARAM);
 	}
 
 	/**
 	 * Before perPointcut && this/target(targetInstance) bound that will associate the aspect and the instance.
+     * The compiled join points do not invoke this advice but the bind method of the perX aspect factory directly,
+     * thus this is only used when the advice is invoked by other means.
      * Note: do not refactor the names here without refactoring the constants.
 	 */
 	public void beforePerObject(HasInstanceLevelAspect aw_instance) {
         if (aw_instance == null) {
             return;
         }
-		aw_instance.aw$getAspect(getClass());
+        try {
+            Class factory = ContextClassLoader.forName(
+                    aw_instance.getClass().getClassLoader(),
+                    AspectFactoryManager.getAspectFactoryClassName(m_aspectClassName, m_aspectQName).replace('/', '.')
+            );
+            factory.getMethod(
+                    TransformationConstants.FACTORY_BIND_METHOD_NAME, new Class[]{Object.class}
+            ).invoke(null, new Object[]{aw_instance});
+        } catch (InvocationTargetException e) {
+            throw new WrappedRuntimeException(e.getTargetException());
+        } catch (Exception e) {
+            throw new WrappedRuntimeException(e);
+        }
 	}
 
+    /**
+     * Checks if the aspect is a PerObjectAspect.
+     *
+     * @param aspectDefinition
+     * @return true if the aspect is the PerObjectAspect of a perX aspect
+     */
+    public static boolean isPerObjectAspect(final AspectDefinition aspectDefinition) {
+        return PEROBJECT_ASPECT_NAME.equals(aspectDefinition.getClassName());
+    }
+
+    /**
+     * Returns the definition of the perX aspect a PerObjectAspect acts for, so that the join points
+     * can bind the perX aspect thru its factory.
+     *
+     * @param perObjectAspectDefinition
+     * @return the perX aspect definition
+     */
+    public static AspectDefinition getPerXAspectDefinition(final AspectDefinition perObjectAspectDefinition) {
+        String aspectQName = (String) perObjectAspectDefinition.getParameters().get(ASPECT_QNAME_PARAM);
+        for (Iterator it = perObjectAspectDefinition.getSystemDefinition().getAspectDefinitions().iterator();
+             it.hasNext();) {
+            AspectDefinition aspectDefinition = (AspectDefinition) it.next();
+            if (aspectDefinition.getQualifiedName().equals(aspectQName)) {
+                return aspectDefinition;
+            }
+        }
+        throw new DefinitionException("Could not find the perX aspect " + aspectQName);
+    }
+
     /**
      * Creates the generic AspectDefinition for the PerObjectAspect
      *
@@ -129,6 +183,7 @@ public class PerObjectAspect {
         perXSystemAspectDef.setDeploymentModel(DeploymentModel.PER_JVM);
         perXSystemAspectDef.addParameter(PerObjectAspect.ASPECT_QNAME_PARAM, aspectDefinition.getQualifiedName());
         perXSystemAspectDef.addParameter(PerObjectAspect.CONTAINER_CLASSNAME_PARAM, aspectDefinition.getContainerClassName());
+        perXSystemAspectDef.addParameter(PerObjectAspect.ASPECT_CLASSNAME_PARAM, aspectDefinition.getClassName());
 
         ExpressionInfo expressionInfo = createExpressionInfo(deploymentModel,
                                                              aspectDefinition.getQualifiedName(),
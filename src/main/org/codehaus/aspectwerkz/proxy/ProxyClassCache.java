@@ -0,0 +1,162 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.proxy;
+
+import org.codehaus.aspectwerkz.util.ClassLoaderMap;
+import org.codehaus.aspectwerkz.util.ConcurrentReferenceMap;
+
+/**
+ * Cache for the compiled proxy classes and their instantiators, per class loader the proxy classes are defined in.
+ * <p/>
+ * A cached instantiator is found without locking. On a miss, the first caller compiles the proxy class while the
+ * callers asking for the same key wait for it, the other callers are not blocked.
+ * <p/>
+ * The keys identify the proxied classes without holding them strongly, and the instantiators are weakly
+ * referenced: they are kept by their class for as long as its class loader lives, and the cache does not prevent it
+ * from being garbage collected.
+ *
+ * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
+ */
+final class ProxyClassCache {
+
+    /**
+     * The instantiators, or the compilations in progress, by key, per class loader.
+     */
+    private final ClassLoaderMap m_proxyClasses = new ClassLoaderMap();
+
+    /**
+     * Returns the instantiator of the proxy class mapped to a key, compiling them if needed.
+     *
+     * @param loader   the class loader the proxy class is defined in
+     * @param key      the key
+     * @param compiler the compiler of the proxy class, called on a miss
+     * @return the instantiator
+     */
+    ProxyInstantiator getInstantiator(final ClassLoader loader, final Object key, final Compiler compiler) {
+        final ConcurrentReferenceMap proxyClasses = getProxyClasses(loader);
+        Object instantiator = proxyClasses.get(key);
+        if (instantiator instanceof ProxyInstantiator) {
+            return (ProxyInstantiator) instantiator;
+        }
+        if (instantiator == null) {
+            final Compilation compilation = new Compilation();
+            instantiator = proxyClasses.putIfAbsent(key, compilation);
+            if (instantiator == compilation) {
+                return compilation.compile(proxyClasses, key, compiler);
+            } else if (instantiator instanceof ProxyInstantiator) {
+                return (ProxyInstantiator) instantiator;
+            }
+        }
+        return ((Compilation) instantiator).get();
+    }
+
+    /**
+     * Returns the proxy classes of a class loader.
+     *
+     * @param loader
+     * @return the proxy classes
+     */
+    private ConcurrentReferenceMap getProxyClasses(final ClassLoader loader) {
+        ConcurrentReferenceMap proxyClasses = (ConcurrentReferenceMap) m_proxyClasses.get(loader);
+        if (proxyClasses == null) {
+            proxyClasses = (ConcurrentReferenceMap) m_proxyClasses.putIfAbsent(
+                    loader, new ConcurrentReferenceMap(ConcurrentReferenceMap.WEAK)
+            );
+        }
+        return proxyClasses;
+    }
+
+    /**
+     * Compiles a proxy class on a cache miss.
+     */
+    interface Compiler {
+
+        /**
+         * Compiles and defines a new proxy class.
+         *
+         * @return the proxy class
+         */
+        Class compile();
+    }
+
+    /**
+     * A compilation in progress, mapped to its key until the instantiator replaces it.
+     */
+    private static final class Compilation {
+
+        private final Thread m_compilingThread = Thread.currentThread();
+
+        private ProxyInstantiator m_instantiator;
+
+        private Throwable m_failure;
+
+        private boolean m_done = false;
+
+        /**
+         * Compiles the proxy class and its instantiator in the calling thread and publishes the instantiator.
+         *
+         * @param proxyClasses the instantiators of the class loader
+         * @param key          the key
+         * @param compiler     the compiler
+         * @return the instantiator
+         */
+        ProxyInstantiator compile(final ConcurrentReferenceMap proxyClasses,
+                                  final Object key,
+                                  final Compiler compiler) {
+            try {
+                final ProxyInstantiator instantiator = ProxyInstantiator.newInstantiatorFor(compiler.compile());
+                proxyClasses.put(key, instantiator);
+                done(instantiator, null);
+                return instantiator;
+            } catch (RuntimeException e) {
+                proxyClasses.remove(key);
+                done(null, e);
+                throw e;
+            } catch (Error e) {
+                proxyClasses.remove(key);
+                done(null, e);
+                throw e;
+            }
+        }
+
+        /**
+         * Waits for the instantiator.
+         *
+         * @return the instantiator
+         */
+        synchronized ProxyInstantiator get() {
+            if (Thread.currentThread() == m_compilingThread) {
+                throw new IllegalStateException("recursive compilation of a proxy class");
+            }
+            boolean interrupted = false;
+            while (!m_done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (m_failure instanceof RuntimeException) {
+                throw (RuntimeException) m_failure;
+            } else if (m_failure != null) {
+                throw (Error) m_failure;
+            }
+            return m_instantiator;
+        }
+
+        private synchronized void done(final ProxyInstantiator instantiator, final Throwable failure) {
+            m_instantiator = instantiator;
+            m_failure = failure;
+            m_done = true;
+            notifyAll();
+        }
+    }
+}
@@ -137,6 +137,7 @@ public class ProxyDelegationCompiler {
                         null
                 );
             }
+            ProxyInstantiator.createInstantiatorField(m_proxyCv);
 
             // create ctor
             StringBuffer ctorDesc = new StringBuffer("(");
@@ -14,9 +14,8 @@ import org.codehaus.aspectwerkz.transform.inlining.AsmHelper;
 import org.codehaus.backport175.reader.bytecode.AnnotationReader;
 import org.codehaus.backport175.reader.bytecode.spi.BytecodeProvider;
 
-import java.util.Arrays;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.lang.ref.WeakReference;
+
 
 /**
  * Get proxy classes from target classes that implement target interfaces
@@ -33,9 +32,10 @@ public class ProxyDelegationStrategy {
     private static final String PROXY_SUFFIX_START = "$$ProxiedByAWDelegation$$";
 
     /**
-     * Cache for the compiled proxy classes. Implemented interfaces classes are composite key.
+     * Cache for the compiled proxy classes. Implemented interfaces and advisable flag are composite key, in the
+     * lowest class loader of the interfaces.
      */
-    private final static Map PROXY_CLASS_CACHE = new WeakHashMap();
+    private final static ProxyClassCache PROXY_CLASS_CACHE = new ProxyClassCache();
 
     /**
      * Compile or retrieve from cache a delegation proxy for the given interfaces.
@@ -45,20 +45,35 @@ public class ProxyDelegationStrategy {
      * @param makeAdvisable
      * @return
      */
-    static Class getProxyClassFor(Class[] interfaces, boolean useCache, boolean makeAdvisable) {
+    static Class getProxyClassFor(final Class[] interfaces, final boolean useCache, final boolean makeAdvisable) {
         if (!useCache) {
             return getNewProxyClassFor(interfaces, makeAdvisable);
         } else {
-            CompositeClassKey key = new CompositeClassKey(interfaces);
-            synchronized (PROXY_CLASS_CACHE) {
-                Object cachedProxyClass = PROXY_CLASS_CACHE.get(key);
-                if (cachedProxyClass != null) {
-                    return (Class) cachedProxyClass;
-                }
-                Class proxyClass = getNewProxyClassFor(interfaces, makeAdvisable);
-                PROXY_CLASS_CACHE.put(key, proxyClass);
-                return proxyClass;
-            }
+            return getInstantiatorFor(interfaces, true, makeAdvisable).getProxyClass();
+        }
+    }
+
+    /**
+     * Compile or retrieve from cache a delegation proxy for the given interfaces, and return its instantiator.
+     *
+     * @param interfaces
+     * @param useCache
+     * @param makeAdvisable
+     * @return
+     */
+    private static ProxyInstantiator getInstantiatorFor(final Class[] interfaces,
+                                                        final boolean useCache,
+                                                        final boolean makeAdvisable) {
+        if (!useCache) {
+            return ProxyInstantiator.newReflectiveInstantiatorFor(getNewProxyClassFor(interfaces, makeAdvisable));
+        } else {
+            return PROXY_CLASS_CACHE.getInstantiator(
+                    getLowestClassLoader(interfaces), getKey(interfaces, makeAdvisable), new ProxyClassCache.Compiler() {
+                        public Class compile() {
+                            return getNewProxyClassFor(interfaces, makeAdvisable);
+                        }
+                    }
+            );
         }
     }
 
@@ -77,9 +92,9 @@ public class ProxyDelegationStrategy {
         if (!implementsRespectively(interfaces, implementations)) {
             throw new RuntimeException("Given implementations not consistents with given interfaces");
         }
-        Class proxy = getProxyClassFor(interfaces, useCache, makeAdvisable);
+        ProxyInstantiator instantiator = getInstantiatorFor(interfaces, useCache, makeAdvisable);
         try {
-            return proxy.getConstructor(interfaces).newInstance(implementations);
+            return instantiator.newInstance(interfaces, implementations);
         } catch (Throwable t) {
             throw new WrappedRuntimeException(t);
         }
@@ -163,33 +178,64 @@ public class ProxyDelegationStrategy {
     }
 
     /**
-     * A composite key for the proxy cache.
+     * Returns the composite key for the proxy cache.
+     *
+     * @param interfaces
+     * @param makeAdvisable
+     * @return the key
      */
-    private static class CompositeClassKey {
-        private final Class[] m_interfaces;
+    private static Object getKey(final Class[] interfaces, final boolean makeAdvisable) {
+        return new Key(interfaces, makeAdvisable);
+    }
 
-        CompositeClassKey(Class[] interfaces) {
-            m_interfaces = interfaces;
-        }
+    /**
+     * Composite key for the proxy cache. The interfaces can come from parent class loaders, so they are compared by
+     * identity and not by name. They are weakly referenced, so that the key does not prevent their class loaders
+     * from being garbage collected.
+     */
+    private static final class Key {
 
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (!(o instanceof CompositeClassKey)) return false;
+        private final WeakReference[] m_interfaces;
 
-            final CompositeClassKey compositeClassKey = (CompositeClassKey) o;
+        private final boolean m_makeAdvisable;
 
-            if (!Arrays.equals(m_interfaces, compositeClassKey.m_interfaces)) return false;
+        private final int m_hashCode;
 
-            return true;
+        private Key(final Class[] interfaces, final boolean makeAdvisable) {
+            m_interfaces = new WeakReference[interfaces.length];
+            int hashCode = makeAdvisable ? 1 : 0;
+            for (int i = 0; i < interfaces.length; i++) {
+                m_interfaces[i] = new WeakReference(interfaces[i]);
+                hashCode = 31 * hashCode + System.identityHashCode(interfaces[i]);
+            }
+            m_makeAdvisable = makeAdvisable;
+            m_hashCode = hashCode;
         }
 
-        public int hashCode() {
-            int result = 1;
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            if (m_hashCode != key.m_hashCode
+                || m_makeAdvisable != key.m_makeAdvisable
+                || m_interfaces.length != key.m_interfaces.length) {
+                return false;
+            }
             for (int i = 0; i < m_interfaces.length; i++) {
-                result = 31 * result + m_interfaces[i].hashCode();
+                final Object anInterface = m_interfaces[i].get();
+                if (anInterface == null || anInterface != key.m_interfaces[i].get()) {
+                    return false;
+                }
             }
-            return result;
+            return true;
         }
-    }
 
+        public int hashCode() {
+            return m_hashCode;
+        }
+    }
 }
@@ -0,0 +1,252 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.proxy;
+
+import org.codehaus.aspectwerkz.exception.WrappedRuntimeException;
+import org.codehaus.aspectwerkz.transform.inlining.AsmHelper;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Instantiates the proxies of a proxy class without reflection.
+ * <p/>
+ * A subclass is compiled for each proxy class by the {@link ProxyInstantiatorCompiler}, with one typed static
+ * <code>create</code> method per proxy constructor, and is cached together with the proxy class. Instantiating a
+ * proxy is then a lookup of the constructor followed by a direct constructor call.
+ * <p/>
+ * The proxy classes that are not cached are instantiated thru reflection instead, since compiling an instantiator
+ * would cost more than the few proxies created from each of them.
+ * <p/>
+ * The reflective instantiator of a cached proxy class is held by a static field of the proxy class, so that it lives
+ * as long as the proxy class, as a compiled instantiator does.
+ *
+ * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
+ */
+public abstract class ProxyInstantiator {
+
+    /**
+     * The suffix for the compiled instantiator classes, appended to the proxy class name.
+     */
+    public static final String INSTANTIATOR_SUFFIX = "$$AWInstantiator";
+
+    /**
+     * The name of the static field holding the single instance of a compiled instantiator.
+     */
+    public static final String INSTANCE_FIELD_NAME = "INSTANCE";
+
+    /**
+     * The name of the static field of the proxy classes holding their instantiator.
+     */
+    public static final String INSTANTIATOR_FIELD_NAME = "aw$instantiator";
+
+    private static final Class[] EMPTY_CLASS_ARRAY = new Class[0];
+
+    private Class m_proxyClass;
+
+    /**
+     * The parameter types of the proxy constructors, in the order of the constructor indexes.
+     */
+    private Class[][] m_parameterTypes;
+
+    protected ProxyInstantiator() {
+    }
+
+    /**
+     * Returns the proxy class.
+     *
+     * @return the proxy class
+     */
+    public Class getProxyClass() {
+        return m_proxyClass;
+    }
+
+    /**
+     * Creates a new proxy instance using the default no-argument constructor.
+     *
+     * @return the proxy instance
+     * @throws NoSuchMethodException if the proxy class has no such constructor
+     */
+    public Object newInstance() throws NoSuchMethodException {
+        return newInstance(getConstructorIndex(EMPTY_CLASS_ARRAY), null);
+    }
+
+    /**
+     * Creates a new proxy instance using the constructor matching the argument type array specified.
+     *
+     * @param argumentTypes  the argument types matching the signature of the constructor to use
+     * @param argumentValues the argument values
+     * @return the proxy instance
+     * @throws NoSuchMethodException if the proxy class has no such constructor
+     */
+    public Object newInstance(final Class[] argumentTypes, final Object[] argumentValues)
+            throws NoSuchMethodException {
+        return newInstance(
+                getConstructorIndex(argumentTypes == null ? EMPTY_CLASS_ARRAY : argumentTypes), argumentValues
+        );
+    }
+
+    /**
+     * Creates a new proxy instance by calling the constructor at the given index, implemented by the compiled
+     * subclass.
+     *
+     * @param constructorIndex the index of the constructor
+     * @param argumentValues   the argument values, unwrapped and casted to the constructor parameter types
+     * @return the proxy instance
+     */
+    protected abstract Object newInstance(int constructorIndex, Object[] argumentValues);
+
+    /**
+     * Returns the index of the constructor matching the argument types.
+     *
+     * @param argumentTypes
+     * @return the constructor index
+     * @throws NoSuchMethodException
+     */
+    private int getConstructorIndex(final Class[] argumentTypes) throws NoSuchMethodException {
+        for (int i = 0; i < m_parameterTypes.length; i++) {
+            final Class[] parameterTypes = m_parameterTypes[i];
+            if (parameterTypes.length != argumentTypes.length) {
+                continue;
+            }
+            boolean match = true;
+            for (int j = 0; j < parameterTypes.length && match; j++) {
+                match = parameterTypes[j] == argumentTypes[j];
+            }
+            if (match) {
+                return i;
+            }
+        }
+        throw new NoSuchMethodException(m_proxyClass.getName() + ".<init>");
+    }
+
+    /**
+     * Compiles, defines and returns the instantiator of a proxy class. The instantiator class is defined in the class
+     * loader of the proxy class, which holds it for as long as the proxy class lives.
+     * <p/>
+     * The compiled instantiator extends this class, and thus requires the class loader of the proxy class to see the
+     * AspectWerkz runtime. A reflective instantiator is returned otherwise.
+     *
+     * @param proxyClass
+     * @return the instantiator
+     */
+    static ProxyInstantiator newInstantiatorFor(final Class proxyClass) {
+        if (!isRuntimeVisibleFrom(proxyClass.getClassLoader())) {
+            final ProxyInstantiator instantiator = newReflectiveInstantiatorFor(proxyClass);
+            try {
+                proxyClass.getDeclaredField(INSTANTIATOR_FIELD_NAME).set(null, instantiator);
+            } catch (Exception e) {
+                throw new WrappedRuntimeException(e);
+            }
+            return instantiator;
+        }
+        final Constructor[] constructors = proxyClass.getDeclaredConstructors();
+        final String instantiatorClassName = proxyClass.getName().replace('.', '/') + INSTANTIATOR_SUFFIX;
+        final byte[] bytes = ProxyInstantiatorCompiler.compileInstantiatorFor(
+                proxyClass, constructors, instantiatorClassName
+        );
+        final Class instantiatorClass = AsmHelper.defineClass(
+                proxyClass.getClassLoader(), bytes, instantiatorClassName
+        );
+        final ProxyInstantiator instantiator;
+        try {
+            instantiator = (ProxyInstantiator) instantiatorClass.getField(INSTANCE_FIELD_NAME).get(null);
+        } catch (Exception e) {
+            throw new WrappedRuntimeException(e);
+        }
+        instantiator.initialize(proxyClass, constructors);
+        return instantiator;
+    }
+
+    /**
+     * Returns an instantiator of a proxy class that calls its constructors thru reflection, without compiling anything.
+     *
+     * @param proxyClass
+     * @return the instantiator
+     */
+    static ProxyInstantiator newReflectiveInstantiatorFor(final Class proxyClass) {
+        final Constructor[] constructors = proxyClass.getDeclaredConstructors();
+        final ProxyInstantiator instantiator = new ReflectiveProxyInstantiator(constructors);
+        instantiator.initialize(proxyClass, constructors);
+        return instantiator;
+    }
+
+    /**
+     * Adds the static field holding the instantiator to a proxy class.
+     *
+     * @param proxyCv the proxy class
+     */
+    static void createInstantiatorField(final ClassVisitor proxyCv) {
+        proxyCv.visitField(
+                Opcodes.ACC_PUBLIC + Opcodes.ACC_STATIC + Opcodes.ACC_SYNTHETIC,
+                INSTANTIATOR_FIELD_NAME,
+                "Ljava/lang/Object;",
+                null,
+                null
+        );
+    }
+
+    /**
+     * Sets the proxy class and the parameter types of its constructors, in the order of the constructor indexes.
+     *
+     * @param proxyClass
+     * @param constructors
+     */
+    private void initialize(final Class proxyClass, final Constructor[] constructors) {
+        final Class[][] parameterTypes = new Class[constructors.length][];
+        for (int i = 0; i < constructors.length; i++) {
+            parameterTypes[i] = constructors[i].getParameterTypes();
+        }
+        m_proxyClass = proxyClass;
+        m_parameterTypes = parameterTypes;
+    }
+
+    /**
+     * Checks that the given class loader sees this class, that the compiled instantiators extend.
+     *
+     * @param loader
+     * @return true if the AspectWerkz runtime is visible from the class loader
+     */
+    private static boolean isRuntimeVisibleFrom(final ClassLoader loader) {
+        try {
+            return Class.forName(ProxyInstantiator.class.getName(), false, loader) == ProxyInstantiator.class;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Instantiates the proxies thru reflection.
+     */
+    private static final class ReflectiveProxyInstantiator extends ProxyInstantiator {
+
+        private final Constructor[] m_constructors;
+
+        ReflectiveProxyInstantiator(final Constructor[] constructors) {
+            m_constructors = constructors;
+        }
+
+        protected Object newInstance(final int constructorIndex, final Object[] argumentValues) {
+            try {
+                return m_constructors[constructorIndex].newInstance(argumentValues);
+            } catch (InvocationTargetException e) {
+                final Throwable cause = e.getTargetException();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new WrappedRuntimeException(cause);
+            } catch (Exception e) {
+                throw new WrappedRuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.proxy;
+
+import org.codehaus.aspectwerkz.reflect.ReflectHelper;
+import org.codehaus.aspectwerkz.transform.TransformationConstants;
+import org.codehaus.aspectwerkz.transform.inlining.AsmHelper;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Compiles the {@link ProxyInstantiator} of a proxy class.
+ * <p/>
+ * The instantiator has one typed static <code>create</code> method per proxy constructor, which calls the
+ * constructor directly, and implements <code>newInstance(int, Object[])</code> with a switch on the constructor
+ * index that unwraps the arguments and calls the matching <code>create</code> method.
+ *
+ * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
+ */
+public class ProxyInstantiatorCompiler implements Opcodes, TransformationConstants {
+
+    private static final String PROXY_INSTANTIATOR_CLASS_NAME = "org/codehaus/aspectwerkz/proxy/ProxyInstantiator";
+
+    private static final String PROXY_INSTANTIATOR_CLASS_SIGNATURE = 'L' + PROXY_INSTANTIATOR_CLASS_NAME + ';';
+
+    private static final String CREATE_METHOD_NAME = "create";
+
+    private static final String NEW_INSTANCE_METHOD_NAME = "newInstance";
+
+    private static final String NEW_INSTANCE_METHOD_SIGNATURE = "(I[Ljava/lang/Object;)Ljava/lang/Object;";
+
+    /**
+     * Compiles the instantiator.
+     *
+     * @param proxyClass            the proxy class
+     * @param constructors          the proxy constructors, in the order of the constructor indexes
+     * @param instantiatorClassName the name of the instantiator class
+     * @return the byte code
+     */
+    public static byte[] compileInstantiatorFor(final Class proxyClass,
+                                                final Constructor[] constructors,
+                                                final String instantiatorClassName) {
+        final String proxyClassName = proxyClass.getName().replace('.', '/');
+        final String proxyClassSignature = 'L' + proxyClassName + ';';
+        final ClassWriter cw = AsmHelper.newClassWriter(true);
+        cw.visit(
+                AsmHelper.JAVA_VERSION,
+                ACC_PUBLIC + ACC_FINAL + ACC_SUPER + ACC_SYNTHETIC,
+                instantiatorClassName,
+                null,
+                PROXY_INSTANTIATOR_CLASS_NAME,
+                null
+        );
+
+        // the single instance, that keeps the instantiator alive as long as its class
+        cw.visitField(
+                ACC_PUBLIC + ACC_STATIC + ACC_FINAL + ACC_SYNTHETIC,
+                ProxyInstantiator.INSTANCE_FIELD_NAME,
+                PROXY_INSTANTIATOR_CLASS_SIGNATURE,
+                null,
+                null
+        );
+        MethodVisitor cv = cw.visitMethod(ACC_STATIC, CLINIT_METHOD_NAME, NO_PARAM_RETURN_VOID_SIGNATURE, null, null);
+        cv.visitTypeInsn(NEW, instantiatorClassName);
+        cv.visitInsn(DUP);
+        cv.visitMethodInsn(INVOKESPECIAL, instantiatorClassName, INIT_METHOD_NAME, NO_PARAM_RETURN_VOID_SIGNATURE);
+        cv.visitFieldInsn(
+                PUTSTATIC, instantiatorClassName, ProxyInstantiator.INSTANCE_FIELD_NAME, PROXY_INSTANTIATOR_CLASS_SIGNATURE
+        );
+        cv.visitInsn(RETURN);
+        cv.visitMaxs(0, 0);
+
+        cv = cw.visitMethod(ACC_PUBLIC, INIT_METHOD_NAME, NO_PARAM_RETURN_VOID_SIGNATURE, null, null);
+        cv.visitVarInsn(ALOAD, 0);
+        cv.visitMethodInsn(
+                INVOKESPECIAL, PROXY_INSTANTIATOR_CLASS_NAME, INIT_METHOD_NAME, NO_PARAM_RETURN_VOID_SIGNATURE
+        );
+        cv.visitInsn(RETURN);
+        cv.visitMaxs(0, 0);
+
+        // the typed create methods
+        final String[] constructorDescs = new String[constructors.length];
+        final String[] createDescs = new String[constructors.length];
+        for (int i = 0; i < constructors.length; i++) {
+            constructorDescs[i] = ReflectHelper.getConstructorSignature(constructors[i]);
+            createDescs[i] = constructorDescs[i].substring(0, constructorDescs[i].lastIndexOf(')') + 1)
+                             + proxyClassSignature;
+            cv = cw.visitMethod(ACC_PUBLIC + ACC_STATIC, CREATE_METHOD_NAME, createDescs[i], null, null);
+            cv.visitTypeInsn(NEW, proxyClassName);
+            cv.visitInsn(DUP);
+            AsmHelper.loadArgumentTypes(cv, Type.getArgumentTypes(constructorDescs[i]), true);
+            cv.visitMethodInsn(INVOKESPECIAL, proxyClassName, INIT_METHOD_NAME, constructorDescs[i]);
+            cv.visitInsn(ARETURN);
+            cv.visitMaxs(0, 0);
+        }
+
+        // newInstance(int, Object[]) dispatching to the create methods
+        cv = cw.visitMethod(ACC_PROTECTED, NEW_INSTANCE_METHOD_NAME, NEW_INSTANCE_METHOD_SIGNATURE, null, null);
+        if (constructors.length > 0) {
+            final Label defaultLabel = new Label();
+            final Label[] labels = new Label[constructors.length];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = new Label();
+            }
+            cv.visitVarInsn(ILOAD, 1);
+            cv.visitTableSwitchInsn(0, labels.length - 1, defaultLabel, labels);
+            for (int i = 0; i < labels.length; i++) {
+                cv.visitLabel(labels[i]);
+                final Type[] argumentTypes = Type.getArgumentTypes(constructorDescs[i]);
+                for (int j = 0; j < argumentTypes.length; j++) {
+                    cv.visitVarInsn(ALOAD, 2);
+                    AsmHelper.loadIntegerConstant(cv, j);
+                    cv.visitInsn(AALOAD);
+                    AsmHelper.unwrapType(cv, argumentTypes[j]);
+                }
+                cv.visitMethodInsn(INVOKESTATIC, instantiatorClassName, CREATE_METHOD_NAME, createDescs[i]);
+                cv.visitInsn(ARETURN);
+            }
+            cv.visitLabel(defaultLabel);
+        }
+        cv.visitInsn(ACONST_NULL);
+        cv.visitInsn(ARETURN);
+        cv.visitMaxs(0, 0);
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
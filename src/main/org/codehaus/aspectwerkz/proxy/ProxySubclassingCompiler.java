@@ -140,6 +140,7 @@ public class ProxySubclassingCompiler implements TransformationConstants {
                     name,
                     interfaces
             );
+            ProxyInstantiator.createInstantiatorField(m_proxyCv);
         }
 
         /**
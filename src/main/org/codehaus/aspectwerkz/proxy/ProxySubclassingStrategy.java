@@ -13,8 +13,6 @@ import org.codehaus.aspectwerkz.transform.inlining.AsmHelper;
 import org.codehaus.backport175.reader.bytecode.spi.BytecodeProvider;
 import org.codehaus.backport175.reader.bytecode.AnnotationReader;
 
-import java.util.Map;
-import java.util.WeakHashMap;
 
 /**
  * Get proxy classes from target classes and weaves in all matching aspects deployed in the class loader
@@ -30,9 +28,10 @@ public class ProxySubclassingStrategy {
     public static final String PROXY_SUFFIX_START = "$$ProxiedByAWSubclassing$$";
 
     /**
-     * Cache for the compiled proxy classes. Target class is key.
+     * Cache for the compiled proxy classes. Target class name and advisable flag are key, in the class loader of
+     * the target class.
      */
-    private static final Map PROXY_CLASS_CACHE = new WeakHashMap();
+    private static final ProxyClassCache PROXY_CLASS_CACHE = new ProxyClassCache();
 
     /**
      * Creates a new proxy instance based for the class specified and instantiates it using its default no-argument
@@ -45,8 +44,7 @@ public class ProxySubclassingStrategy {
      */
     static Object newInstance(final Class clazz) {
         try {
-            Class proxyClass = getProxyClassFor(clazz, true, false);
-            return proxyClass.newInstance();
+            return getInstantiatorFor(clazz, true, false).newInstance();
         } catch (Throwable t) {
             throw new WrappedRuntimeException(t);
         }
@@ -65,8 +63,7 @@ public class ProxySubclassingStrategy {
      */
     static Object newInstance(final Class clazz, final Class[] argumentTypes, final Object[] argumentValues) {
         try {
-            Class proxyClass = getProxyClassFor(clazz, true, false);
-            return proxyClass.getDeclaredConstructor(argumentTypes).newInstance(argumentValues);
+            return getInstantiatorFor(clazz, true, false).newInstance(argumentTypes, argumentValues);
         } catch (Throwable t) {
             throw new WrappedRuntimeException(t);
         }
@@ -84,8 +81,7 @@ public class ProxySubclassingStrategy {
      */
     static Object newInstance(final Class clazz, final boolean useCache, final boolean makeAdvisable) {
         try {
-            Class proxyClass = getProxyClassFor(clazz, useCache, makeAdvisable);
-            return proxyClass.newInstance();
+            return getInstantiatorFor(clazz, useCache, makeAdvisable).newInstance();
         } catch (Throwable t) {
             throw new WrappedRuntimeException(t);
         }
@@ -109,8 +105,7 @@ public class ProxySubclassingStrategy {
                               final boolean useCache,
                               final boolean makeAdvisable) {
         try {
-            Class proxyClass = getProxyClassFor(clazz, useCache, makeAdvisable);
-            return proxyClass.getDeclaredConstructor(argumentTypes).newInstance(argumentValues);
+            return getInstantiatorFor(clazz, useCache, makeAdvisable).newInstance(argumentTypes, argumentValues);
         } catch (Throwable t) {
             throw new WrappedRuntimeException(t);
         }
@@ -126,24 +121,51 @@ public class ProxySubclassingStrategy {
      * @return the proxy class
      */
     static Class getProxyClassFor(final Class clazz, final boolean useCache, final boolean makeAdvisable) {
+        if (!useCache) {
+            checkProxyable(clazz);
+            return getNewProxyClassFor(clazz, makeAdvisable);
+        } else {
+            return getInstantiatorFor(clazz, true, makeAdvisable).getProxyClass();
+        }
+    }
 
+    /**
+     * Compiles or retrieves from cache the proxy class for the class specified, and returns its instantiator.
+     *
+     * @param clazz         the target class to make a proxy for
+     * @param useCache      true if a cached instance of the proxy classed should be used
+     * @param makeAdvisable true if the proxy class should implement the <code>Advisable</code> interface,
+     *                      e.g. be prepared for programmatic, runtime, per instance hot deployement of advice
+     * @return the instantiator of the proxy class
+     */
+    private static ProxyInstantiator getInstantiatorFor(final Class clazz,
+                                                        final boolean useCache,
+                                                        final boolean makeAdvisable) {
+        checkProxyable(clazz);
+        if (!useCache) {
+            return ProxyInstantiator.newReflectiveInstantiatorFor(getNewProxyClassFor(clazz, makeAdvisable));
+        } else {
+            final String key = makeAdvisable ? clazz.getName() + "+advisable" : clazz.getName();
+            return PROXY_CLASS_CACHE.getInstantiator(
+                    clazz.getClassLoader(), key, new ProxyClassCache.Compiler() {
+                        public Class compile() {
+                            return getNewProxyClassFor(clazz, makeAdvisable);
+                        }
+                    }
+            );
+        }
+    }
+
+    /**
+     * Checks that a proxy can be created for the class specified.
+     *
+     * @param clazz
+     */
+    private static void checkProxyable(final Class clazz) {
         // FIXME - add support for proxying java.* classes
         if (clazz.getName().startsWith("java.")) {
             throw new RuntimeException("can not create proxies from system classes (java.*)");
         }
-        if (!useCache) {
-            return getNewProxyClassFor(clazz, makeAdvisable);
-        } else {
-            synchronized (PROXY_CLASS_CACHE) {
-                Object cachedProxyClass = PROXY_CLASS_CACHE.get(clazz);
-                if (cachedProxyClass != null) {
-                    return (Class) cachedProxyClass;
-                }
-                Class proxyClass = getNewProxyClassFor(clazz, makeAdvisable);
-                PROXY_CLASS_CACHE.put(clazz, proxyClass);
-                return proxyClass;
-            }
-        }
     }
 
     /**
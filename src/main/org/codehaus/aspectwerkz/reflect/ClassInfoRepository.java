@@ -7,11 +7,11 @@
  **************************************************************************************/
 package org.codehaus.aspectwerkz.reflect;
 
-import gnu.trove.TIntObjectHashMap;
+
+import org.codehaus.aspectwerkz.util.ClassLoaderMap;
+import org.codehaus.aspectwerkz.util.ConcurrentReferenceMap;
 
 import java.lang.ref.WeakReference;
-import java.util.Map;
-import java.util.WeakHashMap;
 
 /**
  * A repository for the class info hierarchy. Is class loader aware.
@@ -22,12 +22,31 @@ public class ClassInfoRepository {
     /**
      * Map with all the class info repositories mapped to their class loader.
      */
-    private static final TIntObjectHashMap s_repositories = new TIntObjectHashMap();
+    private static final ClassLoaderMap s_repositories = new ClassLoaderMap();
+
+    /**
+     * Changes each time a class info is added to a repository that has been searched as a parent repository.
+     */
+    private static volatile int s_parentVersion = 0;
+
+    /**
+     * Map with all the class info, weakly referenced, mapped to their class names.
+     * <p/>
+     * Concurrent since classes can be loaded and woven by several threads.
+     */
+    private final ConcurrentReferenceMap m_repository = new ConcurrentReferenceMap(ConcurrentReferenceMap.WEAK);
+
+    /**
+     * Map of the class names not found in the parent repositories, to the parent version they have been searched
+     * for.
+     */
+    private final ConcurrentReferenceMap m_missingInParents =
+            new ConcurrentReferenceMap(ConcurrentReferenceMap.STRONG);
 
     /**
-     * Map with all the class info mapped to their class names.
+     * True once the repository has been searched as a parent repository.
      */
-    private final Map m_repository = new WeakHashMap();
+    private volatile boolean m_isParent = false;
 
     /**
      * Class loader for the class repository.
@@ -49,21 +68,12 @@ public class ClassInfoRepository {
      * @param loader
      * @return
      */
-    public static synchronized ClassInfoRepository getRepository(final ClassLoader loader) {
-        int hash;
-        if (loader == null) { // boot cl
-            hash = 0;
-        } else {
-            hash = loader.hashCode();
-        }
-        WeakReference repositoryRef = (WeakReference) s_repositories.get(hash);
-        ClassInfoRepository repository = ((repositoryRef == null) ? null : (ClassInfoRepository) repositoryRef.get());
+    public static ClassInfoRepository getRepository(final ClassLoader loader) {
+        ClassInfoRepository repository = (ClassInfoRepository) s_repositories.get(loader);
         if (repository != null) {
             return repository;
         } else {
-            ClassInfoRepository repo = new ClassInfoRepository(loader);
-            s_repositories.put(hash, new WeakReference(repo));
-            return repo;
+            return (ClassInfoRepository) s_repositories.putIfAbsent(loader, new ClassInfoRepository(loader));
         }
     }
 
@@ -88,7 +98,7 @@ public class ClassInfoRepository {
         if (info == null) {
             return checkParentClassRepository(className, (ClassLoader) m_loaderRef.get());
         }
-        return (ClassInfo) m_repository.get(className);
+        return info;
     }
 
     /**
@@ -99,8 +109,10 @@ public class ClassInfoRepository {
     public void addClassInfo(final ClassInfo classInfo) {
         // is the class loaded by a class loader higher up in the hierarchy?
         if (checkParentClassRepository(classInfo.getName(), (ClassLoader) m_loaderRef.get()) == null) {
-            // need to create new String instance to avoid using the original reference
-            m_repository.put(new String(classInfo.getName()), classInfo);
+            m_repository.put(classInfo.getName(), classInfo);
+            if (m_isParent) {
+                s_parentVersion++;
+            }
         } else {
             // TODO: remove class in child class repository and add it for the current (parent) CL
         }
@@ -118,6 +130,8 @@ public class ClassInfoRepository {
 
     /**
      * Searches for a class info up in the class loader hierarchy.
+     * <p/>
+     * The class names not found are remembered, until a class info is added to one of the searched repositories.
      *
      * @param className
      * @param loader
@@ -129,17 +143,27 @@ public class ClassInfoRepository {
         if (loader == null) {
             return null;
         }
-        ClassInfo info;
-        ClassLoader parent = loader.getParent();
-        if (parent == null) {
-            return null;
-        } else {
-            info = ClassInfoRepository.getRepository(parent).getClassInfo(className);
+        final boolean isOwnLoader = loader == m_loaderRef.get();
+        final int version = s_parentVersion;
+        if (isOwnLoader) {
+            Integer missingVersion = (Integer) m_missingInParents.get(className);
+            if (missingVersion != null && missingVersion.intValue() == version) {
+                return null;
+            }
+        }
+        for (ClassLoader parent = loader.getParent(); parent != null; parent = parent.getParent()) {
+            ClassInfoRepository repository = ClassInfoRepository.getRepository(parent);
+            if (!repository.m_isParent) {
+                repository.m_isParent = true;
+            }
+            ClassInfo info = (ClassInfo) repository.m_repository.get(className);
             if (info != null) {
                 return info;
-            } else {
-                return checkParentClassRepository(className, parent);
             }
         }
+        if (isOwnLoader && version == s_parentVersion) {
+            m_missingInParents.put(className, new Integer(version));
+        }
+        return null;
     }
 }
\ No newline at end of file
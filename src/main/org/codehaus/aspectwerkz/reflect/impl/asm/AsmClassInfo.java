@@ -8,7 +8,6 @@
 package org.codehaus.aspectwerkz.reflect.impl.asm;
 
 import gnu.trove.TIntArrayList;
-import gnu.trove.TIntObjectHashMap;
 import org.codehaus.aspectwerkz.exception.WrappedRuntimeException;
 import org.codehaus.aspectwerkz.reflect.ClassInfo;
 import org.codehaus.aspectwerkz.reflect.ConstructorInfo;
@@ -27,10 +26,13 @@ import org.objectweb.asm.*;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Array;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
 /**
@@ -50,6 +52,14 @@ public class AsmClassInfo implements ClassInfo {
 
     protected final static List EMPTY_LIST = new ArrayList();
 
+    private final static int[] EMPTY_INT_ARRAY = new int[0];
+
+    private final static ConstructorInfo[] EMPTY_CONSTRUCTOR_ARRAY = new ConstructorInfo[0];
+
+    private final static MethodInfo[] EMPTY_METHOD_ARRAY = new MethodInfo[0];
+
+    private final static FieldInfo[] EMPTY_FIELD_ARRAY = new FieldInfo[0];
+
     /**
      * The class loader wrapped in a weak ref.
      */
@@ -90,38 +100,47 @@ public class AsmClassInfo implements ClassInfo {
      */
     private boolean m_hasStaticInitializer = false;
 
+    /**
+     * True once the methods, constructors and fields have been parsed. Only the class header is parsed up front,
+     * the members are parsed on first access.
+     */
+    private volatile boolean m_membersParsed = false;
+
+    /**
+     * The bytecode to parse the members from, null once parsed. Either the byte[] given to the constructor, or a
+     * SoftReference to a byte[] that can be fetched again from the class loader if cleared. The bytecode is kept
+     * strongly when the class loader does not see the class file.
+     */
+    private Object m_bytecode;
+
     /**
      * Lazy instance that represents the static initializer if present, else null
      */
     private StaticInitializationInfo m_staticInitializer = null;
 
     /**
-     * A list with the <code>ConstructorInfo</code> instances.
-     * When visiting the bytecode, we keep track of the order of the visit.
-     * The first time the getConstructors() gets called, we build an array and then reuse it directly.
+     * The <code>ConstructorInfo</code> instances, in the order of the bytecode visit, and the same instances sorted
+     * by their hash, with the sorted hashes, for the lookups by hash.
+     * <p/>
+     * Plain arrays, built once the members are parsed, since a class info is kept for each class of the class loader.
      */
-    private final TIntObjectHashMap m_constructors = new TIntObjectHashMap();
-    private TIntArrayList m_sortedConstructorHashes = new TIntArrayList();
-    private ConstructorInfo[] m_constructorsLazy = null;
-
+    private ConstructorInfo[] m_constructors = EMPTY_CONSTRUCTOR_ARRAY;
+    private ConstructorInfo[] m_constructorsByHash = EMPTY_CONSTRUCTOR_ARRAY;
+    private int[] m_constructorHashes = EMPTY_INT_ARRAY;
 
     /**
-     * A list with the <code>MethodInfo</code> instances.
-     * When visiting the bytecode, we keep track of the order of the visit.
-     * The first time the getMethods() gets called, we build an array and then reuse it directly.
+     * The <code>MethodInfo</code> instances, in the order of the bytecode visit, and sorted by their hash.
      */
-    private final TIntObjectHashMap m_methods = new TIntObjectHashMap();
-    private TIntArrayList m_sortedMethodHashes = new TIntArrayList();
-    private MethodInfo[] m_methodsLazy = null;
+    private MethodInfo[] m_methods = EMPTY_METHOD_ARRAY;
+    private MethodInfo[] m_methodsByHash = EMPTY_METHOD_ARRAY;
+    private int[] m_methodHashes = EMPTY_INT_ARRAY;
 
     /**
-     * A list with the <code>FieldInfo</code> instances.
-     * When visiting the bytecode, we keep track of the order of the visit.
-     * The first time the getFields() gets called, we build an array and then reuse it directly.
+     * The <code>FieldInfo</code> instances, in the order of the bytecode visit, and sorted by their hash.
      */
-    private final TIntObjectHashMap m_fields = new TIntObjectHashMap();
-    private TIntArrayList m_sortedFieldHashes = new TIntArrayList();
-    private FieldInfo[] m_fieldsLazy = null;
+    private FieldInfo[] m_fields = EMPTY_FIELD_ARRAY;
+    private FieldInfo[] m_fieldsByHash = EMPTY_FIELD_ARRAY;
+    private int[] m_fieldHashes = EMPTY_INT_ARRAY;
 
     /**
      * A list with the interfaces class names.
@@ -159,6 +178,13 @@ public class AsmClassInfo implements ClassInfo {
      */
     private ClassInfo m_componentType = null;
 
+    /**
+     * The ids of the class, all its super classes and all its interfaces in the class loader of the class, along with
+     * the hierarchy version they have been computed for. Lazily computed, and published as a whole so that a reader never sees a closure with the
+     * version of another one.
+     */
+    private volatile SupertypeClosure m_supertypeClosure = null;
+
     /**
      * The class info repository.
      */
@@ -171,18 +197,34 @@ public class AsmClassInfo implements ClassInfo {
      * @param loader
      */
     AsmClassInfo(final byte[] bytecode, final ClassLoader loader) {
+        this(bytecode, loader, false);
+    }
+
+    /**
+     * Creates a new ClassInfo instance.
+     *
+     * @param bytecode
+     * @param loader
+     * @param isResource true if the bytecode is the one of the class loader resource, so that it can be fetched
+     *                   again instead of being retained until the members are parsed
+     */
+    private AsmClassInfo(final byte[] bytecode, final ClassLoader loader, final boolean isResource) {
         if (bytecode == null) {
             throw new IllegalArgumentException("bytecode can not be null");
         }
         m_loaderRef = new WeakReference(loader);
         m_classInfoRepository = AsmClassInfoRepository.getRepository(loader);
+        m_bytecode = bytecode;
         try {
             ClassReader cr = new ClassReader(bytecode);
             ClassInfoClassAdapter visitor = new ClassInfoClassAdapter();
-            cr.accept(visitor, false);
+            cr.accept(visitor, true);
         } catch (Throwable t) {
             t.printStackTrace();
         }
+        if (isResource && m_name != null && getResourceLoader().getResource(getResourceName()) != null) {
+            m_bytecode = new SoftReference(bytecode);
+        }
         m_classInfoRepository.addClassInfo(this);
     }
 
@@ -200,8 +242,9 @@ public class AsmClassInfo implements ClassInfo {
         m_classInfoRepository = AsmClassInfoRepository.getRepository(loader);
         try {
             ClassReader cr = new ClassReader(resourceStream);
+            m_bytecode = cr.b;
             ClassInfoClassAdapter visitor = new ClassInfoClassAdapter();
-            cr.accept(visitor, false);
+            cr.accept(visitor, true);
         } catch (Throwable t) {
             t.printStackTrace();
         }
@@ -232,6 +275,7 @@ public class AsmClassInfo implements ClassInfo {
         m_superClassName = m_superClass.getName();
         m_interfaceClassNames = new String[0];
         m_interfaces = new ClassInfo[0];
+        m_membersParsed = true;
         m_signature = AsmHelper.getClassDescriptor(this);
         m_classInfoRepository.addClassInfo(this);
     }
@@ -246,8 +290,13 @@ public class AsmClassInfo implements ClassInfo {
     public static ClassInfo newClassInfo(final byte[] bytecode, final ClassLoader loader) {
         final String className = AsmClassInfo.retrieveClassNameFromBytecode(bytecode);
         AsmClassInfoRepository repository = AsmClassInfoRepository.getRepository(loader);
+        ClassInfo oldClassInfo = repository.getClassInfo(className);
         repository.removeClassInfo(className);
-        return new AsmClassInfo(bytecode, loader);
+        AsmClassInfo classInfo = new AsmClassInfo(bytecode, loader);
+        if (!(oldClassInfo instanceof AsmClassInfo) || !classInfo.hasSameSupertypes((AsmClassInfo) oldClassInfo)) {
+            repository.markHierarchyChanged();
+        }
+        return classInfo;
     }
 
     /**
@@ -319,7 +368,7 @@ public class AsmClassInfo implements ClassInfo {
             AsmClassInfoRepository repository = AsmClassInfoRepository.getRepository(loader);
             ClassInfo classInfo = repository.getClassInfo(className);
             if (classInfo == null) {
-                classInfo = new AsmClassInfo(bytes, loader);
+                classInfo = new AsmClassInfo(bytes, loader, true);
             }
             return classInfo;
         } catch (IOException e) {
@@ -333,7 +382,43 @@ public class AsmClassInfo implements ClassInfo {
      * @param className
      */
     public static void markDirty(final String className, final ClassLoader loader) {
-        AsmClassInfoRepository.getRepository(loader).removeClassInfo(className);
+        AsmClassInfoRepository repository = AsmClassInfoRepository.getRepository(loader);
+        repository.removeClassInfo(className);
+        repository.markHierarchyChanged();
+    }
+
+    /**
+     * Returns the version of the class hierarchies seen from a class loader, that changes each time a class of the
+     * class loader or of its parents is marked dirty or rebuilt with another super class or other interfaces. Allows
+     * to invalidate the results computed from the hierarchies.
+     *
+     * @param loader the class loader
+     * @return the hierarchy version
+     */
+    public static int getHierarchyVersion(final ClassLoader loader) {
+        return AsmClassInfoRepository.getRepository(loader).getHierarchyVersion();
+    }
+
+    /**
+     * Returns the id of a type name in a class loader. The ids are small integers allocated in sequence.
+     *
+     * @param typeName the type name
+     * @param loader   the class loader
+     * @return the type id
+     */
+    public static int getTypeId(final String typeName, final ClassLoader loader) {
+        return AsmClassInfoRepository.getRepository(loader).getTypeId(typeName);
+    }
+
+    /**
+     * Returns the type name of a type id in a class loader.
+     *
+     * @param typeId the type id
+     * @param loader the class loader
+     * @return the type name
+     */
+    public static String getTypeName(final int typeId, final ClassLoader loader) {
+        return AsmClassInfoRepository.getRepository(loader).getTypeName(typeId);
     }
 
     /**
@@ -430,6 +515,7 @@ public class AsmClassInfo implements ClassInfo {
      * @return
      */
     public boolean hasStaticInitializer() {
+        ensureMembersParsed();
         return m_hasStaticInitializer;
     }
 
@@ -452,7 +538,9 @@ public class AsmClassInfo implements ClassInfo {
      * @return
      */
     public ConstructorInfo getConstructor(final int hash) {
-        ConstructorInfo constructor = (ConstructorInfo) m_constructors.get(hash);
+        ensureMembersParsed();
+        int index = indexOfHash(m_constructorHashes, hash);
+        ConstructorInfo constructor = index < 0 ? null : m_constructorsByHash[index];
         if (constructor == null && getSuperclass() != null) {
             constructor = getSuperclass().getConstructor(hash);
         }
@@ -465,14 +553,8 @@ public class AsmClassInfo implements ClassInfo {
      * @return the constructors info
      */
     public ConstructorInfo[] getConstructors() {
-        if (m_constructorsLazy == null) {
-            ConstructorInfo[] constructorInfos = new ConstructorInfo[m_sortedConstructorHashes.size()];
-            for (int i = 0; i < m_sortedConstructorHashes.size(); i++) {
-                constructorInfos[i] = (ConstructorInfo) m_constructors.get(m_sortedConstructorHashes.get(i));
-            }
-            m_constructorsLazy = constructorInfos;
-        }
-        return m_constructorsLazy;
+        ensureMembersParsed();
+        return m_constructors;
     }
 
     /**
@@ -482,7 +564,9 @@ public class AsmClassInfo implements ClassInfo {
      * @return
      */
     public MethodInfo getMethod(final int hash) {
-        MethodInfo method = (MethodInfo) m_methods.get(hash);
+        ensureMembersParsed();
+        int index = indexOfHash(m_methodHashes, hash);
+        MethodInfo method = index < 0 ? null : m_methodsByHash[index];
         if (method == null) {
             for (int i = 0; i < getInterfaces().length; i++) {
                 method = getInterfaces()[i].getMethod(hash);
@@ -503,14 +587,8 @@ public class AsmClassInfo implements ClassInfo {
      * @return the methods info
      */
     public MethodInfo[] getMethods() {
-        if (m_methodsLazy == null) {
-            MethodInfo[] methodInfos = new MethodInfo[m_sortedMethodHashes.size()];
-            for (int i = 0; i < m_sortedMethodHashes.size(); i++) {
-                methodInfos[i] = (MethodInfo) m_methods.get(m_sortedMethodHashes.get(i));
-            }
-            m_methodsLazy = methodInfos;
-        }
-        return m_methodsLazy;
+        ensureMembersParsed();
+        return m_methods;
     }
 
     /**
@@ -520,7 +598,9 @@ public class AsmClassInfo implements ClassInfo {
      * @return
      */
     public FieldInfo getField(final int hash) {
-        FieldInfo field = (FieldInfo) m_fields.get(hash);
+        ensureMembersParsed();
+        int index = indexOfHash(m_fieldHashes, hash);
+        FieldInfo field = index < 0 ? null : m_fieldsByHash[index];
         if (field == null && getSuperclass() != null) {
             field = getSuperclass().getField(hash);
         }
@@ -543,14 +623,136 @@ public class AsmClassInfo implements ClassInfo {
      * @return the field info
      */
     public FieldInfo[] getFields() {
-        if (m_fieldsLazy == null) {
-            FieldInfo[] fieldInfos = new FieldInfo[m_sortedFieldHashes.size()];
-            for (int i = 0; i < m_sortedFieldHashes.size(); i++) {
-                fieldInfos[i] = (FieldInfo) m_fields.get(m_sortedFieldHashes.get(i));
+        ensureMembersParsed();
+        return m_fields;
+    }
+
+    /**
+     * Parses the methods, constructors and fields if not done yet.
+     */
+    private void ensureMembersParsed() {
+        if (!m_membersParsed) {
+            parseMembers();
+        }
+    }
+
+    /**
+     * Parses the methods, constructors and fields, with the parameter names from the debug info.
+     * <p/>
+     * The members are left unparsed if the bytecode cannot be fetched again or parsed, so that the next access
+     * fails as well instead of seeing no member.
+     *
+     * @throws WrappedRuntimeException naming the class if the members cannot be parsed
+     */
+    private synchronized void parseMembers() {
+        if (m_membersParsed) {
+            return;
+        }
+        try {
+            byte[] bytecode;
+            if (m_bytecode instanceof SoftReference) {
+                bytecode = (byte[]) ((SoftReference) m_bytecode).get();
+                if (bytecode == null) {
+                    bytecode = fetchBytecode();
+                }
+            } else {
+                bytecode = (byte[]) m_bytecode;
+            }
+            ClassReader cr = new ClassReader(bytecode);
+            ClassMembersClassAdapter visitor = new ClassMembersClassAdapter();
+            cr.accept(visitor, false);
+            visitor.setMembers();
+        } catch (Throwable t) {
+            throw new WrappedRuntimeException("could not parse the members of class [" + m_name + "]", t);
+        }
+        m_bytecode = null;
+        m_membersParsed = true;
+    }
+
+    /**
+     * Returns the index of the last member with the given hash in the sorted hashes.
+     *
+     * @param hashes the sorted hashes
+     * @param hash   the hash
+     * @return the index or -1 if not found
+     */
+    private static int indexOfHash(final int[] hashes, final int hash) {
+        int low = 0;
+        int high = hashes.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (hashes[mid] <= hash) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return (high >= 0 && hashes[high] == hash) ? high : -1;
+    }
+
+    /**
+     * Sorts the indexes of the members by hash, keeping the order of the visit for the equal hashes so that the last
+     * visited member wins the lookups.
+     *
+     * @param hashes the hashes of the members, in the order of the visit
+     * @return the member indexes, sorted by hash
+     */
+    private static int[] sortByHash(final int[] hashes) {
+        long[] keys = new long[hashes.length];
+        for (int i = 0; i < hashes.length; i++) {
+            keys[i] = ((long) hashes[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] indexes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            indexes[i] = (int) keys[i];
+        }
+        return indexes;
+    }
+
+    /**
+     * Fetches the bytecode of the class again from the class loader resource.
+     *
+     * @return the bytecode
+     * @throws IOException if the class file cannot be found or read
+     */
+    private byte[] fetchBytecode() throws IOException {
+        InputStream stream = getResourceLoader().getResourceAsStream(getResourceName());
+        if (stream == null) {
+            throw new IOException("class file of class [" + m_name + "] not found");
+        }
+        try {
+            return new ClassReader(stream).b;
+        } finally {
+            try {
+                stream.close();
+            } catch (Exception e) {
+                ;
             }
-            m_fieldsLazy = fieldInfos;
         }
-        return m_fieldsLazy;
+    }
+
+    /**
+     * Returns the class loader to fetch the class file from.
+     *
+     * @return the class loader
+     */
+    private ClassLoader getResourceLoader() {
+        ClassLoader loader = (ClassLoader) m_loaderRef.get();
+        if (loader == null) {
+            // boot class loader, fall back to system classloader that will see it anyway
+            loader = ClassLoader.getSystemClassLoader();
+        }
+        return loader;
+    }
+
+    /**
+     * Returns the resource name of the class file.
+     *
+     * @return the resource name
+     */
+    private String getResourceName() {
+        return m_name.replace('.', '/') + ".class";
     }
 
     /**
@@ -580,6 +782,93 @@ public class AsmClassInfo implements ClassInfo {
         return m_superClass;
     }
 
+    /**
+     * Returns the type ids (see {@link #getTypeId(String, ClassLoader)}) in the class loader of the class of this
+     * class, all its super classes and all its interfaces. The returned bit set must not be modified.
+     *
+     * @return the supertype closure
+     */
+    public BitSet getSupertypeClosure() {
+        final int version = m_classInfoRepository.getHierarchyVersion();
+        final SupertypeClosure supertypeClosure = m_supertypeClosure;
+        if (supertypeClosure != null && supertypeClosure.m_version == version) {
+            return supertypeClosure.m_closure;
+        }
+        final BitSet closure = new BitSet();
+        closure.set(m_classInfoRepository.getTypeId(m_name));
+        ClassInfo[] interfaces = getInterfaces();
+        for (int i = 0; i < interfaces.length; i++) {
+            addSupertypeClosure(interfaces[i], closure);
+        }
+        addSupertypeClosure(getSuperclass(), closure);
+        m_supertypeClosure = new SupertypeClosure(closure, version);
+        return closure;
+    }
+
+    /**
+     * Adds the type ids of a class and all its supertypes to a closure of this class.
+     *
+     * @param classInfo the class info
+     * @param closure   the closure
+     */
+    private void addSupertypeClosure(final ClassInfo classInfo, final BitSet closure) {
+        if (classInfo == null) {
+            return;
+        }
+        if (classInfo instanceof AsmClassInfo) {
+            final AsmClassInfo asmClassInfo = (AsmClassInfo) classInfo;
+            final BitSet supertypeClosure = asmClassInfo.getSupertypeClosure();
+            if (asmClassInfo.m_classInfoRepository == m_classInfoRepository) {
+                closure.or(supertypeClosure);
+            } else {
+                // the ids of another class loader
+                for (int id = 0; id < supertypeClosure.length(); id++) {
+                    if (supertypeClosure.get(id)) {
+                        closure.set(
+                                m_classInfoRepository.getTypeId(asmClassInfo.m_classInfoRepository.getTypeName(id))
+                        );
+                    }
+                }
+            }
+            return;
+        }
+        final int id = m_classInfoRepository.getTypeId(classInfo.getName());
+        if (closure.get(id)) {
+            return;
+        }
+        closure.set(id);
+        ClassInfo[] interfaces = classInfo.getInterfaces();
+        for (int i = 0; i < interfaces.length; i++) {
+            addSupertypeClosure(interfaces[i], closure);
+        }
+        addSupertypeClosure(classInfo.getSuperclass(), closure);
+    }
+
+    /**
+     * Checks if the class has the same super class and interfaces than another version of the class.
+     *
+     * @param classInfo the other class info
+     * @return true if the super class and interface names are the same
+     */
+    private boolean hasSameSupertypes(final AsmClassInfo classInfo) {
+        if (m_superClassName == null ? classInfo.m_superClassName != null
+            : !m_superClassName.equals(classInfo.m_superClassName)) {
+            return false;
+        }
+        if (m_interfaceClassNames == null || classInfo.m_interfaceClassNames == null) {
+            return m_interfaceClassNames == classInfo.m_interfaceClassNames;
+        }
+        if (m_interfaceClassNames.length != classInfo.m_interfaceClassNames.length) {
+            return false;
+        }
+        for (int i = 0; i < m_interfaceClassNames.length; i++) {
+            if (!m_interfaceClassNames[i].equals(classInfo.m_interfaceClassNames[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Returns the component type if array type else null.
      *
@@ -798,7 +1087,7 @@ public class AsmClassInfo implements ClassInfo {
     }
 
     /**
-     * ASM bytecode visitor that gathers info about the class.
+     * ASM bytecode visitor that gathers info about the class header.
      *
      * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
      */
@@ -811,14 +1100,14 @@ public class AsmClassInfo implements ClassInfo {
                           final String superName,
                           final String[] interfaces) {
 
-            m_name = name.replace('/', '.');
+            m_name = m_classInfoRepository.intern(name.replace('/', '.'));
             m_modifiers = access;
             m_isInterface = Modifier.isInterface(m_modifiers);
             // special case for java.lang.Object, which does not extend anything
-            m_superClassName = superName == null ? null : superName.replace('/', '.');
-            m_interfaceClassNames = new String[interfaces.length];
+            m_superClassName = superName == null ? null : m_classInfoRepository.intern(superName.replace('/', '.'));
+            m_interfaceClassNames = interfaces.length == 0 ? EMPTY_STRING_ARRAY : new String[interfaces.length];
             for (int i = 0; i < interfaces.length; i++) {
-                m_interfaceClassNames[i] = interfaces[i].replace('/', '.');
+                m_interfaceClassNames[i] = m_classInfoRepository.intern(interfaces[i].replace('/', '.'));
             }
             // FIXME this algo for array types does most likely NOT WORK (since
             // I assume that ASM is handling arrays
@@ -839,6 +1128,89 @@ public class AsmClassInfo implements ClassInfo {
             }
         }
 
+        public FieldVisitor visitField(final int access,
+                                       final String name,
+                                       final String desc,
+                                       final String signature,
+                                       final Object value) {
+            return null;
+        }
+
+        public MethodVisitor visitMethod(final int access,
+                                         final String name,
+                                         final String desc,
+                                         final String signature,
+                                         final String[] exceptions) {
+            return null;
+        }
+
+        public void visitEnd() {
+            m_signature = AsmHelper.getClassDescriptor(AsmClassInfo.this);
+        }
+    }
+
+    /**
+     * ASM bytecode visitor that gathers info about the class methods, constructors and fields.
+     *
+     * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur </a>
+     */
+    private class ClassMembersClassAdapter extends AsmNullAdapter.NullClassAdapter {
+
+        private final List m_constructorList = new ArrayList();
+        private final TIntArrayList m_constructorHashList = new TIntArrayList();
+        private final List m_methodList = new ArrayList();
+        private final TIntArrayList m_methodHashList = new TIntArrayList();
+        private final List m_fieldList = new ArrayList();
+        private final TIntArrayList m_fieldHashList = new TIntArrayList();
+
+        /**
+         * Builds the member arrays of the class info from the visited members.
+         */
+        void setMembers() {
+            int[] hashes = m_constructorHashList.toNativeArray();
+            int[] indexes = sortByHash(hashes);
+            ConstructorInfo[] constructors = new ConstructorInfo[indexes.length];
+            m_constructorList.toArray(constructors);
+            ConstructorInfo[] constructorsByHash = new ConstructorInfo[indexes.length];
+            int[] constructorHashes = new int[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                constructorsByHash[i] = constructors[indexes[i]];
+                constructorHashes[i] = hashes[indexes[i]];
+            }
+
+            hashes = m_methodHashList.toNativeArray();
+            indexes = sortByHash(hashes);
+            MethodInfo[] methods = new MethodInfo[indexes.length];
+            m_methodList.toArray(methods);
+            MethodInfo[] methodsByHash = new MethodInfo[indexes.length];
+            int[] methodHashes = new int[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                methodsByHash[i] = methods[indexes[i]];
+                methodHashes[i] = hashes[indexes[i]];
+            }
+
+            hashes = m_fieldHashList.toNativeArray();
+            indexes = sortByHash(hashes);
+            FieldInfo[] fields = new FieldInfo[indexes.length];
+            m_fieldList.toArray(fields);
+            FieldInfo[] fieldsByHash = new FieldInfo[indexes.length];
+            int[] fieldHashes = new int[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                fieldsByHash[i] = fields[indexes[i]];
+                fieldHashes[i] = hashes[indexes[i]];
+            }
+
+            m_constructors = constructors;
+            m_constructorsByHash = constructorsByHash;
+            m_constructorHashes = constructorHashes;
+            m_methods = methods;
+            m_methodsByHash = methodsByHash;
+            m_methodHashes = methodHashes;
+            m_fields = fields;
+            m_fieldsByHash = fieldsByHash;
+            m_fieldHashes = fieldHashes;
+        }
+
         public FieldVisitor visitField(final int access,
                                final String name,
                                final String desc,
@@ -851,8 +1223,8 @@ public class AsmClassInfo implements ClassInfo {
             struct.value = value;
             AsmFieldInfo fieldInfo = new AsmFieldInfo(struct, m_name, (ClassLoader) m_loaderRef.get());
             int hash = AsmHelper.calculateFieldHash(name, desc);
-            m_fields.put(hash, fieldInfo);
-            m_sortedFieldHashes.add(hash);
+            m_fieldList.add(fieldInfo);
+            m_fieldHashList.add(hash);
             return AsmNullAdapter.NullFieldAdapter.NULL_FIELD_ADAPTER;
         }
 
@@ -875,12 +1247,12 @@ public class AsmClassInfo implements ClassInfo {
                 AsmMemberInfo memberInfo = null;
                 if (name.equals(TransformationConstants.INIT_METHOD_NAME)) {
                     memberInfo = new AsmConstructorInfo(struct, m_name, (ClassLoader) m_loaderRef.get());
-                    m_constructors.put(hash, memberInfo);
-                    m_sortedConstructorHashes.add(hash);
+                    m_constructorList.add(memberInfo);
+                    m_constructorHashList.add(hash);
                 } else {
                     memberInfo = new AsmMethodInfo(struct, m_name, (ClassLoader) m_loaderRef.get());
-                    m_methods.put(hash, memberInfo);
-                    m_sortedMethodHashes.add(hash);
+                    m_methodList.add(memberInfo);
+                    m_methodHashList.add(hash);
                     methodInfo = (AsmMethodInfo) memberInfo;
                 }
             }
@@ -900,10 +1272,6 @@ public class AsmClassInfo implements ClassInfo {
             }
             return AsmNullAdapter.NullMethodAdapter.NULL_METHOD_ADAPTER;
         }
-
-        public void visitEnd() {
-            m_signature = AsmHelper.getClassDescriptor(AsmClassInfo.this);
-        }
     }
 
     /**
@@ -930,7 +1298,7 @@ public class AsmClassInfo implements ClassInfo {
                 m_signatureParameterRegisterDepth++;// index 0 = this
             }
             m_signatureParameterRegisterDepth += AsmHelper.getRegisterDepth(
-                    Type.getArgumentTypes(m_methodInfo.m_member.desc)
+                    Type.getArgumentTypes(m_methodInfo.m_desc)
             );
         }
 
@@ -993,4 +1361,17 @@ public class AsmClassInfo implements ClassInfo {
         }
         return m_annotationReader;
     }
+
+    /**
+     * An immutable supertype closure and the hierarchy version it has been computed for.
+     */
+    private static final class SupertypeClosure {
+        final BitSet m_closure;
+        final int m_version;
+
+        SupertypeClosure(final BitSet closure, final int version) {
+            m_closure = closure;
+            m_version = version;
+        }
+    }
 }
\ No newline at end of file
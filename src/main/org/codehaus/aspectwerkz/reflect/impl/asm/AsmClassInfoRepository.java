@@ -7,13 +7,15 @@
  **************************************************************************************/
 package org.codehaus.aspectwerkz.reflect.impl.asm;
 
-import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TObjectIntHashMap;
 import org.codehaus.aspectwerkz.reflect.ClassInfo;
 import org.codehaus.aspectwerkz.exception.DefinitionException;
+import org.codehaus.aspectwerkz.util.ClassLoaderMap;
+import org.codehaus.aspectwerkz.util.ConcurrentReferenceMap;
 
 import java.lang.ref.WeakReference;
-import java.lang.ref.SoftReference;
-import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.io.InputStream;
 import java.io.IOException;
@@ -27,12 +29,55 @@ public class AsmClassInfoRepository {
     /**
      * Map with all the class info repositories mapped to their class loader.
      */
-    private static final TIntObjectHashMap s_repositories = new TIntObjectHashMap();
+    private static final ClassLoaderMap s_repositories = new ClassLoaderMap();
 
     /**
-     * Map with all the class info mapped to their class names.
+     * Changes each time a class info is added to a repository that has been searched as a parent repository.
      */
-    private final TIntObjectHashMap m_repository = new TIntObjectHashMap();
+    private static volatile int s_parentVersion = 0;
+
+    /**
+     * Map with all the class info, softly referenced, mapped to their class names.
+     * <p/>
+     * Concurrent since classes can be loaded and woven by several threads.
+     */
+    private final ConcurrentReferenceMap m_repository = new ConcurrentReferenceMap(ConcurrentReferenceMap.SOFT);
+
+    /**
+     * Map of the class names not found in the parent repositories, to the parent version they have been searched
+     * for.
+     */
+    private final ConcurrentReferenceMap m_missingInParents =
+            new ConcurrentReferenceMap(ConcurrentReferenceMap.STRONG);
+
+    /**
+     * Symbol table for the class, member, descriptor and type names of the class infos of the class loader, so that
+     * equal names read from several class files share the same string instance.
+     */
+    private final ConcurrentReferenceMap m_symbols = new ConcurrentReferenceMap(ConcurrentReferenceMap.STRONG);
+
+    /**
+     * The type ids of the class loader mapped to the type names, see {@link #getTypeId(String)}.
+     * <p/>
+     * Guarded by itself.
+     */
+    private final TObjectIntHashMap m_typeIds = new TObjectIntHashMap();
+
+    /**
+     * The type names, indexed by type id.
+     */
+    private final List m_typeNames = new ArrayList();
+
+    /**
+     * Changes each time a class info of the class loader is marked dirty or rebuilt with another super class or
+     * other interfaces.
+     */
+    private volatile int m_hierarchyVersion = 0;
+
+    /**
+     * True once the repository has been searched as a parent repository.
+     */
+    private volatile boolean m_isParent = false;
 
     /**
      * Class loader for the class repository.
@@ -78,22 +123,12 @@ public class AsmClassInfoRepository {
      * @param loader
      * @return
      */
-    public static synchronized AsmClassInfoRepository getRepository(final ClassLoader loader) {
-        int hash;
-        if (loader == null) { // boot cl
-            hash = 0;
-        } else {
-            hash = loader.hashCode();
-        }
-        Reference repositoryRef = (Reference) s_repositories.get(hash);
-        AsmClassInfoRepository repository = ((repositoryRef == null) ? null : (AsmClassInfoRepository) repositoryRef
-                .get());
+    public static AsmClassInfoRepository getRepository(final ClassLoader loader) {
+        AsmClassInfoRepository repository = (AsmClassInfoRepository) s_repositories.get(loader);
         if (repository != null) {
             return repository;
         } else {
-            AsmClassInfoRepository repo = new AsmClassInfoRepository(loader);
-            s_repositories.put(hash, new SoftReference(repo));
-            return repo;
+            return (AsmClassInfoRepository) s_repositories.putIfAbsent(loader, new AsmClassInfoRepository(loader));
         }
     }
 
@@ -114,8 +149,7 @@ public class AsmClassInfoRepository {
      * @return
      */
     public ClassInfo getClassInfo(final String className) {
-        Reference classInfoRef = ((Reference) m_repository.get(className.hashCode()));
-        ClassInfo info = (classInfoRef == null) ? null : (ClassInfo) (classInfoRef.get());
+        ClassInfo info = (ClassInfo) m_repository.get(className);
         if (info == null) {
             return checkParentClassRepository(className, (ClassLoader) m_loaderRef.get());
         }
@@ -130,7 +164,10 @@ public class AsmClassInfoRepository {
     public void addClassInfo(final ClassInfo classInfo) {
         // is the class loaded by a class loader higher up in the hierarchy?
         if (checkParentClassRepository(classInfo.getName(), (ClassLoader) m_loaderRef.get()) == null) {
-            m_repository.put(classInfo.getName().hashCode(), new SoftReference(classInfo));
+            m_repository.put(classInfo.getName(), classInfo);
+            if (m_isParent) {
+                s_parentVersion++;
+            }
         } else {
             // TODO: remove class in child class repository and add it for the
             // current (parent) CL
@@ -144,8 +181,7 @@ public class AsmClassInfoRepository {
      * @return
      */
     public boolean hasClassInfo(final String name) {
-        Reference classInfoRef = (Reference) m_repository.get(name.hashCode());
-        return (classInfoRef == null) ? false : (classInfoRef.get() != null);
+        return m_repository.containsKey(name);
     }
 
     /**
@@ -154,7 +190,82 @@ public class AsmClassInfoRepository {
      * @param className
      */
     public void removeClassInfo(final String className) {
-        m_repository.remove(className.hashCode());
+        m_repository.remove(className);
+    }
+
+    /**
+     * Returns the canonical instance of a name for the class loader.
+     *
+     * @param symbol the name
+     * @return the equal name held by the symbol table
+     */
+    public String intern(final String symbol) {
+        if (symbol == null) {
+            return null;
+        }
+        String canonical = (String) m_symbols.get(symbol);
+        if (canonical == null) {
+            canonical = (String) m_symbols.putIfAbsent(symbol, symbol);
+        }
+        return canonical;
+    }
+
+    /**
+     * Returns the id of a type name for the class loader. The ids are small integers allocated in sequence, they
+     * live as long as the class loader.
+     *
+     * @param typeName the type name
+     * @return the type id
+     */
+    public int getTypeId(final String typeName) {
+        synchronized (m_typeIds) {
+            if (m_typeIds.containsKey(typeName)) {
+                return m_typeIds.get(typeName);
+            }
+            int id = m_typeNames.size();
+            m_typeIds.put(typeName, id);
+            m_typeNames.add(typeName);
+            return id;
+        }
+    }
+
+    /**
+     * Returns the type name of a type id of the class loader.
+     *
+     * @param typeId the type id
+     * @return the type name
+     */
+    public String getTypeName(final int typeId) {
+        synchronized (m_typeIds) {
+            return (String) m_typeNames.get(typeId);
+        }
+    }
+
+    /**
+     * Invalidates the results computed from the class hierarchies of the class loader and of the class loaders
+     * it is the parent of.
+     */
+    public void markHierarchyChanged() {
+        m_hierarchyVersion++;
+    }
+
+    /**
+     * Returns the version of the class hierarchies seen from the class loader, that changes each time a class
+     * info of the class loader or of one of its parents is marked dirty or rebuilt with another super class or other
+     * interfaces.
+     *
+     * @return the hierarchy version
+     */
+    public int getHierarchyVersion() {
+        int version = m_hierarchyVersion;
+        final ClassLoader loader = (ClassLoader) m_loaderRef.get();
+        if (loader != null) {
+            for (ClassLoader parent = loader.getParent(); parent != null; parent = parent.getParent()) {
+                version += getRepository(parent).m_hierarchyVersion;
+            }
+            version += getRepository(null).m_hierarchyVersion;
+        }
+        return version;
     }
 
     /**
@@ -168,6 +279,8 @@ public class AsmClassInfoRepository {
 
     /**
      * Searches for a class info up in the class loader hierarchy.
+     * <p/>
+     * The class names not found are remembered, until a class info is added to one of the searched repositories.
      *
      * @param className
      * @param loader
@@ -179,17 +292,27 @@ public class AsmClassInfoRepository {
         if (loader == null) {
             return null;
         }
-        ClassInfo info;
-        ClassLoader parent = loader.getParent();
-        if (parent == null) {
-            return null;
-        } else {
-            info = AsmClassInfoRepository.getRepository(parent).getClassInfo(className);
+        final boolean isOwnLoader = loader == m_loaderRef.get();
+        final int version = s_parentVersion;
+        if (isOwnLoader) {
+            Integer missingVersion = (Integer) m_missingInParents.get(className);
+            if (missingVersion != null && missingVersion.intValue() == version) {
+                return null;
+            }
+        }
+        for (ClassLoader parent = loader.getParent(); parent != null; parent = parent.getParent()) {
+            AsmClassInfoRepository repository = AsmClassInfoRepository.getRepository(parent);
+            if (!repository.m_isParent) {
+                repository.m_isParent = true;
+            }
+            ClassInfo info = (ClassInfo) repository.m_repository.get(className);
             if (info != null) {
                 return info;
-            } else {
-                return checkParentClassRepository(className, parent);
             }
         }
+        if (isOwnLoader && version == s_parentVersion) {
+            m_missingInParents.put(className, new Integer(version));
+        }
+        return null;
     }
 }
\ No newline at end of file
@@ -11,7 +11,6 @@ import org.codehaus.aspectwerkz.reflect.ClassInfo;
 import org.codehaus.aspectwerkz.reflect.ConstructorInfo;
 import org.codehaus.aspectwerkz.transform.inlining.AsmHelper;
 import org.codehaus.backport175.reader.bytecode.AnnotationElement;
-import org.objectweb.asm.Type;
 
 /**
  * ASM implementation of the ConstructorInfo interface.
@@ -49,13 +48,9 @@ public class AsmConstructorInfo extends AsmMemberInfo implements ConstructorInfo
      */
     AsmConstructorInfo(final MethodStruct method, final String declaringType, final ClassLoader loader) {
         super(method, declaringType, loader);
-        Type[] argTypes = Type.getArgumentTypes(method.desc);
-        m_parameterTypeNames = new String[argTypes.length];
-        for (int i = 0; i < argTypes.length; i++) {
-            m_parameterTypeNames[i] = argTypes[i].getClassName();
-        }
+        m_parameterTypeNames = getParameterTypeNames(method.desc, m_classInfoRepository);
         // FIXME: how to do exceptions?
-        m_exceptionTypeNames = new String[]{};
+        m_exceptionTypeNames = AsmClassInfo.EMPTY_STRING_ARRAY;
     }
 
     /**
@@ -129,7 +124,7 @@ public class AsmConstructorInfo extends AsmMemberInfo implements ConstructorInfo
      * @return the annotations
      */
     public AnnotationElement.Annotation[] getAnnotations() {
-        return getDeclaringType().getAnnotationReader().getConstructorAnnotationElements(m_member.desc);
+        return getDeclaringType().getAnnotationReader().getConstructorAnnotationElements(m_desc);
     }
 
     public boolean equals(Object o) {
@@ -143,7 +138,7 @@ public class AsmConstructorInfo extends AsmMemberInfo implements ConstructorInfo
         if (!m_declaringTypeName.equals(constructorInfo.getDeclaringType().getName())) {
             return false;
         }
-        if (!m_member.name.equals(constructorInfo.getName())) {
+        if (!m_name.equals(constructorInfo.getName())) {
             return false;
         }
         ClassInfo[] parameterTypes = constructorInfo.getParameterTypes();
@@ -161,7 +156,7 @@ public class AsmConstructorInfo extends AsmMemberInfo implements ConstructorInfo
     public int hashCode() {
         int result = 29;
         result = (29 * result) + m_declaringTypeName.hashCode();
-        result = (29 * result) + m_member.name.hashCode();
+        result = (29 * result) + m_name.hashCode();
         for (int i = 0; i < m_parameterTypeNames.length; i++) {
             result = (29 * result) + m_parameterTypeNames[i].hashCode();
         }
@@ -170,8 +165,8 @@ public class AsmConstructorInfo extends AsmMemberInfo implements ConstructorInfo
 
     public String toString() {
         StringBuffer sb = new StringBuffer(m_declaringTypeName);
-        sb.append('.').append(m_member.name);
-        sb.append(m_member.desc);
+        sb.append('.').append(m_name);
+        sb.append(m_desc);
         return sb.toString();
     }
 }
\ No newline at end of file
@@ -43,7 +43,7 @@ public class AsmFieldInfo extends AsmMemberInfo implements FieldInfo {
      */
     AsmFieldInfo(final FieldStruct field, final String declaringType, final ClassLoader loader) {
         super(field, declaringType, loader);
-        m_typeName = Type.getType(field.desc).getClassName();
+        m_typeName = m_classInfoRepository.intern(Type.getType(field.desc).getClassName());
     }
 
     /**
@@ -95,7 +95,7 @@ public class AsmFieldInfo extends AsmMemberInfo implements FieldInfo {
      * @return the annotations
      */
     public AnnotationElement.Annotation[] getAnnotations() {
-        return getDeclaringType().getAnnotationReader().getFieldAnnotationElements(m_member.name, m_member.desc);
+        return getDeclaringType().getAnnotationReader().getFieldAnnotationElements(m_name, m_desc);
     }
 
     public boolean equals(Object o) {
@@ -109,7 +109,7 @@ public class AsmFieldInfo extends AsmMemberInfo implements FieldInfo {
         if (!m_declaringTypeName.equals(fieldInfo.getDeclaringType().getName())) {
             return false;
         }
-        if (!m_member.name.equals(fieldInfo.getName())) {
+        if (!m_name.equals(fieldInfo.getName())) {
             return false;
         }
         if (!m_typeName.equals(fieldInfo.getType().getName())) {
@@ -121,15 +121,15 @@ public class AsmFieldInfo extends AsmMemberInfo implements FieldInfo {
     public int hashCode() {
         int result = 29;
         result = (29 * result) + m_declaringTypeName.hashCode();
-        result = (29 * result) + m_member.name.hashCode();
+        result = (29 * result) + m_name.hashCode();
         result = (29 * result) + m_typeName.hashCode();
         return result;
     }
 
     public String toString() {
         StringBuffer sb = new StringBuffer(m_declaringTypeName);
-        sb.append('.').append(m_member.name).append(' ');
-        sb.append(m_member.desc);
+        sb.append('.').append(m_name).append(' ');
+        sb.append(m_desc);
         return sb.toString();
     }
 }
\ No newline at end of file
@@ -12,6 +12,7 @@ import org.codehaus.aspectwerkz.reflect.MemberInfo;
 import org.codehaus.backport175.reader.Annotation;
 import org.codehaus.backport175.reader.bytecode.AnnotationElement;
 import org.codehaus.backport175.reader.bytecode.AnnotationReader;
+import org.objectweb.asm.Type;
 
 import java.lang.ref.WeakReference;
 import java.util.*;
@@ -24,9 +25,19 @@ import java.util.*;
 public abstract class AsmMemberInfo implements MemberInfo {
 
     /**
-     * The member info.
+     * The member name, interned in the class info repository.
      */
-    protected final MemberStruct m_member;
+    protected final String m_name;
+
+    /**
+     * The member descriptor, interned in the class info repository.
+     */
+    protected final String m_desc;
+
+    /**
+     * The member modifiers.
+     */
+    protected final int m_modifiers;
 
     /**
      * The class loader wrapped in a weak ref.
@@ -62,10 +73,12 @@ public abstract class AsmMemberInfo implements MemberInfo {
         if (declaringType == null) {
             throw new IllegalArgumentException("declaring type can not be null");
         }
-        m_member = member;
         m_loaderRef = new WeakReference(loader);
-        m_declaringTypeName = declaringType.replace('/', '.');
         m_classInfoRepository = AsmClassInfoRepository.getRepository(loader);
+        m_name = m_classInfoRepository.intern(member.name);
+        m_desc = m_classInfoRepository.intern(member.desc);
+        m_modifiers = member.modifiers;
+        m_declaringTypeName = m_classInfoRepository.intern(declaringType.replace('/', '.'));
     }
 
     /**
@@ -74,7 +87,7 @@ public abstract class AsmMemberInfo implements MemberInfo {
      * @return the name
      */
     public String getName() {
-        return m_member.name;
+        return m_name;
     }
 
     /**
@@ -83,7 +96,26 @@ public abstract class AsmMemberInfo implements MemberInfo {
      * @return the modifiers
      */
     public int getModifiers() {
-        return m_member.modifiers;
+        return m_modifiers;
+    }
+
+    /**
+     * Returns the interned parameter type names of a method descriptor.
+     *
+     * @param desc       the method descriptor
+     * @param repository the class info repository holding the symbol table
+     * @return the parameter type names
+     */
+    static String[] getParameterTypeNames(final String desc, final AsmClassInfoRepository repository) {
+        Type[] argTypes = Type.getArgumentTypes(desc);
+        if (argTypes.length == 0) {
+            return AsmClassInfo.EMPTY_STRING_ARRAY;
+        }
+        String[] typeNames = new String[argTypes.length];
+        for (int i = 0; i < argTypes.length; i++) {
+            typeNames[i] = repository.intern(argTypes[i].getClassName());
+        }
+        return typeNames;
     }
 
     /**
@@ -69,14 +69,10 @@ public class AsmMethodInfo extends AsmMemberInfo implements MethodInfo {
     AsmMethodInfo(final MethodStruct method, final String declaringType, final ClassLoader loader) {
         super(method, declaringType, loader);
 
-        m_returnTypeName = Type.getReturnType(method.desc).getClassName();
-        Type[] argTypes = Type.getArgumentTypes(method.desc);
-        m_parameterTypeNames = new String[argTypes.length];
-        for (int i = 0; i < argTypes.length; i++) {
-            m_parameterTypeNames[i] = argTypes[i].getClassName();
-        }
+        m_returnTypeName = m_classInfoRepository.intern(Type.getReturnType(method.desc).getClassName());
+        m_parameterTypeNames = getParameterTypeNames(method.desc, m_classInfoRepository);
         // FIXME: how to do exceptions? needed?
-        m_exceptionTypeNames = new String[]{};
+        m_exceptionTypeNames = AsmClassInfo.EMPTY_STRING_ARRAY;
     }
 
     /**
@@ -177,7 +173,7 @@ public class AsmMethodInfo extends AsmMemberInfo implements MethodInfo {
      * @return the annotations
      */
     public AnnotationElement.Annotation[] getAnnotations() {
-        return getDeclaringType().getAnnotationReader().getMethodAnnotationElements(m_member.name, m_member.desc);
+        return getDeclaringType().getAnnotationReader().getMethodAnnotationElements(m_name, m_desc);
     }
 
     public boolean equals(Object o) {
@@ -191,7 +187,7 @@ public class AsmMethodInfo extends AsmMemberInfo implements MethodInfo {
         if (!m_declaringTypeName.equals(methodInfo.getDeclaringType().getName())) {
             return false;
         }
-        if (!m_member.name.equals(methodInfo.getName())) {
+        if (!m_name.equals(methodInfo.getName())) {
             return false;
         }
         ClassInfo[] parameterTypes = methodInfo.getParameterTypes();
@@ -209,7 +205,7 @@ public class AsmMethodInfo extends AsmMemberInfo implements MethodInfo {
     public int hashCode() {
         int result = 29;
         result = (29 * result) + m_declaringTypeName.hashCode();
-        result = (29 * result) + m_member.name.hashCode();
+        result = (29 * result) + m_name.hashCode();
         for (int i = 0; i < m_parameterTypeNames.length; i++) {
             result = (29 * result) + m_parameterTypeNames[i].hashCode();
         }
@@ -218,8 +214,8 @@ public class AsmMethodInfo extends AsmMemberInfo implements MethodInfo {
 
     public String toString() {
         StringBuffer sb = new StringBuffer(m_declaringTypeName);
-        sb.append('.').append(m_member.name);
-        sb.append(m_member.desc);
+        sb.append('.').append(m_name);
+        sb.append(m_desc);
         return sb.toString();
     }
 
@@ -232,19 +228,19 @@ public class AsmMethodInfo extends AsmMemberInfo implements MethodInfo {
      */
     public void pushParameterNameFromRegister(int registerIndex, String parameterName) {
         int registerStart = 1;
-        if (Modifier.isStatic(m_member.modifiers)) {
+        if (Modifier.isStatic(m_modifiers)) {
             registerStart = 0;
         }
         // assume we have a stack starting at the first parameter
         int registerIndexFrom0 = registerIndex - registerStart;
-        Type[] parameters = Type.getArgumentTypes(m_member.desc);
+        Type[] parameters = Type.getArgumentTypes(m_desc);
         int typeIndex = AsmHelper.getTypeIndexOf(parameters, registerIndexFrom0);
         if (typeIndex >= 0 && typeIndex < m_parameterNames.length) {
-            m_parameterNames[typeIndex] = parameterName;
+            m_parameterNames[typeIndex] = m_classInfoRepository.intern(parameterName);
         } else {
             throw new DefinitionException(
                     "Could not register parameter named " + parameterName
-                    + " from register " + registerIndex + " for " + m_member.name + "." + m_member.desc
+                    + " from register " + registerIndex + " for " + m_name + "." + m_desc
             );
         }
     }
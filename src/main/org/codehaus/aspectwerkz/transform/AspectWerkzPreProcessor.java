@@ -15,6 +15,9 @@ import org.codehaus.aspectwerkz.hook.ClassPreProcessor;
 import org.codehaus.aspectwerkz.transform.inlining.InliningWeavingStrategy;
 import org.codehaus.aspectwerkz.transform.inlining.EmittedJoinPoint;
 import org.codehaus.aspectwerkz.transform.inlining.ContextImpl;
+import org.codehaus.aspectwerkz.transform.inlining.WeavingCache;
+
+import java.io.File;
 
 /**
  * AspectWerkzPreProcessor is the entry point of the AspectWerkz layer 2. <p/>It implements the ClassPreProcessor
@@ -33,6 +36,15 @@ import org.codehaus.aspectwerkz.transform.inlining.ContextImpl;
  * <code>org.codehaus.aspectwerkz</code> and related classes (trove, dom4j etc.). This should only be used in offline
  * mode where weaving of those classes is needed. Setting this option in online mode will lead to
  * <code>ClassCircularityError</code>.</li>
+ * <li><code>-Daspectwerkz.transform.singlepass=yes</code> gathers all the lookahead information in one single
+ * bytecode pass and skips the type change phase when there is no mixin nor interface to add. The woven bytecode is
+ * the same.</li>
+ * <li><code>-Daspectwerkz.transform.cache=/some/dir</code> turns on the persistent weaving cache stored in the
+ * given directory: a class whose bytecode and definitions did not change since it was woven by a previous JVM is
+ * not woven again. The cache must be cleared when the classes it refers to are changed.</li>
+ * <li><code>-Daspectwerkz.transform.jppool=yes</code> lets the compiled join points reuse one join point instance per
+ * thread instead of allocating one for each invocation, when the bytecode of the advices shows that none of them
+ * lets the join point escape.</li>
  * </ul>
  *
  * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur </a>
@@ -50,6 +62,12 @@ public class AspectWerkzPreProcessor implements ClassPreProcessor {
 
     private final static String AW_TRANSFORM_DUMP = "aspectwerkz.transform.dump";
 
+    private final static String AW_TRANSFORM_SINGLEPASS = "aspectwerkz.transform.singlepass";
+
+    private final static String AW_TRANSFORM_CACHE = "aspectwerkz.transform.cache";
+
+    private final static String AW_TRANSFORM_JPPOOL = "aspectwerkz.transform.jppool";
+
     public final static TypePattern DUMP_PATTERN;
 
     private final static boolean NOFILTER; // TODO: not used, remove?
@@ -68,6 +86,12 @@ public class AspectWerkzPreProcessor implements ClassPreProcessor {
 
     public final static boolean GENJP;
 
+    public final static boolean SINGLE_PASS;
+
+    public final static String CACHE_DIR;
+
+    public final static boolean JP_POOL;
+
     static {
         // define the tracing and dump options
         String verbose = System.getProperty(AW_TRANSFORM_VERBOSE, null);
@@ -76,6 +100,11 @@ public class AspectWerkzPreProcessor implements ClassPreProcessor {
         DETAILS = "yes".equalsIgnoreCase(details) || "true".equalsIgnoreCase(details);
         String genjp = System.getProperty(AW_TRANSFORM_GENJP, null);
         GENJP = "yes".equalsIgnoreCase(genjp) || "true".equalsIgnoreCase(genjp);
+        String singlePass = System.getProperty(AW_TRANSFORM_SINGLEPASS, null);
+        SINGLE_PASS = "yes".equalsIgnoreCase(singlePass) || "true".equalsIgnoreCase(singlePass);
+        CACHE_DIR = System.getProperty(AW_TRANSFORM_CACHE, null);
+        String jpPool = System.getProperty(AW_TRANSFORM_JPPOOL, null);
+        JP_POOL = "yes".equalsIgnoreCase(jpPool) || "true".equalsIgnoreCase(jpPool);
         String filter = System.getProperty(AW_TRANSFORM_FILTER, null);
         NOFILTER = "no".equalsIgnoreCase(filter) || "false".equalsIgnoreCase(filter);
         String dumpPattern = System.getProperty(AW_TRANSFORM_DUMP, null);
@@ -110,11 +139,19 @@ public class AspectWerkzPreProcessor implements ClassPreProcessor {
      */
     private WeavingStrategy m_weavingStrategy;
 
+    /**
+     * Persistent weaving cache, null if not turned on.
+     */
+    private WeavingCache m_weavingCache;
+
     /**
      * Initializes the transformer stack.
      */
     public void initialize() {
         m_weavingStrategy = new InliningWeavingStrategy();
+        if (CACHE_DIR != null) {
+            m_weavingCache = new WeavingCache(new File(CACHE_DIR));
+        }
         m_initialized = true;
     }
 
@@ -171,8 +208,16 @@ public class AspectWerkzPreProcessor implements ClassPreProcessor {
         // on class FQN className)
         dumpBefore(className, context);
 
-        // do the transformation
-        m_weavingStrategy.transform(className, context);
+        // do the transformation, unless already done by a previous JVM
+        if (m_weavingCache != null && context instanceof ContextImpl) {
+            final String key = m_weavingCache.getKey(context);
+            if (!m_weavingCache.load(key, (ContextImpl) context)) {
+                m_weavingStrategy.transform(className, context);
+                m_weavingCache.store(key, (ContextImpl) context);
+            }
+        } else {
+            m_weavingStrategy.transform(className, context);
+        }
 
         // dump after as required
         dumpAfter(className, context);
@@ -207,10 +252,11 @@ public class AspectWerkzPreProcessor implements ClassPreProcessor {
         output.emittedJoinPoints =
         (EmittedJoinPoint[]) ((ContextImpl) context).getEmittedJoinPoints().toArray(new EmittedJoinPoint[0]);
 
-        // resolve line numbers
+        // resolve line numbers and join point indexes
         for (int i = 0; i < output.emittedJoinPoints.length; i++) {
             EmittedJoinPoint emittedJoinPoint = output.emittedJoinPoints[i];
             emittedJoinPoint.resolveLineNumber(context);
+            emittedJoinPoint.resolveJoinPointIndex(context);
         }
         return output;
     }
@@ -118,4 +118,12 @@ public interface Context {
      */
     abstract int resolveLineNumberInfo(Label label);
 
+    /**
+     * Resolves the position of the given join point class among the join point classes emitted for the class
+     *
+     * @param joinPointClassName
+     * @return
+     */
+    abstract int resolveJoinPointIndex(String joinPointClassName);
+
 }
\ No newline at end of file
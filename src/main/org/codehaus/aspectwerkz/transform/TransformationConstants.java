@@ -37,7 +37,8 @@ public interface TransformationConstants extends Opcodes {
     // internal fields
     public static final String SERIAL_VERSION_UID_FIELD_NAME = "serialVersionUID";
     public static final String TARGET_CLASS_FIELD_NAME = SYNTHETIC_MEMBER_PREFIX + "clazz";
-    public static final String EMITTED_JOINPOINTS_FIELD_NAME = SYNTHETIC_MEMBER_PREFIX + "emittedJoinPoints";
+    public static final String JOIN_POINT_INDEX_OFFSET_FIELD_NAME = SYNTHETIC_MEMBER_PREFIX + "joinPointIndexOffset";
+    public static final String ADVISABLE_CLASS_FIELD_NAME = SYNTHETIC_MEMBER_PREFIX + "advisableClass";
 
     // internal methods
     public static final String INIT_JOIN_POINTS_METHOD_NAME = WRAPPER_METHOD_PREFIX + "initJoinPoints";
@@ -53,6 +54,7 @@ public interface TransformationConstants extends Opcodes {
     public static final String INVOKE_METHOD_NAME = "invoke";
     public static final String FOR_NAME_METHOD_NAME = "forName";
     public static final String LOAD_JOIN_POINT_METHOD_NAME = "loadJoinPoint";
+    public static final String LOAD_JOIN_POINTS_METHOD_NAME = "loadJoinPoints";
     public static final String MIXINS_CLASS_NAME = "org/codehaus/aspectwerkz/aspect/management/Mixins";
     public static final String MIXIN_OF_METHOD_NAME = "mixinOf";
     public static final String MIXIN_OF_METHOD_PER_JVM_SIGNATURE = "(Ljava/lang/String;Ljava/lang/ClassLoader;)Ljava/lang/Object;";
@@ -122,6 +124,8 @@ public interface TransformationConstants extends Opcodes {
     public static final String ARGUMENT_FIELD = "ARGUMENT_";
     public static final String RETURN_VALUE_FIELD_NAME = "RETURN_VALUE";
     public static final String OPTIMIZED_JOIN_POINT_INSTANCE_FIELD_NAME = "OPTIMIZED_JOIN_POINT";
+    public static final String JOIN_POINT_POOL_FIELD_NAME = "POOL";
+    public static final String IN_USE_FIELD_NAME = "IN_USE";
     public static final String ENCLOSING_SJP_FIELD_NAME = "ENCLOSINGSJP";
 
     public static final String AROUND_INTERCEPTORS_FIELD_NAME = "AROUND_INTERCEPTORS";
@@ -139,6 +143,9 @@ public interface TransformationConstants extends Opcodes {
     
     public static final String JOIN_POINT_MANAGER_CLASS_NAME = "org/codehaus/aspectwerkz/joinpoint/management/JoinPointManager";
     public static final String LOAD_JOIN_POINT_METHOD_SIGNATURE = "(ILjava/lang/Class;Ljava/lang/String;Ljava/lang/String;ILjava/lang/String;Ljava/lang/String;Ljava/lang/String;IILjava/lang/String;)V";
+    public static final String EMITTED_JOIN_POINT_CLASS_NAME = "org/codehaus/aspectwerkz/transform/inlining/EmittedJoinPoint";
+    public static final String EMITTED_JOIN_POINT_INIT_METHOD_SIGNATURE = "(ILjava/lang/String;Ljava/lang/String;Ljava/lang/String;ILjava/lang/String;Ljava/lang/String;Ljava/lang/String;IILjava/lang/String;I)V";
+    public static final String LOAD_JOIN_POINTS_METHOD_SIGNATURE = "(Ljava/lang/Class;[Lorg/codehaus/aspectwerkz/transform/inlining/EmittedJoinPoint;)V";
     public static final String FOR_NAME_METHOD_SIGNATURE = "(Ljava/lang/String;)Ljava/lang/Class;";
     public static final String METHOD_SIGNATURE_IMPL_CLASS_NAME = "org/codehaus/aspectwerkz/joinpoint/impl/MethodSignatureImpl";
     public static final String METHOD_SIGNATURE_IMPL_CLASS_SIGNATURE = "Lorg/codehaus/aspectwerkz/joinpoint/impl/MethodSignatureImpl;";
@@ -188,6 +195,12 @@ public interface TransformationConstants extends Opcodes {
     public static final String HASH_MAP_CLASS_NAME = "java/util/HashMap";
     public static final String NO_PARAM_RETURN_VOID_SIGNATURE = "()V";
     public static final String NO_PARAM_RETURN_BOOLEAN_SIGNATURE = "()Z";
+    public static final String NO_PARAM_RETURN_OBJECT_SIGNATURE = "()Ljava/lang/Object;";
+    public static final String THREAD_LOCAL_CLASS_NAME = "java/lang/ThreadLocal";
+    public static final String THREAD_LOCAL_CLASS_SIGNATURE = "Ljava/lang/ThreadLocal;";
+    public static final String THREAD_CLASS_NAME = "java/lang/Thread";
+    public static final String CURRENT_THREAD_METHOD_NAME = "currentThread";
+    public static final String CURRENT_THREAD_METHOD_SIGNATURE = "()Ljava/lang/Thread;";
     public static final String CLASS_NOT_FOUND_EXCEPTION_CLASS_NAME = "java/lang/ClassNotFoundException";
     public static final String GET_CALLER_CLASS_METHOD_NAME = "getCallerClass";
     public static final String GET_CALLER_CLASS_METHOD_SIGNATURE = "()Ljava/lang/Class;";
@@ -223,6 +236,11 @@ public interface TransformationConstants extends Opcodes {
     public static final String HANDLER_RTTI_IMPL_INIT_SIGNATURE = "(Lorg/codehaus/aspectwerkz/joinpoint/impl/CatchClauseSignatureImpl;Ljava/lang/Object;Ljava/lang/Object;)V";
     public static final String SET_PARAMETER_VALUES_METHOD_NAME = "setParameterValues";
     public static final String SET_PARAMETER_VALUES_METHOD_SIGNATURE = "([Ljava/lang/Object;)V";
+    public static final String ARGUMENTS_CLASS_NAME = "org/codehaus/aspectwerkz/joinpoint/Arguments";
+    public static final String SET_ARGUMENTS_METHOD_NAME = "setArguments";
+    public static final String SET_ARGUMENTS_METHOD_SIGNATURE = "(Lorg/codehaus/aspectwerkz/joinpoint/Arguments;)V";
+    public static final String GET_ARG_COUNT_METHOD_NAME = "getArgCount";
+    public static final String GET_ARG_METHOD_NAME = "getArg";
     public static final String SET_PARAMETER_VALUE_METHOD_NAME = "setParameterValue";
     public static final String SET_PARAMETER_VALUE_METHOD_SIGNATURE = "(Ljava/lang/Object;)V";
     public static final String SET_FIELD_VALUE_METHOD_NAME = "setFieldValue";
@@ -245,6 +263,11 @@ public interface TransformationConstants extends Opcodes {
 
     public static final String ADVISABLE_CLASS_JAVA_NAME = "org.codehaus.aspectwerkz.intercept.Advisable";
     public static final String ADVISABLE_CLASS_NAME = "org/codehaus/aspectwerkz/intercept/Advisable";
+    public static final String ADVISABLE_IMPL_CLASS_NAME = "org/codehaus/aspectwerkz/intercept/AdvisableImpl";
+    public static final String REGISTER_JOIN_POINTS_METHOD_NAME = "registerJoinPoints";
+    public static final String REGISTER_JOIN_POINTS_METHOD_SIGNATURE = "(Ljava/lang/Class;[Lorg/codehaus/aspectwerkz/transform/inlining/EmittedJoinPoint;)I";
+    public static final String REGISTER_ADVISABLE_CLASS_METHOD_NAME = "registerAdvisableClass";
+    public static final String REGISTER_ADVISABLE_CLASS_METHOD_SIGNATURE = "(Ljava/lang/Class;)Ljava/lang/Object;";
     public static final String INTERCEPT_INVOKE_METHOD_NAME = "invoke";
     public static final String AROUND_ADVICE_INVOKE_METHOD_SIGNATURE = "(Lorg/codehaus/aspectwerkz/joinpoint/JoinPoint;)Ljava/lang/Object;";
     public static final String BEFORE_ADVICE_INVOKE_METHOD_SIGNATURE = "(Lorg/codehaus/aspectwerkz/joinpoint/JoinPoint;)V";
@@ -292,6 +315,13 @@ public interface TransformationConstants extends Opcodes {
     public static final String FACTORY_ASPECTOF_METHOD_NAME = "aspectOf";
     public static final String FACTORY_HASASPECT_METHOD_NAME = "hasAspect";
     public static final String FACTORY_HASASPECT_PEROBJECT_METHOD_SIGNATURE = "(Ljava/lang/Object;)Z";
+    public static final String FACTORY_BIND_METHOD_NAME = "bind";
+    public static final String FACTORY_BIND_PEROBJECT_METHOD_SIGNATURE = "(Ljava/lang/Object;)Ljava/lang/Object;";
+    public static final String FACTORY_INVOKER_FIELD_NAME = "INVOKER";
+    public static final String ASPECT_FACTORY_INVOKER_CLASS_NAME = "org/codehaus/aspectwerkz/aspect/container/AspectFactoryInvoker";
+    public static final String ASPECT_FACTORY_INVOKER_CLASS_SIGNATURE = "Lorg/codehaus/aspectwerkz/aspect/container/AspectFactoryInvoker;";
+    public static final String INVOKE_ASPECTOF_METHOD_NAME = "invokeAspectOf";
+    public static final String INVOKE_HASASPECT_METHOD_NAME = "invokeHasAspect";
     public static final String NO_ASPECT_BOUND_EXCEPTION_CLASS_NAME = "org/codehaus/aspectwerkz/aspect/management/NoAspectBoundException";
     public static final String ASPECT_CONTAINER_CLASS_NAME = "org/codehaus/aspectwerkz/aspect/AspectContainer";
     public static final String ASPECT_CONTAINER_CLASS_SIGNATURE = "Lorg/codehaus/aspectwerkz/aspect/AspectContainer;";
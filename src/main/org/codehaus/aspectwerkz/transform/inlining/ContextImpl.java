@@ -85,6 +85,11 @@ public class ContextImpl implements Context {
      */
     private final TObjectIntHashMap m_labelTolineNumbers = new TObjectIntHashMap();
 
+    /**
+     * The position of each emitted join point class, call sites sharing a join point class sharing its position.
+     */
+    private final TObjectIntHashMap m_joinPointIndexes = new TObjectIntHashMap();
+
     private long m_serialVerUid;
     /**
      * Creates a new context.
@@ -260,6 +265,9 @@ public class ContextImpl implements Context {
      */
     public void addEmittedJoinPoint(final EmittedJoinPoint jp) {
         m_emittedJoinPoints.add(jp);
+        if (!m_joinPointIndexes.containsKey(jp.getJoinPointClassName())) {
+            m_joinPointIndexes.put(jp.getJoinPointClassName(), m_joinPointIndexes.size());
+        }
     }
 
     /**
@@ -297,4 +305,12 @@ public class ContextImpl implements Context {
        }
     }
 
+    public int resolveJoinPointIndex(String joinPointClassName) {
+       if (m_joinPointIndexes.containsKey(joinPointClassName)) {
+           return m_joinPointIndexes.get(joinPointClassName);
+       } else {
+           return EmittedJoinPoint.NO_JOIN_POINT_INDEX;
+       }
+    }
+
 }
\ No newline at end of file
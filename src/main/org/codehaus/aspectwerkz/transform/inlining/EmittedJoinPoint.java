@@ -28,6 +28,8 @@ public final class EmittedJoinPoint {
 
     public final static Label NO_LINE_NUMBER = new Label();
 
+    public final static int NO_JOIN_POINT_INDEX = -1;
+
     private final int joinPointType;
     private final String callerClassName;
     private final String callerMethodName;
@@ -41,6 +43,14 @@ public final class EmittedJoinPoint {
     private final String joinPointClassName;
     private final Label lineNumberLabel;
 
+    /**
+     * Position of the join point class among the join point classes of the woven class, shared by the call sites
+     * that share a join point class.
+     * The joinPointIndex is NO_JOIN_POINT_INDEX unless set by the woven class or resolveJoinPointIndex(Context)
+     * has been called.
+     */
+    private int joinPointIndex;
+
     /**
      * Line number for call / get / set / handler joinpoint
      * The lineNumber is 0 unless available and resolveLineNumber(Context) has been called.
@@ -87,6 +97,7 @@ public final class EmittedJoinPoint {
         this.joinPointHash = joinPointHash;
         this.joinPointClassName = joinPointClassName;
         this.lineNumberLabel = lineNumberLabel;
+        this.joinPointIndex = NO_JOIN_POINT_INDEX;
     }
 
     /**
@@ -121,6 +132,49 @@ public final class EmittedJoinPoint {
         );
     }
 
+    /**
+     * Creates a new instance, when the woven class loads its join points.
+     *
+     * @param joinPointType
+     * @param callerClassName
+     * @param callerMethodName
+     * @param callerMethodDesc
+     * @param callerMethodModifiers
+     * @param calleeClassName
+     * @param calleeMemberName
+     * @param calleeMemberDesc
+     * @param calleeMemberModifiers
+     * @param joinPointHash
+     * @param joinPointClassName
+     * @param joinPointIndex        the position of the join point class in the woven class
+     */
+    public EmittedJoinPoint(final int joinPointType,
+                            final String callerClassName,
+                            final String callerMethodName,
+                            final String callerMethodDesc,
+                            final int callerMethodModifiers,
+                            final String calleeClassName,
+                            final String calleeMemberName,
+                            final String calleeMemberDesc,
+                            final int calleeMemberModifiers,
+                            final int joinPointHash,
+                            final String joinPointClassName,
+                            final int joinPointIndex) {
+        this.joinPointType = joinPointType;
+        this.callerClassName = callerClassName;
+        this.callerMethodName = callerMethodName;
+        this.callerMethodDesc = callerMethodDesc;
+        this.callerMethodModifiers = callerMethodModifiers;
+        this.calleeClassName = calleeClassName;
+        this.calleeMemberName = calleeMemberName;
+        this.calleeMemberDesc = calleeMemberDesc;
+        this.calleeMemberModifiers = calleeMemberModifiers;
+        this.joinPointHash = joinPointHash;
+        this.joinPointClassName = joinPointClassName;
+        this.lineNumberLabel = NO_LINE_NUMBER;
+        this.joinPointIndex = joinPointIndex;
+    }
+
     public int getJoinPointType() {
         return joinPointType;
     }
@@ -165,6 +219,10 @@ public final class EmittedJoinPoint {
         return joinPointClassName;
     }
 
+    public int getJoinPointIndex() {
+        return joinPointIndex;
+    }
+
     public int getLineNumber() {
         return lineNumber;
     }
@@ -173,6 +231,10 @@ public final class EmittedJoinPoint {
         lineNumber = context.resolveLineNumberInfo(lineNumberLabel);
     }
 
+    public void resolveJoinPointIndex(Context context) {
+        joinPointIndex = context.resolveJoinPointIndex(joinPointClassName);
+    }
+
     public boolean equals(Object o) {
         if (this == o) {
             return true;
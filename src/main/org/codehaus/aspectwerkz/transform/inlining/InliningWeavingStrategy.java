@@ -21,6 +21,7 @@ import org.codehaus.aspectwerkz.expression.ExpressionContext;
 import org.codehaus.aspectwerkz.expression.PointcutType;
 import org.codehaus.aspectwerkz.reflect.ClassInfo;
 import org.codehaus.aspectwerkz.reflect.impl.asm.AsmClassInfo;
+import org.codehaus.aspectwerkz.transform.AspectWerkzPreProcessor;
 import org.codehaus.aspectwerkz.transform.Context;
 import org.codehaus.aspectwerkz.transform.WeavingStrategy;
 import org.codehaus.aspectwerkz.transform.inlining.weaver.AddInterfaceVisitor;
@@ -50,6 +51,29 @@ import org.objectweb.asm.ClassWriter;
  */
 public class InliningWeavingStrategy implements WeavingStrategy {
 
+    /**
+     * True if the lookahead visitors share one single read only pass and if the type change phase is skipped
+     * when there is no mixin nor interface to add. The woven bytecode is the same than with the multi pass scheme.
+     */
+    private final boolean m_singlePass;
+
+    /**
+     * Creates a new weaving strategy, using the single pass mode if
+     * <code>-Daspectwerkz.transform.singlepass=true</code> is set.
+     */
+    public InliningWeavingStrategy() {
+        this(AspectWerkzPreProcessor.SINGLE_PASS);
+    }
+
+    /**
+     * Creates a new weaving strategy.
+     *
+     * @param singlePass true to use the single pass lookahead mode
+     */
+    public InliningWeavingStrategy(final boolean singlePass) {
+        m_singlePass = singlePass;
+    }
+
     /**
      * Performs the weaving of the target class.
      *
@@ -129,49 +153,73 @@ public class InliningWeavingStrategy implements WeavingStrategy {
                 ));
             }
 
-            // prepare ctor call jp
-            final ClassReader crLookahead = new ClassReader(bytecode);
             TLongObjectHashMap newInvocationsByCallerMemberHash = null;
-            if (!filterForCall) {
-                newInvocationsByCallerMemberHash = new TLongObjectHashMap();
-                crLookahead.accept(
-                        new ConstructorCallVisitor.LookaheadNewDupInvokeSpecialInstructionClassAdapter(
-                                newInvocationsByCallerMemberHash
-                        ),
-                        true
-                );
-            }
-
-            // prepare handler jp, by gathering ALL catch blocks and their exception type
             List catchLabels = new ArrayList();
-            if (!filterForHandler) {
-                final ClassReader crLookahead2 = new ClassReader(bytecode);
-                final ClassWriter cw2 = AsmHelper.newClassWriter(true);
-
-                HandlerVisitor.LookaheadCatchLabelsClassAdapter lookForCatches =
-                        new HandlerVisitor.LookaheadCatchLabelsClassAdapter(
-                                cw2, loader, classInfo, context, catchLabels
-                        );
-                // we must visit exactly as we will do further on with debug info (that produces extra labels)
-                crLookahead2.accept(lookForCatches, false);
-            }
-
-            // gather wrapper methods to support multi-weaving
-            // skip annotations visit and debug info by using the lookahead read-only classreader
             Set addedMethods = new HashSet();
-            crLookahead.accept(new AlreadyAddedMethodAdapter(addedMethods), true);
+            if (m_singlePass) {
+                // gather ctor call jp, catch blocks and wrapper methods within one single read only pass
+                // the catch blocks lookahead requires debug info (that produces extra labels)
+                ClassVisitor lookahead = new AlreadyAddedMethodAdapter(addedMethods);
+                if (!filterForCall) {
+                    newInvocationsByCallerMemberHash = new TLongObjectHashMap();
+                    lookahead = new ConstructorCallVisitor.LookaheadNewDupInvokeSpecialInstructionClassAdapter(
+                            lookahead, newInvocationsByCallerMemberHash
+                    );
+                }
+                if (!filterForHandler) {
+                    lookahead = new HandlerVisitor.LookaheadCatchLabelsClassAdapter(
+                            lookahead, loader, classInfo, context, catchLabels
+                    );
+                }
+                new ClassReader(bytecode).accept(lookahead, false);
+            } else {
+                // prepare ctor call jp
+                final ClassReader crLookahead = new ClassReader(bytecode);
+                if (!filterForCall) {
+                    newInvocationsByCallerMemberHash = new TLongObjectHashMap();
+                    crLookahead.accept(
+                            new ConstructorCallVisitor.LookaheadNewDupInvokeSpecialInstructionClassAdapter(
+                                    newInvocationsByCallerMemberHash
+                            ),
+                            true
+                    );
+                }
+
+                // prepare handler jp, by gathering ALL catch blocks and their exception type
+                if (!filterForHandler) {
+                    final ClassReader crLookahead2 = new ClassReader(bytecode);
+                    final ClassWriter cw2 = AsmHelper.newClassWriter(true);
+
+                    HandlerVisitor.LookaheadCatchLabelsClassAdapter lookForCatches =
+                            new HandlerVisitor.LookaheadCatchLabelsClassAdapter(
+                                    cw2, loader, classInfo, context, catchLabels
+                            );
+                    // we must visit exactly as we will do further on with debug info (that produces extra labels)
+                    crLookahead2.accept(lookForCatches, false);
+                }
+
+                // gather wrapper methods to support multi-weaving
+                // skip annotations visit and debug info by using the lookahead read-only classreader
+                crLookahead.accept(new AlreadyAddedMethodAdapter(addedMethods), true);
+            }
 
             // -- Phase 1 -- type change
-            final ClassWriter writerPhase1 = AsmHelper.newClassWriter(true);
-            final ClassReader readerPhase1 = new ClassReader(bytecode);
-            ClassVisitor reversedChainPhase1 = writerPhase1;
-            reversedChainPhase1 = new AddMixinMethodsVisitor(reversedChainPhase1, classInfo, context, addedMethods);
-            reversedChainPhase1 = new AddInterfaceVisitor(reversedChainPhase1, classInfo, context);
-            readerPhase1.accept(reversedChainPhase1, false);
-            final byte[] bytesPhase1 = writerPhase1.toByteArray();
-
-            // update the class info
-            classInfo = AsmClassInfo.newClassInfo(bytesPhase1, loader);
+            final byte[] bytesPhase1;
+            if (m_singlePass && !hasTypeChange(definitions, classInfo)) {
+                // no mixin nor interface to add, phase 1 would only copy the bytecode
+                bytesPhase1 = bytecode;
+            } else {
+                final ClassWriter writerPhase1 = AsmHelper.newClassWriter(true);
+                final ClassReader readerPhase1 = new ClassReader(bytecode);
+                ClassVisitor reversedChainPhase1 = writerPhase1;
+                reversedChainPhase1 = new AddMixinMethodsVisitor(reversedChainPhase1, classInfo, context, addedMethods);
+                reversedChainPhase1 = new AddInterfaceVisitor(reversedChainPhase1, classInfo, context);
+                readerPhase1.accept(reversedChainPhase1, false);
+                bytesPhase1 = writerPhase1.toByteArray();
+
+                // update the class info
+                classInfo = AsmClassInfo.newClassInfo(bytesPhase1, loader);
+            }
 
             // -- Phase 2 -- advices
             final ClassWriter writerPhase2 = AsmHelper.newClassWriter(true);
@@ -320,6 +368,20 @@ public class InliningWeavingStrategy implements WeavingStrategy {
         return true;
     }
 
+    /**
+     * Checks if the type change phase has something to add to the class ie mixins or introduced interfaces.
+     *
+     * @param definitions the definitions
+     * @param classInfo   the class to weave
+     * @return boolean true if the type change phase will modify the class
+     */
+    private static boolean hasTypeChange(final Set definitions, final ClassInfo classInfo) {
+        // AddInterfaceVisitor filter is a superset of the AddMixinMethodsVisitor one
+        return !AddInterfaceVisitor.classFilter(
+                classInfo, new ExpressionContext(PointcutType.WITHIN, classInfo, classInfo), definitions
+        );
+    }
+
     private static boolean classFilterFor(final Set definitions,
                                           final ExpressionContext[] ctxs) {
         for (Iterator defs = definitions.iterator(); defs.hasNext();) {
@@ -0,0 +1,431 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.transform.inlining;
+
+import org.codehaus.aspectwerkz.definition.AdviceDefinition;
+import org.codehaus.aspectwerkz.definition.AspectDefinition;
+import org.codehaus.aspectwerkz.definition.DeploymentScope;
+import org.codehaus.aspectwerkz.definition.InterfaceIntroductionDefinition;
+import org.codehaus.aspectwerkz.definition.MixinDefinition;
+import org.codehaus.aspectwerkz.definition.PointcutDefinition;
+import org.codehaus.aspectwerkz.definition.SystemDefinition;
+import org.codehaus.aspectwerkz.definition.SystemDefinitionContainer;
+import org.codehaus.aspectwerkz.expression.ExpressionContext;
+import org.codehaus.aspectwerkz.expression.ExpressionInfo;
+import org.codehaus.aspectwerkz.expression.PointcutType;
+import org.codehaus.aspectwerkz.reflect.ClassInfo;
+import org.codehaus.aspectwerkz.reflect.MethodInfo;
+import org.codehaus.aspectwerkz.reflect.impl.asm.AsmClassInfo;
+import org.codehaus.aspectwerkz.transform.AspectWerkzPreProcessor;
+import org.codehaus.aspectwerkz.transform.Context;
+import org.codehaus.aspectwerkz.transform.inlining.weaver.AddInterfaceVisitor;
+import org.codehaus.aspectwerkz.util.ClassLoaderMap;
+import org.objectweb.asm.Label;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A persistent weaving cache, that stores the woven bytecode and the emitted join points of the classes so that
+ * a later JVM can skip the weaving of the classes whose bytecode and definitions did not change.
+ * <p/>
+ * An entry is keyed by a digest of the weaver version, the class name, the class bytecode and the system
+ * definitions (uuid and content) visible from the class loader. The entries are stored one per file, in segments
+ * (sub directories) named after the first characters of the key.
+ * <p/>
+ * The key does not cover the other classes a woven class refers to, thus the cache should be cleared when classes
+ * are changed without their users being changed (f.e. a callee class that starts implementing a matched interface).
+ * Classes getting mixins or introduced interfaces are not cached since their woven type has to be visible to the
+ * weaving of the other classes. Classes left unchanged by the weaver get an entry without bytecode, so that a later
+ * JVM skips their weaving as well.
+ *
+ * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur </a>
+ */
+public class WeavingCache {
+
+    /**
+     * To change whenever the weaver output changes for a same input, f.e. when the emitted join points or the
+     * compiled join point classes they refer to change.
+     */
+    private final static String WEAVER_VERSION = "2.2.2-2";
+
+    private final static int MAGIC = 0xAA5C0001;
+
+    private final static int SEGMENT_LENGTH = 2;
+
+    /**
+     * The bytecode length of the entry of a class left unchanged by the weaver.
+     */
+    private final static int UNCHANGED = -1;
+
+    private final static char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * The root directory of the cache.
+     */
+    private final File m_directory;
+
+    /**
+     * The digest of the definitions fingerprint, per class loader.
+     */
+    private final ClassLoaderMap m_fingerprints = new ClassLoaderMap();
+
+    /**
+     * Creates a new weaving cache.
+     *
+     * @param directory the root directory of the cache, created if needed
+     */
+    public WeavingCache(final File directory) {
+        m_directory = directory;
+        m_directory.mkdirs();
+    }
+
+    /**
+     * Returns the cache key for the class of the given context.
+     *
+     * @param context
+     * @return the cache key
+     */
+    public String getKey(final Context context) {
+        MessageDigest digest = newDigest();
+        StringBuffer header = new StringBuffer();
+        header.append(WEAVER_VERSION).append(';');
+        header.append(WeavingCache.class.getPackage().getImplementationVersion()).append(';');
+        header.append(AsmHelper.JAVA_VERSION).append(';');
+        header.append(context.getClassName()).append(';');
+        update(digest, header);
+        digest.update(context.getInitialBytecode());
+        digest.update(getFingerprintDigest(context));
+
+        byte[] hash = digest.digest();
+        char[] key = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            key[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+            key[2 * i + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(key);
+    }
+
+    /**
+     * Loads the cached weaving of the class in the given context.
+     *
+     * @param key     the cache key
+     * @param context the context to update with the cached bytecode and emitted join points
+     * @return true if the cache had an entry for the key
+     */
+    public boolean load(final String key, final ContextImpl context) {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return false;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || !key.equals(in.readUTF())) {
+                return false;
+            }
+            int length = in.readInt();
+            if (length == UNCHANGED) {
+                // the weaver does not change the class
+                return true;
+            }
+            byte[] bytecode = new byte[length];
+            in.readFully(bytecode);
+            int nrOfJoinPoints = in.readInt();
+            EmittedJoinPoint[] emittedJoinPoints = new EmittedJoinPoint[nrOfJoinPoints];
+            for (int i = 0; i < nrOfJoinPoints; i++) {
+                final int joinPointType = in.readInt();
+                final String callerClassName = in.readUTF();
+                final String callerMethodName = in.readUTF();
+                final String callerMethodDesc = in.readUTF();
+                final int callerMethodModifiers = in.readInt();
+                final String calleeClassName = in.readUTF();
+                final String calleeMemberName = in.readUTF();
+                final String calleeMemberDesc = in.readUTF();
+                final int calleeMemberModifiers = in.readInt();
+                final int joinPointHash = in.readInt();
+                final String joinPointClassName = in.readUTF();
+                final int lineNumber = in.readInt();
+
+                // the line number is resolved from its label as for a woven class
+                Label lineNumberLabel = new Label();
+                context.addLineNumberInfo(lineNumberLabel, lineNumber);
+                emittedJoinPoints[i] = new EmittedJoinPoint(
+                        joinPointType, callerClassName, callerMethodName, callerMethodDesc, callerMethodModifiers,
+                        calleeClassName, calleeMemberName, calleeMemberDesc, calleeMemberModifiers,
+                        joinPointHash, joinPointClassName, lineNumberLabel
+                );
+            }
+            for (int i = 0; i < emittedJoinPoints.length; i++) {
+                context.addEmittedJoinPoint(emittedJoinPoints[i]);
+            }
+            context.setCurrentBytecode(bytecode);
+            return true;
+        } catch (IOException e) {
+            // corrupted entry, will be overridden
+            AspectWerkzPreProcessor.log("AW::WARNING - could not read weaving cache entry " + file + ": " + e.toString());
+            return false;
+        } finally {
+            try {
+                in.close();
+            } catch (Throwable e) {
+                ;
+            }
+        }
+    }
+
+    /**
+     * Stores the weaving of the class in the given context.
+     *
+     * @param key     the cache key
+     * @param context the context of the woven class
+     */
+    public void store(final String key, final ContextImpl context) {
+        byte[] bytecode = context.getCurrentBytecode();
+        boolean unchanged = bytecode == context.getInitialBytecode();
+        if (!unchanged && hasTypeChange(context)) {
+            return;
+        }
+        File file = getFile(key);
+        File tmpFile = new File(file.getPath() + '.' + System.identityHashCode(context) + ".tmp");
+        DataOutputStream out = null;
+        try {
+            file.getParentFile().mkdirs();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(MAGIC);
+            out.writeUTF(key);
+            if (unchanged) {
+                out.writeInt(UNCHANGED);
+            } else {
+                out.writeInt(bytecode.length);
+                out.write(bytecode);
+            }
+            List emittedJoinPoints = unchanged ? Collections.EMPTY_LIST : context.getEmittedJoinPoints();
+            out.writeInt(emittedJoinPoints.size());
+            for (Iterator it = emittedJoinPoints.iterator(); it.hasNext();) {
+                EmittedJoinPoint emittedJoinPoint = (EmittedJoinPoint) it.next();
+                emittedJoinPoint.resolveLineNumber(context);
+                out.writeInt(emittedJoinPoint.getJoinPointType());
+                out.writeUTF(emittedJoinPoint.getCallerClassName());
+                out.writeUTF(emittedJoinPoint.getCallerMethodName());
+                out.writeUTF(emittedJoinPoint.getCallerMethodDesc());
+                out.writeInt(emittedJoinPoint.getCallerMethodModifiers());
+                out.writeUTF(emittedJoinPoint.getCalleeClassName());
+                out.writeUTF(emittedJoinPoint.getCalleeMemberName());
+                out.writeUTF(emittedJoinPoint.getCalleeMemberDesc());
+                out.writeInt(emittedJoinPoint.getCalleeMemberModifiers());
+                out.writeInt(emittedJoinPoint.getJoinPointHash());
+                out.writeUTF(emittedJoinPoint.getJoinPointClassName());
+                out.writeInt(emittedJoinPoint.getLineNumber());
+            }
+            out.close();
+            out = null;
+
+            // entries are never read half written, concurrent writers of a same entry write the same content
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete();
+            }
+        } catch (IOException e) {
+            AspectWerkzPreProcessor.log("AW::WARNING - could not write weaving cache entry " + file + ": " + e.toString());
+            tmpFile.delete();
+        } finally {
+            try {
+                out.close();
+            } catch (Throwable e) {
+                ;
+            }
+        }
+    }
+
+    /**
+     * Returns the file of the entry for the given key.
+     *
+     * @param key
+     * @return the file
+     */
+    private File getFile(final String key) {
+        return new File(new File(m_directory, key.substring(0, SEGMENT_LENGTH)), key.substring(SEGMENT_LENGTH));
+    }
+
+    /**
+     * Returns the digest of the fingerprint of the definitions of the given context. The digest is computed once per
+     * class loader and definition version.
+     *
+     * @param context
+     * @return the digest
+     */
+    private byte[] getFingerprintDigest(final Context context) {
+        final Set definitions = context.getDefinitions();
+        final int version = SystemDefinitionContainer.getDefinitionVersion();
+        FingerprintHolder holder = (FingerprintHolder) m_fingerprints.get(context.getLoader());
+        if (holder == null) {
+            holder = (FingerprintHolder) m_fingerprints.putIfAbsent(context.getLoader(), new FingerprintHolder());
+        }
+        Fingerprint fingerprint = holder.m_fingerprint;
+        if (fingerprint == null || fingerprint.m_definitions != definitions || fingerprint.m_version != version) {
+            MessageDigest digest = newDigest();
+            update(digest, getFingerprint(definitions));
+            fingerprint = new Fingerprint(definitions, version, digest.digest());
+            holder.m_fingerprint = fingerprint;
+        }
+        return fingerprint.m_digest;
+    }
+
+    /**
+     * Checks if the woven class got mixins or introduced interfaces.
+     *
+     * @param context
+     * @return true if the type of the class has changed
+     */
+    private static boolean hasTypeChange(final ContextImpl context) {
+        ClassInfo classInfo = AsmClassInfo.getClassInfo(
+                context.getClassName().replace('/', '.'), context.getInitialBytecode(), context.getLoader()
+        );
+        return !AddInterfaceVisitor.classFilter(
+                classInfo,
+                new ExpressionContext(PointcutType.WITHIN, classInfo, classInfo),
+                context.getDefinitions()
+        );
+    }
+
+    /**
+     * Builds a fingerprint of the content of the given definitions, which changes whenever the definitions could
+     * change the weaving.
+     *
+     * @param definitions
+     * @return the fingerprint
+     */
+    private static StringBuffer getFingerprint(final Set definitions) {
+        // sort the definitions to not depend on the set ordering
+        Map definitionsByUuid = new TreeMap();
+        for (Iterator it = definitions.iterator(); it.hasNext();) {
+            SystemDefinition definition = (SystemDefinition) it.next();
+            definitionsByUuid.put(definition.getUuid(), definition);
+        }
+
+        StringBuffer fingerprint = new StringBuffer();
+        for (Iterator it = definitionsByUuid.values().iterator(); it.hasNext();) {
+            SystemDefinition definition = (SystemDefinition) it.next();
+            fingerprint.append("system ").append(definition.getUuid()).append('\n');
+            append(fingerprint, "include", new TreeSet(definition.getIncludePackages()));
+            append(fingerprint, "exclude", new TreeSet(definition.getExcludePackages()));
+            append(fingerprint, "prepare", new TreeSet(definition.getPreparePackages()));
+            for (Iterator scopes = definition.getDeploymentScopes().iterator(); scopes.hasNext();) {
+                DeploymentScope scope = (DeploymentScope) scopes.next();
+                fingerprint.append("scope ").append(scope.getName()).append(' ').append(scope.getExpression());
+                fingerprint.append('\n');
+            }
+            for (Iterator aspects = definition.getAspectDefinitions().iterator(); aspects.hasNext();) {
+                AspectDefinition aspect = (AspectDefinition) aspects.next();
+                fingerprint.append("aspect ").append(aspect.getQualifiedName()).append(' ');
+                fingerprint.append(aspect.getClassName()).append(' ').append(aspect.getDeploymentModel());
+                fingerprint.append(' ').append(aspect.getAspectModel()).append(' ');
+                fingerprint.append(aspect.getContainerClassName()).append(' ').append(new TreeMap(aspect.getParameters()));
+                fingerprint.append('\n');
+                for (Iterator pointcuts = aspect.getPointcutDefinitions().iterator(); pointcuts.hasNext();) {
+                    fingerprint.append("pointcut ").append(((PointcutDefinition) pointcuts.next()).getExpression());
+                    fingerprint.append('\n');
+                }
+                for (Iterator advices = aspect.getAdviceDefinitions().iterator(); advices.hasNext();) {
+                    AdviceDefinition advice = (AdviceDefinition) advices.next();
+                    fingerprint.append("advice ").append(advice.getQualifiedName()).append(' ').append(advice.getType());
+                    fingerprint.append(' ').append(advice.getExpressionInfo()).append(' ');
+                    fingerprint.append(advice.getSpecialArgumentType()).append(' ');
+                    MethodInfo method = advice.getMethodInfo();
+                    if (method != null) {
+                        fingerprint.append(method.getName()).append(method.getSignature());
+                    }
+                    fingerprint.append('\n');
+                }
+                for (Iterator intros = aspect.getInterfaceIntroductionDefinitions().iterator(); intros.hasNext();) {
+                    InterfaceIntroductionDefinition intro = (InterfaceIntroductionDefinition) intros.next();
+                    fingerprint.append("introduction ").append(intro.getName()).append(' ');
+                    fingerprint.append(intro.getInterfaceClassNames());
+                    append(fingerprint, intro.getExpressionInfos());
+                }
+            }
+            for (Iterator mixins = definition.getMixinDefinitions().iterator(); mixins.hasNext();) {
+                MixinDefinition mixin = (MixinDefinition) mixins.next();
+                fingerprint.append("mixin ").append(mixin.getMixinImpl().getName()).append(' ');
+                fingerprint.append(mixin.getDeploymentModel()).append(' ').append(mixin.isTransient()).append(' ');
+                fingerprint.append(mixin.getFactoryClassName()).append(' ').append(mixin.getInterfaceClassNames());
+                for (Iterator methods = mixin.getMethodsToIntroduce().iterator(); methods.hasNext();) {
+                    MethodInfo method = (MethodInfo) methods.next();
+                    fingerprint.append(' ').append(method.getName()).append(method.getSignature());
+                }
+                append(fingerprint, mixin.getExpressionInfos());
+            }
+        }
+        return fingerprint;
+    }
+
+    private static void append(final StringBuffer fingerprint, final String name, final Collection elements) {
+        fingerprint.append(name).append(' ').append(elements).append('\n');
+    }
+
+    private static void append(final StringBuffer fingerprint, final ExpressionInfo[] expressions) {
+        for (int i = 0; i < expressions.length; i++) {
+            fingerprint.append(' ').append(expressions[i]);
+        }
+        fingerprint.append('\n');
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error("SHA-1 not available: " + e.toString());
+        }
+    }
+
+    private static void update(final MessageDigest digest, final StringBuffer text) {
+        try {
+            digest.update(text.toString().getBytes("UTF-8"));
+        } catch (IOException e) {
+            throw new Error("UTF-8 not available: " + e.toString());
+        }
+    }
+
+    /**
+     * The last fingerprint digest of a class loader.
+     */
+    private static class FingerprintHolder {
+        volatile Fingerprint m_fingerprint;
+    }
+
+    /**
+     * A fingerprint digest, valid for the given definitions and definition version.
+     */
+    private static class Fingerprint {
+        final Set m_definitions;
+        final int m_version;
+        final byte[] m_digest;
+
+        Fingerprint(final Set definitions, final int version, final byte[] digest) {
+            m_definitions = definitions;
+            m_version = version;
+            m_digest = digest;
+        }
+    }
+}
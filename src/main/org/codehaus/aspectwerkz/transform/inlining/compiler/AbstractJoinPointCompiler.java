@@ -8,11 +8,13 @@
 package org.codehaus.aspectwerkz.transform.inlining.compiler;
 
 import org.codehaus.aspectwerkz.DeploymentModel;
+import org.codehaus.aspectwerkz.cflow.CflowCompiler;
 import org.codehaus.aspectwerkz.aspect.AdviceInfo;
 import org.codehaus.aspectwerkz.aspect.container.AspectFactoryManager;
 import org.codehaus.aspectwerkz.definition.AspectDefinition;
 import org.codehaus.aspectwerkz.joinpoint.management.AdviceInfoContainer;
 import org.codehaus.aspectwerkz.joinpoint.management.JoinPointType;
+import org.codehaus.aspectwerkz.perx.PerObjectAspect;
 import org.codehaus.aspectwerkz.reflect.ClassInfo;
 import org.codehaus.aspectwerkz.transform.AspectWerkzPreProcessor;
 import org.codehaus.aspectwerkz.transform.JoinPointCompiler;
@@ -24,6 +26,7 @@ import org.codehaus.aspectwerkz.transform.inlining.AspectModelManager;
 import org.codehaus.aspectwerkz.transform.inlining.EmittedJoinPoint;
 import org.codehaus.aspectwerkz.transform.inlining.spi.AspectModel;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodAdapter;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Type;
@@ -89,6 +92,7 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
     protected Type[] m_argumentTypes;
     protected Type m_returnType;
     protected boolean m_isThisAdvisable = false;
+    protected boolean m_isPooledJoinPoint = false;
 
     private CompilerInput m_input;
 
@@ -220,6 +224,42 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
             // joinpoint will be new() and stored on first local var
             m_input.joinPointInstanceIndex = m_input.callerIndex + 1;
         }
+
+        // reuse a join point instance per thread instead of a new one per invocation
+        m_isPooledJoinPoint = !m_input.isOptimizedJoinPoint && isJoinPointPoolable();
+    }
+
+    /**
+     * Checks if the join point instance can be reused once the invocation is over, that is if the pool is turned on
+     * and if no advice nor interceptor can keep a reference to it.
+     *
+     * @return
+     */
+    private boolean isJoinPointPoolable() {
+        if (!AspectWerkzPreProcessor.JP_POOL || m_isThisAdvisable) {
+            return false;
+        }
+        for (int i = 0; i < m_aspectInfos.length; i++) {
+            // other aspect models wrap the join point in their own closures
+            if (!AspectWerkzAspectModel.TYPE.equals(m_aspectInfos[i].getAspectModel().getAspectModelType())) {
+                return false;
+            }
+        }
+        AdviceMethodInfo[][] adviceMethodInfos = new AdviceMethodInfo[][]{
+            m_beforeAdviceMethodInfos,
+            m_aroundAdviceMethodInfos,
+            m_afterReturningAdviceMethodInfos,
+            m_afterFinallyAdviceMethodInfos,
+            m_afterThrowingAdviceMethodInfos
+        };
+        for (int i = 0; i < adviceMethodInfos.length; i++) {
+            for (int j = 0; j < adviceMethodInfos[i].length; j++) {
+                if (JoinPointEscapeAnalysis.escapes(adviceMethodInfos[i][j].getAdviceInfo())) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
     /**
@@ -431,6 +471,9 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
             createClinit();
             createInit();
             createUtilityMethods();
+            if (!m_input.isOptimizedJoinPoint) {
+                createArgumentsMethods();
+            }
             // not needed anymore - createCopyMethod();//TODO remove
             createGetSignatureMethod();
             createInvokeMethod();
@@ -508,6 +551,16 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
         m_cw.visitField(ACC_PRIVATE, CALLER_INSTANCE_FIELD_NAME, m_callerClassSignature, null, null);
         m_cw.visitField(ACC_PRIVATE, STACK_FRAME_COUNTER_FIELD_NAME, I, null, null);
 
+        if (m_isPooledJoinPoint) {
+            m_cw.visitField(
+                    ACC_PRIVATE + ACC_STATIC + ACC_FINAL,
+                    JOIN_POINT_POOL_FIELD_NAME,
+                    THREAD_LOCAL_CLASS_SIGNATURE,
+                    null, null
+            );
+            m_cw.visitField(ACC_PRIVATE, IN_USE_FIELD_NAME, Type.BOOLEAN_TYPE.getDescriptor(), null, null);
+        }
+
         if (m_isThisAdvisable) {
             m_cw.visitField(ACC_PRIVATE, INTERCEPTOR_INDEX_FIELD_NAME, I, null, null);
 
@@ -548,6 +601,12 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
      */
     private void createClinit() {
         MethodVisitor cv = m_cw.visitMethod(ACC_STATIC, CLINIT_METHOD_NAME, NO_PARAM_RETURN_VOID_SIGNATURE, null, null);
+        if (m_isPooledJoinPoint) {
+            cv.visitTypeInsn(NEW, THREAD_LOCAL_CLASS_NAME);
+            cv.visitInsn(DUP);
+            cv.visitMethodInsn(INVOKESPECIAL, THREAD_LOCAL_CLASS_NAME, INIT_METHOD_NAME, NO_PARAM_RETURN_VOID_SIGNATURE);
+            cv.visitFieldInsn(PUTSTATIC, m_joinPointClassName, JOIN_POINT_POOL_FIELD_NAME, THREAD_LOCAL_CLASS_SIGNATURE);
+        }
         cv.visitMethodInsn(
                 INVOKESTATIC, m_joinPointClassName,
                 STATIC_INITIALIZATION_METHOD_NAME, NO_PARAM_RETURN_VOID_SIGNATURE
@@ -618,6 +677,11 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
             }
         }
 
+        // the shared instance of an optimized join point does not hold the arguments
+        if (!m_input.isOptimizedJoinPoint) {
+            interfaces.add(ARGUMENTS_CLASS_NAME);
+        }
+
         int i = 1;
         String[] interfaceArr = new String[interfaces.size() + 1];
         interfaceArr[0] = getJoinPointInterface();
@@ -720,40 +784,12 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
 
         // ensure aspect factories are all loaded
         for (int i = 0; i < m_aspectInfos.length; i++) {
-            AspectInfo m_aspectInfo = m_aspectInfos[i];
-
-            cv.visitLdcInsn(m_aspectInfo.getAspectFactoryClassName());
-            cv.visitLdcInsn(m_aspectInfo.getAspectDefinition().getSystemDefinition().getUuid());
-            cv.visitLdcInsn(m_aspectInfo.getAspectClassName());
-            cv.visitLdcInsn(m_aspectInfo.getAspectQualifiedName());
-            AsmHelper.loadStringConstant(cv, m_aspectInfo.getAspectDefinition().getContainerClassName());
-            //TODO AVF do it once per aspect def
-            StringBuffer sb = new StringBuffer();
-            boolean hasOne = false;
-            boolean isFirst = true;
-            for (Iterator iterator = m_aspectInfo.getAspectDefinition().getParameters().entrySet().iterator(); iterator.hasNext();) {
-                Map.Entry entry = (Map.Entry) iterator.next();
-                if (!isFirst) {
-                    sb.append(DELIMITER);
-                }
-                isFirst = false;
-                hasOne = true;
-                sb.append(entry.getKey()).append(DELIMITER).append(entry.getValue());
-            }
-            if (hasOne) {
-                cv.visitLdcInsn(sb.toString());
-            } else {
-                cv.visitInsn(ACONST_NULL);
+            AspectDefinition aspectDefinition = m_aspectInfos[i].getAspectDefinition();
+            createAspectFactoryLoading(cv, aspectDefinition);
+            if (PerObjectAspect.isPerObjectAspect(aspectDefinition)) {
+                // the perX aspect is bound thru its factory
+                createAspectFactoryLoading(cv, PerObjectAspect.getPerXAspectDefinition(aspectDefinition));
             }
-            cv.visitFieldInsn(GETSTATIC, m_joinPointClassName, THIS_CLASS_FIELD_NAME_IN_JP, CLASS_CLASS_SIGNATURE);
-            cv.visitMethodInsn(INVOKEVIRTUAL, CLASS_CLASS, GETCLASSLOADER_METHOD_NAME, CLASS_CLASS_GETCLASSLOADER_METHOD_SIGNATURE);
-            cv.visitLdcInsn(m_aspectInfo.getDeploymentModel().toString());
-            cv.visitMethodInsn(
-                    INVOKESTATIC,
-                    Type.getInternalName(AspectFactoryManager.class),
-                    "loadAspectFactory",
-                    "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/ClassLoader;Ljava/lang/String;)V"
-            );
         }
 
         // create and initialize the aspect fields
@@ -771,6 +807,50 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
         cv.visitMaxs(0, 0);
     }
 
+    /**
+     * Ensures that the aspect factory of the given aspect is loaded.
+     *
+     * @param cv
+     * @param aspectDefinition
+     */
+    private void createAspectFactoryLoading(final MethodVisitor cv, final AspectDefinition aspectDefinition) {
+        final String aspectClassName = aspectDefinition.getClassName().replace('.', '/');
+        cv.visitLdcInsn(
+                AspectFactoryManager.getAspectFactoryClassName(aspectClassName, aspectDefinition.getQualifiedName())
+        );
+        cv.visitLdcInsn(aspectDefinition.getSystemDefinition().getUuid());
+        cv.visitLdcInsn(aspectClassName);
+        cv.visitLdcInsn(aspectDefinition.getQualifiedName());
+        AsmHelper.loadStringConstant(cv, aspectDefinition.getContainerClassName());
+        //TODO AVF do it once per aspect def
+        StringBuffer sb = new StringBuffer();
+        boolean hasOne = false;
+        boolean isFirst = true;
+        for (Iterator iterator = aspectDefinition.getParameters().entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry entry = (Map.Entry) iterator.next();
+            if (!isFirst) {
+                sb.append(DELIMITER);
+            }
+            isFirst = false;
+            hasOne = true;
+            sb.append(entry.getKey()).append(DELIMITER).append(entry.getValue());
+        }
+        if (hasOne) {
+            cv.visitLdcInsn(sb.toString());
+        } else {
+            cv.visitInsn(ACONST_NULL);
+        }
+        cv.visitFieldInsn(GETSTATIC, m_joinPointClassName, THIS_CLASS_FIELD_NAME_IN_JP, CLASS_CLASS_SIGNATURE);
+        cv.visitMethodInsn(INVOKEVIRTUAL, CLASS_CLASS, GETCLASSLOADER_METHOD_NAME, CLASS_CLASS_GETCLASSLOADER_METHOD_SIGNATURE);
+        cv.visitLdcInsn(aspectDefinition.getDeploymentModel().toString());
+        cv.visitMethodInsn(
+                INVOKESTATIC,
+                Type.getInternalName(AspectFactoryManager.class),
+                "loadAspectFactory",
+                "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/ClassLoader;Ljava/lang/String;)V"
+        );
+    }
+
     /**
      * Add and initialize the static field for enclosing joint point static part
      *
@@ -825,6 +905,10 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
             // create a new JP and makes use of it
             createInvocationLocalJoinPointInstance(cv, m_input);
         }
+        if (m_isPooledJoinPoint) {
+            // give the pooled JP back on each exit
+            cv = new JoinPointReleaseAdapter(cv, m_input.joinPointInstanceIndex);
+        }
 
         //FIXME: see loadAspect and AssociationScopeTest_2_1456425365_738_9001546___AW_JoinPoint f.e.
         // there is redundant checks because
@@ -1119,13 +1203,17 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
      * @param input
      */
     private void createInvocationLocalJoinPointInstance(final MethodVisitor cv, final CompilerInput input) {
-        // create the join point instance
-        cv.visitTypeInsn(NEW, m_joinPointClassName);
-        cv.visitInsn(DUP);
-        cv.visitMethodInsn(INVOKESPECIAL, m_joinPointClassName, INIT_METHOD_NAME, NO_PARAM_RETURN_VOID_SIGNATURE);
+        if (m_isPooledJoinPoint) {
+            createPooledJoinPointInstance(cv, input);
+        } else {
+            // create the join point instance
+            cv.visitTypeInsn(NEW, m_joinPointClassName);
+            cv.visitInsn(DUP);
+            cv.visitMethodInsn(INVOKESPECIAL, m_joinPointClassName, INIT_METHOD_NAME, NO_PARAM_RETURN_VOID_SIGNATURE);
 
-        // store the jp on the stack
-        cv.visitVarInsn(ASTORE, input.joinPointInstanceIndex);
+            // store the jp on the stack
+            cv.visitVarInsn(ASTORE, input.joinPointInstanceIndex);
+        }
 
         // set the argument fields in the join point instance (jp.m_arg<i> = <arg_i>)
         int argStackIndex = input.argStartIndex;
@@ -1156,6 +1244,139 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
         }
     }
 
+    /**
+     * Takes the join point instance of the current thread, or a new one when it is already used by a reentrant
+     * invocation of the join point, and stores it on the stack.
+     *
+     * @param cv
+     * @param input
+     */
+    private void createPooledJoinPointInstance(final MethodVisitor cv, final CompilerInput input) {
+        Label newLabel = new Label();
+        Label inUseLabel = new Label();
+        Label acquireLabel = new Label();
+
+        // jp = (JP) POOL.get()
+        cv.visitFieldInsn(GETSTATIC, m_joinPointClassName, JOIN_POINT_POOL_FIELD_NAME, THREAD_LOCAL_CLASS_SIGNATURE);
+        cv.visitMethodInsn(INVOKEVIRTUAL, THREAD_LOCAL_CLASS_NAME, "get", NO_PARAM_RETURN_OBJECT_SIGNATURE);
+        cv.visitTypeInsn(CHECKCAST, m_joinPointClassName);
+        cv.visitVarInsn(ASTORE, input.joinPointInstanceIndex);
+        cv.visitVarInsn(ALOAD, input.joinPointInstanceIndex);
+        cv.visitJumpInsn(IFNULL, newLabel);
+        cv.visitVarInsn(ALOAD, input.joinPointInstanceIndex);
+        cv.visitFieldInsn(GETFIELD, m_joinPointClassName, IN_USE_FIELD_NAME, Type.BOOLEAN_TYPE.getDescriptor());
+        cv.visitJumpInsn(IFNE, inUseLabel);
+        cv.visitJumpInsn(GOTO, acquireLabel);
+
+        // first invocation in this thread: POOL.set(jp = new JP())
+        cv.visitLabel(newLabel);
+        cv.visitTypeInsn(NEW, m_joinPointClassName);
+        cv.visitInsn(DUP);
+        cv.visitMethodInsn(INVOKESPECIAL, m_joinPointClassName, INIT_METHOD_NAME, NO_PARAM_RETURN_VOID_SIGNATURE);
+        cv.visitVarInsn(ASTORE, input.joinPointInstanceIndex);
+        cv.visitFieldInsn(GETSTATIC, m_joinPointClassName, JOIN_POINT_POOL_FIELD_NAME, THREAD_LOCAL_CLASS_SIGNATURE);
+        cv.visitVarInsn(ALOAD, input.joinPointInstanceIndex);
+        cv.visitMethodInsn(INVOKEVIRTUAL, THREAD_LOCAL_CLASS_NAME, "set", "(Ljava/lang/Object;)V");
+        cv.visitJumpInsn(GOTO, acquireLabel);
+
+        // reentrant invocation: jp = new JP(), not pooled
+        cv.visitLabel(inUseLabel);
+        cv.visitTypeInsn(NEW, m_joinPointClassName);
+        cv.visitInsn(DUP);
+        cv.visitMethodInsn(INVOKESPECIAL, m_joinPointClassName, INIT_METHOD_NAME, NO_PARAM_RETURN_VOID_SIGNATURE);
+        cv.visitVarInsn(ASTORE, input.joinPointInstanceIndex);
+
+        // jp.IN_USE = true, jp.STACK_FRAME_COUNTER = -1
+        cv.visitLabel(acquireLabel);
+        cv.visitVarInsn(ALOAD, input.joinPointInstanceIndex);
+        cv.visitInsn(ICONST_1);
+        cv.visitFieldInsn(PUTFIELD, m_joinPointClassName, IN_USE_FIELD_NAME, Type.BOOLEAN_TYPE.getDescriptor());
+        cv.visitVarInsn(ALOAD, input.joinPointInstanceIndex);
+        cv.visitInsn(ICONST_M1);
+        cv.visitFieldInsn(PUTFIELD, m_joinPointClassName, STACK_FRAME_COUNTER_FIELD_NAME, I);
+    }
+
+    /**
+     * Gives the pooled join point instance back, clearing the references it holds so that it does not keep
+     * them reachable from the thread.
+     * <p/>
+     * The instance level aspects are cleared as well, since the next invocation can have another this or target
+     * instance and only stores its aspects when they exist.
+     *
+     * @param cv
+     * @param joinPointIndex
+     */
+    private void createJoinPointRelease(final MethodVisitor cv, final int joinPointIndex) {
+        for (int i = 0; i < m_fieldNames.length; i++) {
+            if (!AsmHelper.isPrimitive(m_argumentTypes[i])) {
+                cv.visitVarInsn(ALOAD, joinPointIndex);
+                cv.visitInsn(ACONST_NULL);
+                cv.visitFieldInsn(PUTFIELD, m_joinPointClassName, m_fieldNames[i], m_argumentTypes[i].getDescriptor());
+            }
+        }
+        if (m_returnType.getSort() != Type.VOID && !AsmHelper.isPrimitive(m_returnType)) {
+            cv.visitVarInsn(ALOAD, joinPointIndex);
+            cv.visitInsn(ACONST_NULL);
+            cv.visitFieldInsn(PUTFIELD, m_joinPointClassName, RETURN_VALUE_FIELD_NAME, m_returnType.getDescriptor());
+        }
+        for (int i = 0; i < m_aspectInfos.length; i++) {
+            final AspectInfo aspectInfo = m_aspectInfos[i];
+            if (!CflowCompiler.isCflowClass(aspectInfo.getAspectClassName())
+                && requiresCallerOrCallee(aspectInfo.getDeploymentModel())) {
+                cv.visitVarInsn(ALOAD, joinPointIndex);
+                cv.visitInsn(ACONST_NULL);
+                cv.visitFieldInsn(
+                        PUTFIELD, m_joinPointClassName, aspectInfo.getAspectFieldName(),
+                        aspectInfo.getAspectClassSignature()
+                );
+            }
+        }
+        cv.visitVarInsn(ALOAD, joinPointIndex);
+        cv.visitInsn(ACONST_NULL);
+        cv.visitFieldInsn(PUTFIELD, m_joinPointClassName, CALLEE_INSTANCE_FIELD_NAME, m_calleeClassSignature);
+        cv.visitVarInsn(ALOAD, joinPointIndex);
+        cv.visitInsn(ACONST_NULL);
+        cv.visitFieldInsn(PUTFIELD, m_joinPointClassName, CALLER_INSTANCE_FIELD_NAME, m_callerClassSignature);
+        cv.visitVarInsn(ALOAD, joinPointIndex);
+        cv.visitInsn(ICONST_0);
+        cv.visitFieldInsn(PUTFIELD, m_joinPointClassName, IN_USE_FIELD_NAME, Type.BOOLEAN_TYPE.getDescriptor());
+    }
+
+    /**
+     * Gives the pooled join point instance back before each return of the invoke method, and when it
+     * completes abruptly.
+     */
+    private class JoinPointReleaseAdapter extends MethodAdapter {
+
+        private final int m_joinPointIndex;
+
+        private final Label m_startLabel = new Label();
+
+        JoinPointReleaseAdapter(final MethodVisitor cv, final int joinPointIndex) {
+            super(cv);
+            m_joinPointIndex = joinPointIndex;
+            mv.visitLabel(m_startLabel);
+        }
+
+        public void visitInsn(final int opcode) {
+            if (opcode >= IRETURN && opcode <= RETURN) {
+                createJoinPointRelease(mv, m_joinPointIndex);
+            }
+            super.visitInsn(opcode);
+        }
+
+        public void visitMaxs(final int maxStack, final int maxLocals) {
+            Label endLabel = new Label();
+            Label handlerLabel = new Label();
+            mv.visitLabel(endLabel);
+            mv.visitLabel(handlerLabel);
+            createJoinPointRelease(mv, m_joinPointIndex);
+            mv.visitInsn(ATHROW);
+            mv.visitTryCatchBlock(m_startLabel, endLabel, handlerLabel, null);
+            super.visitMaxs(maxStack, maxLocals);
+        }
+    }
+
     /**
      * Create the proceed() method.
      *
@@ -1345,8 +1566,30 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
             // runtime check for target() etc
             Label endInstanceOflabel = beginRuntimeCheck(cv, input, adviceMethodInfo.getAdviceInfo());
 
-            //get the aspect instance
             final AspectModel aspectModel = adviceMethodInfo.getAspectInfo().getAspectModel();
+            if (PerObjectAspect.isPerObjectAspect(aspectInfo.getAspectDefinition())) {
+                // bind the perX aspect to the instance thru its factory
+                aspectModel.createBeforeOrAfterAdviceArgumentHandling(
+                        cv, input, m_argumentTypes, adviceMethodInfo, INDEX_NOTAVAILABLE
+                );
+                AspectDefinition perXAspectDefinition = PerObjectAspect.getPerXAspectDefinition(
+                        aspectInfo.getAspectDefinition()
+                );
+                cv.visitMethodInsn(
+                        INVOKESTATIC,
+                        AspectFactoryManager.getAspectFactoryClassName(
+                                perXAspectDefinition.getClassName(),
+                                perXAspectDefinition.getQualifiedName()
+                        ),
+                        FACTORY_BIND_METHOD_NAME,
+                        FACTORY_BIND_PEROBJECT_METHOD_SIGNATURE
+                );
+                cv.visitInsn(POP);
+                endRuntimeCheck(cv, adviceMethodInfo.getAdviceInfo(), endInstanceOflabel);
+                continue;
+            }
+
+            //get the aspect instance
             aspectModel.loadAspect(cv, input, adviceMethodInfo.getAspectInfo());
 
             // push any needed arguments for the advice invocation
@@ -1616,6 +1859,114 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
         }
     }
 
+    /**
+     * Hands the arguments to the Rtti instance on top of the stack, leaving it on the stack.
+     * <p/>
+     * The Rtti reads them from this join point instance when its parameter values are asked for. A pooled instance
+     * is reused once the invocation is over, the Rtti is then given a copy of the arguments instead.
+     *
+     * @param cv
+     * @param rttiClassName
+     */
+    protected final void addArgumentsToRtti(final MethodVisitor cv, final String rttiClassName) {
+        cv.visitInsn(DUP);
+        if (m_isPooledJoinPoint) {
+            createArgumentArrayAt(cv, 1);
+            cv.visitVarInsn(ALOAD, 1);
+            cv.visitMethodInsn(
+                    INVOKEVIRTUAL, rttiClassName, SET_PARAMETER_VALUES_METHOD_NAME,
+                    SET_PARAMETER_VALUES_METHOD_SIGNATURE
+            );
+        } else {
+            cv.visitVarInsn(ALOAD, 0);
+            cv.visitMethodInsn(
+                    INVOKEVIRTUAL, rttiClassName, SET_ARGUMENTS_METHOD_NAME, SET_ARGUMENTS_METHOD_SIGNATURE
+            );
+        }
+    }
+
+    /**
+     * Creates the Arguments methods, that read the arguments directly from the join point instance fields.
+     * Only the join points that are not optimized implement Arguments, since the shared instance of an optimized
+     * join point does not hold the arguments.
+     */
+    private void createArgumentsMethods() {
+        MethodVisitor cv = m_cw.visitMethod(
+                ACC_PUBLIC,
+                GET_ARG_COUNT_METHOD_NAME,
+                NO_PARAMS_SIGNATURE + Type.INT_TYPE.getDescriptor(),
+                null, null
+        );
+        AsmHelper.loadIntegerConstant(cv, m_argumentTypes.length);
+        cv.visitInsn(IRETURN);
+        cv.visitMaxs(0, 0);
+
+        createArgumentGetter(GET_ARG_METHOD_NAME, OBJECT_CLASS_SIGNATURE, -1);
+        createArgumentGetter("getBooleanArg", "Z", Type.BOOLEAN);
+        createArgumentGetter("getByteArg", "B", Type.BYTE);
+        createArgumentGetter("getCharArg", "C", Type.CHAR);
+        createArgumentGetter("getShortArg", "S", Type.SHORT);
+        createArgumentGetter("getIntArg", "I", Type.INT);
+        createArgumentGetter("getLongArg", "J", Type.LONG);
+        createArgumentGetter("getFloatArg", "F", Type.FLOAT);
+        createArgumentGetter("getDoubleArg", "D", Type.DOUBLE);
+    }
+
+    /**
+     * Creates an argument getter, that switches on the index over the arguments of the given sort.
+     *
+     * @param methodName
+     * @param returnTypeDescriptor
+     * @param sort                 the argument sort, -1 for all the arguments, wrapped if primitive
+     */
+    private void createArgumentGetter(final String methodName, final String returnTypeDescriptor, final int sort) {
+        MethodVisitor cv = m_cw.visitMethod(
+                ACC_PUBLIC,
+                methodName,
+                "(I)" + returnTypeDescriptor,
+                null, null
+        );
+        for (int i = 0; i < m_argumentTypes.length; i++) {
+            Type argumentType = m_argumentTypes[i];
+            if (sort != -1 && argumentType.getSort() != sort) {
+                continue;
+            }
+            Label nextArgumentLabel = new Label();
+            cv.visitVarInsn(ILOAD, 1);
+            AsmHelper.loadIntegerConstant(cv, i);
+            cv.visitJumpInsn(IF_ICMPNE, nextArgumentLabel);
+            if (sort == -1) {
+                AsmHelper.prepareWrappingOfPrimitiveType(cv, argumentType);
+            }
+            cv.visitVarInsn(ALOAD, 0);
+            cv.visitFieldInsn(GETFIELD, m_joinPointClassName, ARGUMENT_FIELD + i, argumentType.getDescriptor());
+            if (sort == -1) {
+                AsmHelper.wrapPrimitiveType(cv, argumentType);
+                cv.visitInsn(ARETURN);
+            } else {
+                cv.visitInsn(argumentType.getOpcode(IRETURN));
+            }
+            cv.visitLabel(nextArgumentLabel);
+        }
+        cv.visitTypeInsn(NEW, "java/lang/IllegalArgumentException");
+        cv.visitInsn(DUP);
+        cv.visitLdcInsn("no such argument in join point " + m_joinPointClassName + ": ");
+        // append the index
+        cv.visitVarInsn(ILOAD, 1);
+        cv.visitMethodInsn(
+                INVOKESTATIC, "java/lang/String", "valueOf", "(I)Ljava/lang/String;"
+        );
+        cv.visitMethodInsn(
+                INVOKEVIRTUAL, "java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;"
+        );
+        cv.visitMethodInsn(
+                INVOKESPECIAL, "java/lang/IllegalArgumentException", INIT_METHOD_NAME,
+                RUNTIME_EXCEPTION_INIT_METHOD_SIGNATURE
+        );
+        cv.visitInsn(ATHROW);
+        cv.visitMaxs(0, 0);
+    }
+
     /**
      * Creates utility methods for the join point (getter, setters etc.).
      */
@@ -2186,6 +2537,18 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
         initializeAfterThrowingInterceptors(cv, joinPointInstanceIndex, advisableIndex);
     }
 
+    /**
+     * Loads the index of the advice slot of the join point in the advisable instance, that is the index given to the
+     * join point at weave time plus the offset given to the advisable class when its join points were registered.
+     *
+     * @param cv
+     */
+    private void loadAdvisableJoinPointIndex(final MethodVisitor cv) {
+        cv.visitFieldInsn(GETSTATIC, m_callerClassName, JOIN_POINT_INDEX_OFFSET_FIELD_NAME, "I");
+        AsmHelper.loadIntegerConstant(cv, m_model.getEmittedJoinPoint().getJoinPointIndex());
+        cv.visitInsn(IADD);
+    }
+
     /**
      * Handle the around interceptor init.
      *
@@ -2199,7 +2562,7 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
         cv.visitVarInsn(ALOAD, joinPointInstanceIndex);
         cv.visitVarInsn(ALOAD, advisableIndex);
         cv.visitTypeInsn(CHECKCAST, ADVISABLE_CLASS_NAME);
-        cv.visitLdcInsn(new Integer(m_joinPointClassName.hashCode()));
+        loadAdvisableJoinPointIndex(cv);
         cv.visitMethodInsn(
                 INVOKEINTERFACE,
                 ADVISABLE_CLASS_NAME,
@@ -2238,7 +2601,7 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
         cv.visitVarInsn(ALOAD, joinPointInstanceIndex);
         cv.visitVarInsn(ALOAD, advisableIndex);
         cv.visitTypeInsn(CHECKCAST, ADVISABLE_CLASS_NAME);
-        cv.visitLdcInsn(new Integer(m_joinPointClassName.hashCode()));
+        loadAdvisableJoinPointIndex(cv);
         cv.visitMethodInsn(
                 INVOKEINTERFACE,
                 ADVISABLE_CLASS_NAME,
@@ -2277,7 +2640,7 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
         cv.visitVarInsn(ALOAD, joinPointInstanceIndex);
         cv.visitVarInsn(ALOAD, advisableIndex);
         cv.visitTypeInsn(CHECKCAST, ADVISABLE_CLASS_NAME);
-        cv.visitLdcInsn(new Integer(m_joinPointClassName.hashCode()));
+        loadAdvisableJoinPointIndex(cv);
         cv.visitMethodInsn(
                 INVOKEINTERFACE,
                 ADVISABLE_CLASS_NAME,
@@ -2316,7 +2679,7 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
         cv.visitVarInsn(ALOAD, joinPointInstanceIndex);
         cv.visitVarInsn(ALOAD, advisableIndex);
         cv.visitTypeInsn(CHECKCAST, ADVISABLE_CLASS_NAME);
-        cv.visitLdcInsn(new Integer(m_joinPointClassName.hashCode()));
+        loadAdvisableJoinPointIndex(cv);
         cv.visitMethodInsn(
                 INVOKEINTERFACE,
                 ADVISABLE_CLASS_NAME,
@@ -2355,7 +2718,7 @@ public abstract class AbstractJoinPointCompiler implements JoinPointCompiler, Tr
         cv.visitVarInsn(ALOAD, joinPointInstanceIndex);
         cv.visitVarInsn(ALOAD, advisableIndex);
         cv.visitTypeInsn(CHECKCAST, ADVISABLE_CLASS_NAME);
-        cv.visitLdcInsn(new Integer(m_joinPointClassName.hashCode()));
+        loadAdvisableJoinPointIndex(cv);
         cv.visitMethodInsn(
                 INVOKEINTERFACE,
                 ADVISABLE_CLASS_NAME,
@@ -366,6 +366,11 @@ public class AspectWerkzAspectModel implements AspectModel, Opcodes, Transformat
 
         if (perInstanceIndex >= 0) {
             cv.visitVarInsn(ALOAD, perInstanceIndex);
+        } else if (DeploymentModel.PER_THIS.equals(aspectInfo.getDeploymentModel())) {
+            // in proceed() the caller is only available thru the join point instance
+            AbstractJoinPointCompiler.loadCaller(cv, input);
+        } else {
+            AbstractJoinPointCompiler.loadCallee(cv, input);
         }
 
         cv.visitMethodInsn(
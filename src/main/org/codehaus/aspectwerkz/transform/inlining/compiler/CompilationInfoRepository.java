@@ -0,0 +1,303 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.transform.inlining.compiler;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.codehaus.aspectwerkz.definition.ClassFilterIndex;
+import org.codehaus.aspectwerkz.expression.ExpressionContext;
+import org.codehaus.aspectwerkz.expression.ExpressionInfo;
+import org.codehaus.aspectwerkz.expression.PointcutType;
+import org.codehaus.aspectwerkz.joinpoint.management.JoinPointType;
+import org.codehaus.aspectwerkz.reflect.ClassInfo;
+import org.codehaus.aspectwerkz.reflect.MethodInfo;
+import org.codehaus.aspectwerkz.reflect.ReflectionInfo;
+import org.codehaus.aspectwerkz.reflect.impl.asm.AsmClassInfo;
+import org.codehaus.aspectwerkz.transform.inlining.EmittedJoinPoint;
+
+/**
+ * Repository of the compilation infos of the compiled join points, used to find the join points to redefine when
+ * aspects are deployed or undeployed.
+ * <p/>
+ * The join points are indexed by join point type and by the class declaring their member (the callee class), and
+ * each one caches the class infos its expression context is built from. The expressions of a deployment are matched in a
+ * single pass: a class filter index over the expressions skips the declaring classes and the join points that none of
+ * them can match, before the candidate expressions are evaluated.
+ * <p/>
+ * The join point classes are weakly referenced, so that they can be unloaded with their class loader. Each join
+ * point type has its own lock, and the matching runs outside of the locks on a snapshot of the index.
+ *
+ * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
+ */
+final class CompilationInfoRepository {
+
+    /**
+     * The pointcut type of the expression contexts of each join point type.
+     */
+    private static final PointcutType[] POINTCUT_TYPES = new PointcutType[JoinPointType.STATIC_INITIALIZATION_INT + 1];
+
+    static {
+        POINTCUT_TYPES[JoinPointType.METHOD_EXECUTION_INT] = PointcutType.EXECUTION;
+        POINTCUT_TYPES[JoinPointType.METHOD_CALL_INT] = PointcutType.CALL;
+        POINTCUT_TYPES[JoinPointType.CONSTRUCTOR_EXECUTION_INT] = PointcutType.EXECUTION;
+        POINTCUT_TYPES[JoinPointType.CONSTRUCTOR_CALL_INT] = PointcutType.CALL;
+        POINTCUT_TYPES[JoinPointType.FIELD_SET_INT] = PointcutType.SET;
+        POINTCUT_TYPES[JoinPointType.FIELD_GET_INT] = PointcutType.GET;
+        POINTCUT_TYPES[JoinPointType.HANDLER_INT] = PointcutType.HANDLER;
+        POINTCUT_TYPES[JoinPointType.STATIC_INITIALIZATION_INT] = PointcutType.STATIC_INITIALIZATION;
+    }
+
+    /**
+     * The entries, by join point class.
+     */
+    private final Map m_entriesByClass = new WeakHashMap();
+
+    /**
+     * The entries, by join point type, as maps of declaring class name to the list of entries.
+     */
+    private final Map[] m_entriesByType = new Map[POINTCUT_TYPES.length];
+
+    CompilationInfoRepository() {
+        for (int i = 0; i < m_entriesByType.length; i++) {
+            m_entriesByType[i] = new HashMap();
+        }
+    }
+
+    /**
+     * Adds or updates the compilation info of a join point class.
+     *
+     * @param clazz           the first compiled join point class
+     * @param compilationInfo
+     */
+    void put(final Class clazz, final CompilationInfo compilationInfo) {
+        final Entry entry;
+        synchronized (m_entriesByClass) {
+            final Entry existing = (Entry) m_entriesByClass.get(clazz);
+            if (existing != null) {
+                existing.m_compilationInfo = compilationInfo;
+                return;
+            }
+            entry = new Entry(clazz, compilationInfo);
+            m_entriesByClass.put(clazz, entry);
+        }
+        final EmittedJoinPoint joinPoint = compilationInfo.getInitialModel().getEmittedJoinPoint();
+        final String className = joinPoint.getCalleeClassName().replace('/', '.');
+        final Map entriesByClassName = m_entriesByType[joinPoint.getJoinPointType()];
+        synchronized (entriesByClassName) {
+            List entries = (List) entriesByClassName.get(className);
+            if (entries == null) {
+                entries = new ArrayList();
+                entriesByClassName.put(className, entries);
+            }
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * Returns the compilation info of a join point class.
+     *
+     * @param clazz the first compiled join point class
+     * @return the compilation info or null if unknown
+     */
+    CompilationInfo get(final Class clazz) {
+        synchronized (m_entriesByClass) {
+            final Entry entry = (Entry) m_entriesByClass.get(clazz);
+            return (entry == null) ? null : entry.m_compilationInfo;
+        }
+    }
+
+    /**
+     * Returns the join points that match at least one of the expressions.
+     *
+     * @param expressions the expressions, as a set of ExpressionInfo
+     * @return a set with the matching join points, as MatchingJoinPointInfo
+     */
+    Set getJoinPointsMatching(final Set expressions) {
+        final Set matchingJoinPointInfos = new HashSet();
+        if (expressions.isEmpty()) {
+            return matchingJoinPointInfos;
+        }
+        final ClassFilterIndex filter = new ClassFilterIndex(new ArrayList(expressions));
+        for (int type = 0; type < m_entriesByType.length; type++) {
+            if (POINTCUT_TYPES[type] == null) {
+                continue;
+            }
+            final Object[] snapshot = snapshot(type);
+            for (int i = 0; i < snapshot.length; i += 2) {
+                final BitSet targetCandidates = filter.getTargetCandidates(POINTCUT_TYPES[type], (String) snapshot[i]);
+                if (targetCandidates != null && targetCandidates.length() == 0) {
+                    continue;
+                }
+                final Entry[] entries = (Entry[]) snapshot[i + 1];
+                for (int j = 0; j < entries.length; j++) {
+                    final Class clazz = (Class) entries[j].m_joinPointClass.get();
+                    if (clazz == null) {
+                        continue;
+                    }
+                    final ExpressionContext ctx = entries[j].newExpressionContext(clazz.getClassLoader());
+                    final BitSet candidates = filter.getCandidates(ctx, false);
+                    for (int k = 0; k < filter.size(); k++) {
+                        if (!candidates.get(k)) {
+                            continue;
+                        }
+                        ctx.resetRuntimeState();
+                        if (filter.getExpressionInfo(k).getExpression().match(ctx)) {
+                            matchingJoinPointInfos.add(
+                                    new MatchingJoinPointInfo(clazz, entries[j].m_compilationInfo, ctx)
+                            );
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return matchingJoinPointInfos;
+    }
+
+    /**
+     * Copies the index of a join point type, dropping the entries of the unloaded join point classes.
+     *
+     * @param type the join point type
+     * @return the declaring class names, each one followed by the array of its entries
+     */
+    private Object[] snapshot(final int type) {
+        final Map entriesByClassName = m_entriesByType[type];
+        synchronized (entriesByClassName) {
+            final List snapshot = new ArrayList(entriesByClassName.size() * 2);
+            for (Iterator it = entriesByClassName.entrySet().iterator(); it.hasNext();) {
+                final Map.Entry mapEntry = (Map.Entry) it.next();
+                final List entries = (List) mapEntry.getValue();
+                for (Iterator it2 = entries.iterator(); it2.hasNext();) {
+                    if (((Entry) it2.next()).m_joinPointClass.get() == null) {
+                        it2.remove();
+                    }
+                }
+                if (entries.isEmpty()) {
+                    it.remove();
+                    continue;
+                }
+                snapshot.add(mapEntry.getKey());
+                snapshot.add(entries.toArray(new Entry[entries.size()]));
+            }
+            return snapshot.toArray();
+        }
+    }
+
+    /**
+     * Resolves the reflection info of the member of a join point.
+     *
+     * @param joinPoint       the emitted join point
+     * @param calleeClassInfo the class info of the callee class
+     * @return the reflection info
+     */
+    private static ReflectionInfo getReflectionInfo(final EmittedJoinPoint joinPoint,
+                                                    final ClassInfo calleeClassInfo) {
+        switch (joinPoint.getJoinPointType()) {
+            case JoinPointType.METHOD_EXECUTION_INT:
+            case JoinPointType.METHOD_CALL_INT:
+                return calleeClassInfo.getMethod(joinPoint.getJoinPointHash());
+            case JoinPointType.CONSTRUCTOR_EXECUTION_INT:
+            case JoinPointType.CONSTRUCTOR_CALL_INT:
+                return calleeClassInfo.getConstructor(joinPoint.getJoinPointHash());
+            case JoinPointType.FIELD_SET_INT:
+            case JoinPointType.FIELD_GET_INT:
+                return calleeClassInfo.getField(joinPoint.getJoinPointHash());
+            case JoinPointType.HANDLER_INT:
+                return calleeClassInfo;
+            case JoinPointType.STATIC_INITIALIZATION_INT:
+                return calleeClassInfo.staticInitializer();
+            default:
+                throw new UnsupportedOperationException(
+                        "join point type is not supported: " + joinPoint.getJoinPointType()
+                );
+        }
+    }
+
+    /**
+     * Grabs the caller method info.
+     *
+     * @param callerClassInfo
+     * @param emittedJoinPoint
+     * @return
+     */
+    private static MethodInfo getCallerMethodInfo(final ClassInfo callerClassInfo,
+                                                  final EmittedJoinPoint emittedJoinPoint) {
+        MethodInfo callerMethodInfo = null;
+        MethodInfo[] callerMethods = callerClassInfo.getMethods();
+        for (int i = 0; i < callerMethods.length; i++) {
+            MethodInfo method = callerMethods[i];
+            if (method.getName().equals(emittedJoinPoint.getCallerMethodName()) &&
+                method.getSignature().equals(emittedJoinPoint.getCallerMethodDesc())) {
+                callerMethodInfo = method;
+                break;
+            }
+        }
+        return callerMethodInfo;
+    }
+
+    /**
+     * A compiled join point.
+     */
+    private static final class Entry {
+
+        private final WeakReference m_joinPointClass;
+
+        private volatile CompilationInfo m_compilationInfo;
+
+        /**
+         * The reflection infos of the join point and of its within member, resolved on the first match.
+         */
+        private ReflectionInfo m_reflectionInfo;
+
+        private ReflectionInfo m_withinInfo;
+
+        Entry(final Class joinPointClass, final CompilationInfo compilationInfo) {
+            m_joinPointClass = new WeakReference(joinPointClass);
+            m_compilationInfo = compilationInfo;
+        }
+
+        /**
+         * Returns a new expression context for the join point. The context is not shared since the matching and
+         * the advice lookup update its runtime state.
+         *
+         * @param loader the class loader of the join point class
+         * @return the expression context
+         */
+        ExpressionContext newExpressionContext(final ClassLoader loader) {
+            final EmittedJoinPoint joinPoint = m_compilationInfo.getInitialModel().getEmittedJoinPoint();
+            synchronized (this) {
+                if (m_reflectionInfo == null) {
+                    final ClassInfo calleeClassInfo = AsmClassInfo.getClassInfo(
+                            joinPoint.getCalleeClassName(), loader
+                    );
+                    if (joinPoint.getJoinPointType() == JoinPointType.STATIC_INITIALIZATION_INT) {
+                        m_withinInfo = calleeClassInfo;
+                    } else {
+                        final ClassInfo callerClassInfo = AsmClassInfo.getClassInfo(
+                                joinPoint.getCallerClassName(), loader
+                        );
+                        m_withinInfo = getCallerMethodInfo(callerClassInfo, joinPoint);
+                    }
+                    m_reflectionInfo = getReflectionInfo(joinPoint, calleeClassInfo);
+                }
+            }
+            return new ExpressionContext(
+                    POINTCUT_TYPES[joinPoint.getJoinPointType()], m_reflectionInfo, m_withinInfo
+            );
+        }
+    }
+}
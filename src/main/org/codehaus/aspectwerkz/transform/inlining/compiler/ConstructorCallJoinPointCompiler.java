@@ -196,13 +196,7 @@ public class ConstructorCallJoinPointCompiler extends AbstractJoinPointCompiler
         );
 
         // set the arguments
-        cv.visitInsn(DUP);
-        createArgumentArrayAt(cv, 1);
-        cv.visitVarInsn(ALOAD, 1);
-        cv.visitMethodInsn(
-                INVOKEVIRTUAL, CONSTRUCTOR_RTTI_IMPL_CLASS_NAME, SET_PARAMETER_VALUES_METHOD_NAME,
-                SET_PARAMETER_VALUES_METHOD_SIGNATURE
-        );
+        addArgumentsToRtti(cv, CONSTRUCTOR_RTTI_IMPL_CLASS_NAME);
 
         cv.visitInsn(ARETURN);
         cv.visitMaxs(0, 0);
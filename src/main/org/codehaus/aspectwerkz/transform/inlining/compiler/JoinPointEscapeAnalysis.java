@@ -0,0 +1,298 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bon?r, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.transform.inlining.compiler;
+
+import org.codehaus.aspectwerkz.aspect.AdviceInfo;
+import org.codehaus.aspectwerkz.reflect.ClassInfo;
+import org.codehaus.aspectwerkz.reflect.ClassInfoHelper;
+import org.codehaus.aspectwerkz.reflect.impl.asm.AsmClassInfo;
+import org.codehaus.aspectwerkz.transform.TransformationConstants;
+import org.codehaus.aspectwerkz.transform.inlining.AsmHelper;
+import org.codehaus.aspectwerkz.transform.inlining.AsmNullAdapter;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Checks from the advice bytecode that an advice does not let the join point instance it is given escape, so that
+ * the instance can be reused once the advice chain has returned.
+ * <p/>
+ * The analysis is conservative: each load of the join point argument must be the receiver of a call to a
+ * method of the argument type, JoinPoint, StaticJoinPoint or Arguments, the arguments of this call being constants,
+ * other locals or static fields. getRtti() is considered as escaping since the Rtti it returns refers to the instance.
+ * Anything else, such as storing the join point, passing it to a method or returning it, is an escape.
+ * <p/>
+ * Any argument whose type is assignable to StaticJoinPoint, such as a custom proceed interface, is the join point.
+ *
+ * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
+ */
+public class JoinPointEscapeAnalysis implements Opcodes, TransformationConstants {
+
+    /**
+     * Checks if the advice lets the join point escape.
+     *
+     * @param adviceInfo
+     * @return true if the advice (possibly) lets the join point escape
+     */
+    public static boolean escapes(final AdviceInfo adviceInfo) {
+        ClassInfo aspectClassInfo = adviceInfo.getAdviceDefinition().getAspectDefinition().getClassInfo();
+        return escapes(
+                aspectClassInfo.getClassLoader(),
+                aspectClassInfo.getName(),
+                adviceInfo.getMethodName(),
+                adviceInfo.getMethodSignature()
+        );
+    }
+
+    /**
+     * Checks if the advice method lets the join point escape.
+     *
+     * @param loader          the aspect class loader
+     * @param aspectClassName
+     * @param methodName
+     * @param methodDesc
+     * @return true if the advice (possibly) lets the join point escape
+     */
+    public static boolean escapes(final ClassLoader loader,
+                                  final String aspectClassName,
+                                  final String methodName,
+                                  final String methodDesc) {
+        Type[] argumentTypes = Type.getArgumentTypes(methodDesc);
+        boolean[] joinPointArguments = new boolean[argumentTypes.length];
+        Set joinPointTypes = new HashSet();
+        joinPointTypes.add(JOIN_POINT_CLASS_NAME);
+        joinPointTypes.add(STATIC_JOIN_POINT_CLASS_NAME);
+        joinPointTypes.add(ARGUMENTS_CLASS_NAME);
+        boolean hasJoinPoint = false;
+        for (int i = 0; i < argumentTypes.length; i++) {
+            if (argumentTypes[i].getSort() != Type.OBJECT) {
+                continue;
+            }
+            String typeName = argumentTypes[i].getInternalName();
+            if (JOIN_POINT_CLASS_NAME.equals(typeName) || STATIC_JOIN_POINT_CLASS_NAME.equals(typeName)) {
+                joinPointArguments[i] = true;
+                hasJoinPoint = true;
+            } else if (!ARGUMENTS_CLASS_NAME.equals(typeName) && !typeName.startsWith("java/")) {
+                ClassInfo typeInfo = AsmClassInfo.getClassInfo(typeName, loader);
+                if (typeInfo == null || typeInfo instanceof ClassInfo.NullClassInfo) {
+                    // cannot tell if this is the join point
+                    return true;
+                }
+                if (ClassInfoHelper.implementsInterface(typeInfo, STATIC_JOIN_POINT_JAVA_CLASS_NAME)) {
+                    joinPointArguments[i] = true;
+                    joinPointTypes.add(typeName);
+                    hasJoinPoint = true;
+                }
+            }
+        }
+        if (!hasJoinPoint) {
+            // the advice is not given the join point
+            return false;
+        }
+
+        InputStream stream = (loader != null ? loader : ClassLoader.getSystemClassLoader()).getResourceAsStream(
+                aspectClassName.replace('.', '/') + ".class"
+        );
+        if (stream == null) {
+            return true;
+        }
+        try {
+            EscapeClassAdapter classAdapter = new EscapeClassAdapter(
+                    methodName, methodDesc, joinPointArguments, joinPointTypes
+            );
+            new ClassReader(stream).accept(classAdapter, true);
+            // an advice inherited from a super aspect is not analyzed
+            return !classAdapter.m_methodFound || classAdapter.m_escapes;
+        } catch (IOException e) {
+            return true;
+        } finally {
+            try {
+                stream.close();
+            } catch (Exception e) {
+                ;
+            }
+        }
+    }
+
+    /**
+     * Looks up the advice method.
+     */
+    private static class EscapeClassAdapter extends AsmNullAdapter.NullClassAdapter {
+
+        private final String m_methodName;
+        private final String m_methodDesc;
+        private final boolean[] m_joinPointArguments;
+        private final Set m_joinPointTypes;
+        private boolean[] m_joinPointSlots;
+        private boolean m_methodFound = false;
+        private boolean m_escapes = false;
+
+        EscapeClassAdapter(final String methodName,
+                           final String methodDesc,
+                           final boolean[] joinPointArguments,
+                           final Set joinPointTypes) {
+            m_methodName = methodName;
+            m_methodDesc = methodDesc;
+            m_joinPointArguments = joinPointArguments;
+            m_joinPointTypes = joinPointTypes;
+        }
+
+        public MethodVisitor visitMethod(final int access,
+                                         final String name,
+                                         final String desc,
+                                         final String signature,
+                                         final String[] exceptions) {
+            if (m_methodName.equals(name) && m_methodDesc.equals(desc)) {
+                m_methodFound = true;
+                // the arguments start at slot 0 for a static advice, after 'this' otherwise
+                Type[] argumentTypes = Type.getArgumentTypes(desc);
+                int slot = (access & ACC_STATIC) != 0 ? 0 : 1;
+                m_joinPointSlots = new boolean[slot + AsmHelper.getRegisterDepth(argumentTypes)];
+                for (int i = 0; i < argumentTypes.length; i++) {
+                    m_joinPointSlots[slot] = m_joinPointArguments[i];
+                    slot += argumentTypes[i].getSize();
+                }
+                return new EscapeMethodAdapter(this);
+            }
+            return AsmNullAdapter.NullMethodAdapter.NULL_METHOD_ADAPTER;
+        }
+    }
+
+    /**
+     * Follows each load of the join point up to the instruction that consumes it.
+     */
+    private static class EscapeMethodAdapter extends AsmNullAdapter.NullMethodAdapter {
+
+        private final EscapeClassAdapter m_classAdapter;
+
+        /**
+         * The number of values pushed on top of the join point, or -1 when the join point is not on the stack.
+         */
+        private int m_pushedOnJoinPoint = -1;
+
+        EscapeMethodAdapter(final EscapeClassAdapter classAdapter) {
+            m_classAdapter = classAdapter;
+        }
+
+        private boolean isJoinPointSlot(final int var) {
+            return var < m_classAdapter.m_joinPointSlots.length && m_classAdapter.m_joinPointSlots[var];
+        }
+
+        /**
+         * An instruction that does something else than pushing one value while the join point is on the stack.
+         */
+        private void consume() {
+            if (m_pushedOnJoinPoint >= 0) {
+                m_classAdapter.m_escapes = true;
+                m_pushedOnJoinPoint = -1;
+            }
+        }
+
+        /**
+         * An instruction that pushes one value without consuming any.
+         */
+        private void push() {
+            if (m_pushedOnJoinPoint >= 0) {
+                m_pushedOnJoinPoint++;
+            }
+        }
+
+        public void visitInsn(final int opcode) {
+            if (opcode >= ACONST_NULL && opcode <= DCONST_1) {
+                push();
+            } else {
+                consume();
+            }
+        }
+
+        public void visitIntInsn(final int opcode, final int operand) {
+            if (opcode == BIPUSH || opcode == SIPUSH) {
+                push();
+            } else {
+                consume();
+            }
+        }
+
+        public void visitLdcInsn(final Object cst) {
+            push();
+        }
+
+        public void visitVarInsn(final int opcode, final int var) {
+            if (opcode == ALOAD && isJoinPointSlot(var)) {
+                consume();
+                m_pushedOnJoinPoint = 0;
+            } else if (opcode >= ILOAD && opcode <= ALOAD) {
+                push();
+            } else {
+                consume();
+            }
+        }
+
+        public void visitFieldInsn(final int opcode, final String owner, final String name, final String desc) {
+            if (opcode == GETSTATIC) {
+                push();
+            } else {
+                consume();
+            }
+        }
+
+        public void visitTypeInsn(final int opcode, final String desc) {
+            if (opcode == CHECKCAST
+                && m_pushedOnJoinPoint == 0
+                && m_classAdapter.m_joinPointTypes.contains(desc)) {
+                return;
+            }
+            consume();
+        }
+
+        public void visitMethodInsn(final int opcode, final String owner, final String name, final String desc) {
+            if (m_pushedOnJoinPoint >= 0
+                && opcode == INVOKEINTERFACE
+                && m_classAdapter.m_joinPointTypes.contains(owner)
+                && !GET_RTTI_METHOD_NAME.equals(name)
+                && Type.getArgumentTypes(desc).length == m_pushedOnJoinPoint) {
+                // the join point is the receiver
+                m_pushedOnJoinPoint = -1;
+                return;
+            }
+            consume();
+        }
+
+        public void visitJumpInsn(final int opcode, final Label label) {
+            consume();
+        }
+
+        public void visitIincInsn(final int var, final int increment) {
+            consume();
+        }
+
+        public void visitTableSwitchInsn(final int min,
+                                         final int max,
+                                         final Label dflt,
+                                         final Label labels[]) {
+            consume();
+        }
+
+        public void visitLookupSwitchInsn(final Label dflt,
+                                          final int keys[],
+                                          final Label labels[]) {
+            consume();
+        }
+
+        public void visitMultiANewArrayInsn(final String desc, final int dims) {
+            consume();
+        }
+    }
+}
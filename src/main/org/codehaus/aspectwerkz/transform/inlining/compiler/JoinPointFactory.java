@@ -7,21 +7,16 @@
  **************************************************************************************/
 package org.codehaus.aspectwerkz.transform.inlining.compiler;
 
-import java.util.Map;
-import java.util.Iterator;
-import java.util.WeakHashMap;
+import java.net.URL;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.codehaus.aspectwerkz.joinpoint.management.JoinPointType;
-import org.codehaus.aspectwerkz.expression.ExpressionContext;
-import org.codehaus.aspectwerkz.expression.PointcutType;
 import org.codehaus.aspectwerkz.expression.ExpressionInfo;
-import org.codehaus.aspectwerkz.reflect.MethodInfo;
-import org.codehaus.aspectwerkz.reflect.ClassInfo;
-import org.codehaus.aspectwerkz.reflect.impl.asm.AsmClassInfo;
 import org.codehaus.aspectwerkz.transform.inlining.AsmHelper;
 import org.codehaus.aspectwerkz.transform.inlining.EmittedJoinPoint;
+import org.codehaus.aspectwerkz.util.ClassLoaderMap;
+import org.codehaus.aspectwerkz.util.ConcurrentReferenceMap;
 
 /**
  * TODO is factory a good name, now that it does so much more?
@@ -36,7 +31,13 @@ public class JoinPointFactory {
     /**
      * Stores the compilation infos - mapped to the last compiled join point class based on this compilation info.
      */
-    private static final Map COMPILATION_INFO_REPOSITORY = new WeakHashMap();
+    private static final CompilationInfoRepository COMPILATION_INFO_REPOSITORY = new CompilationInfoRepository();
+
+    /**
+     * The registry of the join point classes known to exist, per class loader, as a map of join point class name
+     * to itself.
+     */
+    private static final ClassLoaderMap JOIN_POINT_REGISTRIES = new ClassLoaderMap();
 
     /**
      * Compiles and loades a join point class, one specific class for each distinct join point.
@@ -61,7 +62,53 @@ public class JoinPointFactory {
     public static Class attachToClassLoader(final String joinpointClassName,
                                             final ClassLoader loader,
                                             final byte[] bytecode) {
-        return AsmHelper.defineClass(loader, bytecode, joinpointClassName);
+        final Class joinPointClass = AsmHelper.defineClass(loader, bytecode, joinpointClassName);
+        final String className = joinpointClassName.replace('.', '/');
+        getJoinPointRegistry(loader).put(className, className);
+        return joinPointClass;
+    }
+
+    /**
+     * Checks if a join point class already exists in a class loader, either because it has been attached to it
+     * or because it is packaged with the application (f.e. offline mode with -genjp).
+     * <p/>
+     * This relies on the registry of the class loader and on a resource lookup, and thus does not load the class.
+     *
+     * @param joinpointClassName
+     * @param loader
+     * @return true if the join point class does not have to be compiled
+     */
+    public static boolean isJoinPointDefined(final String joinpointClassName, final ClassLoader loader) {
+        final String className = joinpointClassName.replace('.', '/');
+        final ConcurrentReferenceMap registry = getJoinPointRegistry(loader);
+        if (registry.containsKey(className)) {
+            return true;
+        }
+        final String resourceName = className + ".class";
+        final URL resource = (loader == null) ?
+                             ClassLoader.getSystemResource(resourceName) :
+                             loader.getResource(resourceName);
+        if (resource != null) {
+            registry.put(className, className);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the join point class registry of a class loader.
+     *
+     * @param loader
+     * @return the registry
+     */
+    private static ConcurrentReferenceMap getJoinPointRegistry(final ClassLoader loader) {
+        ConcurrentReferenceMap registry = (ConcurrentReferenceMap) JOIN_POINT_REGISTRIES.get(loader);
+        if (registry == null) {
+            registry = (ConcurrentReferenceMap) JOIN_POINT_REGISTRIES.putIfAbsent(
+                    loader, new ConcurrentReferenceMap(ConcurrentReferenceMap.STRONG)
+            );
+        }
+        return registry;
     }
 
     /**
@@ -145,114 +192,32 @@ public class JoinPointFactory {
      * @return a set with the matching emitted join point
      */
     public static Set getJoinPointsMatching(final ExpressionInfo expression) {
-        final Set matchingJoinPointInfos = new HashSet();
-        for (Iterator it = COMPILATION_INFO_REPOSITORY.entrySet().iterator(); it.hasNext();) {
-            final Map.Entry entry = (Map.Entry) it.next();
-
-            final Class clazz = (Class) entry.getKey();
-            final CompilationInfo compilationInfo = (CompilationInfo) entry.getValue();
-            final EmittedJoinPoint joinPoint = (EmittedJoinPoint) compilationInfo.
-                    getInitialModel().getEmittedJoinPoint();
-            final ClassLoader loader = clazz.getClassLoader();
-
-            final ClassInfo calleeClassInfo = AsmClassInfo.getClassInfo(joinPoint.getCalleeClassName(), loader);
-            final ClassInfo callerClassInfo = AsmClassInfo.getClassInfo(joinPoint.getCallerClassName(), loader);
-            final MethodInfo callerMethodInfo = getCallerMethodInfo(callerClassInfo, joinPoint);
-
-            ExpressionContext ctx = null;
-            switch (joinPoint.getJoinPointType()) {
-                case JoinPointType.METHOD_EXECUTION_INT:
-                    ctx = new ExpressionContext(
-                            PointcutType.EXECUTION,
-                            calleeClassInfo.getMethod(joinPoint.getJoinPointHash()),
-                            callerMethodInfo
-                    );
-                    break;
-                case JoinPointType.METHOD_CALL_INT:
-                    ctx = new ExpressionContext(
-                            PointcutType.CALL,
-                            calleeClassInfo.getMethod(joinPoint.getJoinPointHash()),
-                            callerMethodInfo
-                    );
-                    break;
-                case JoinPointType.CONSTRUCTOR_EXECUTION_INT:
-                    ctx = new ExpressionContext(
-                            PointcutType.EXECUTION,
-                            calleeClassInfo.getConstructor(joinPoint.getJoinPointHash()),
-                            callerMethodInfo
-                    );
-                    break;
-                case JoinPointType.CONSTRUCTOR_CALL_INT:
-                    ctx = new ExpressionContext(
-                            PointcutType.CALL,
-                            calleeClassInfo.getConstructor(joinPoint.getJoinPointHash()),
-                            callerMethodInfo
-                    );
-                    break;
-                case JoinPointType.FIELD_SET_INT:
-                    ctx = new ExpressionContext(
-                            PointcutType.SET,
-                            calleeClassInfo.getField(joinPoint.getJoinPointHash()),
-                            callerMethodInfo
-                    );
-                    break;
-                case JoinPointType.FIELD_GET_INT:
-                    ctx = new ExpressionContext(
-                            PointcutType.GET,
-                            calleeClassInfo.getField(joinPoint.getJoinPointHash()),
-                            callerMethodInfo
-                    );
-                    break;
-                case JoinPointType.HANDLER_INT:
-                    ctx = new ExpressionContext(
-                            PointcutType.HANDLER,
-                            AsmClassInfo.getClassInfo(joinPoint.getCalleeClassName(), loader),
-                            callerMethodInfo
-                    );
-                    break;
-                case JoinPointType.STATIC_INITIALIZATION_INT:
-                	ctx = new ExpressionContext(
-                	        PointcutType.STATIC_INITIALIZATION,
-                	        calleeClassInfo.staticInitializer(),
-                	        calleeClassInfo
-                	);
-            }
-            if (expression.getExpression().match(ctx)) {
-                matchingJoinPointInfos.add(new MatchingJoinPointInfo(clazz, compilationInfo, ctx));
-            }
-        }
-        return matchingJoinPointInfos;
+        final Set expressions = new HashSet();
+        expressions.add(expression);
+        return getJoinPointsMatching(expressions);
     }
 
     /**
-     * Returns the emitted join point structure for a specific JIT generated join point class.
+     * Returns a list with all the join point compilers that matches at least one of the pointcut expressions, the
+     * expressions being matched in a single pass over the repository.
+     * <p/>
+     * To be used for redefinition of the join point compilers only.
      *
-     * @param clazz the join point class
-     * @return the emitted join point structure
+     * @param expressions the pointcut expressions
+     * @return a set with the matching emitted join point
      */
-    public static EmittedJoinPoint getEmittedJoinPoint(final Class clazz) {
-        return (EmittedJoinPoint) COMPILATION_INFO_REPOSITORY.get(clazz);
+    public static Set getJoinPointsMatching(final Set expressions) {
+        return COMPILATION_INFO_REPOSITORY.getJoinPointsMatching(expressions);
     }
 
     /**
-     * Grabs the caller method info.
+     * Returns the emitted join point structure for a specific JIT generated join point class.
      *
-     * @param callerClassInfo
-     * @param emittedJoinPoint
-     * @return
+     * @param clazz the join point class
+     * @return the emitted join point structure
      */
-    private static MethodInfo getCallerMethodInfo(final ClassInfo callerClassInfo,
-                                                  final EmittedJoinPoint emittedJoinPoint) {
-        MethodInfo callerMethodInfo = null;
-        MethodInfo[] callerMethods = callerClassInfo.getMethods();
-        for (int i = 0; i < callerMethods.length; i++) {
-            MethodInfo method = callerMethods[i];
-            if (method.getName().equals(emittedJoinPoint.getCallerMethodName()) &&
-                method.getSignature().equals(emittedJoinPoint.getCallerMethodDesc())) {
-                callerMethodInfo = method;
-                break;
-            }
-        }
-        return callerMethodInfo;
+    public static EmittedJoinPoint getEmittedJoinPoint(final Class clazz) {
+        final CompilationInfo compilationInfo = COMPILATION_INFO_REPOSITORY.get(clazz);
+        return (compilationInfo == null) ? null : compilationInfo.getInitialModel().getEmittedJoinPoint();
     }
 }
@@ -199,13 +199,7 @@ public class MethodCallJoinPointCompiler extends AbstractJoinPointCompiler {
         );
 
         // set the arguments
-        cv.visitInsn(DUP);
-        createArgumentArrayAt(cv, 1);
-        cv.visitVarInsn(ALOAD, 1);
-        cv.visitMethodInsn(
-                INVOKEVIRTUAL, METHOD_RTTI_IMPL_CLASS_NAME, SET_PARAMETER_VALUES_METHOD_NAME,
-                SET_PARAMETER_VALUES_METHOD_SIGNATURE
-        );
+        addArgumentsToRtti(cv, METHOD_RTTI_IMPL_CLASS_NAME);
 
         // set the Returned instance
         if (m_returnType.getSort() != Type.VOID) {
@@ -47,6 +47,9 @@ public final class ChangeSet {
     public static class Element {
         private final CompilationInfo m_compilationInfo;
         private final MatchingJoinPointInfo m_joinPointInfo;
+        private CompilationInfo.Model m_redefinedModel;
+        private byte[] m_joinPointBytecode;
+        private byte[] m_redefinedBytecode;
 
         public Element(final CompilationInfo compilationInfo, final MatchingJoinPointInfo joinPointInfo) {
             m_compilationInfo = compilationInfo;
@@ -60,5 +63,40 @@ public final class ChangeSet {
         public MatchingJoinPointInfo getJoinPointInfo() {
             return m_joinPointInfo;
         }
+
+        /**
+         * Returns the new model, not yet set in the compilation info while the change set is applied.
+         *
+         * @return the redefined model
+         */
+        public CompilationInfo.Model getRedefinedModel() {
+            return m_redefinedModel;
+        }
+
+        /**
+         * Returns the bytecode of the new join point class, compiled from the redefined model.
+         *
+         * @return the bytecode
+         */
+        public byte[] getJoinPointBytecode() {
+            return m_joinPointBytecode;
+        }
+
+        /**
+         * Returns the new bytecode of the initial join point class, delegating to the new join point class.
+         *
+         * @return the bytecode
+         */
+        public byte[] getRedefinedBytecode() {
+            return m_redefinedBytecode;
+        }
+
+        void setCompiledJoinPoint(final CompilationInfo.Model redefinedModel,
+                                  final byte[] joinPointBytecode,
+                                  final byte[] redefinedBytecode) {
+            m_redefinedModel = redefinedModel;
+            m_joinPointBytecode = joinPointBytecode;
+            m_redefinedBytecode = redefinedBytecode;
+        }
     }
 }
\ No newline at end of file
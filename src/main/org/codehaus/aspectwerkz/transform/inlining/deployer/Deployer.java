@@ -7,12 +7,23 @@
  **************************************************************************************/
 package org.codehaus.aspectwerkz.transform.inlining.deployer;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.io.InputStream;
 
+import EDU.oswego.cs.dl.util.concurrent.Callable;
+import EDU.oswego.cs.dl.util.concurrent.FutureResult;
+import EDU.oswego.cs.dl.util.concurrent.LinkedQueue;
+import EDU.oswego.cs.dl.util.concurrent.PooledExecutor;
+import EDU.oswego.cs.dl.util.concurrent.ThreadFactory;
+
 import org.codehaus.aspectwerkz.expression.ExpressionInfo;
 import org.codehaus.aspectwerkz.definition.AspectDefinition;
 import org.codehaus.aspectwerkz.definition.SystemDefinition;
@@ -28,6 +39,7 @@ import org.codehaus.aspectwerkz.reflect.impl.asm.AsmClassInfo;
 import org.codehaus.aspectwerkz.reflect.impl.java.JavaClassInfo;
 import org.codehaus.aspectwerkz.reflect.ClassInfo;
 import org.codehaus.aspectwerkz.exception.DefinitionException;
+import org.codehaus.aspectwerkz.exception.WrappedRuntimeException;
 import org.codehaus.aspectwerkz.transform.inlining.compiler.MatchingJoinPointInfo;
 import org.codehaus.aspectwerkz.transform.inlining.compiler.JoinPointFactory;
 import org.codehaus.aspectwerkz.transform.inlining.compiler.CompilationInfo;
@@ -46,6 +58,14 @@ import org.dom4j.DocumentException;
  */
 public class Deployer {
 
+    /**
+     * The number of threads compiling the new join points of a deployment, set with
+     * <code>-Daspectwerkz.deployment.threads=n</code>, defaults to the number of processors.
+     */
+    private static final int COMPILER_THREADS = Integer.getInteger(
+            "aspectwerkz.deployment.threads", Runtime.getRuntime().availableProcessors()
+    ).intValue();
+
     /**
      * Deploys an annotation defined aspect.
      * <p/>
@@ -393,16 +413,14 @@ public class Deployer {
 
     /**
      * Redefines all join points that are affected by the system redefinition.
+     * <p/>
+     * The redefinitions are serialized, so that a redefinition never reads the models of a concurrent one while
+     * they are being published.
      *
      * @param expressions the expressions that will pick out the join points that are affected
      */
-    private static void redefine(final Set expressions) {
-        final Set allMatchingJoinPoints = new HashSet();
-        for (Iterator itExpr = expressions.iterator(); itExpr.hasNext();) {
-            ExpressionInfo expression = (ExpressionInfo) itExpr.next();
-            Set matchingJoinPoints = JoinPointFactory.getJoinPointsMatching(expression);
-            allMatchingJoinPoints.addAll(matchingJoinPoints);
-        }
+    private synchronized static void redefine(final Set expressions) {
+        final Set allMatchingJoinPoints = JoinPointFactory.getJoinPointsMatching(expressions);
 
         final ChangeSet changeSet = new ChangeSet();
         for (Iterator it = allMatchingJoinPoints.iterator(); it.hasNext();) {
@@ -419,22 +437,104 @@ public class Deployer {
 
     /**
      * Do the redefinition of the existing join point and the compilation of the new join point.
+     * <p/>
+     * The new join points are compiled first, in parallel, while the application keeps on running thru the previous
+     * ones. Their classes are then defined, one class loader at a time, and the initial join point classes are all
+     * redefined at once to delegate to them. The new models are only set in the compilation infos once the
+     * redefinition has succeeded, so that a failed redefinition leaves the previous ones in place. They are set one
+     * after the other, which no other redefinition can observe since they are serialized by the caller.
      *
      * @param changeSet
      */
     private static void doRedefine(final ChangeSet changeSet) {
+        if (changeSet.getElements().isEmpty()) {
+            return;
+        }
+        final long startTime = System.currentTimeMillis();
+        compileJoinPoints(changeSet);
+        final long compilationTime = System.currentTimeMillis() - startTime;
+
+        // TODO type should be pluggable
+        final Redefiner redefiner = RedefinerFactory.newRedefiner(RedefinerFactory.Type.HOTSWAP);
+        defineNewJoinPoints(changeSet);
+
+        final long stopTheWorldStartTime = System.currentTimeMillis();
+        redefiner.redefine(changeSet);
         for (Iterator it = changeSet.getElements().iterator(); it.hasNext();) {
-            compileNewJoinPoint((ChangeSet.Element) it.next());
+            final ChangeSet.Element changeSetElement = (ChangeSet.Element) it.next();
+            final CompilationInfo compilationInfo = changeSetElement.getCompilationInfo();
+            compilationInfo.setRedefinedModel(changeSetElement.getRedefinedModel());
+            JoinPointFactory.addCompilationInfo(changeSetElement.getJoinPointInfo().getJoinPointClass(), compilationInfo);
+        }
+        final long stopTheWorldTime = System.currentTimeMillis() - stopTheWorldStartTime;
+
+        RedefinitionStatistics.record(changeSet.getElements().size(), compilationTime, stopTheWorldTime);
+        logRedefinition(changeSet.getElements().size(), compilationTime, stopTheWorldTime);
+    }
+
+    /**
+     * Compiles the new join points of the change set, on several threads when there are more than one.
+     *
+     * @param changeSet the change set
+     */
+    private static void compileJoinPoints(final ChangeSet changeSet) {
+        final int nrOfThreads = Math.min(COMPILER_THREADS, changeSet.getElements().size());
+        if (nrOfThreads <= 1) {
+            for (Iterator it = changeSet.getElements().iterator(); it.hasNext();) {
+                compileJoinPoint((ChangeSet.Element) it.next());
+            }
+            return;
+        }
+        final PooledExecutor compilers = new PooledExecutor(new LinkedQueue(), nrOfThreads);
+        compilers.setMinimumPoolSize(nrOfThreads);
+        compilers.setThreadFactory(
+                new ThreadFactory() {
+                    public Thread newThread(final Runnable command) {
+                        Thread compiler = new Thread(command, "AspectWerkz::Deployer compiler");
+                        compiler.setDaemon(true);
+                        return compiler;
+                    }
+                }
+        );
+        try {
+            final List results = new ArrayList();
+            for (Iterator it = changeSet.getElements().iterator(); it.hasNext();) {
+                final ChangeSet.Element changeSetElement = (ChangeSet.Element) it.next();
+                final FutureResult result = new FutureResult();
+                compilers.execute(
+                        result.setter(
+                                new Callable() {
+                                    public Object call() {
+                                        compileJoinPoint(changeSetElement);
+                                        return changeSetElement;
+                                    }
+                                }
+                        )
+                );
+                results.add(result);
+            }
+            for (Iterator it = results.iterator(); it.hasNext();) {
+                ((FutureResult) it.next()).get();
+            }
+        } catch (InvocationTargetException e) {
+            if (e.getTargetException() instanceof RuntimeException) {
+                throw (RuntimeException) e.getTargetException();
+            }
+            throw new WrappedRuntimeException(e.getTargetException());
+        } catch (InterruptedException e) {
+            throw new WrappedRuntimeException(e);
+        } finally {
+            compilers.shutdownNow();
         }
-        redefineInitialJoinPoints(changeSet);
     }
 
     /**
-     * Compiles a completely new join point instance based on the new redefined model.
+     * Compiles a completely new join point instance based on the new redefined model, and the new bytecode of the
+     * initial join point class. Nothing is defined nor published yet.
      *
      * @param changeSetElement the change set item
      */
-    private static void compileNewJoinPoint(final ChangeSet.Element changeSetElement) {
+    private static void compileJoinPoint(final ChangeSet.Element changeSetElement) {
         final CompilationInfo compilationInfo = changeSetElement.getCompilationInfo();
         final MatchingJoinPointInfo joinPointInfo = changeSetElement.getJoinPointInfo();
         final ClassLoader loader = joinPointInfo.getJoinPointClass().getClassLoader();
@@ -448,21 +548,49 @@ public class Deployer {
                 compilationInfo.getRedefinitionCounter(),
                 compilationInfo.getInitialModel().getThisClassInfo()
         );
-        JoinPointFactory.compileJoinPointAndAttachToClassLoader(redefinedModel, loader);
 
-        compilationInfo.setRedefinedModel(redefinedModel);
-        JoinPointFactory.addCompilationInfo(joinPointInfo.getJoinPointClass(), compilationInfo);
+        // redefines against a copy, the compilation info still holds the previous model
+        final CompilationInfo redefinedCompilationInfo = new CompilationInfo(compilationInfo.getInitialModel());
+        redefinedCompilationInfo.setRedefinedModel(redefinedModel);
+        changeSetElement.setCompiledJoinPoint(
+                redefinedModel,
+                JoinPointFactory.compileJoinPoint(redefinedModel),
+                JoinPointFactory.redefineJoinPoint(redefinedCompilationInfo)
+        );
     }
 
     /**
-     * Redefines the intial (weaved in) join point to delegate to the newly compiled "real" join point which is
-     * based on the new redefined model.
+     * Defines the new join point classes, grouped by class loader.
      *
      * @param changeSet the change set
      */
-    private static void redefineInitialJoinPoints(final ChangeSet changeSet) {
-        // TODO type should be pluggable
-        RedefinerFactory.newRedefiner(RedefinerFactory.Type.HOTSWAP).redefine(changeSet);
+    private static void defineNewJoinPoints(final ChangeSet changeSet) {
+        final Map elementsByLoader = new HashMap();
+        for (Iterator it = changeSet.getElements().iterator(); it.hasNext();) {
+            final ChangeSet.Element changeSetElement = (ChangeSet.Element) it.next();
+            final ClassLoader loader = changeSetElement.getJoinPointInfo().getJoinPointClass().getClassLoader();
+            List elements = (List) elementsByLoader.get(loader);
+            if (elements == null) {
+                elements = new ArrayList();
+                elementsByLoader.put(loader, elements);
+            }
+            elements.add(changeSetElement);
+        }
+        for (Iterator it = elementsByLoader.entrySet().iterator(); it.hasNext();) {
+            final Map.Entry entry = (Map.Entry) it.next();
+            final ClassLoader loader = (ClassLoader) entry.getKey();
+            final List elements = (List) entry.getValue();
+            synchronized ((loader == null) ? (Object) elements : loader) {
+                for (int i = 0; i < elements.size(); i++) {
+                    final ChangeSet.Element changeSetElement = (ChangeSet.Element) elements.get(i);
+                    JoinPointFactory.attachToClassLoader(
+                            changeSetElement.getRedefinedModel().getJoinPointClassName(),
+                            loader,
+                            changeSetElement.getJoinPointBytecode()
+                    );
+                }
+            }
+        }
     }
 
     /**
@@ -581,6 +709,24 @@ public class Deployer {
         );
     }
 
+    /**
+     * Logs the redefinition timings.
+     *
+     * @param joinPointCount
+     * @param compilationTime
+     * @param stopTheWorldTime
+     */
+    private static void logRedefinition(final int joinPointCount,
+                                        final long compilationTime,
+                                        final long stopTheWorldTime) {
+        System.out.println(
+                new StringBuffer().append("Deployer::INFO - redefined [").
+                append(joinPointCount).append("] join points, compiled in [").
+                append(compilationTime).append("] ms, stop the world for [").
+                append(stopTheWorldTime).append("] ms").toString()
+        );
+    }
+
     /**
      * Logs deployment.
      * <p/>
@@ -12,6 +12,9 @@ package org.codehaus.aspectwerkz.transform.inlining.deployer;
  * <p/>
  * Redefines all classes at all points defined by the <code>ChangeSet</code> passed to the
  * <code>redefine</code> method.
+ * <p/>
+ * The new bytecode of each class is already compiled in the change set elements, and the new join point classes
+ * it delegates to are already defined.
  *
  * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
  */
@@ -0,0 +1,105 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.transform.inlining.deployer;
+
+/**
+ * Timings of the join point redefinitions done by the deployer, in milliseconds.
+ * <p/>
+ * The compilation time covers the compilation of the new join point classes and of the new bytecode of the initial
+ * ones, which runs while the application keeps on running thru the previous join points. The stop the world time
+ * covers the redefinition of the initial join point classes and the publication of the new models.
+ *
+ * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
+ */
+public final class RedefinitionStatistics {
+
+    private static int s_redefinitionCount = 0;
+
+    private static long s_joinPointCount = 0;
+
+    private static long s_lastCompilationTime = 0;
+
+    private static long s_totalCompilationTime = 0;
+
+    private static long s_lastStopTheWorldTime = 0;
+
+    private static long s_maxStopTheWorldTime = 0;
+
+    private static long s_totalStopTheWorldTime = 0;
+
+    private RedefinitionStatistics() {
+    }
+
+    /**
+     * Records a redefinition.
+     *
+     * @param joinPointCount   the number of redefined join points
+     * @param compilationTime  the compilation time
+     * @param stopTheWorldTime the stop the world time
+     */
+    static synchronized void record(final int joinPointCount, final long compilationTime, final long stopTheWorldTime) {
+        s_redefinitionCount++;
+        s_joinPointCount += joinPointCount;
+        s_lastCompilationTime = compilationTime;
+        s_totalCompilationTime += compilationTime;
+        s_lastStopTheWorldTime = stopTheWorldTime;
+        s_maxStopTheWorldTime = Math.max(s_maxStopTheWorldTime, stopTheWorldTime);
+        s_totalStopTheWorldTime += stopTheWorldTime;
+    }
+
+    /**
+     * Returns the number of redefinitions, one per deployment or undeployment that changed some join points.
+     *
+     * @return
+     */
+    public static synchronized int getRedefinitionCount() {
+        return s_redefinitionCount;
+    }
+
+    /**
+     * Returns the total number of redefined join points.
+     *
+     * @return
+     */
+    public static synchronized long getJoinPointCount() {
+        return s_joinPointCount;
+    }
+
+    public static synchronized long getLastCompilationTime() {
+        return s_lastCompilationTime;
+    }
+
+    public static synchronized long getTotalCompilationTime() {
+        return s_totalCompilationTime;
+    }
+
+    public static synchronized long getLastStopTheWorldTime() {
+        return s_lastStopTheWorldTime;
+    }
+
+    public static synchronized long getMaxStopTheWorldTime() {
+        return s_maxStopTheWorldTime;
+    }
+
+    public static synchronized long getTotalStopTheWorldTime() {
+        return s_totalStopTheWorldTime;
+    }
+
+    /**
+     * Resets the statistics.
+     */
+    public static synchronized void reset() {
+        s_redefinitionCount = 0;
+        s_joinPointCount = 0;
+        s_lastCompilationTime = 0;
+        s_totalCompilationTime = 0;
+        s_lastStopTheWorldTime = 0;
+        s_maxStopTheWorldTime = 0;
+        s_totalStopTheWorldTime = 0;
+    }
+}
@@ -11,16 +11,18 @@ import java.util.Set;
 
 import org.codehaus.aspectwerkz.transform.TransformationConstants;
 import org.codehaus.aspectwerkz.transform.inlining.AsmNullAdapter;
+import org.objectweb.asm.ClassAdapter;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
 /**
  * A read only visitor to gather wrapper methods and proxy methods
- * Makes use of the NullVisitors
+ * Makes use of the NullVisitors, unless chained to another read only visitor
  *
  * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur</a>
  */
-public class AlreadyAddedMethodAdapter extends AsmNullAdapter.NullClassAdapter implements Opcodes, TransformationConstants {
+public class AlreadyAddedMethodAdapter extends ClassAdapter implements Opcodes, TransformationConstants {
 
     /**
      * Set of "<methodName><methodDesc>" strings populated with wrapper methods, prefixed originals
@@ -34,6 +36,18 @@ public class AlreadyAddedMethodAdapter extends AsmNullAdapter.NullClassAdapter i
      * @param wrappers
      */
     public AlreadyAddedMethodAdapter(final Set wrappers) {
+        this(AsmNullAdapter.NullClassAdapter.NULL_CLASS_ADAPTER, wrappers);
+    }
+
+    /**
+     * Creates a new class adapter that delegates to the given visitor, so that several lookahead
+     * visitors can share a single ClassReader pass.
+     *
+     * @param cv
+     * @param wrappers
+     */
+    public AlreadyAddedMethodAdapter(final ClassVisitor cv, final Set wrappers) {
+        super(cv);
         m_addedMethods = wrappers;
     }
 
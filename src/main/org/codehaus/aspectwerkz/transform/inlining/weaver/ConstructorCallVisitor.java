@@ -426,7 +426,7 @@ public class ConstructorCallVisitor extends ClassAdapter implements Transformati
      * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
      */
     public static class LookaheadNewDupInvokeSpecialInstructionClassAdapter
-            extends AsmNullAdapter.NullClassAdapter {
+            extends ClassAdapter {
 
         private String m_callerMemberName;
 
@@ -434,6 +434,11 @@ public class ConstructorCallVisitor extends ClassAdapter implements Transformati
         public TLongObjectHashMap m_newInvocationsByCallerMemberHash;
 
         public LookaheadNewDupInvokeSpecialInstructionClassAdapter(TLongObjectHashMap newInvocations) {
+            this(AsmNullAdapter.NullClassAdapter.NULL_CLASS_ADAPTER, newInvocations);
+        }
+
+        public LookaheadNewDupInvokeSpecialInstructionClassAdapter(ClassVisitor cv, TLongObjectHashMap newInvocations) {
+            super(cv);
             m_newInvocationsByCallerMemberHash = newInvocations;
         }
 
@@ -21,7 +21,13 @@ import java.util.Iterator;
  * Adds a 'private static final Class aw$clazz' field a 'private static void ___AW_$_AW_$initJoinPoints()' method
  * and patches the 'clinit' method.
  * <p/>
- * If the class has been made advisable, we also add a ___AW_$_AW_$emittedJoinPoints fields that gets populated.
+ * If the class has been made advisable, its join points are also registered with AdvisableImpl.registerJoinPoints(..),
+ * so that the Advisable mixin gets them without reflection, and the offset of their advice slots is stored in a
+ * 'static int aw$joinPointIndexOffset' field that the join points add to their index. The class keeps the registered
+ * advice chains alive in a 'static Object aw$advisableClass' field.
+ * <p/>
+ * The join points of the class are all loaded with a single call to JoinPointManager.loadJoinPoints(..), that gets
+ * an array of EmittedJoinPoint.
  *
  *
  * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur </a>
@@ -35,7 +41,8 @@ public class JoinPointInitVisitor extends ClassAdapter implements Transformation
     private boolean m_hasClinitMethod = false;
     private boolean m_hasInitJoinPointsMethod = false;
     private boolean m_hasClassField = false;
-    private boolean m_hasEmittedJoinPointsField = false;
+    private boolean m_hasJoinPointIndexOffsetField = false;
+    private boolean m_hasAdvisableClassField = false;
 
     /**
      * Creates a new instance.
@@ -95,8 +102,10 @@ public class JoinPointInitVisitor extends ClassAdapter implements Transformation
     public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
         if (TARGET_CLASS_FIELD_NAME.equals(name)) {
             m_hasClassField = true;
-        } else if (EMITTED_JOINPOINTS_FIELD_NAME.equals(name)) {
-            m_hasEmittedJoinPointsField = true;
+        } else if (JOIN_POINT_INDEX_OFFSET_FIELD_NAME.equals(name)) {
+            m_hasJoinPointIndexOffsetField = true;
+        } else if (ADVISABLE_CLASS_FIELD_NAME.equals(name)) {
+            m_hasAdvisableClassField = true;
         }
         return super.visitField(access, name, desc, signature, value);
     }
@@ -123,13 +132,25 @@ public class JoinPointInitVisitor extends ClassAdapter implements Transformation
             );
         }
 
-        if (!m_hasEmittedJoinPointsField && m_ctx.isMadeAdvisable()) {
-            // create field
-            //      private final static Class aw$emittedJoinPoints that will host a Trove int Object map
+        if (!m_hasJoinPointIndexOffsetField && m_ctx.isMadeAdvisable()) {
+            // create field, read by the join points of the class
+            //      static int aw$joinPointIndexOffset;
             cv.visitField(
-                    ACC_PRIVATE + ACC_FINAL + ACC_STATIC + ACC_SYNTHETIC,
-                    EMITTED_JOINPOINTS_FIELD_NAME,
-                    "Lgnu/trove/TIntObjectHashMap;",
+                    ACC_STATIC + ACC_SYNTHETIC,
+                    JOIN_POINT_INDEX_OFFSET_FIELD_NAME,
+                    "I",
+                    null,
+                    null
+            );
+        }
+
+        if (!m_hasAdvisableClassField && m_ctx.isMadeAdvisable()) {
+            // create field, that keeps the advice chains registered for the class
+            //      static Object aw$advisableClass;
+            cv.visitField(
+                    ACC_STATIC + ACC_SYNTHETIC,
+                    ADVISABLE_CLASS_FIELD_NAME,
+                    OBJECT_CLASS_SIGNATURE,
                     null,
                     null
             );
@@ -180,13 +201,6 @@ public class JoinPointInitVisitor extends ClassAdapter implements Transformation
                 mv.visitMethodInsn(INVOKESTATIC, CLASS_CLASS, FOR_NAME_METHOD_NAME, FOR_NAME_METHOD_SIGNATURE);
                 mv.visitFieldInsn(PUTSTATIC, m_ctx.getClassName(), TARGET_CLASS_FIELD_NAME, CLASS_CLASS_SIGNATURE);
             }
-            if (!m_hasEmittedJoinPointsField && m_ctx.isMadeAdvisable()) {
-                // aw$emittedJoinPoints = new TIntObjectHashMap()
-                mv.visitTypeInsn(NEW, "gnu/trove/TIntObjectHashMap");
-                mv.visitInsn(DUP);
-                mv.visitMethodInsn(INVOKESPECIAL, "gnu/trove/TIntObjectHashMap", "<init>", "()V");
-                mv.visitFieldInsn(PUTSTATIC, m_ctx.getClassName(), EMITTED_JOINPOINTS_FIELD_NAME, "Lgnu/trove/TIntObjectHashMap;");
-            }
             if (!m_hasClassField) {
                 mv.visitMethodInsn(
                         INVOKESTATIC,
@@ -209,14 +223,42 @@ public class JoinPointInitVisitor extends ClassAdapter implements Transformation
         public InsertBeforeInitJoinPointsCodeAdapter(MethodVisitor ca) {
             super(ca);
 
-            // loop over emitted jp and insert call to "JoinPointManager.loadJoinPoint(...)"
-            // add calls to aw$emittedJoinPoints.put(.. new EmittedJoinPoint) if needed.
-            for (Iterator iterator = m_ctx.getEmittedJoinPoints().iterator(); iterator.hasNext();) {
+            if (m_ctx.getEmittedJoinPoints().isEmpty()) {
+                if (m_ctx.isMadeAdvisable()) {
+                    storeAdvisableClass();
+                    // aw$joinPointIndexOffset = AdvisableImpl.registerJoinPoints(aw$clazz, new EmittedJoinPoint[0])
+                    mv.visitFieldInsn(GETSTATIC, m_ctx.getClassName(), TARGET_CLASS_FIELD_NAME, CLASS_CLASS_SIGNATURE);
+                    mv.visitInsn(ICONST_0);
+                    mv.visitTypeInsn(ANEWARRAY, EMITTED_JOIN_POINT_CLASS_NAME);
+                    mv.visitMethodInsn(
+                            INVOKESTATIC,
+                            ADVISABLE_IMPL_CLASS_NAME,
+                            REGISTER_JOIN_POINTS_METHOD_NAME,
+                            REGISTER_JOIN_POINTS_METHOD_SIGNATURE
+                    );
+                    mv.visitFieldInsn(PUTSTATIC, m_ctx.getClassName(), JOIN_POINT_INDEX_OFFSET_FIELD_NAME, "I");
+                }
+                return;
+            }
+
+            // build an array with the emitted jp and insert call to "JoinPointManager.loadJoinPoints(...)"
+            // if made advisable, register the array first with "AdvisableImpl.registerJoinPoints(...)", that
+            // gives the offset of the advice slots of the class
+            mv.visitLdcInsn(new Integer(m_ctx.getEmittedJoinPoints().size()));
+            mv.visitTypeInsn(ANEWARRAY, EMITTED_JOIN_POINT_CLASS_NAME);
+            int index = 0;
+            for (Iterator iterator = m_ctx.getEmittedJoinPoints().iterator(); iterator.hasNext(); index++) {
 
                 EmittedJoinPoint jp = (EmittedJoinPoint) iterator.next();
+                mv.visitInsn(DUP);
+                mv.visitLdcInsn(new Integer(index));
+
+                mv.visitTypeInsn(NEW, EMITTED_JOIN_POINT_CLASS_NAME);
+                mv.visitInsn(DUP);
+
                 mv.visitLdcInsn(new Integer(jp.getJoinPointType()));
 
-                mv.visitFieldInsn(GETSTATIC, m_ctx.getClassName(), TARGET_CLASS_FIELD_NAME, CLASS_CLASS_SIGNATURE);
+                mv.visitLdcInsn(m_ctx.getClassName());
                 mv.visitLdcInsn(jp.getCallerMethodName());
                 mv.visitLdcInsn(jp.getCallerMethodDesc());
                 mv.visitLdcInsn(new Integer(jp.getCallerMethodModifiers()));
@@ -228,49 +270,53 @@ public class JoinPointInitVisitor extends ClassAdapter implements Transformation
 
                 mv.visitLdcInsn(new Integer(jp.getJoinPointHash()));
                 mv.visitLdcInsn(jp.getJoinPointClassName());
+                mv.visitLdcInsn(new Integer(m_ctx.resolveJoinPointIndex(jp.getJoinPointClassName())));
+
                 mv.visitMethodInsn(
-                        INVOKESTATIC,
-                        JOIN_POINT_MANAGER_CLASS_NAME,
-                        LOAD_JOIN_POINT_METHOD_NAME,
-                        LOAD_JOIN_POINT_METHOD_SIGNATURE
+                        INVOKESPECIAL,
+                        EMITTED_JOIN_POINT_CLASS_NAME,
+                        INIT_METHOD_NAME,
+                        EMITTED_JOIN_POINT_INIT_METHOD_SIGNATURE
                 );
+                mv.visitInsn(AASTORE);
+            }
 
-                if (m_ctx.isMadeAdvisable()) {
-                    // trove map
-                    mv.visitFieldInsn(GETSTATIC, m_ctx.getClassName(), EMITTED_JOINPOINTS_FIELD_NAME, "Lgnu/trove/TIntObjectHashMap;");
-                    // trove map key
-                    mv.visitLdcInsn(new Integer(jp.getJoinPointClassName().hashCode()));
-
-
-                    mv.visitTypeInsn(NEW, "org/codehaus/aspectwerkz/transform/inlining/EmittedJoinPoint");
-                    mv.visitInsn(DUP);
-
-                    mv.visitLdcInsn(new Integer(jp.getJoinPointType()));
-
-                    mv.visitLdcInsn(m_ctx.getClassName());
-                    mv.visitLdcInsn(jp.getCallerMethodName());
-                    mv.visitLdcInsn(jp.getCallerMethodDesc());
-                    mv.visitLdcInsn(new Integer(jp.getCallerMethodModifiers()));
-
-                    mv.visitLdcInsn(jp.getCalleeClassName());
-                    mv.visitLdcInsn(jp.getCalleeMemberName());
-                    mv.visitLdcInsn(jp.getCalleeMemberDesc());
-                    mv.visitLdcInsn(new Integer(jp.getCalleeMemberModifiers()));
+            if (m_ctx.isMadeAdvisable()) {
+                storeAdvisableClass();
+                mv.visitInsn(DUP);
+                mv.visitFieldInsn(GETSTATIC, m_ctx.getClassName(), TARGET_CLASS_FIELD_NAME, CLASS_CLASS_SIGNATURE);
+                mv.visitInsn(SWAP);
+                mv.visitMethodInsn(
+                        INVOKESTATIC,
+                        ADVISABLE_IMPL_CLASS_NAME,
+                        REGISTER_JOIN_POINTS_METHOD_NAME,
+                        REGISTER_JOIN_POINTS_METHOD_SIGNATURE
+                );
+                mv.visitFieldInsn(PUTSTATIC, m_ctx.getClassName(), JOIN_POINT_INDEX_OFFSET_FIELD_NAME, "I");
+            }
 
-                    mv.visitLdcInsn(new Integer(jp.getJoinPointHash()));
-                    mv.visitLdcInsn(jp.getJoinPointClassName());
+            mv.visitFieldInsn(GETSTATIC, m_ctx.getClassName(), TARGET_CLASS_FIELD_NAME, CLASS_CLASS_SIGNATURE);
+            mv.visitInsn(SWAP);
+            mv.visitMethodInsn(
+                    INVOKESTATIC,
+                    JOIN_POINT_MANAGER_CLASS_NAME,
+                    LOAD_JOIN_POINTS_METHOD_NAME,
+                    LOAD_JOIN_POINTS_METHOD_SIGNATURE
+            );
+        }
 
-                    mv.visitMethodInsn(INVOKESPECIAL, "org/codehaus/aspectwerkz/transform/inlining/EmittedJoinPoint", "<init>",
-                            "(ILjava/lang/String;Ljava/lang/String;Ljava/lang/String;ILjava/lang/String;Ljava/lang/String;Ljava/lang/String;IILjava/lang/String;)V"
-                            );
-                    mv.visitMethodInsn(
-                            INVOKEVIRTUAL,
-                            "gnu/trove/TIntObjectHashMap",
-                            "put",
-                            "(ILjava/lang/Object;)Ljava/lang/Object;"
-                    );
-                }
-            }
+        /**
+         * aw$advisableClass = AdvisableImpl.registerAdvisableClass(aw$clazz), before the join points are registered
+         */
+        private void storeAdvisableClass() {
+            mv.visitFieldInsn(GETSTATIC, m_ctx.getClassName(), TARGET_CLASS_FIELD_NAME, CLASS_CLASS_SIGNATURE);
+            mv.visitMethodInsn(
+                    INVOKESTATIC,
+                    ADVISABLE_IMPL_CLASS_NAME,
+                    REGISTER_ADVISABLE_CLASS_METHOD_NAME,
+                    REGISTER_ADVISABLE_CLASS_METHOD_SIGNATURE
+            );
+            mv.visitFieldInsn(PUTSTATIC, m_ctx.getClassName(), ADVISABLE_CLASS_FIELD_NAME, OBJECT_CLASS_SIGNATURE);
         }
     }
 
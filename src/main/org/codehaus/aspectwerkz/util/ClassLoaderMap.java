@@ -0,0 +1,138 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Map keyed by class loaders, compared by identity and weakly referenced so that the class loaders can be garbage
+ * collected. The null key stands for the boot class loader.
+ * <p/>
+ * Lookups do not lock. The table is never modified in place: each addition publishes a new copy of it. This is meant
+ * for per class loader registries, where additions are rare compared to lookups.
+ *
+ * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur</a>
+ */
+public final class ClassLoaderMap {
+
+    /**
+     * The value mapped to the boot class loader.
+     */
+    private volatile Object m_bootValue = null;
+
+    /**
+     * The table, replaced on each addition.
+     */
+    private volatile Entry[] m_table = new Entry[16];
+
+    /**
+     * The number of entries in the table, stale ones included. Guarded by this.
+     */
+    private int m_size = 0;
+
+    /**
+     * Queue of the entries whose class loader has been garbage collected.
+     */
+    private final ReferenceQueue m_queue = new ReferenceQueue();
+
+    /**
+     * Returns the value mapped to a class loader.
+     *
+     * @param loader the class loader, null for the boot class loader
+     * @return the value or null if none
+     */
+    public Object get(final ClassLoader loader) {
+        if (loader == null) {
+            return m_bootValue;
+        }
+        final Entry[] table = m_table;
+        final int hash = System.identityHashCode(loader);
+        for (Entry e = table[hash & (table.length - 1)]; e != null; e = e.m_next) {
+            if (e.get() == loader) {
+                return e.m_value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Maps a value to a class loader, unless a value is already mapped to it.
+     *
+     * @param loader the class loader, null for the boot class loader
+     * @param value  the value
+     * @return the value mapped to the class loader, that is the given one if there was none
+     */
+    public synchronized Object putIfAbsent(final ClassLoader loader, final Object value) {
+        final Object current = get(loader);
+        if (current != null) {
+            return current;
+        }
+        if (loader == null) {
+            m_bootValue = value;
+            return value;
+        }
+        Entry[] table;
+        if (m_queue.poll() != null) {
+            while (m_queue.poll() != null) {
+                ;
+            }
+            table = copy(m_table, m_table.length);
+        } else if ((m_size + 1) > (m_table.length * 3 / 4)) {
+            table = copy(m_table, m_table.length * 2);
+        } else {
+            table = new Entry[m_table.length];
+            System.arraycopy(m_table, 0, table, 0, table.length);
+        }
+        final int hash = System.identityHashCode(loader);
+        final int index = hash & (table.length - 1);
+        table[index] = new Entry(loader, hash, value, table[index], m_queue);
+        m_size++;
+        m_table = table;
+        return value;
+    }
+
+    /**
+     * Copies the live entries of a table in a new table.
+     *
+     * @param table  the table
+     * @param length the length of the new table
+     * @return the new table
+     */
+    private Entry[] copy(final Entry[] table, final int length) {
+        final Entry[] copy = new Entry[length];
+        m_size = 0;
+        for (int i = 0; i < table.length; i++) {
+            for (Entry e = table[i]; e != null; e = e.m_next) {
+                final Object loader = e.get();
+                if (loader != null) {
+                    final int index = e.m_hash & (length - 1);
+                    copy[index] = new Entry(loader, e.m_hash, e.m_value, copy[index], m_queue);
+                    m_size++;
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * An immutable entry.
+     */
+    private static final class Entry extends WeakReference {
+        final int m_hash;
+        final Object m_value;
+        final Entry m_next;
+
+        Entry(final Object loader, final int hash, final Object value, final Entry next, final ReferenceQueue queue) {
+            super(loader, queue);
+            m_hash = hash;
+            m_value = value;
+            m_next = next;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package org.codehaus.aspectwerkz.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+
+/**
+ * Concurrent map, that can hold its values through soft or weak references so that they can be garbage collected
+ * while still mapped.
+ * <p/>
+ * The map is split in segments, each with its own lock. Finding a mapped key does not lock: the entry chains are
+ * immutable and only replaced under the segment lock. A lookup that does not find the key rechecks under the lock,
+ * to see the entries added concurrently.
+ *
+ * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur</a>
+ */
+public final class ConcurrentReferenceMap {
+
+    /**
+     * The values are strongly referenced.
+     */
+    public static final int STRONG = 0;
+
+    /**
+     * The values are softly referenced.
+     */
+    public static final int SOFT = 1;
+
+    /**
+     * The values are weakly referenced.
+     */
+    public static final int WEAK = 2;
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment[] m_segments = new Segment[SEGMENT_COUNT];
+
+    private final int m_referenceType;
+
+    /**
+     * Creates a new map.
+     *
+     * @param referenceType how the values are referenced, STRONG, SOFT or WEAK
+     */
+    public ConcurrentReferenceMap(final int referenceType) {
+        m_referenceType = referenceType;
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            m_segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Returns the value mapped to a key.
+     *
+     * @param key the key
+     * @return the value or null if none or if it has been garbage collected
+     */
+    public Object get(final Object key) {
+        final int hash = hash(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    /**
+     * Checks if a value is mapped to a key.
+     *
+     * @param key the key
+     * @return true if a value is mapped and has not been garbage collected
+     */
+    public boolean containsKey(final Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps a value to a key.
+     *
+     * @param key   the key
+     * @param value the value, not null
+     */
+    public void put(final Object key, final Object value) {
+        final int hash = hash(key);
+        segmentFor(hash).put(key, hash, value);
+    }
+
+    /**
+     * Maps a value to a key, unless a value is already mapped to it.
+     *
+     * @param key   the key
+     * @param value the value, not null
+     * @return the value mapped to the key once the call returns, the given one or the one already mapped
+     */
+    public Object putIfAbsent(final Object key, final Object value) {
+        final int hash = hash(key);
+        return segmentFor(hash).putIfAbsent(key, hash, value);
+    }
+
+    /**
+     * Removes the value mapped to a key.
+     *
+     * @param key the key
+     */
+    public void remove(final Object key) {
+        final int hash = hash(key);
+        segmentFor(hash).remove(key, hash);
+    }
+
+    /**
+     * Removes all the values.
+     */
+    public void clear() {
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            m_segments[i].clear();
+        }
+    }
+
+    private static int hash(final Object key) {
+        int h = key.hashCode();
+        h += ~(h << 9);
+        h ^= (h >>> 14);
+        h += (h << 4);
+        h ^= (h >>> 10);
+        return h;
+    }
+
+    private Segment segmentFor(final int hash) {
+        return m_segments[(hash >>> 24) & (SEGMENT_COUNT - 1)];
+    }
+
+    /**
+     * Returns the entry matching a key or a value reference, in a chain without the matching entry. The entries before
+     * the matching one are copied, the others are shared.
+     *
+     * @param first the first entry of the chain
+     * @param key   the key
+     * @param hash  the key hash
+     * @param ref   the value reference, null to match on the key
+     * @return the first entry of the new chain, or the given one if none matched
+     */
+    private static Entry without(final Entry first, final Object key, final int hash, final Object ref) {
+        for (Entry e = first; e != null; e = e.m_next) {
+            if ((ref != null) ? (e.m_value == ref) : (e.m_hash == hash && key.equals(e.m_key))) {
+                Entry head = e.m_next;
+                for (Entry p = first; p != e; p = p.m_next) {
+                    head = new Entry(p.m_key, p.m_hash, p.m_value, head);
+                }
+                return head;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * A segment of the map.
+     */
+    private final class Segment {
+
+        /**
+         * The table, whose slots are written under the segment lock. Written again after each change, to publish it.
+         */
+        private volatile Entry[] m_table = new Entry[16];
+
+        /**
+         * The number of entries. Guarded by this.
+         */
+        private int m_count = 0;
+
+        /**
+         * Queue of the value references that have been cleared.
+         */
+        private final ReferenceQueue m_queue = new ReferenceQueue();
+
+        Object get(final Object key, final int hash) {
+            Object value = find(m_table, key, hash);
+            if (value == null) {
+                synchronized (this) {
+                    value = find(m_table, key, hash);
+                }
+            }
+            return value;
+        }
+
+        private Object find(final Entry[] table, final Object key, final int hash) {
+            for (Entry e = table[hash & (table.length - 1)]; e != null; e = e.m_next) {
+                if (e.m_hash == hash && key.equals(e.m_key)) {
+                    return (m_referenceType == STRONG) ? e.m_value : ((Reference) e.m_value).get();
+                }
+            }
+            return null;
+        }
+
+        synchronized void put(final Object key, final int hash, final Object value) {
+            expungeStaleEntries();
+            Entry[] table = m_table;
+            if ((m_count + 1) > (table.length * 3 / 4)) {
+                table = resize(table);
+            }
+            final int index = hash & (table.length - 1);
+            final Entry first = without(table[index], key, hash, null);
+            if (first == table[index]) {
+                m_count++;
+            }
+            final Object ref;
+            if (m_referenceType == SOFT) {
+                ref = new SoftValue(value, m_queue, key, hash);
+            } else if (m_referenceType == WEAK) {
+                ref = new WeakValue(value, m_queue, key, hash);
+            } else {
+                ref = value;
+            }
+            table[index] = new Entry(key, hash, ref, first);
+            m_table = table;
+        }
+
+        synchronized Object putIfAbsent(final Object key, final int hash, final Object value) {
+            final Object mapped = find(m_table, key, hash);
+            if (mapped != null) {
+                return mapped;
+            }
+            put(key, hash, value);
+            return value;
+        }
+
+        synchronized void remove(final Object key, final int hash) {
+            expungeStaleEntries();
+            remove(key, hash, null);
+        }
+
+        synchronized void clear() {
+            while (m_queue.poll() != null) {
+                ;
+            }
+            m_table = new Entry[16];
+            m_count = 0;
+        }
+
+        private void remove(final Object key, final int hash, final Object ref) {
+            final Entry[] table = m_table;
+            final int index = hash & (table.length - 1);
+            final Entry first = without(table[index], key, hash, ref);
+            if (first != table[index]) {
+                table[index] = first;
+                m_count--;
+                m_table = table;
+            }
+        }
+
+        private void expungeStaleEntries() {
+            for (Reference ref = m_queue.poll(); ref != null; ref = m_queue.poll()) {
+                if (ref instanceof SoftValue) {
+                    remove(((SoftValue) ref).m_key, ((SoftValue) ref).m_hash, ref);
+                } else {
+                    remove(((WeakValue) ref).m_key, ((WeakValue) ref).m_hash, ref);
+                }
+            }
+        }
+
+        private Entry[] resize(final Entry[] table) {
+            final Entry[] newTable = new Entry[table.length * 2];
+            for (int i = 0; i < table.length; i++) {
+                for (Entry e = table[i]; e != null; e = e.m_next) {
+                    final int index = e.m_hash & (newTable.length - 1);
+                    newTable[index] = new Entry(e.m_key, e.m_hash, e.m_value, newTable[index]);
+                }
+            }
+            return newTable;
+        }
+    }
+
+    /**
+     * A soft value reference, that knows its key to be expunged once cleared.
+     */
+    private static final class SoftValue extends SoftReference {
+        final Object m_key;
+        final int m_hash;
+
+        SoftValue(final Object value, final ReferenceQueue queue, final Object key, final int hash) {
+            super(value, queue);
+            m_key = key;
+            m_hash = hash;
+        }
+    }
+
+    /**
+     * A weak value reference, that knows its key to be expunged once cleared.
+     */
+    private static final class WeakValue extends WeakReference {
+        final Object m_key;
+        final int m_hash;
+
+        WeakValue(final Object value, final ReferenceQueue queue, final Object key, final int hash) {
+            super(value, queue);
+            m_key = key;
+            m_hash = hash;
+        }
+    }
+
+    /**
+     * An immutable entry.
+     */
+    private static final class Entry {
+        final Object m_key;
+        final int m_hash;
+        final Object m_value;
+        final Entry m_next;
+
+        Entry(final Object key, final int hash, final Object value, final Entry next) {
+            m_key = key;
+            m_hash = hash;
+            m_value = value;
+            m_next = next;
+        }
+    }
+}
@@ -86,6 +86,16 @@ public class AllTests extends TestCase {
         suite.addTestSuite(CFlowTest.class);
         suite.addTestSuite(ComplexCFlowTest.class);
         suite.addTestSuite(CflowCompilerTest.class);
+        suite.addTestSuite(WeavingCacheTest.class);
+        suite.addTestSuite(ClassFilterIndexTest.class);
+        suite.addTestSuite(ClassInfoRepositoryTest.class);
+        suite.addTestSuite(AspectsTest.class);
+        suite.addTestSuite(SystemDefinitionContainerTest.class);
+        suite.addTestSuite(JoinPointRegistryTest.class);
+        suite.addTestSuite(JoinPointEscapeAnalysisTest.class);
+        suite.addTestSuite(RemoteProtocolTest.class);
+        suite.addTestSuite(ProxyClassCacheTest.class);
+        suite.addTestSuite(ProxyInstantiatorTest.class);
         suite.addTestSuite(ExpressionParserTest.class);
         suite.addTestSuite(AnnotationExpressionTest.class);
         suite.addTestSuite(AdvisedClassFilterExpressionTest.class);
@@ -99,6 +109,7 @@ public class AllTests extends TestCase {
         suite.addTestSuite(ClassInfoTest.class);
         suite.addTestSuite(ClassInfoHelperTest.class);
         suite.addTestSuite(AssociationScopeTest.class);
+        suite.addTestSuite(AspectWerkzCTest.class);
 
         // AW-361, should not throw an NPE
         SystemDefinitionContainer.getDefinitionsFor(null);
@@ -0,0 +1,200 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test;
+
+import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.compiler.AspectWerkzC;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Checks that a directory or a jar compiled in parallel is the same as the directory or the jar compiled
+ * sequentially.
+ *
+ * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur </a>
+ */
+public class AspectWerkzCTest extends TestCase {
+
+    private static final String[] CLASS_FILES = new String[]{
+        "test/intercept/execution/AdvisableTarget.class",
+        "test/intercept/execution/AdvisableSubTarget.class",
+        "test/intercept/execution/InterceptTest.class"
+    };
+
+    private File m_workDir;
+
+    public void testParallelDirectoryCompilation() throws Exception {
+        File serialDir = compileDirectory("serial", 1);
+        File parallelDir = compileDirectory("parallel", 4);
+        boolean woven = false;
+        for (int i = 0; i < CLASS_FILES.length; i++) {
+            byte[] serial = read(new File(serialDir, CLASS_FILES[i]));
+            byte[] parallel = read(new File(parallelDir, CLASS_FILES[i]));
+            assertTrue(CLASS_FILES[i], Arrays.equals(serial, parallel));
+            woven |= !Arrays.equals(serial, readResource(CLASS_FILES[i]));
+        }
+        assertTrue("the classes should have been woven", woven);
+    }
+
+    public void testParallelJarCompilation() throws Exception {
+        File classesDir = new File(getClass().getClassLoader().getResource("test/AspectWerkzCTest.class").getFile())
+                .getParentFile().getParentFile();
+        List entryNames = new ArrayList();
+        listClassFiles(classesDir, "test/intercept", entryNames);
+        listClassFiles(classesDir, "test/rtti", entryNames);
+        Collections.sort(entryNames);
+        // more entries than the workers can have pending, and an entry that is not a class
+        assertTrue(entryNames.size() > 2 * 4);
+        entryNames.add("test/intercept/readme.txt");
+
+        File original = new File(m_workDir, "original.jar");
+        createJar(original, classesDir, entryNames);
+        byte[] serial = read(compileJar(original, "serial", 1));
+        byte[] parallel = read(compileJar(original, "parallel", 2));
+        assertTrue("the jar compiled in parallel differs", Arrays.equals(serial, parallel));
+        assertFalse("the classes should have been woven", Arrays.equals(serial, read(original)));
+    }
+
+    protected void setUp() throws Exception {
+        m_workDir = new File(System.getProperty("java.io.tmpdir"), "aspectwerkzc-" + System.currentTimeMillis());
+        m_workDir.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        delete(m_workDir);
+    }
+
+    private File compileDirectory(String name, int parallel) throws Exception {
+        File dir = new File(m_workDir, name);
+        for (int i = 0; i < CLASS_FILES.length; i++) {
+            File file = new File(dir, CLASS_FILES[i]);
+            file.getParentFile().mkdirs();
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(readResource(CLASS_FILES[i]));
+            out.close();
+        }
+
+        AspectWerkzC compiler = new AspectWerkzC();
+        compiler.setHaltOnError(true);
+        compiler.setParallel(parallel);
+        compiler.setBackupDir(new File(m_workDir, name + "-backup").getAbsolutePath());
+        compiler.setCompilationPath(new File[]{dir}, getClass().getClassLoader());
+        compiler.setPreprocessor("org.codehaus.aspectwerkz.transform.AspectWerkzPreProcessor");
+        compiler.startWorkers();
+        try {
+            assertTrue(compiler.compile(dir));
+        } finally {
+            compiler.postCompile("");
+        }
+        return dir;
+    }
+
+    private File compileJar(File original, String name, int parallel) throws Exception {
+        File jar = new File(m_workDir, name + ".jar");
+        FileOutputStream out = new FileOutputStream(jar);
+        out.write(read(original));
+        out.close();
+
+        AspectWerkzC compiler = new AspectWerkzC();
+        compiler.setHaltOnError(true);
+        compiler.setParallel(parallel);
+        compiler.setBackupDir(new File(m_workDir, name + "-backup").getAbsolutePath());
+        compiler.setCompilationPath(new File[]{jar}, getClass().getClassLoader());
+        compiler.setPreprocessor("org.codehaus.aspectwerkz.transform.AspectWerkzPreProcessor");
+        compiler.startWorkers();
+        try {
+            assertTrue(compiler.compile(jar));
+        } finally {
+            compiler.postCompile("");
+        }
+        return jar;
+    }
+
+    /**
+     * Creates a jar with fixed entry times, so that two compilations of it can be compared byte per byte.
+     */
+    private static void createJar(File jar, File classesDir, List entryNames) throws IOException {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            for (int i = 0; i < entryNames.size(); i++) {
+                String entryName = (String) entryNames.get(i);
+                ZipEntry entry = new ZipEntry(entryName);
+                entry.setTime(0L);
+                out.putNextEntry(entry);
+                if (entryName.endsWith(".class")) {
+                    out.write(read(new File(classesDir, entryName)));
+                } else {
+                    out.write(entryName.getBytes());
+                }
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void listClassFiles(File classesDir, String path, List entryNames) {
+        File[] files = new File(classesDir, path).listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            String entryName = path + "/" + files[i].getName();
+            if (files[i].isDirectory()) {
+                listClassFiles(classesDir, entryName, entryNames);
+            } else if (entryName.endsWith(".class")) {
+                entryNames.add(entryName);
+            }
+        }
+    }
+
+    private byte[] readResource(String name) throws IOException {
+        return read(getClass().getClassLoader().getResourceAsStream(name));
+    }
+
+    private static byte[] read(File file) throws IOException {
+        return read(new FileInputStream(file));
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            for (int length = in.read(buffer); length != -1; length = in.read(buffer)) {
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            delete(files[i]);
+        }
+        file.delete();
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(AspectWerkzCTest.class);
+    }
+}
@@ -0,0 +1,177 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test;
+
+import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.aspect.container.AspectFactoryInvoker;
+import org.codehaus.aspectwerkz.aspect.container.AspectFactoryManager;
+import org.codehaus.aspectwerkz.aspect.management.Aspects;
+import org.codehaus.aspectwerkz.aspect.management.NoAspectBoundException;
+import org.codehaus.aspectwerkz.definition.AspectDefinition;
+import org.codehaus.aspectwerkz.definition.SystemDefinition;
+import org.codehaus.aspectwerkz.definition.SystemDefinitionContainer;
+import org.codehaus.aspectwerkz.util.ContextClassLoader;
+import test.performance.PerClassPerformanceAspect;
+import test.performance.PerInstancePerformanceAspect;
+import test.performance.PerJVMPerformanceAspect;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Checks the aspect lookups of the Aspects API thru the generated factory invokers.
+ *
+ * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
+ */
+public class AspectsTest extends TestCase {
+
+    public void testPerJVM() throws Throwable {
+        Class factory = loadAspectFactory(PerJVMPerformanceAspect.class);
+        assertTrue(AspectFactoryInvoker.class.isAssignableFrom(factory));
+
+        Object aspect = Aspects.aspectOf(PerJVMPerformanceAspect.class);
+        assertTrue(aspect instanceof PerJVMPerformanceAspect);
+        assertSame(aspect, Aspects.aspectOf(PerJVMPerformanceAspect.class));
+        assertSame(aspect, Aspects.aspectOf(getQualifiedName(PerJVMPerformanceAspect.class)));
+        assertSame(aspect, factory.getMethod("aspectOf", new Class[0]).invoke(null, new Object[0]));
+    }
+
+    public void testPerClass() throws Throwable {
+        loadAspectFactory(PerClassPerformanceAspect.class);
+
+        Object aspect = Aspects.aspectOf(PerClassPerformanceAspect.class, AspectsTest.class);
+        assertTrue(aspect instanceof PerClassPerformanceAspect);
+        assertSame(aspect, Aspects.aspectOf(PerClassPerformanceAspect.class, AspectsTest.class));
+        assertNotSame(aspect, Aspects.aspectOf(PerClassPerformanceAspect.class, TestCase.class));
+        try {
+            Aspects.aspectOf(PerClassPerformanceAspect.class);
+            fail("perClass aspect must not be available as a perJVM aspect");
+        } catch (NoAspectBoundException e) {
+            ;//ok
+        }
+    }
+
+    public void testPerInstance() throws Throwable {
+        loadAspectFactory(PerInstancePerformanceAspect.class);
+
+        String qName = getQualifiedName(PerInstancePerformanceAspect.class);
+        Object target = new Object();
+        assertFalse(Aspects.hasAspect(qName, target));
+        try {
+            Aspects.aspectOf(PerInstancePerformanceAspect.class, target);
+            fail("perInstance aspect must not be bound to a non advised instance");
+        } catch (NoAspectBoundException e) {
+            ;//ok
+        }
+    }
+
+    public void testPerCflow() throws Throwable {
+        AspectDefinition aspectDef = getAspectDefinition(PerJVMPerformanceAspect.class);
+        String qName = aspectDef.getQualifiedName() + "_perCflow";
+        String factoryClassName = AspectFactoryManager.getAspectFactoryClassName(
+                aspectDef.getClassName(), qName
+        ).replace('/', '.');
+        AspectFactoryManager.loadAspectFactory(
+                factoryClassName,
+                aspectDef.getSystemDefinition().getUuid(),
+                aspectDef.getClassName(),
+                qName,
+                aspectDef.getContainerClassName(),
+                null,
+                PerJVMPerformanceAspect.class.getClassLoader(),
+                "perCflow"
+        );
+        final Class factory = ContextClassLoader.forName(PerJVMPerformanceAspect.class.getClassLoader(), factoryClassName);
+        final Class[] threadParam = new Class[]{Thread.class};
+        final Object[] currentThread = new Object[]{Thread.currentThread()};
+
+        assertEquals(Boolean.FALSE, factory.getMethod("hasAspect", threadParam).invoke(null, currentThread));
+        factory.getMethod("bind", threadParam).invoke(null, currentThread);
+        Object aspect = factory.getMethod("aspectOf", threadParam).invoke(null, currentThread);
+        assertTrue(aspect instanceof PerJVMPerformanceAspect);
+        assertSame(aspect, factory.getMethod("aspectOf", new Class[0]).invoke(null, new Object[0]));
+        assertSame(
+                aspect,
+                Aspects.aspect$Of(qName, aspectDef.getClassName(), PerJVMPerformanceAspect.class.getClassLoader())
+        );
+
+        // a nested cflow keeps the bound aspect
+        factory.getMethod("bind", threadParam).invoke(null, currentThread);
+        assertSame(aspect, factory.getMethod("aspectOf", threadParam).invoke(null, currentThread));
+
+        // the aspect is not visible from another thread
+        final Object[] otherThreadHasAspect = new Object[1];
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    otherThreadHasAspect[0] = factory.getMethod("hasAspect", threadParam).invoke(null, currentThread);
+                } catch (Throwable t) {
+                    otherThreadHasAspect[0] = t;
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        assertEquals(Boolean.FALSE, otherThreadHasAspect[0]);
+
+        factory.getMethod("unbind", threadParam).invoke(null, currentThread);
+        assertEquals(Boolean.FALSE, factory.getMethod("hasAspect", threadParam).invoke(null, currentThread));
+        try {
+            factory.getMethod("aspectOf", threadParam).invoke(null, currentThread);
+            fail("perCflow aspect must not be bound out of the cflow");
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getTargetException() instanceof NoAspectBoundException);
+        }
+    }
+
+    public void testUnknownAspect() {
+        try {
+            Aspects.aspectOf(AspectsTest.class);
+            fail("no aspect definition for the class");
+        } catch (NoAspectBoundException e) {
+            ;//ok
+        }
+    }
+
+    private static String getQualifiedName(Class aspectClass) {
+        return getAspectDefinition(aspectClass).getQualifiedName();
+    }
+
+    private static AspectDefinition getAspectDefinition(Class aspectClass) {
+        SystemDefinition systemDef = SystemDefinitionContainer.getDefinitionFor(aspectClass.getClassLoader(), "tests");
+        return systemDef.getAspectDefinition(aspectClass.getName());
+    }
+
+    /**
+     * Ensures that the factory of the aspect is there, as the join points using the aspect would do.
+     */
+    private static Class loadAspectFactory(Class aspectClass) throws ClassNotFoundException {
+        AspectDefinition aspectDef = getAspectDefinition(aspectClass);
+        String factoryClassName = AspectFactoryManager.getAspectFactoryClassName(
+                aspectDef.getClassName(), aspectDef.getQualifiedName()
+        ).replace('/', '.');
+        AspectFactoryManager.loadAspectFactory(
+                factoryClassName,
+                aspectDef.getSystemDefinition().getUuid(),
+                aspectDef.getClassName(),
+                aspectDef.getQualifiedName(),
+                aspectDef.getContainerClassName(),
+                null,
+                aspectClass.getClassLoader(),
+                aspectDef.getDeploymentModel().toString()
+        );
+        return ContextClassLoader.forName(aspectClass.getClassLoader(), factoryClassName);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(AspectsTest.class);
+    }
+}
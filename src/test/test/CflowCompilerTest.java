@@ -70,6 +70,37 @@ public class CflowCompilerTest extends TestCase {
         assertFalse(cflow.inCflow());
     }
 
+    public void testCflowDepth() throws Throwable {
+        Class cflowAspect = CflowCompiler.compileCflowAspectAndAttachToClassLoader(
+                CflowCompilerTest.class.getClassLoader(),
+                4
+        );
+        AbstractCflowSystemAspect cflow = (AbstractCflowSystemAspect)
+                cflowAspect.getDeclaredMethod("aspectOf", new Class[0]).invoke(null, new Object[0]);
+        Method isInCflow = cflowAspect.getDeclaredMethod("isInCflow", new Class[0]);
+
+        cflow.enter();
+        cflow.enter();
+        cflow.exit();
+        assertTrue(cflow.inCflow());
+        assertTrue(((Boolean) isInCflow.invoke(null, new Object[0])).booleanValue());
+        cflow.exit();
+        assertFalse(cflow.inCflow());
+        assertFalse(((Boolean) isInCflow.invoke(null, new Object[0])).booleanValue());
+
+        // an unbalanced exit is reported, and does not corrupt the depth
+        try {
+            cflow.exit();
+            fail("an unbalanced cflow exit should be reported");
+        } catch (IllegalStateException e) {
+            ;
+        }
+        cflow.enter();
+        assertTrue(cflow.inCflow());
+        cflow.exit();
+        assertFalse(cflow.inCflow());
+    }
+
 
 
     public static void main(String[] args) {
@@ -0,0 +1,209 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test;
+
+import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.aspect.AdviceType;
+import org.codehaus.aspectwerkz.definition.AdviceDefinition;
+import org.codehaus.aspectwerkz.definition.AspectDefinition;
+import org.codehaus.aspectwerkz.definition.SystemDefinition;
+import org.codehaus.aspectwerkz.expression.ExpressionContext;
+import org.codehaus.aspectwerkz.expression.ExpressionInfo;
+import org.codehaus.aspectwerkz.expression.ExpressionNamespace;
+import org.codehaus.aspectwerkz.expression.PointcutType;
+import org.codehaus.aspectwerkz.reflect.ClassInfo;
+import org.codehaus.aspectwerkz.reflect.MethodInfo;
+import org.codehaus.aspectwerkz.reflect.impl.java.JavaClassInfo;
+import test.expression.Target;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Checks that the early match index of the system definition gives the same results as a full scan.
+ *
+ * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
+ */
+public class ClassFilterIndexTest extends TestCase {
+
+    private static final String[] EXPRESSIONS = new String[]{
+        "execution(* test.expression.Target.*(..))",
+        "execution(* test.expression.*.*(..))",
+        "execution(* test..*.*(..))",
+        "execution(* *..Target.*(..))",
+        "execution(* java.lang.Object+.*(..))",
+        "call(* test.expression.Target.*(..))",
+        "call(* foo.bar.*.*(..)) && within(test.expression.*)",
+        "set(* test.expression.Target.*) || get(* foo.Bar.*)",
+        "within(foo.bar.*) || within(test.expression.*)",
+        "!within(foo.*)",
+        "within(foo.*) && !within(test.*)",
+        "staticinitialization(test.expression.Target)",
+        "withincode(* test.expression.Target.*(..))",
+        "handler(java.lang.Exception) && within(test.expression.*)",
+        "execution(* foo.*.*(..)) && pc",
+        "execution(* test.expression.Target.*(..)) && cflow(call(* foo.*.*(..)))"
+    };
+
+    private static final ClassInfo[] CLASSES = new ClassInfo[]{
+        JavaClassInfo.getClassInfo(Target.class),
+        JavaClassInfo.getClassInfo(ClassFilterIndexTest.class),
+        JavaClassInfo.getClassInfo(String.class)
+    };
+
+    private SystemDefinition m_definition;
+
+    private AspectDefinition m_aspectDef;
+
+    public void testRejectOtherPackages() {
+        addAdvice("execution(* test.expression.Target.*(..))");
+        assertTrue(m_definition.isAdvised(getClassContexts(CLASSES[0])));
+        assertFalse(m_definition.isAdvised(getClassContexts(CLASSES[1])));
+        assertFalse(m_definition.isAdvised(getClassContexts(CLASSES[2])));
+    }
+
+    public void testSameResultsAsFullScan() {
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            setUp();
+            ExpressionNamespace.getNamespace(m_aspectDef.getQualifiedName()).addExpressionInfo(
+                    "pc", new ExpressionInfo("within(test.expression.*)", m_aspectDef.getQualifiedName())
+            );
+            addAdvice(EXPRESSIONS[i]);
+            for (int j = 0; j < CLASSES.length; j++) {
+                ExpressionContext[] ctxs = getClassContexts(CLASSES[j]);
+                assertEquals(
+                        EXPRESSIONS[i] + " @ " + CLASSES[j].getName(),
+                        matchAll(ctxs, true),
+                        m_definition.isAdvised(ctxs)
+                );
+
+                MethodInfo[] methods = CLASSES[j].getMethods();
+                for (int k = 0; k < methods.length; k++) {
+                    ExpressionContext ctx = new ExpressionContext(PointcutType.EXECUTION, methods[k], CLASSES[j]);
+                    assertEquals(
+                            EXPRESSIONS[i] + " @ " + methods[k].getName(),
+                            matchAll(new ExpressionContext[]{ctx}, false),
+                            m_definition.hasPointcut(ctx)
+                    );
+                    ctx = new ExpressionContext(PointcutType.CALL, methods[k], CLASSES[0]);
+                    assertEquals(
+                            EXPRESSIONS[i] + " @ call " + methods[k].getName(),
+                            matchAll(new ExpressionContext[]{ctx}, false),
+                            m_definition.hasPointcut(ctx)
+                    );
+                }
+            }
+        }
+    }
+
+    public void testMatchingAdvices() {
+        setUp();
+        ExpressionNamespace.getNamespace(m_aspectDef.getQualifiedName()).addExpressionInfo(
+                "pc", new ExpressionInfo("within(test.expression.*)", m_aspectDef.getQualifiedName())
+        );
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            addAdvice(EXPRESSIONS[i]);
+        }
+        for (int j = 0; j < CLASSES.length; j++) {
+            MethodInfo[] methods = CLASSES[j].getMethods();
+            for (int k = 0; k < methods.length; k++) {
+                ExpressionContext ctx = new ExpressionContext(PointcutType.EXECUTION, methods[k], CLASSES[j]);
+                assertEquals(methods[k].getName(), getAdvicesMatching(ctx), m_definition.getAdviceDefinitionsMatching(ctx));
+                ctx = new ExpressionContext(PointcutType.CALL, methods[k], CLASSES[0]);
+                assertEquals(methods[k].getName(), getAdvicesMatching(ctx), m_definition.getAdviceDefinitionsMatching(ctx));
+            }
+        }
+    }
+
+    public void testRebuildOnChange() {
+        ExpressionContext[] ctxs = getClassContexts(CLASSES[1]);
+        assertFalse(m_definition.isAdvised(ctxs));
+
+        AdviceDefinition adviceDef = newAdvice("execution(* foo.*.*(..))");
+        m_aspectDef.addBeforeAdviceDefinition(adviceDef);
+        m_definition.addAspect(m_aspectDef);
+        assertFalse(m_definition.isAdvised(ctxs));
+
+        adviceDef.setExpressionInfo(new ExpressionInfo("within(test.*)", m_aspectDef.getQualifiedName()));
+        assertTrue(m_definition.isAdvised(ctxs));
+
+        adviceDef.setExpressionInfo(null);
+        assertFalse(m_definition.isAdvised(ctxs));
+    }
+
+    protected void setUp() {
+        m_definition = new SystemDefinition("ClassFilterIndexTest");
+        m_aspectDef = new AspectDefinition("aspect", CLASSES[1], m_definition);
+    }
+
+    private boolean matchAll(ExpressionContext[] ctxs, boolean earlyMatch) {
+        for (Iterator it = m_definition.getAdviceDefinitions().iterator(); it.hasNext();) {
+            ExpressionInfo expressionInfo = ((AdviceDefinition) it.next()).getExpressionInfo();
+            for (int i = 0; i < ctxs.length; i++) {
+                if (earlyMatch ?
+                    expressionInfo.getAdvisedClassFilterExpression().match(ctxs[i]) :
+                    expressionInfo.getExpression().match(ctxs[i])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private List getAdvicesMatching(ExpressionContext ctx) {
+        List adviceDefs = new ArrayList();
+        for (Iterator it = m_definition.getAdviceDefinitions().iterator(); it.hasNext();) {
+            AdviceDefinition adviceDef = (AdviceDefinition) it.next();
+            if (adviceDef.getExpressionInfo().getExpression().match(ctx)) {
+                adviceDefs.add(adviceDef);
+            }
+        }
+        return adviceDefs;
+    }
+
+    private ExpressionInfo addAdvice(String expression) {
+        AdviceDefinition adviceDef = newAdvice(expression);
+        m_aspectDef.addBeforeAdviceDefinition(adviceDef);
+        m_definition.addAspect(m_aspectDef);
+        return adviceDef.getExpressionInfo();
+    }
+
+    private AdviceDefinition newAdvice(String expression) {
+        return new AdviceDefinition(
+                "advice",
+                AdviceType.BEFORE,
+                null,
+                m_aspectDef.getName(),
+                m_aspectDef.getClassName(),
+                new ExpressionInfo(expression, m_aspectDef.getQualifiedName()),
+                CLASSES[1].getMethods()[0],
+                m_aspectDef
+        );
+    }
+
+    private static ExpressionContext[] getClassContexts(ClassInfo classInfo) {
+        return new ExpressionContext[]{
+            new ExpressionContext(PointcutType.EXECUTION, classInfo, classInfo),
+            new ExpressionContext(PointcutType.CALL, null, classInfo),
+            new ExpressionContext(PointcutType.GET, null, classInfo),
+            new ExpressionContext(PointcutType.SET, null, classInfo),
+            new ExpressionContext(PointcutType.HANDLER, null, classInfo),
+            new ExpressionContext(PointcutType.STATIC_INITIALIZATION, classInfo, classInfo),
+            new ExpressionContext(PointcutType.WITHIN, classInfo, classInfo)
+        };
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(ClassFilterIndexTest.class);
+    }
+}
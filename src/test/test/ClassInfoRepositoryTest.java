@@ -0,0 +1,129 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test;
+
+import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.reflect.ClassInfo;
+import org.codehaus.aspectwerkz.reflect.impl.asm.AsmClassInfo;
+import org.codehaus.aspectwerkz.reflect.impl.asm.AsmClassInfoRepository;
+import org.codehaus.aspectwerkz.reflect.impl.java.JavaClassInfo;
+import org.codehaus.aspectwerkz.util.ConcurrentReferenceMap;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Checks the class loader awareness and the concurrency of the class info repositories.
+ *
+ * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
+ */
+public class ClassInfoRepositoryTest extends TestCase {
+
+    public void testLoadersWithSameHashCode() {
+        ClassLoader parent = ClassInfoRepositoryTest.class.getClassLoader();
+        ClassLoader loader1 = new SameHashLoader(parent);
+        ClassLoader loader2 = new SameHashLoader(parent);
+        assertEquals(loader1.hashCode(), loader2.hashCode());
+        AsmClassInfoRepository repository1 = AsmClassInfoRepository.getRepository(loader1);
+        AsmClassInfoRepository repository2 = AsmClassInfoRepository.getRepository(loader2);
+        assertNotSame(repository1, repository2);
+        assertSame(repository1, AsmClassInfoRepository.getRepository(loader1));
+
+        ClassInfo classInfo = newClassInfo("test.ClassInfoRepositoryTest$Loader1[]", loader1);
+        assertTrue(repository1.hasClassInfo(classInfo.getName()));
+        assertSame(classInfo, repository1.getClassInfo(classInfo.getName()));
+        assertFalse(repository2.hasClassInfo(classInfo.getName()));
+        assertNull(repository2.getClassInfo(classInfo.getName()));
+    }
+
+    public void testParentAddedAfterMiss() {
+        ClassLoader parent = new SameHashLoader(ClassInfoRepositoryTest.class.getClassLoader());
+        ClassLoader child = new SameHashLoader(parent);
+        AsmClassInfoRepository childRepository = AsmClassInfoRepository.getRepository(child);
+        String name = "test.ClassInfoRepositoryTest$Parent[]";
+        assertNull(childRepository.getClassInfo(name));
+        assertNull(childRepository.getClassInfo(name));
+
+        ClassInfo classInfo = newClassInfo(name, parent);
+        assertSame(classInfo, childRepository.getClassInfo(name));
+    }
+
+    public void testConcurrentAccess() throws Throwable {
+        final ConcurrentReferenceMap map = new ConcurrentReferenceMap(ConcurrentReferenceMap.STRONG);
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final int offset = i * 10000;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = offset; j < offset + 10000; j++) {
+                            String key = "key" + j;
+                            map.put(key, new Integer(j));
+                            assertEquals(j, ((Integer) map.get(key)).intValue());
+                            if (j % 3 == 0) {
+                                map.remove(key);
+                                assertNull(map.get(key));
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure[0] = t;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        for (int j = 0; j < threads.length * 10000; j++) {
+            assertEquals("key" + j, j % 3 != 0, map.containsKey("key" + j));
+        }
+    }
+
+    public void testWeakValues() {
+        ConcurrentReferenceMap map = new ConcurrentReferenceMap(ConcurrentReferenceMap.WEAK);
+        Object value = new Object();
+        map.put("key", value);
+        assertSame(value, map.get("key"));
+        map.put("key", "other");
+        assertEquals("other", map.get("key"));
+    }
+
+    /**
+     * Creates an array class info, that registers itself in the repository of the given class loader.
+     */
+    private static ClassInfo newClassInfo(String name, ClassLoader loader) {
+        return AsmClassInfo.getArrayClassInfo(name, loader, JavaClassInfo.getClassInfo(ClassInfoRepositoryTest.class));
+    }
+
+    private static class SameHashLoader extends URLClassLoader {
+        SameHashLoader(ClassLoader parent) {
+            super(new URL[0], parent);
+        }
+
+        public int hashCode() {
+            return 42;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof SameHashLoader;
+        }
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(ClassInfoRepositoryTest.class);
+    }
+}
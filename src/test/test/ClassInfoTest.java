@@ -8,6 +8,7 @@
 package test;
 
 import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.exception.WrappedRuntimeException;
 import org.codehaus.aspectwerkz.reflect.impl.asm.AsmClassInfo;
 import org.codehaus.aspectwerkz.reflect.impl.java.JavaClassInfo;
 import org.codehaus.aspectwerkz.reflect.ClassInfo;
@@ -17,6 +18,12 @@ import org.codehaus.aspectwerkz.reflect.FieldInfo;
 import org.codehaus.aspectwerkz.transform.inlining.AsmNullAdapter;
 import org.codehaus.aspectwerkz.transform.inlining.AsmHelper;
 
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.InputStream;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Method;
 import java.util.SortedSet;
@@ -129,6 +136,59 @@ public class ClassInfoTest extends TestCase {
         assertNotNull("isEmpty() method info from super interface", inSuperMethodInfo2);
     }
 
+    public void testLazyMembers() throws Exception {
+        ClassLoader loader = ClassInfoTest.class.getClassLoader();
+        InputStream stream = loader.getResourceAsStream("java/util/Vector.class");
+        ClassInfo classInfo;
+        try {
+            classInfo = AsmClassInfo.newClassInfo(new ClassReader(stream).b, loader);
+        } finally {
+            stream.close();
+        }
+        assertEquals("java.util.Vector", classInfo.getName());
+        assertEquals("java.util.AbstractList", classInfo.getSuperclass().getName());
+        assertEquals(java.util.Vector.class.getInterfaces().length, classInfo.getInterfaces().length);
+
+        assertEquals(java.util.Vector.class.getDeclaredConstructors().length, classInfo.getConstructors().length);
+        assertEquals(java.util.Vector.class.getDeclaredFields().length, classInfo.getFields().length);
+        Method method = java.util.Vector.class.getDeclaredMethod("elementAt", new Class[]{int.class});
+        MethodInfo methodInfo = classInfo.getMethod(ReflectHelper.calculateHash(method));
+        assertNotNull(methodInfo);
+        assertEquals(1, methodInfo.getParameterNames().length);
+    }
+
+    public void testMembersParseFailure() throws Exception {
+        ClassWriter cw = new ClassWriter(true);
+        cw.visit(AsmHelper.JAVA_VERSION, Opcodes.ACC_PUBLIC, "test/ClassInfoTest$Corrupt", null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "corrupt", "()V", null, null);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        cw.visitEnd();
+        byte[] bytes = cw.toByteArray();
+        // an invalid opcode in the code, that only the parsing of the members reads
+        for (int i = 0; i < bytes.length - 2; i++) {
+            if (bytes[i] == Opcodes.ICONST_0 && bytes[i + 1] == Opcodes.POP && bytes[i + 2] == (byte) Opcodes.RETURN) {
+                bytes[i + 1] = (byte) 0xFF;
+            }
+        }
+
+        ClassInfo classInfo = AsmClassInfo.getClassInfo(
+                "test.ClassInfoTest$Corrupt", bytes, ClassInfoTest.class.getClassLoader()
+        );
+        assertEquals("test.ClassInfoTest$Corrupt", classInfo.getName());
+        // fails on each access instead of showing no member
+        for (int i = 0; i < 2; i++) {
+            try {
+                classInfo.getMethods();
+                fail("members parsed from invalid bytecode");
+            } catch (WrappedRuntimeException e) {
+                assertTrue(e.getMessage(), e.getMessage().indexOf("test.ClassInfoTest$Corrupt") >= 0);
+            }
+        }
+    }
+
     //-- JUnit
     public static void main(String[] args) {
         junit.textui.TestRunner.run(suite());
@@ -11,6 +11,13 @@ import junit.framework.TestCase;
 import org.codehaus.aspectwerkz.expression.SubtypePatternType;
 import org.codehaus.aspectwerkz.expression.regexp.Pattern;
 import org.codehaus.aspectwerkz.expression.regexp.TypePattern;
+import org.codehaus.aspectwerkz.reflect.ClassInfo;
+import org.codehaus.aspectwerkz.reflect.impl.asm.AsmClassInfo;
+import org.codehaus.aspectwerkz.reflect.impl.java.JavaClassInfo;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.BitSet;
 
 /**
  * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
@@ -124,6 +131,67 @@ public class ClassPatternTest extends TestCase {
         assertFalse(classPattern.matches("foo.bar.Baz"));
     }
 
+    public void testSupertypeClosure() {
+        AsmClassInfo classInfo = (AsmClassInfo) AsmClassInfo.getClassInfo(
+                "java.util.ArrayList", ClassPatternTest.class.getClassLoader()
+        );
+        ClassLoader loader = ClassPatternTest.class.getClassLoader();
+        BitSet closure = classInfo.getSupertypeClosure();
+        assertTrue(closure.get(AsmClassInfo.getTypeId("java.util.ArrayList", loader)));
+        assertTrue(closure.get(AsmClassInfo.getTypeId("java.util.AbstractList", loader)));
+        assertTrue(closure.get(AsmClassInfo.getTypeId("java.util.Collection", loader)));
+        assertTrue(closure.get(AsmClassInfo.getTypeId("java.lang.Object", loader)));
+        assertFalse(closure.get(AsmClassInfo.getTypeId("java.util.Map", loader)));
+        assertSame(closure, classInfo.getSupertypeClosure());
+    }
+
+    public void testMatchSubtypes() {
+        TypePattern classPattern = Pattern.compileTypePattern(
+                "java.util.Collection",
+                SubtypePatternType.MATCH_ON_ALL_METHODS
+        );
+        ClassLoader loader = ClassPatternTest.class.getClassLoader();
+        ClassInfo list = AsmClassInfo.getClassInfo("java.util.ArrayList", loader);
+        ClassInfo map = AsmClassInfo.getClassInfo("java.util.HashMap", loader);
+        assertTrue(classPattern.matchType(list));
+        assertTrue(classPattern.matchType(list));
+        assertFalse(classPattern.matchType(map));
+        assertTrue(classPattern.matchType(JavaClassInfo.getClassInfo(java.util.LinkedList.class)));
+        assertFalse(classPattern.matchType(JavaClassInfo.getClassInfo(java.util.TreeMap.class)));
+
+        int version = AsmClassInfo.getHierarchyVersion(loader);
+        AsmClassInfo.markDirty("java.util.ArrayList", loader);
+        assertTrue(version != AsmClassInfo.getHierarchyVersion(loader));
+        assertTrue(classPattern.matchType(AsmClassInfo.getClassInfo("java.util.ArrayList", loader)));
+        assertFalse(classPattern.matchType(map));
+    }
+
+    public void testHierarchyVersionPerClassLoader() {
+        ClassLoader parent = ClassPatternTest.class.getClassLoader();
+        ClassLoader child = new URLClassLoader(new URL[0], parent);
+        int parentVersion = AsmClassInfo.getHierarchyVersion(parent);
+        int childVersion = AsmClassInfo.getHierarchyVersion(child);
+
+        // a class marked dirty in a class loader does not invalidate its parents
+        AsmClassInfo.markDirty("test.ClassPatternTest", child);
+        assertEquals(parentVersion, AsmClassInfo.getHierarchyVersion(parent));
+        assertTrue(childVersion != AsmClassInfo.getHierarchyVersion(child));
+
+        // but invalidates the class loaders it is the parent of
+        childVersion = AsmClassInfo.getHierarchyVersion(child);
+        AsmClassInfo.markDirty("test.ClassPatternTest", parent);
+        assertTrue(parentVersion != AsmClassInfo.getHierarchyVersion(parent));
+        assertTrue(childVersion != AsmClassInfo.getHierarchyVersion(child));
+
+        // the type ids are allocated per class loader
+        String typeName = "test.ClassPatternTest$Unknown";
+        ClassLoader other = new URLClassLoader(new URL[0], parent);
+        assertEquals(0, AsmClassInfo.getTypeId(typeName, other));
+        assertEquals(typeName, AsmClassInfo.getTypeName(0, other));
+        int parentTypeId = AsmClassInfo.getTypeId(typeName, parent);
+        assertEquals(typeName, AsmClassInfo.getTypeName(parentTypeId, parent));
+    }
+
     public static void main(String[] args) {
         junit.textui.TestRunner.run(suite());
     }
@@ -0,0 +1,131 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test;
+
+import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.joinpoint.Arguments;
+import org.codehaus.aspectwerkz.joinpoint.JoinPoint;
+import org.codehaus.aspectwerkz.joinpoint.StaticJoinPoint;
+import org.codehaus.aspectwerkz.transform.inlining.compiler.JoinPointEscapeAnalysis;
+
+/**
+ * Checks the analysis of the advice bytecode that allows the join point instances to be pooled.
+ *
+ * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur</a>
+ */
+public class JoinPointEscapeAnalysisTest extends TestCase {
+
+    private static final String ASPECT_CLASS_NAME = EscapeAspect.class.getName();
+
+    private static final String JP = "Lorg/codehaus/aspectwerkz/joinpoint/JoinPoint;";
+
+    private static final String SJP = "Lorg/codehaus/aspectwerkz/joinpoint/StaticJoinPoint;";
+
+    private static final String CUSTOM_JP = "L" + CustomJoinPoint.class.getName().replace('.', '/') + ";";
+
+    public void testNotEscaping() {
+        assertFalse(escapes("around", "(" + JP + ")Ljava/lang/Object;"));
+        assertFalse(escapes("metaData", "(" + JP + ")Ljava/lang/Object;"));
+        assertFalse(escapes("before", "(I" + SJP + "J)V"));
+        assertFalse(escapes("noJoinPoint", "(I)V"));
+        assertFalse(escapes("staticAround", "(" + JP + ")Ljava/lang/Object;"));
+        assertFalse(escapes("customAround", "(" + CUSTOM_JP + "I)Ljava/lang/Object;"));
+    }
+
+    public void testEscaping() {
+        assertTrue(escapes("stores", "(" + JP + ")V"));
+        assertTrue(escapes("rtti", "(" + JP + ")Ljava/lang/Object;"));
+        assertTrue(escapes("passes", "(" + JP + ")V"));
+        assertTrue(escapes("returns", "(" + SJP + ")Ljava/lang/Object;"));
+        assertTrue(escapes("conditional", "(" + SJP + SJP + ")V"));
+        assertTrue(escapes("staticStores", "(I" + JP + ")V"));
+        assertTrue(escapes("customStores", "(" + CUSTOM_JP + ")V"));
+        // not found
+        assertTrue(escapes("none", "(" + JP + ")V"));
+    }
+
+    private static boolean escapes(String methodName, String methodDesc) {
+        return JoinPointEscapeAnalysis.escapes(
+                JoinPointEscapeAnalysisTest.class.getClassLoader(), ASPECT_CLASS_NAME, methodName, methodDesc
+        );
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(JoinPointEscapeAnalysisTest.class);
+    }
+
+    public static interface CustomJoinPoint extends JoinPoint {
+        Object proceed(int i);
+    }
+
+    public static class EscapeAspect {
+
+        private static Object s_stored;
+
+        public Object around(JoinPoint jp) throws Throwable {
+            int i = ((Arguments) jp).getIntArg(0);
+            if (i > 0 && jp.getCallee() != null) {
+                return jp.proceed();
+            }
+            return null;
+        }
+
+        public Object metaData(JoinPoint jp) {
+            jp.addMetaData("key", s_stored);
+            return jp.getMetaData("key");
+        }
+
+        public void before(int i, StaticJoinPoint sjp, long l) {
+            s_stored = sjp.getSignature();
+        }
+
+        public void noJoinPoint(int i) {
+            s_stored = null;
+        }
+
+        public void stores(JoinPoint jp) {
+            s_stored = jp;
+        }
+
+        public Object rtti(JoinPoint jp) {
+            return jp.getRtti();
+        }
+
+        public void passes(JoinPoint jp) {
+            s_stored = String.valueOf(jp);
+        }
+
+        public Object returns(StaticJoinPoint sjp) {
+            return sjp;
+        }
+
+        public void conditional(StaticJoinPoint sjp1, StaticJoinPoint sjp2) {
+            s_stored = (s_stored != null ? sjp1 : sjp2).getSignature();
+        }
+
+        public static Object staticAround(JoinPoint jp) throws Throwable {
+            return jp.proceed();
+        }
+
+        public static void staticStores(int i, JoinPoint jp) {
+            s_stored = jp;
+        }
+
+        public Object customAround(CustomJoinPoint jp, int i) {
+            return jp.proceed(i);
+        }
+
+        public void customStores(CustomJoinPoint jp) {
+            s_stored = jp;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test;
+
+import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.expression.ExpressionInfo;
+import org.codehaus.aspectwerkz.joinpoint.management.JoinPointManager;
+import org.codehaus.aspectwerkz.joinpoint.management.JoinPointType;
+import org.codehaus.aspectwerkz.transform.inlining.AsmHelper;
+import org.codehaus.aspectwerkz.transform.inlining.EmittedJoinPoint;
+import org.codehaus.aspectwerkz.transform.inlining.compiler.CompilationInfo;
+import org.codehaus.aspectwerkz.transform.inlining.compiler.JoinPointFactory;
+import org.codehaus.aspectwerkz.transform.inlining.compiler.MatchingJoinPointInfo;
+import test.expression.Target;
+
+import java.lang.reflect.Modifier;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Checks the batch loading of the join points of a class, the join point registry of the class loaders and the
+ * matching of the compiled join points on deployment.
+ *
+ * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur</a>
+ */
+public class JoinPointRegistryTest extends TestCase {
+
+    private static final String JOIN_POINT_CLASS_NAME = "test/expression/Target___AW_JoinPoint_registryTest_";
+
+    public void testRegistry() {
+        ClassLoader loader = JoinPointRegistryTest.class.getClassLoader();
+        assertFalse(JoinPointFactory.isJoinPointDefined("test/JoinPointRegistryTest___AW_JoinPoint_none", loader));
+        // packaged classes are found without being loaded
+        assertTrue(JoinPointFactory.isJoinPointDefined("test/JoinPointRegistryTest", loader));
+        assertTrue(JoinPointFactory.isJoinPointDefined("test.JoinPointRegistryTest", loader));
+    }
+
+    public void testLoadJoinPoints() throws Throwable {
+        ClassLoader loader = Target.class.getClassLoader();
+        EmittedJoinPoint[] joinPoints = new EmittedJoinPoint[]{
+            newJoinPoint("modifiers2", JOIN_POINT_CLASS_NAME + "1"),
+            newJoinPoint("modifiers2", JOIN_POINT_CLASS_NAME + "2")
+        };
+        assertFalse(JoinPointFactory.isJoinPointDefined(JOIN_POINT_CLASS_NAME + "1", loader));
+
+        JoinPointManager.loadJoinPoints(Target.class, joinPoints);
+        assertTrue(JoinPointFactory.isJoinPointDefined(JOIN_POINT_CLASS_NAME + "1", loader));
+        assertTrue(JoinPointFactory.isJoinPointDefined(JOIN_POINT_CLASS_NAME + "2", loader));
+        Class joinPointClass = Class.forName((JOIN_POINT_CLASS_NAME + "1").replace('/', '.'), false, loader);
+        assertSame(loader, joinPointClass.getClassLoader());
+
+        // already there, must not be defined again
+        JoinPointManager.loadJoinPoints(Target.class, joinPoints);
+        assertSame(joinPointClass, Class.forName((JOIN_POINT_CLASS_NAME + "1").replace('/', '.'), false, loader));
+    }
+
+    public void testJoinPointsMatching() {
+        EmittedJoinPoint joinPoint = newJoinPoint("modifiers2", JOIN_POINT_CLASS_NAME + "matching");
+        CompilationInfo compilationInfo = new CompilationInfo(
+                new CompilationInfo.Model(joinPoint, null, null)
+        );
+        // any class will do as the join point class
+        JoinPointFactory.addCompilationInfo(MatchingJoinPoint.class, compilationInfo);
+        assertSame(joinPoint, JoinPointFactory.getEmittedJoinPoint(MatchingJoinPoint.class));
+
+        Set expressions = new HashSet();
+        expressions.add(new ExpressionInfo("execution(* foo.bar.Target.modifiers2())", "registryTest"));
+        expressions.add(new ExpressionInfo("call(* test.expression.Target.modifiers2())", "registryTest"));
+        assertFalse(contains(JoinPointFactory.getJoinPointsMatching(expressions), compilationInfo));
+
+        expressions.add(new ExpressionInfo("execution(* test.expression.Target.modifiers2())", "registryTest"));
+        Set matching = JoinPointFactory.getJoinPointsMatching(expressions);
+        assertTrue(contains(matching, compilationInfo));
+
+        expressions.clear();
+        expressions.add(new ExpressionInfo("within(test.expression.Target) && !call(* *(..))", "registryTest"));
+        assertTrue(contains(JoinPointFactory.getJoinPointsMatching(expressions), compilationInfo));
+    }
+
+    private static boolean contains(Set matchingJoinPoints, CompilationInfo compilationInfo) {
+        return matchingJoinPoints.contains(new MatchingJoinPointInfo(MatchingJoinPoint.class, compilationInfo, null));
+    }
+
+    private static class MatchingJoinPoint {
+    }
+
+    private static EmittedJoinPoint newJoinPoint(String methodName, String joinPointClassName) {
+        return new EmittedJoinPoint(
+                JoinPointType.METHOD_EXECUTION_INT,
+                "test/expression/Target",
+                methodName,
+                "()V",
+                Modifier.PUBLIC | Modifier.STATIC,
+                "test/expression/Target",
+                methodName,
+                "()V",
+                Modifier.PUBLIC | Modifier.STATIC,
+                AsmHelper.calculateMethodHash(methodName, "()V"),
+                joinPointClassName
+        );
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(JoinPointRegistryTest.class);
+    }
+}
@@ -0,0 +1,246 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test;
+
+import EDU.oswego.cs.dl.util.concurrent.BoundedBuffer;
+import EDU.oswego.cs.dl.util.concurrent.Latch;
+import EDU.oswego.cs.dl.util.concurrent.PooledExecutor;
+import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.connectivity.Invoker;
+import org.codehaus.aspectwerkz.connectivity.NioRemoteProxyServer;
+import org.codehaus.aspectwerkz.connectivity.RemoteProxy;
+import org.codehaus.aspectwerkz.connectivity.RemoteProxyServer;
+import org.codehaus.aspectwerkz.exception.WrappedRuntimeException;
+
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+
+/**
+ * Runs the pipelined remote proxies against a nio server on the loopback address.
+ *
+ * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
+ */
+public class PipelinedRemoteProxyTest extends TestCase {
+
+    private static final int NR_OF_THREADS = 8;
+
+    private static final int NR_OF_INVOCATIONS = 200;
+
+    private RemoteProxyServer m_server;
+
+    private int m_port;
+
+    public void testInvoke() {
+        Echo echo = (Echo) createProxy().getInstance();
+        assertEquals("ping", echo.echo("ping"));
+        assertEquals(42, echo.add(40, 2));
+        assertNull(echo.echo(null));
+        assertEquals(3, echo.length(new String[]{"a", "b", "c"}));
+    }
+
+    public void testException() {
+        Echo echo = (Echo) createProxy().getInstance();
+        try {
+            echo.fail("expected");
+            fail("exception expected");
+        } catch (WrappedRuntimeException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals("expected", e.getCause().getMessage());
+        }
+    }
+
+    public void testConcurrentInvocations() throws Throwable {
+        final Echo echo = (Echo) createProxy().getInstance();
+        final Throwable[] failures = new Throwable[NR_OF_THREADS];
+        Thread[] threads = new Thread[NR_OF_THREADS];
+        for (int i = 0; i < NR_OF_THREADS; i++) {
+            final int thread = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < NR_OF_INVOCATIONS; j++) {
+                            assertEquals(thread * j, echo.add(thread * j, 0));
+                            assertEquals(thread + ":" + j, echo.echo(thread + ":" + j));
+                        }
+                    } catch (Throwable t) {
+                        failures[thread] = t;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < NR_OF_THREADS; i++) {
+            threads[i].join();
+            if (failures[i] != null) {
+                throw failures[i];
+            }
+        }
+    }
+
+    public void testRejectedWhenBusy() throws Throwable {
+        // one thread and one queued request at most
+        PooledExecutor threadPool = new PooledExecutor(new BoundedBuffer(1), 1);
+        NioRemoteProxyServer server = new NioRemoteProxyServer(
+                new InetSocketAddress("localhost", 0),
+                10,
+                PipelinedRemoteProxyTest.class.getClassLoader(),
+                createInvoker(),
+                threadPool
+        );
+        server.start(true, Thread.NORM_PRIORITY);
+        try {
+            final Echo echo = (Echo) createProxy(server.getLocalPort()).getInstance();
+            EchoImpl.s_blocked = new Latch();
+            EchoImpl.s_released = new Latch();
+            final Throwable[] failures = new Throwable[3];
+            Thread[] threads = new Thread[3];
+            for (int i = 0; i < threads.length; i++) {
+                final int thread = i;
+                threads[i] = new Thread() {
+                    public void run() {
+                        try {
+                            if (thread == 0) {
+                                echo.block();
+                            } else {
+                                assertEquals("queued", echo.echo("queued"));
+                            }
+                        } catch (Throwable t) {
+                            failures[thread] = t;
+                        }
+                    }
+                };
+            }
+            threads[0].start();
+            EchoImpl.s_blocked.acquire();
+            // one of the two requests is queued, the other one is rejected while the pool thread is blocked
+            threads[1].start();
+            threads[2].start();
+            for (int i = 0; i < 100 && failures[1] == null && failures[2] == null; i++) {
+                Thread.sleep(50);
+            }
+            EchoImpl.s_released.release();
+            for (int i = 0; i < threads.length; i++) {
+                threads[i].join();
+            }
+            assertNull(failures[0]);
+            assertTrue(failures[1] == null ^ failures[2] == null);
+            Throwable rejection = failures[1] != null ? failures[1] : failures[2];
+            assertTrue(rejection instanceof WrappedRuntimeException);
+            assertTrue(rejection.getCause().getMessage().startsWith("remote proxy server is busy"));
+
+            // the server handles the requests again once the pool is available
+            assertEquals("ping", echo.echo("ping"));
+        } finally {
+            server.stop();
+            threadPool.shutdownNow();
+        }
+    }
+
+    private RemoteProxy createProxy() {
+        return createProxy(m_port);
+    }
+
+    private RemoteProxy createProxy(final int port) {
+        return RemoteProxy.createPipelinedClientProxy(
+                new String[]{Echo.class.getName()},
+                EchoImpl.class.getName(),
+                "localhost",
+                port,
+                null,
+                PipelinedRemoteProxyTest.class.getClassLoader()
+        );
+    }
+
+    private static Invoker createInvoker() {
+        return new Invoker() {
+            public Object invoke(final String handle,
+                                 final String methodName,
+                                 final Class[] paramTypes,
+                                 final Object[] args,
+                                 final Object context) {
+                Object target = RemoteProxy.getWrappedInstance(handle);
+                try {
+                    Method method = target.getClass().getMethod(methodName, paramTypes);
+                    return method.invoke(target, args);
+                } catch (java.lang.reflect.InvocationTargetException e) {
+                    throw (RuntimeException) e.getTargetException();
+                } catch (Exception e) {
+                    throw new WrappedRuntimeException(e);
+                }
+            }
+        };
+    }
+
+    protected void setUp() {
+        m_server = new RemoteProxyServer(
+                PipelinedRemoteProxyTest.class.getClassLoader(),
+                createInvoker(),
+                "localhost",
+                0,
+                RemoteProxyServer.TRANSPORT_NIO
+        );
+        m_server.start();
+        m_port = m_server.getLocalPort();
+    }
+
+    protected void tearDown() {
+        m_server.stop();
+    }
+
+    public static interface Echo {
+        String echo(String message);
+
+        int add(int i, int j);
+
+        int length(String[] strings);
+
+        void fail(String message);
+
+        void block();
+    }
+
+    public static class EchoImpl implements Echo {
+        static Latch s_blocked;
+
+        static Latch s_released;
+
+        public String echo(String message) {
+            return message;
+        }
+
+        public int add(int i, int j) {
+            return i + j;
+        }
+
+        public int length(String[] strings) {
+            return strings.length;
+        }
+
+        public void fail(String message) {
+            throw new IllegalStateException(message);
+        }
+
+        public void block() {
+            s_blocked.release();
+            try {
+                s_released.acquire();
+            } catch (InterruptedException e) {
+                throw new WrappedRuntimeException(e);
+            }
+        }
+    }
+
+    // -- JUnit
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(PipelinedRemoteProxyTest.class);
+    }
+}
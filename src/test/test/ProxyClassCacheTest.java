@@ -0,0 +1,156 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test;
+
+import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.proxy.Proxy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Checks that the proxy classes are compiled once per target and per advisable flag.
+ *
+ * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur </a>
+ */
+public class ProxyClassCacheTest extends TestCase {
+
+    private static final int NR_OF_THREADS = 8;
+
+    public void testSubclassingCache() {
+        Class proxyClass = Proxy.getProxyClassFor(Target.class, true, false);
+        assertSame(proxyClass, Proxy.getProxyClassFor(Target.class, true, false));
+        assertTrue(Target.class.isAssignableFrom(proxyClass));
+        assertNotSame(proxyClass, Proxy.getProxyClassFor(Target.class, false, false));
+    }
+
+    public void testAdvisableFlagIsPartOfTheKey() {
+        Class proxyClass = Proxy.getProxyClassFor(Target.class, true, false);
+        Class advisableProxyClass = Proxy.getProxyClassFor(Target.class, true, true);
+        assertNotSame(proxyClass, advisableProxyClass);
+        assertSame(advisableProxyClass, Proxy.getProxyClassFor(Target.class, true, true));
+    }
+
+    public void testDelegationCache() {
+        Class[] interfaces = new Class[]{Named.class, Counted.class};
+        Class proxyClass = Proxy.getProxyClassFor(interfaces, true, false);
+        assertSame(proxyClass, Proxy.getProxyClassFor(new Class[]{Named.class, Counted.class}, true, false));
+        assertNotSame(proxyClass, Proxy.getProxyClassFor(interfaces, true, true));
+    }
+
+    public void testDelegationCacheKeyedOnTheInterfaces() throws Exception {
+        Class otherNamed = new NamedLoader(getClass().getClassLoader()).loadClass(Named.class.getName());
+        assertNotSame(Named.class, otherNamed);
+
+        Class proxyClass = Proxy.getProxyClassFor(new Class[]{Named.class}, true, false);
+        Class otherProxyClass = Proxy.getProxyClassFor(new Class[]{otherNamed}, true, false);
+        assertNotSame(proxyClass, otherProxyClass);
+        assertTrue(Named.class.isAssignableFrom(proxyClass));
+        assertTrue(otherNamed.isAssignableFrom(otherProxyClass));
+        assertSame(otherProxyClass, Proxy.getProxyClassFor(new Class[]{otherNamed}, true, false));
+    }
+
+    public void testConcurrentCompilation() throws Throwable {
+        final Class[] proxyClasses = new Class[NR_OF_THREADS];
+        final Throwable[] failures = new Throwable[NR_OF_THREADS];
+        Thread[] threads = new Thread[NR_OF_THREADS];
+        for (int i = 0; i < NR_OF_THREADS; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        proxyClasses[index] = Proxy.getProxyClassFor(ConcurrentTarget.class, true, false);
+                    } catch (Throwable t) {
+                        failures[index] = t;
+                    }
+                }
+            };
+        }
+        for (int i = 0; i < NR_OF_THREADS; i++) {
+            threads[i].start();
+        }
+        for (int i = 0; i < NR_OF_THREADS; i++) {
+            threads[i].join();
+        }
+        for (int i = 0; i < NR_OF_THREADS; i++) {
+            if (failures[i] != null) {
+                throw failures[i];
+            }
+            assertSame(proxyClasses[0], proxyClasses[i]);
+        }
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(ProxyClassCacheTest.class);
+    }
+
+    /**
+     * Defines its own copy of the Named interface.
+     */
+    private static class NamedLoader extends ClassLoader {
+
+        NamedLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        protected synchronized Class loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(Named.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+            Class clazz = findLoadedClass(name);
+            if (clazz == null) {
+                byte[] bytes = readClass(name);
+                clazz = defineClass(name, bytes, 0, bytes.length);
+            }
+            return clazz;
+        }
+
+        private byte[] readClass(String name) throws ClassNotFoundException {
+            InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+            if (in == null) {
+                throw new ClassNotFoundException(name);
+            }
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                for (int length = in.read(buffer); length != -1; length = in.read(buffer)) {
+                    out.write(buffer, 0, length);
+                }
+                in.close();
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name);
+            }
+        }
+    }
+
+    public static interface Named {
+        String getName();
+    }
+
+    public static interface Counted {
+        int getCount();
+    }
+
+    public static class Target {
+        public String getName() {
+            return "target";
+        }
+    }
+
+    public static class ConcurrentTarget {
+        public String getName() {
+            return "concurrent";
+        }
+    }
+}
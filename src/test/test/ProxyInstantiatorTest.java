@@ -0,0 +1,177 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test;
+
+import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.exception.WrappedRuntimeException;
+import org.codehaus.aspectwerkz.proxy.Proxy;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Checks that the proxies are instantiated thru their compiled instantiators with the right constructor.
+ *
+ * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur </a>
+ */
+public class ProxyInstantiatorTest extends TestCase {
+
+    public void testDefaultConstructor() {
+        Target target = (Target) Proxy.newInstance(Target.class);
+        assertEquals("default", target.getValue());
+        assertSame(Proxy.getProxyClassFor(Target.class, true, false), target.getClass());
+    }
+
+    public void testTypedConstructors() {
+        Target target = (Target) Proxy.newInstance(
+                Target.class, new Class[]{int.class, String.class}, new Object[]{new Integer(3), "x"}
+        );
+        assertEquals("3x", target.getValue());
+
+        target = (Target) Proxy.newInstance(
+                Target.class, new Class[]{long.class, double.class, boolean.class},
+                new Object[]{new Long(4L), new Double(0.5), Boolean.TRUE}
+        );
+        assertEquals("40.5true", target.getValue());
+
+        target = (Target) Proxy.newInstance(
+                Target.class, new Class[]{String[].class}, new Object[]{new String[]{"a", "b"}}
+        );
+        assertEquals("ab", target.getValue());
+    }
+
+    public void testUncachedInstantiation() {
+        Target target1 = (Target) Proxy.newInstance(Target.class, false, false);
+        Target target2 = (Target) Proxy.newInstance(Target.class, false, false);
+        assertEquals("default", target1.getValue());
+        assertNotSame(target1.getClass(), target2.getClass());
+
+        Target target = (Target) Proxy.newInstance(
+                Target.class, new Class[]{long.class, double.class, boolean.class},
+                new Object[]{new Long(4L), new Double(0.5), Boolean.TRUE}, false, false
+        );
+        assertEquals("40.5true", target.getValue());
+    }
+
+    public void testUncachedConstructorException() {
+        try {
+            Proxy.newInstance(Target.class, new Class[]{Object.class}, new Object[]{null}, false, false);
+            fail("the constructor exception should be propagated");
+        } catch (WrappedRuntimeException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    public void testConstructorException() {
+        try {
+            Proxy.newInstance(Target.class, new Class[]{Object.class}, new Object[]{null});
+            fail("the constructor exception should be propagated");
+        } catch (WrappedRuntimeException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    public void testNoSuchConstructor() {
+        try {
+            Proxy.newInstance(Target.class, new Class[]{char.class}, new Object[]{new Character('c')});
+            fail("there is no such constructor");
+        } catch (WrappedRuntimeException e) {
+            assertTrue(e.getCause() instanceof NoSuchMethodException);
+        }
+    }
+
+    public void testReflectiveInstantiatorKeptWithProxyClass() throws Exception {
+        // a class loader that does not see the AspectWerkz runtime, thus the proxies are instantiated thru reflection
+        String resource = Target.class.getName().replace('.', '/') + ".class";
+        String url = Target.class.getClassLoader().getResource(resource).toString();
+        ClassLoader loader = new URLClassLoader(
+                new URL[]{new URL(url.substring(0, url.length() - resource.length()))}, null
+        );
+        Class targetClass = loader.loadClass(Target.class.getName());
+        assertNotSame(Target.class, targetClass);
+
+        Class proxyClass = Proxy.getProxyClassFor(targetClass, true, false);
+        // the weakly referenced cache entry must not be cleared while the proxy class lives
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        assertSame(proxyClass, Proxy.getProxyClassFor(targetClass, true, false));
+        assertSame(proxyClass, Proxy.newInstance(targetClass).getClass());
+    }
+
+    public void testDelegation() {
+        Object proxy = Proxy.newInstance(
+                new Class[]{Named.class, Counted.class},
+                new Object[]{new NamedImpl(), new CountedImpl()},
+                true,
+                false
+        );
+        assertEquals("named", ((Named) proxy).getName());
+        assertEquals(7, ((Counted) proxy).getCount());
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(ProxyInstantiatorTest.class);
+    }
+
+    public static interface Named {
+        String getName();
+    }
+
+    public static interface Counted {
+        int getCount();
+    }
+
+    public static class NamedImpl implements Named {
+        public String getName() {
+            return "named";
+        }
+    }
+
+    public static class CountedImpl implements Counted {
+        public int getCount() {
+            return 7;
+        }
+    }
+
+    public static class Target {
+        private final String m_value;
+
+        public Target() {
+            m_value = "default";
+        }
+
+        public Target(int i, String s) {
+            m_value = i + s;
+        }
+
+        public Target(long l, double d, boolean b) {
+            m_value = "" + l + d + b;
+        }
+
+        public Target(String[] values) {
+            StringBuffer buffer = new StringBuffer();
+            for (int i = 0; i < values.length; i++) {
+                buffer.append(values[i]);
+            }
+            m_value = buffer.toString();
+        }
+
+        public Target(Object o) {
+            throw new IllegalArgumentException("always fails");
+        }
+
+        public String getValue() {
+            return m_value;
+        }
+    }
+}
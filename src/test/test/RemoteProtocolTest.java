@@ -0,0 +1,81 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test;
+
+import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.connectivity.RemoteProtocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the encoding of the values sent by the pipelined remote transport, without opening any socket.
+ *
+ * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
+ */
+public class RemoteProtocolTest extends TestCase {
+
+    public void testLongString() throws Exception {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < 70000; i++) {
+            buffer.append((char) ('a' + i % 26));
+        }
+        buffer.append('\u00e9');
+        String string = buffer.toString();
+        assertEquals(string, RemoteProtocol.readObject(in(out(string)), getClass().getClassLoader()));
+    }
+
+    public void testSharedReferences() throws Exception {
+        List shared = new ArrayList();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RemoteProtocol.writeObjects(
+                new DataOutputStream(bytes), new Object[]{shared, "s", new Integer(1), shared, null}
+        );
+        Object[] objects = RemoteProtocol.readObjects(in(bytes), getClass().getClassLoader());
+        assertEquals(5, objects.length);
+        assertEquals(shared, objects[0]);
+        assertSame(objects[0], objects[3]);
+        assertEquals("s", objects[1]);
+        assertEquals(new Integer(1), objects[2]);
+        assertNull(objects[4]);
+    }
+
+    public void testInvalidLength() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(-2);
+        try {
+            RemoteProtocol.readObjects(in(bytes), getClass().getClassLoader());
+            fail("a negative length is invalid");
+        } catch (IOException e) {
+            ;//expected
+        }
+    }
+
+    private static ByteArrayOutputStream out(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RemoteProtocol.writeObject(new DataOutputStream(bytes), object);
+        return bytes;
+    }
+
+    private static DataInputStream in(ByteArrayOutputStream bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(RemoteProtocolTest.class);
+    }
+}
@@ -0,0 +1,90 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test;
+
+import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.definition.SystemDefinition;
+import org.codehaus.aspectwerkz.definition.SystemDefinitionContainer;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Checks the snapshots of the definitions visible from a class loader.
+ *
+ * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur</a>
+ */
+public class SystemDefinitionContainerTest extends TestCase {
+
+    public void testHierarchy() {
+        ClassLoader parent = SystemDefinitionContainerTest.class.getClassLoader();
+        ClassLoader loader = new URLClassLoader(new URL[0], parent);
+
+        Set defs = SystemDefinitionContainer.getDefinitionsFor(loader);
+        assertTrue(defs.containsAll(SystemDefinitionContainer.getDefinitionsFor(parent)));
+        assertSame(defs, SystemDefinitionContainer.getDefinitionsFor(loader));
+        assertSame(
+                SystemDefinitionContainer.getDefinitionFor(parent, "tests"),
+                SystemDefinitionContainer.getDefinitionFor(loader, "tests")
+        );
+
+        SystemDefinition virtualDef = SystemDefinitionContainer.getVirtualDefinitionAt(loader);
+        assertEquals(SystemDefinitionContainer.getVirtualDefinitionUuid(loader), virtualDef.getUuid());
+        assertTrue(defs.contains(virtualDef));
+        assertNotSame(virtualDef, SystemDefinitionContainer.getVirtualDefinitionAt(parent));
+        assertNull(SystemDefinitionContainer.getDefinitionFor(loader, "SystemDefinitionContainerTest.none"));
+        try {
+            defs.clear();
+            fail("the definitions must be read only");
+        } catch (UnsupportedOperationException e) {
+            ;//ok
+        }
+    }
+
+    public void testDeployDefinitions() {
+        ClassLoader parent = SystemDefinitionContainerTest.class.getClassLoader();
+        ClassLoader loader = new URLClassLoader(new URL[0], parent);
+        ClassLoader child = new URLClassLoader(new URL[0], loader);
+        Set before = SystemDefinitionContainer.getDefinitionsFor(child);
+
+        SystemDefinition def = new SystemDefinition("SystemDefinitionContainerTest.deployed");
+        Set deployed = new HashSet();
+        deployed.add(def);
+        SystemDefinitionContainer.deployDefinitions(loader, deployed);
+
+        assertSame(def, SystemDefinitionContainer.getDefinitionFor(loader, def.getUuid()));
+        assertSame(def, SystemDefinitionContainer.getDefinitionFor(child, def.getUuid()));
+        assertNull(SystemDefinitionContainer.getDefinitionFor(parent, def.getUuid()));
+        assertTrue(SystemDefinitionContainer.getDefinitionsFor(child).contains(def));
+        assertFalse(before.contains(def));
+    }
+
+    public void testOtherHierarchyKeepsItsSnapshot() {
+        ClassLoader parent = SystemDefinitionContainerTest.class.getClassLoader();
+        ClassLoader loader = new URLClassLoader(new URL[0], parent);
+        ClassLoader sibling = new URLClassLoader(new URL[0], parent);
+        Set defs = SystemDefinitionContainer.getDefinitionsFor(loader);
+
+        // registering and deploying at another classloader does not make the snapshot stale
+        SystemDefinitionContainer.getDefinitionsFor(new URLClassLoader(new URL[0], parent));
+        Set deployed = new HashSet();
+        deployed.add(new SystemDefinition("SystemDefinitionContainerTest.sibling"));
+        SystemDefinitionContainer.deployDefinitions(sibling, deployed);
+        assertSame(defs, SystemDefinitionContainer.getDefinitionsFor(loader));
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(SystemDefinitionContainerTest.class);
+    }
+}
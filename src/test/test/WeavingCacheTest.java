@@ -0,0 +1,143 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.transform.inlining.ContextImpl;
+import org.codehaus.aspectwerkz.transform.inlining.EmittedJoinPoint;
+import org.codehaus.aspectwerkz.transform.inlining.InliningWeavingStrategy;
+import org.codehaus.aspectwerkz.transform.inlining.WeavingCache;
+
+/**
+ * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
+ */
+public class WeavingCacheTest extends TestCase {
+
+    private File m_directory;
+
+    private WeavingCache m_cache;
+
+    public void testHit() throws Throwable {
+        String className = "test.MemberMethodAdviceTest";
+        byte[] bytecode = getBytecode(className);
+        ContextImpl woven = weave(className, bytecode);
+        String key = m_cache.getKey(woven);
+        m_cache.store(key, woven);
+
+        ContextImpl cached = newContext(className, bytecode);
+        assertEquals(key, m_cache.getKey(cached));
+        assertTrue(m_cache.load(key, cached));
+        assertTrue(Arrays.equals(woven.getCurrentBytecode(), cached.getCurrentBytecode()));
+        List wovenJoinPoints = woven.getEmittedJoinPoints();
+        List cachedJoinPoints = cached.getEmittedJoinPoints();
+        assertTrue(wovenJoinPoints.size() > 0);
+        assertEquals(wovenJoinPoints, cachedJoinPoints);
+        for (int i = 0; i < wovenJoinPoints.size(); i++) {
+            EmittedJoinPoint wovenJoinPoint = (EmittedJoinPoint) wovenJoinPoints.get(i);
+            EmittedJoinPoint cachedJoinPoint = (EmittedJoinPoint) cachedJoinPoints.get(i);
+            wovenJoinPoint.resolveLineNumber(woven);
+            cachedJoinPoint.resolveLineNumber(cached);
+            assertEquals(wovenJoinPoint.getJoinPointClassName(), cachedJoinPoint.getJoinPointClassName());
+            assertEquals(wovenJoinPoint.getLineNumber(), cachedJoinPoint.getLineNumber());
+        }
+    }
+
+    public void testMissOnBytecodeChange() throws Throwable {
+        String className = "test.CallerSideAdviceTest";
+        byte[] bytecode = getBytecode(className);
+        ContextImpl woven = weave(className, bytecode);
+        m_cache.store(m_cache.getKey(woven), woven);
+
+        byte[] changed = (byte[]) bytecode.clone();
+        changed[changed.length - 1]++;
+        ContextImpl context = newContext(className, changed);
+        String key = m_cache.getKey(context);
+        assertFalse(key.equals(m_cache.getKey(woven)));
+        assertFalse(m_cache.load(key, context));
+        assertSame(changed, context.getCurrentBytecode());
+        assertEquals(0, context.getEmittedJoinPoints().size());
+    }
+
+    public void testTypeChangeNotCached() throws Throwable {
+        String className = "test.mixin.perinstance.ToBeIntroduced";
+        ContextImpl woven = weave(className, getBytecode(className));
+        String key = m_cache.getKey(woven);
+        m_cache.store(key, woven);
+        assertFalse(m_cache.load(key, newContext(className, getBytecode(className))));
+    }
+
+    public void testUnchangedCached() throws Throwable {
+        String className = "test.Loggable";
+        byte[] bytecode = getBytecode(className);
+        ContextImpl woven = weave(className, bytecode);
+        assertSame(bytecode, woven.getCurrentBytecode());
+        String key = m_cache.getKey(woven);
+        m_cache.store(key, woven);
+
+        ContextImpl cached = newContext(className, bytecode);
+        assertTrue(m_cache.load(key, cached));
+        assertSame(bytecode, cached.getCurrentBytecode());
+        assertEquals(0, cached.getEmittedJoinPoints().size());
+    }
+
+    protected void setUp() throws Exception {
+        m_directory = new File(System.getProperty("java.io.tmpdir"), "_aw_weavingcache_" + System.currentTimeMillis());
+        m_cache = new WeavingCache(m_directory);
+    }
+
+    protected void tearDown() throws Exception {
+        delete(m_directory);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            delete(files[i]);
+        }
+        file.delete();
+    }
+
+    private ContextImpl newContext(String className, byte[] bytecode) {
+        return new ContextImpl(className, bytecode, getClass().getClassLoader());
+    }
+
+    private ContextImpl weave(String className, byte[] bytecode) {
+        ContextImpl context = newContext(className, bytecode);
+        new InliningWeavingStrategy().transform(className, context);
+        return context;
+    }
+
+    private byte[] getBytecode(String className) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(className.replace('.', '/') + ".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(WeavingCacheTest.class);
+    }
+}
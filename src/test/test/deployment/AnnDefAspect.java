@@ -15,7 +15,8 @@ import org.codehaus.aspectwerkz.joinpoint.JoinPoint;
 public class AnnDefAspect {
     /**
      * @Around execution(void test.deployment.DeployerTest.deployUndeployUsingHandle()) ||
-     * execution(void test.deployment.DeployerTest.deployUndeployUsingPreparedPointcut())
+     * execution(void test.deployment.DeployerTest.deployUndeployUsingPreparedPointcut()) ||
+     * execution(void test.deployment.DeployerTest.redefinitionStatistics*())
      */
     public Object advice(final JoinPoint joinPoint) throws Throwable {
         DeployerTest.log("before ");
@@ -10,6 +10,7 @@ package test.deployment;
 import junit.framework.TestCase;
 import org.codehaus.aspectwerkz.transform.inlining.deployer.Deployer;
 import org.codehaus.aspectwerkz.transform.inlining.deployer.DeploymentHandle;
+import org.codehaus.aspectwerkz.transform.inlining.deployer.RedefinitionStatistics;
 import org.codehaus.aspectwerkz.definition.DeploymentScope;
 import org.codehaus.aspectwerkz.definition.SystemDefinition;
 import org.codehaus.aspectwerkz.definition.SystemDefinitionContainer;
@@ -104,6 +105,57 @@ public class DeployerTest extends TestCase {
         assertEquals("deployUndeployUsingXmlDef ", s_logString);
     }
 
+    public void testRedefinitionStatistics() {
+        // the join points are only known to the deployer once executed
+        s_logString = "";
+        redefinitionStatistics1();
+        redefinitionStatistics2();
+        redefinitionStatistics3();
+        assertEquals("1 2 3 ", s_logString);
+
+        SystemDefinition def = SystemDefinitionContainer.getDefinitionFor(
+                Thread.currentThread().getContextClassLoader(), "tests"
+        );
+        DeploymentScope deploymentScope = def.getDeploymentScope("redefinitionStatistics");
+        int redefinitionCount = RedefinitionStatistics.getRedefinitionCount();
+        long joinPointCount = RedefinitionStatistics.getJoinPointCount();
+
+        // the three join points are redefined at once
+        DeploymentHandle handle = Deployer.deploy(AnnDefAspect.class, deploymentScope);
+        assertEquals(redefinitionCount + 1, RedefinitionStatistics.getRedefinitionCount());
+        assertEquals(joinPointCount + 3, RedefinitionStatistics.getJoinPointCount());
+        assertTrue(RedefinitionStatistics.getLastStopTheWorldTime() <= RedefinitionStatistics.getMaxStopTheWorldTime());
+        assertTrue(RedefinitionStatistics.getLastCompilationTime() <= RedefinitionStatistics.getTotalCompilationTime());
+
+        s_logString = "";
+        redefinitionStatistics1();
+        redefinitionStatistics2();
+        redefinitionStatistics3();
+        assertEquals("before 1 after before 2 after before 3 after ", s_logString);
+
+        Deployer.undeploy(handle);
+        assertEquals(redefinitionCount + 2, RedefinitionStatistics.getRedefinitionCount());
+        assertEquals(joinPointCount + 6, RedefinitionStatistics.getJoinPointCount());
+
+        s_logString = "";
+        redefinitionStatistics1();
+        redefinitionStatistics2();
+        redefinitionStatistics3();
+        assertEquals("1 2 3 ", s_logString);
+    }
+
+    private void redefinitionStatistics1() {
+        log("1 ");
+    }
+
+    private void redefinitionStatistics2() {
+        log("2 ");
+    }
+
+    private void redefinitionStatistics3() {
+        log("3 ");
+    }
+
     private void deployUndeployUsingHandle() {
         log("deployUndeployUsingHandle ");
     }
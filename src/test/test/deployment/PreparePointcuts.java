@@ -28,4 +28,9 @@ public class PreparePointcuts {
      * @Expression execution(void test.deployment.DeployerTest.deployUndeployUsingXmlDef())
      */
     DeploymentScope deployUndeployUsingXmlDef;
+
+    /**
+     * @Expression execution(void test.deployment.DeployerTest.redefinitionStatistics*())
+     */
+    DeploymentScope redefinitionStatistics;
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test.intercept.execution;
+
+/**
+ * An advisable subclass of an advisable class, whose join points get the same indexes at weave time.
+ *
+ * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
+ */
+public class AdvisableSubTarget extends AdvisableTarget {
+
+    public void sub() {
+        InterceptTest.log("sub ");
+    }
+}
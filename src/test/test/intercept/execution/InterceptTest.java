@@ -11,6 +11,7 @@ import junit.framework.TestCase;
 import org.codehaus.aspectwerkz.joinpoint.JoinPoint;
 import org.codehaus.aspectwerkz.intercept.BeforeAdvice;
 import org.codehaus.aspectwerkz.intercept.Advisable;
+import org.codehaus.aspectwerkz.intercept.AdvisableImpl;
 import org.codehaus.aspectwerkz.intercept.AroundAdvice;
 import org.codehaus.aspectwerkz.intercept.AfterAdvice;
 import org.codehaus.aspectwerkz.intercept.AfterReturningAdvice;
@@ -268,6 +269,129 @@ public class InterceptTest extends TestCase {
         assertEquals("addAfterAndAfterThrowing afterThrowing noop after ", LOG);
     }
 
+    public void testAddClassAndInstanceAround() {
+        InterceptTest other = new InterceptTest();
+
+        LOG = "";
+        adviseWithClassAround();
+        other.adviseWithClassAround();
+        assertEquals("adviseWithClassAround adviseWithClassAround ", LOG);
+
+        AdvisableImpl.addClassAdvice(
+                InterceptTest.class,
+                "execution(* test.intercept.execution.InterceptTest.adviseWithClassAround(..))",
+                new AroundAdvice() {
+                    public Object invoke(JoinPoint jp) throws Throwable {
+                        InterceptTest.log("class_pre_execution ");
+                        return jp.proceed();
+                    }
+                }
+        );
+
+        LOG = "";
+        adviseWithClassAround();
+        other.adviseWithClassAround();
+        assertEquals("class_pre_execution adviseWithClassAround class_pre_execution adviseWithClassAround ", LOG);
+
+        ((Advisable) this).aw_addAdvice(
+                "execution(* test.intercept.execution.InterceptTest.adviseWithClassAround(..))",
+                new AroundAdvice() {
+                    public Object invoke(JoinPoint jp) throws Throwable {
+                        InterceptTest.log("instance_pre_execution ");
+                        return jp.proceed();
+                    }
+                }
+        );
+
+        LOG = "";
+        adviseWithClassAround();
+        other.adviseWithClassAround();
+        assertEquals(
+                "class_pre_execution instance_pre_execution adviseWithClassAround class_pre_execution adviseWithClassAround ",
+                LOG
+        );
+
+        AdvisableImpl.removeClassAdvice(
+                InterceptTest.class,
+                "execution(* test.intercept.execution.InterceptTest.adviseWithClassAround(..))",
+                AroundAdvice.class
+        );
+
+        LOG = "";
+        adviseWithClassAround();
+        other.adviseWithClassAround();
+        assertEquals("instance_pre_execution adviseWithClassAround adviseWithClassAround ", LOG);
+    }
+
+    public void testClassAdviceOfSuperclass() {
+        AdvisableTarget base = new AdvisableTarget();
+        AdvisableSubTarget sub = new AdvisableSubTarget();
+
+        AdvisableImpl.addClassAdvice(
+                AdvisableTarget.class,
+                "execution(* test.intercept.execution.AdvisableTarget.base(..))",
+                new BeforeAdvice() {
+                    public void invoke(JoinPoint jp) throws Throwable {
+                        InterceptTest.log("before_base ");
+                    }
+                }
+        );
+        AdvisableImpl.addClassAdvice(
+                AdvisableSubTarget.class,
+                "execution(* test.intercept.execution.AdvisableSubTarget.sub(..))",
+                new BeforeAdvice() {
+                    public void invoke(JoinPoint jp) throws Throwable {
+                        InterceptTest.log("before_sub ");
+                    }
+                }
+        );
+
+        // the class advice of the superclass apply to the subclass, and the join points do not share advice
+        LOG = "";
+        base.base();
+        sub.base();
+        sub.sub();
+        assertEquals("before_base base before_base base before_sub sub ", LOG);
+
+        AdvisableImpl.removeClassAdvice(
+                AdvisableTarget.class,
+                "execution(* test.intercept.execution.AdvisableTarget.base(..))",
+                BeforeAdvice.class
+        );
+        LOG = "";
+        base.base();
+        sub.base();
+        sub.sub();
+        assertEquals("base base before_sub sub ", LOG);
+    }
+
+    public void testClassAdviceKeptWithoutInstances() {
+        AdvisableImpl.addClassAdvice(
+                AdvisableTarget.class,
+                "execution(* test.intercept.execution.AdvisableTarget.base(..))",
+                new AroundAdvice() {
+                    public Object invoke(JoinPoint jp) throws Throwable {
+                        InterceptTest.log("around_base ");
+                        return jp.proceed();
+                    }
+                }
+        );
+
+        // the class advice is kept by the advisable class, not by its instances
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        LOG = "";
+        new AdvisableTarget().base();
+        assertEquals("around_base base ", LOG);
+
+        AdvisableImpl.removeClassAdvice(
+                AdvisableTarget.class,
+                "execution(* test.intercept.execution.AdvisableTarget.base(..))",
+                AroundAdvice.class
+        );
+    }
+
     public static void main(String[] args) {
         junit.textui.TestRunner.run(suite());
     }
@@ -284,6 +408,10 @@ public class InterceptTest extends TestCase {
         log("adviseWithAround2 ");
     }
 
+    public void adviseWithClassAround() {
+        log("adviseWithClassAround ");
+    }
+
     public void adviseWithAroundStack() {
         log("adviseWithAroundStack ");
     }
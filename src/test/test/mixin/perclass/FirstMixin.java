@@ -0,0 +1,29 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test.mixin.perclass;
+
+import org.codehaus.aspectwerkz.aspect.management.Mixins;
+
+/**
+ * A perClass mixin that looks up the other perClass mixin of its target class, whose mixin field may not be
+ * initialized yet.
+ *
+ * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
+ */
+public class FirstMixin {
+
+    private final Object m_secondMixin;
+
+    public FirstMixin(Class targetClass) {
+        m_secondMixin = Mixins.mixinOf(SecondMixin.class, targetClass);
+    }
+
+    public Object getSecondMixin() {
+        return m_secondMixin;
+    }
+}
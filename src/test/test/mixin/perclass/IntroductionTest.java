@@ -11,6 +11,7 @@ import java.io.Serializable;
 import java.lang.reflect.Method;
 
 import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.aspect.management.Mixins;
 
 /**
  * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
@@ -32,6 +33,14 @@ public class IntroductionTest extends TestCase {
         m_toBeIntroducedUsingHasField = new ToBeIntroducedUsingHasField();
     }
 
+    public void testMixinOfClassBeingInitialized() {
+        // the first mixin looks up the second one while the mixin fields of the class are initialized
+        Object secondMixin = Mixins.mixinOf(SecondMixin.class, ToBeIntroducedTwice.class);
+        assertSame(secondMixin, Mixins.mixinOf(SecondMixin.class, ToBeIntroducedTwice.class));
+        FirstMixin firstMixin = (FirstMixin) Mixins.mixinOf(FirstMixin.class, ToBeIntroducedTwice.class);
+        assertSame(secondMixin, firstMixin.getSecondMixin());
+    }
+
     public void testInterfaceIntroduction() {
         assertTrue(m_toBeIntroduced instanceof Serializable);
     }
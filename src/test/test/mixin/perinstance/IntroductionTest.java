@@ -7,10 +7,16 @@
  **************************************************************************************/
 package test.mixin.perinstance;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.aspect.management.Mixins;
 
 /**
  * @author <a href="mailto:jboner@codehaus.org">Jonas Bonr </a>
@@ -64,6 +70,47 @@ public class IntroductionTest extends TestCase {
         assertTrue(parent instanceof Serializable);
     }
 
+    public void testMixinOf() throws Exception {
+        Object mixin = Mixins.mixinOf(MyImpl.class, m_toBeIntroduced);
+        assertTrue(mixin instanceof MyImpl);
+        assertSame(mixin, Mixins.mixinOf(MyImpl.class.getName(), m_toBeIntroduced));
+        assertNotSame(mixin, Mixins.mixinOf(MyImpl.class, new ToBeIntroduced()));
+
+        // the mixin fields woven in the class and in its super class hold the same mixin
+        int nrOfMixinFields = 0;
+        for (Class klass = m_toBeIntroduced.getClass(); klass != null; klass = klass.getSuperclass()) {
+            Field[] fields = klass.getDeclaredFields();
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i].getType() == MyImpl.class) {
+                    fields[i].setAccessible(true);
+                    assertSame(mixin, fields[i].get(m_toBeIntroduced));
+                    nrOfMixinFields++;
+                }
+            }
+        }
+        assertEquals(2, nrOfMixinFields);
+    }
+
+    public void testMixinOfDeserializedInstance() throws Exception {
+        ToBeIntroducedTransiently target = new ToBeIntroducedTransiently();
+        assertEquals(1, ((Counter) target).increment());
+        Object mixin = Mixins.mixinOf(TransientMixin.class, target);
+        assertSame(mixin, Mixins.mixinOf(TransientMixin.class, target));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(target);
+        out.close();
+        Object copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        // the transient mixin field of the copy is null, yet the copy gets a single mixin of its own
+        Object copyMixin = Mixins.mixinOf(TransientMixin.class, copy);
+        assertNotSame(mixin, copyMixin);
+        assertSame(copyMixin, Mixins.mixinOf(TransientMixin.class, copy));
+        assertEquals(1, ((TransientMixin) copyMixin).increment());
+        assertEquals(2, ((TransientMixin) Mixins.mixinOf(TransientMixin.class, copy)).increment());
+    }
+
     public void testReturnLong() {
         assertEquals(1L, ((Introductions) m_toBeIntroduced).getLong());
     }
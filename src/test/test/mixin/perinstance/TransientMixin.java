@@ -0,0 +1,22 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test.mixin.perinstance;
+
+/**
+ * A perInstance mixin whose mixin field is transient, and thus null in the deserialized targets.
+ *
+ * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
+ */
+public class TransientMixin implements Counter {
+
+    private int m_count = 0;
+
+    public int increment() {
+        return ++m_count;
+    }
+}
@@ -0,0 +1,148 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test.performance;
+
+import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.reflect.ClassInfo;
+import org.codehaus.aspectwerkz.reflect.FieldInfo;
+import org.codehaus.aspectwerkz.reflect.MethodInfo;
+import org.codehaus.aspectwerkz.reflect.impl.asm.AsmClassInfo;
+import org.codehaus.aspectwerkz.transform.inlining.AsmHelper;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Measures the heap used by the class infos of a generated corpus of classes, once their members are parsed, and
+ * checks the member lookups on that corpus.
+ *
+ * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
+ */
+public class ClassInfoFootprintTest extends TestCase implements Opcodes {
+
+    private static final String[] METHOD_NAMES = new String[]{
+        "getName", "setName", "getValue", "setValue", "execute", "toString", "size", "isEmpty"
+    };
+
+    private static final String[] METHOD_DESCS = new String[]{
+        "()Ljava/lang/String;", "(Ljava/lang/String;)V", "()Ljava/lang/Object;", "(Ljava/lang/Object;)V",
+        "(Ljava/util/List;Ljava/util/Map;I)Ljava/util/List;", "()Ljava/lang/String;", "()I", "()Z"
+    };
+
+    private static final String[] FIELD_DESCS = new String[]{
+        "Ljava/lang/String;", "Ljava/util/List;", "I", "J", "Ljava/lang/Object;"
+    };
+
+    private boolean m_printInfo = true;
+
+    private int m_numberOfClasses = 500;
+
+    private int m_numberOfMembers = 24;
+
+    public ClassInfoFootprintTest(String name) {
+        super(name);
+    }
+
+    public void testMemberLookup() {
+        ClassInfo[] classInfos = newCorpus(20);
+        for (int i = 0; i < classInfos.length; i++) {
+            MethodInfo[] methods = classInfos[i].getMethods();
+            assertEquals(m_numberOfMembers, methods.length);
+            for (int j = 0; j < methods.length; j++) {
+                assertEquals(getMethodName(j), methods[j].getName());
+                assertSame(methods[j], classInfos[i].getMethod(AsmHelper.calculateMethodHash(getMethodName(j), getMethodDesc(j))));
+            }
+            FieldInfo[] fields = classInfos[i].getFields();
+            assertEquals(m_numberOfMembers, fields.length);
+            for (int j = 0; j < fields.length; j++) {
+                assertEquals("m_field" + j, fields[j].getName());
+                int hash = AsmHelper.calculateFieldHash(fields[j].getName(), FIELD_DESCS[j % FIELD_DESCS.length]);
+                assertSame(fields[j], classInfos[i].getField(hash));
+            }
+            assertEquals(1, classInfos[i].getConstructors().length);
+            assertNull(classInfos[i].getMethod(AsmHelper.calculateMethodHash("missing", "()V")));
+        }
+        // the names read from the class files of a class loader are shared
+        assertSame(classInfos[0].getMethods()[0].getName(), classInfos[1].getMethods()[0].getName());
+        assertSame(classInfos[0].getFields()[0].getName(), classInfos[1].getFields()[0].getName());
+    }
+
+    public void testFootprint() {
+        // warm up
+        newCorpus(10);
+
+        long before = usedMemory();
+        ClassInfo[] classInfos = newCorpus(m_numberOfClasses);
+        long after = usedMemory();
+        if (m_printInfo) {
+            System.out.println(
+                    "\nclass info footprint: " + ((after - before) / m_numberOfClasses) + " bytes per class with "
+                    + m_numberOfMembers + " methods and " + m_numberOfMembers + " fields"
+            );
+        }
+        assertEquals(m_numberOfClasses, classInfos.length);
+    }
+
+    /**
+     * Generates a corpus of classes in a new class loader and returns their class infos, with the members parsed.
+     */
+    private ClassInfo[] newCorpus(int numberOfClasses) {
+        ClassLoader loader = new URLClassLoader(new URL[0], ClassLoader.getSystemClassLoader());
+        ClassInfo[] classInfos = new ClassInfo[numberOfClasses];
+        for (int i = 0; i < numberOfClasses; i++) {
+            classInfos[i] = AsmClassInfo.getClassInfo(generateClass("test/footprint/Generated" + i), loader);
+            classInfos[i].getMethods();
+        }
+        return classInfos;
+    }
+
+    private byte[] generateClass(String className) {
+        ClassWriter cw = new ClassWriter(true);
+        cw.visit(AsmHelper.JAVA_VERSION, ACC_PUBLIC + ACC_SUPER, className, null, "java/lang/Object", null);
+        for (int i = 0; i < m_numberOfMembers; i++) {
+            cw.visitField(ACC_PRIVATE, "m_field" + i, FIELD_DESCS[i % FIELD_DESCS.length], null, null);
+        }
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        for (int i = 0; i < m_numberOfMembers; i++) {
+            cw.visitMethod(ACC_PUBLIC + ACC_ABSTRACT, getMethodName(i), getMethodDesc(i), null, null);
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static String getMethodName(int index) {
+        return METHOD_NAMES[index % METHOD_NAMES.length] + (index / METHOD_NAMES.length);
+    }
+
+    private static String getMethodDesc(int index) {
+        return METHOD_DESCS[index % METHOD_DESCS.length];
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(ClassInfoFootprintTest.class);
+    }
+}
@@ -0,0 +1,209 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test.performance;
+
+import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.expression.SubtypePatternType;
+import org.codehaus.aspectwerkz.expression.regexp.NamePattern;
+import org.codehaus.aspectwerkz.expression.regexp.Pattern;
+import org.codehaus.aspectwerkz.expression.regexp.TypePattern;
+import org.codehaus.aspectwerkz.util.Strings;
+
+/**
+ * Checks that the type and name patterns match the same names than the jrexx regular expressions they
+ * used to be translated to, and compares the match time of both.
+ *
+ * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
+ */
+public class PatternMatchPerformanceTest extends TestCase {
+
+    private static final String[] TYPE_PATTERNS = new String[]{
+        "*",
+        "..",
+        "String",
+        "java.lang.String",
+        "java.lang.String[]",
+        "java.lang.*",
+        "java.lang.*[]",
+        "java..*",
+        "java..String",
+        "*..*Test",
+        "test.*.*",
+        "test..*Advice*",
+        "test.Foo$Bar",
+        "*.*",
+        "a.b*c*d.E"
+    };
+
+    private static final String[] NAME_PATTERNS = new String[]{
+        "*",
+        "get*",
+        "*Name",
+        "g*N*e",
+        "getName",
+        "get.ame",
+        "__AW_*",
+        "*$*"
+    };
+
+    private static final String[] NAMES = new String[]{
+        "",
+        "java.lang.String",
+        "java.lang.String[]",
+        "java.lang.String[][]",
+        "java.lang.Object",
+        "java.lang.reflect.Method",
+        "java.util.List",
+        "javax.swing.JButton",
+        "String",
+        "test.MemberMethodAdviceTest",
+        "test.expression.Target",
+        "test.aspect.MemberMethodTestAspect",
+        "test.Foo$Bar",
+        "test.Foo.Bar",
+        "a.bcd.E",
+        "a.bxcyd.E",
+        "a.bcd.F",
+        "getName",
+        "getname",
+        "get",
+        "setName",
+        "gName",
+        "__AW_getName",
+        "aw$clinit",
+        "Name",
+        "int",
+        "int[]"
+    };
+
+    private boolean m_printInfo = true;
+
+    private int m_numberOfMatches = 2000;
+
+    public PatternMatchPerformanceTest(String name) {
+        super(name);
+    }
+
+    public void testSameResults() {
+        for (int i = 0; i < TYPE_PATTERNS.length; i++) {
+            TypePattern typePattern = Pattern.compileTypePattern(TYPE_PATTERNS[i], SubtypePatternType.NOT_HIERARCHICAL);
+            com.karneim.util.collection.regex.Pattern regexp = toTypeRegexp(TYPE_PATTERNS[i]);
+            for (int j = 0; j < NAMES.length; j++) {
+                assertEquals(
+                        TYPE_PATTERNS[i] + " @ " + NAMES[j],
+                        NAMES[j].length() > 0 && regexp.contains(NAMES[j]),
+                        typePattern.matches(NAMES[j])
+                );
+            }
+        }
+        for (int i = 0; i < NAME_PATTERNS.length; i++) {
+            NamePattern namePattern = Pattern.compileNamePattern(NAME_PATTERNS[i]);
+            com.karneim.util.collection.regex.Pattern regexp = toNameRegexp(NAME_PATTERNS[i]);
+            for (int j = 0; j < NAMES.length; j++) {
+                assertEquals(
+                        NAME_PATTERNS[i] + " @ " + NAMES[j],
+                        NAMES[j].length() > 0 && regexp.contains(NAMES[j]),
+                        namePattern.matches(NAMES[j])
+                );
+            }
+        }
+    }
+
+    public void testProxySuffix() {
+        TypePattern typePattern = Pattern.compileTypePattern("test.Foo", SubtypePatternType.NOT_HIERARCHICAL);
+        assertTrue(typePattern.matches("test.Foo$$ProxiedByAWSubclassing$$1"));
+        assertTrue(typePattern.matches("test.Foo$$EnhancerByCGLIB$$1"));
+        assertFalse(typePattern.matches("test.Foo$$FastClassByCGLIB$$1"));
+        assertFalse(typePattern.matches("test.Bar$$EnhancerByCGLIB$$1"));
+    }
+
+    public void testMatchTime() {
+        TypePattern[] typePatterns = new TypePattern[TYPE_PATTERNS.length];
+        com.karneim.util.collection.regex.Pattern[] typeRegexps =
+                new com.karneim.util.collection.regex.Pattern[TYPE_PATTERNS.length];
+        for (int i = 0; i < TYPE_PATTERNS.length; i++) {
+            typePatterns[i] = Pattern.compileTypePattern(TYPE_PATTERNS[i], SubtypePatternType.NOT_HIERARCHICAL);
+            typeRegexps[i] = toTypeRegexp(TYPE_PATTERNS[i]);
+        }
+        // warm up
+        matchAll(typePatterns, 20);
+        matchAll(typeRegexps, 20);
+
+        long time = matchAll(typeRegexps, m_numberOfMatches);
+        double timePerMatchRegexp = time / (double) (m_numberOfMatches * TYPE_PATTERNS.length * NAMES.length);
+        time = matchAll(typePatterns, m_numberOfMatches);
+        double timePerMatchGlob = time / (double) (m_numberOfMatches * TYPE_PATTERNS.length * NAMES.length);
+        if (m_printInfo) {
+            System.out.println("\njrexx type pattern match: " + timePerMatchRegexp);
+            System.out.println("glob type pattern match: " + timePerMatchGlob);
+        }
+    }
+
+    private long matchAll(TypePattern[] patterns, int times) {
+        long startTime = System.currentTimeMillis();
+        for (int n = 0; n < times; n++) {
+            for (int i = 0; i < patterns.length; i++) {
+                for (int j = 0; j < NAMES.length; j++) {
+                    patterns[i].matches(NAMES[j]);
+                }
+            }
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+    private long matchAll(com.karneim.util.collection.regex.Pattern[] patterns, int times) {
+        long startTime = System.currentTimeMillis();
+        for (int n = 0; n < times; n++) {
+            for (int i = 0; i < patterns.length; i++) {
+                for (int j = 0; j < NAMES.length; j++) {
+                    patterns[i].contains(NAMES[j]);
+                }
+            }
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+    /**
+     * The type pattern to regular expression translation the type patterns used to do.
+     */
+    private static com.karneim.util.collection.regex.Pattern toTypeRegexp(String typeName) {
+        if (Pattern.ABBREVIATIONS.containsKey(typeName)) {
+            typeName = (String) Pattern.ABBREVIATIONS.get(typeName);
+        }
+        if (typeName.equals(Pattern.REGULAR_WILDCARD) || typeName.equals(Pattern.EAGER_WILDCARD)) {
+            typeName = "[a-zA-Z0-9_$.\\[\\]]+";
+        } else {
+            typeName = Strings.replaceSubString(typeName, "[", "\\[");
+            typeName = Strings.replaceSubString(typeName, "]", "\\]");
+            typeName = Strings.replaceSubString(typeName, "..", "[a-zA-Z0-9_$.]+");
+            typeName = Strings.replaceSubString(typeName, ".", "\\.");
+            typeName = Strings.replaceSubString(typeName, "*", "[a-zA-Z0-9_$\\[\\]]*");
+        }
+        return new com.karneim.util.collection.regex.Pattern(typeName);
+    }
+
+    /**
+     * The name pattern to regular expression translation the name patterns used to do.
+     */
+    private static com.karneim.util.collection.regex.Pattern toNameRegexp(String namePattern) {
+        if (namePattern.equals(Pattern.REGULAR_WILDCARD)) {
+            namePattern = "[a-zA-Z0-9_$.]+";
+        } else {
+            namePattern = Strings.replaceSubString(namePattern, "*", "[a-zA-Z0-9_$]*");
+        }
+        return new com.karneim.util.collection.regex.Pattern(namePattern);
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(PatternMatchPerformanceTest.class);
+    }
+}
@@ -0,0 +1,118 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test.performance;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.transform.Context;
+import org.codehaus.aspectwerkz.transform.inlining.ContextImpl;
+import org.codehaus.aspectwerkz.transform.inlining.InliningWeavingStrategy;
+
+/**
+ * Checks that the single pass weaving mode produces the same bytecode than the multi pass one, and
+ * compares the weave time of both modes.
+ *
+ * @author <a href="mailto:alex AT gnilux DOT com">Alexandre Vasseur</a>
+ */
+public class WeavingPerformanceTest extends TestCase {
+
+    private static final String[] CLASSES = new String[]{
+        "test.MemberMethodAdviceTest",
+        "test.CallerSideAdviceTest",
+        "test.FieldAdviceTest",
+        "test.handler.HandlerTest",
+        "test.constructor.ConstructorAdviceTest",
+        "test.mixin.perinstance.ToBeIntroduced",
+        "test.intercept.call.InterceptTest",
+        "test.staticinitialization.ClinitTarget"
+    };
+
+    private boolean m_printInfo = true;
+
+    private int m_numberOfWeavings = 20;
+
+    private final InliningWeavingStrategy m_multiPass = new InliningWeavingStrategy(false);
+
+    private final InliningWeavingStrategy m_singlePass = new InliningWeavingStrategy(true);
+
+    public WeavingPerformanceTest(String name) {
+        super(name);
+    }
+
+    public void testSameBytecode() throws Throwable {
+        for (int i = 0; i < CLASSES.length; i++) {
+            byte[] bytecode = getBytecode(CLASSES[i]);
+            ContextImpl multi = (ContextImpl) weave(m_multiPass, CLASSES[i], bytecode);
+            ContextImpl single = (ContextImpl) weave(m_singlePass, CLASSES[i], bytecode);
+            assertTrue(CLASSES[i], Arrays.equals(multi.getCurrentBytecode(), single.getCurrentBytecode()));
+            assertEquals(CLASSES[i], multi.getEmittedJoinPoints().size(), single.getEmittedJoinPoints().size());
+            assertEquals(CLASSES[i], multi.isAdvised(), single.isAdvised());
+        }
+    }
+
+    public void testWeavingTime() throws Throwable {
+        byte[][] bytecodes = new byte[CLASSES.length][];
+        for (int i = 0; i < CLASSES.length; i++) {
+            bytecodes[i] = getBytecode(CLASSES[i]);
+        }
+        // warm up
+        weaveAll(m_multiPass, bytecodes, 10);
+        weaveAll(m_singlePass, bytecodes, 10);
+
+        long time = weaveAll(m_multiPass, bytecodes, m_numberOfWeavings);
+        double timePerClassMultiPass = time / (double) (m_numberOfWeavings * CLASSES.length);
+        time = weaveAll(m_singlePass, bytecodes, m_numberOfWeavings);
+        double timePerClassSinglePass = time / (double) (m_numberOfWeavings * CLASSES.length);
+        if (m_printInfo) {
+            System.out.println("\nmulti pass weaving: " + timePerClassMultiPass);
+            System.out.println("single pass weaving: " + timePerClassSinglePass);
+        }
+    }
+
+    private long weaveAll(InliningWeavingStrategy strategy, byte[][] bytecodes, int times) {
+        long startTime = System.currentTimeMillis();
+        for (int n = 0; n < times; n++) {
+            for (int i = 0; i < CLASSES.length; i++) {
+                weave(strategy, CLASSES[i], bytecodes[i]);
+            }
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+    private Context weave(InliningWeavingStrategy strategy, String className, byte[] bytecode) {
+        Context context = strategy.newContext(className, bytecode, getClass().getClassLoader());
+        strategy.transform(className, context);
+        return context;
+    }
+
+    private byte[] getBytecode(String className) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(className.replace('.', '/') + ".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(WeavingPerformanceTest.class);
+    }
+}
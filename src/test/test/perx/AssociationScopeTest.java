@@ -36,6 +36,8 @@ public class AssociationScopeTest extends TestCase {
 	};
 	
 	public void testPerThis() {
+		SCOPE_LOG = "";
+		JOINPOINTTYPES.clear();
 		A a = new A();
 		a.m();
 		
@@ -0,0 +1,21 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test.pooling;
+
+import org.codehaus.aspectwerkz.joinpoint.JoinPoint;
+
+/**
+ * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur </a>
+ */
+public class PerTargetAspect {
+
+    public Object around(final JoinPoint jp) throws Throwable {
+        PooledPerTargetTest.log(this, jp.getTarget());
+        return jp.proceed();
+    }
+}
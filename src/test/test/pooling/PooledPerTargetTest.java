@@ -0,0 +1,62 @@
+/**************************************************************************************
+ * Copyright (c) Jonas Bonr, Alexandre Vasseur. All rights reserved.                 *
+ * http://aspectwerkz.codehaus.org                                                    *
+ * ---------------------------------------------------------------------------------- *
+ * The software in this package is published under the terms of the LGPL license      *
+ * a copy of which has been included with this distribution in the license.txt file.  *
+ **************************************************************************************/
+package test.pooling;
+
+import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.transform.AspectWerkzPreProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that a pooled join point does not reuse the perTarget aspect of a previous invocation on another target.
+ * <p/>
+ * The join point pool must be turned on with <code>-Daspectwerkz.transform.jppool=true</code>, thus this test
+ * only runs in the test:jppool target.
+ *
+ * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur </a>
+ */
+public class PooledPerTargetTest extends TestCase {
+
+    private static final List s_aspects = new ArrayList();
+
+    private static final List s_targets = new ArrayList();
+
+    static void log(final Object aspect, final Object target) {
+        s_aspects.add(aspect);
+        s_targets.add(target);
+    }
+
+    public void testPerTargetAcrossTargets() {
+        assertTrue("the join point pool is not turned on", AspectWerkzPreProcessor.JP_POOL);
+        s_aspects.clear();
+        s_targets.clear();
+        Target target1 = new Target();
+        Target target2 = new Target();
+        target1.m();
+        target2.m();
+        target1.m();
+        target2.m();
+
+        assertEquals(4, s_aspects.size());
+        for (int i = 0; i < s_targets.size(); i++) {
+            assertSame(i % 2 == 0 ? target1 : target2, s_targets.get(i));
+        }
+        assertNotSame(s_aspects.get(0), s_aspects.get(1));
+        assertSame(s_aspects.get(0), s_aspects.get(2));
+        assertSame(s_aspects.get(1), s_aspects.get(3));
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(PooledPerTargetTest.class);
+    }
+}
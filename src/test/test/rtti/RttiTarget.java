@@ -7,9 +7,11 @@
  **************************************************************************************/
 package test.rtti;
 
+import org.codehaus.aspectwerkz.joinpoint.Arguments;
 import org.codehaus.aspectwerkz.joinpoint.JoinPoint;
 import org.codehaus.aspectwerkz.joinpoint.MethodRtti;
 import org.codehaus.aspectwerkz.joinpoint.Rtti;
+import org.codehaus.aspectwerkz.joinpoint.StaticJoinPoint;
 
 /**
  * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur</a>
@@ -18,6 +20,8 @@ public class RttiTarget {
 
     public static StringBuffer LOG = new StringBuffer();
 
+    public static Rtti KEPT_RTTI;
+
     private static int COUNT = 0;
 
     private static boolean NESTED = false;
@@ -33,10 +37,28 @@ public class RttiTarget {
         }
     }
 
+    public static void doSomethingTyped(int i, long l, String s) {
+        LOG.append(i).append(".").append(l).append(".").append(s).append(" ");
+    }
+
+    public static void doSomethingShared() {
+        LOG.append("shared ");
+    }
+
     public String toString() {
         return "Target-" + m_id;
     }
 
+    /**
+     * A target that does not count as a RttiTarget instance.
+     */
+    public static class KeptTarget {
+
+        public void doSomethingKept(int i) {
+            LOG.append(i).append(" ");
+        }
+    }
+
     /**
      * This aspect within the target class allows testing of non side effect at system init time
      */
@@ -73,6 +95,48 @@ public class RttiTarget {
 
             return ret;
         }
+
+        /**
+         * @param jp
+         * @return
+         * @throws Throwable
+         * @Around execution(* test.rtti.RttiTarget.doSomethingTyped(..))
+         */
+        public Object aroundTyped(JoinPoint jp) throws Throwable {
+            Arguments args = (Arguments) jp;
+            LOG.append("+").append(args.getArgCount()).append(".").append(args.getIntArg(0)).append(".");
+            LOG.append(args.getLongArg(1)).append(".").append(args.getArg(2)).append(" ");
+            try {
+                args.getIntArg(1);
+                LOG.append("getIntArg(1) ");
+            } catch (IllegalArgumentException e) {
+                ;//expected
+            }
+            Object[] parameterValues = ((MethodRtti) jp.getRtti()).getParameterValues();
+            LOG.append(parameterValues[0]).append(".").append(parameterValues[1]).append(" ");
+            return jp.proceed();
+        }
+
+        /**
+         * Keeps the Rtti beyond the invocation, without asking for its parameter values.
+         *
+         * @param jp
+         * @return
+         * @throws Throwable
+         * @Around execution(* test.rtti.RttiTarget$KeptTarget.doSomethingKept(int))
+         */
+        public Object aroundKept(JoinPoint jp) throws Throwable {
+            KEPT_RTTI = jp.getRtti();
+            return jp.proceed();
+        }
+
+        /**
+         * @param sjp
+         * @Before execution(* test.rtti.RttiTarget.doSomethingShared())
+         */
+        public void beforeShared(StaticJoinPoint sjp) {
+            LOG.append(sjp instanceof Arguments).append(" ");
+        }
     }
 
 }
@@ -8,6 +8,7 @@
 package test.rtti;
 
 import junit.framework.TestCase;
+import org.codehaus.aspectwerkz.joinpoint.MethodRtti;
 
 /**
  * @author <a href="mailto:alex@gnilux.com">Alexandre Vasseur</a>
@@ -31,6 +32,32 @@ public class RttiTest extends TestCase {
     }
 
 
+    public void testTypedArguments() {
+        RttiTarget.LOG = new StringBuffer("");
+        RttiTarget.doSomethingTyped(4, 5L, "six");
+        assertEquals("+3.4.5.six 4.5 4.5.six ", RttiTarget.LOG.toString());
+    }
+
+    public void testRttiKeptBeyondInvocation() {
+        RttiTarget.LOG = new StringBuffer("");
+        RttiTarget.KeptTarget keptTarget = new RttiTarget.KeptTarget();
+        keptTarget.doSomethingKept(7);
+        keptTarget.doSomethingKept(8);
+        assertEquals("7 8 ", RttiTarget.LOG.toString());
+
+        MethodRtti rtti = (MethodRtti) RttiTarget.KEPT_RTTI;
+        RttiTarget.KEPT_RTTI = null;
+        assertSame(keptTarget, rtti.getTarget());
+        assertEquals(1, rtti.getParameterValues().length);
+        assertEquals(new Integer(8), rtti.getParameterValues()[0]);
+    }
+
+    public void testSharedJoinPointHasNoArguments() {
+        RttiTarget.LOG = new StringBuffer("");
+        RttiTarget.doSomethingShared();
+        assertEquals("false shared ", RttiTarget.LOG.toString());
+    }
+
     public static void main(String[] args) {
         junit.textui.TestRunner.run(suite());
     }